@@ -1,17 +1,52 @@
 package edu.isi.karma.cleaning;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import org.python.core.PyObject;
 import org.python.core.PyString;
+import org.python.core.PySystemState;
 import org.python.util.PythonInterpreter;
 
 import edu.isi.karma.webserver.ServletContextParameterMap;
 import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
 
 public class Interpretor {
+	private static final int MAX_IDLE_INTERPRETORS = 8;
+
+	// interpretors for the partitions of a rule that is applied in parallel,
+	// each of them is used by one partition at a time
+	private static final ConcurrentLinkedQueue<Interpretor> idleInterpretors = new ConcurrentLinkedQueue<Interpretor>();
+
 	private PyObject interpreterClass;
 
 	public Interpretor() {
-		PythonInterpreter interpreter = new PythonInterpreter();
+	}
+
+	/**
+	 * Returns an interpretor that is not used by any other thread. It must be
+	 * given back with {@link #returnInterpretor(Interpretor)} once the
+	 * programs created on it are no longer used.
+	 */
+	public static Interpretor borrowInterpretor() {
+		Interpretor interpretor = idleInterpretors.poll();
+		return interpretor != null ? interpretor : new Interpretor();
+	}
+
+	public static void returnInterpretor(Interpretor interpretor) {
+		if (idleInterpretors.size() < MAX_IDLE_INTERPRETORS) {
+			idleInterpretors.offer(interpretor);
+		}
+	}
+
+	// the python interpreter is only started for the first program that
+	// cannot be compiled by RuleCompiler
+	private synchronized PyObject getInterpreterClass() {
+		if (interpreterClass != null)
+			return interpreterClass;
+		// every interpretor has its own sys.modules, so the python programs of
+		// two interpretors do not share the state of the modules they use
+		PythonInterpreter interpreter = new PythonInterpreter(null,
+				new PySystemState());
 		// change the sys.path
 		String dirpathString = ServletContextParameterMap
 				.getParameterValue(ContextParameter.PYTHON_SCRIPTS_DIRECTORY);
@@ -25,16 +60,24 @@ public class Interpretor {
 		interpreter.exec("from Interpreter import *");
 		// interpreter.exec("print sys.path");
 		interpreterClass = interpreter.get("Interpreter");
+		return interpreterClass;
 	}
 
 	/**
-	 * The create method is responsible for performing the actual coercion of
-	 * the referenced python module into Java bytecode
+	 * The create method compiles the program to Java with RuleCompiler. Only
+	 * programs it does not support are coerced from the referenced python
+	 * module into Java bytecode
 	 */
 
 	public InterpreterType create(String scripts) {
+		InterpreterType compiled = RuleCompiler.compile(scripts, this);
+		if (compiled != null)
+			return compiled;
+		return createPythonInterpreter(scripts);
+	}
 
-		PyObject buildingObject = interpreterClass.__call__(new PyString(
+	InterpreterType createPythonInterpreter(String scripts) {
+		PyObject buildingObject = getInterpreterClass().__call__(new PyString(
 				scripts));
 		InterpreterType ele = (InterpreterType) buildingObject
 				.__tojava__(InterpreterType.class);
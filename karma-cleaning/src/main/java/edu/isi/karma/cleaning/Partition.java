@@ -19,11 +19,17 @@ public class Partition implements GrammarTreeNode {
 	}
 
 	public Partition(Vector<Vector<TNode>> org, Vector<Vector<TNode>> tar) {
+		this(org, tar, new SegmentCache());
+	}
+
+	public Partition(Vector<Vector<TNode>> org, Vector<Vector<TNode>> tar,
+			SegmentCache segmentCache) {
 		this.orgNodes = org;
 		this.tarNodes = tar;
 		Vector<Traces> ts = new Vector<Traces>();
 		for (int i = 0; i < orgNodes.size(); i++) {
-			Traces t = new Traces(orgNodes.get(i), tarNodes.get(i));
+			Traces t = new Traces(orgNodes.get(i), tarNodes.get(i),
+					segmentCache);
 			ts.add(t);
 		}
 		Traces iterTraces = ts.get(0);
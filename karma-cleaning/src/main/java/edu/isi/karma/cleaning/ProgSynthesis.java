@@ -1,14 +1,26 @@
 package edu.isi.karma.cleaning;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 import edu.isi.karma.cleaning.Research.ConfigParameters;
 import edu.isi.karma.cleaning.Research.Prober;
 public class ProgSynthesis {
 	public static int time_limit = 20;
+	// shared by all synthesizers, the partitions and the pairs of partitions
+	// are searched on it in parallel
+	private static final ForkJoinPool searchPool = new ForkJoinPool();
 	Vector<Vector<TNode>> orgVector = new Vector<Vector<TNode>>();
 	Vector<Vector<TNode>> tarVector = new Vector<Vector<TNode>>();
 	String bestRuleString = "";
@@ -19,6 +31,8 @@ public class ProgSynthesis {
 	public PartitionClassifierType classifier;
 	public String[] vocab = null;
 	public HashMap<String, Boolean> legalParitions = new HashMap<String, Boolean>();
+	// segments built for the examples of this run
+	public SegmentCache segmentCache = new SegmentCache();
 	public MyLogger logger = new MyLogger();
 	public void inite(Vector<String[]> examples) {
 		for (int i = 0; i < examples.size(); i++) {
@@ -84,58 +98,153 @@ public class ProgSynthesis {
 			Vector<Vector<TNode>> tvt = new Vector<Vector<TNode>>();
 			ovt.add(this.orgVector.get(i));
 			tvt.add(this.tarVector.get(i));
-			Partition pt = new Partition(ovt, tvt);
+			Partition pt = new Partition(ovt, tvt, segmentCache);
 			pars.add(pt);
 		}
 		return pars;
 	}
 
 	public boolean isLegalPartition(Partition p) {
+		return isLegalPartition(p, null);
+	}
+
+	// verified is the result of producePrograms for p when it was already
+	// computed in parallel, null otherwise
+	private boolean isLegalPartition(Partition p, Boolean verified) {
 		String key = p.getHashKey();
 		if (legalParitions.containsKey(key)) {
 			return legalParitions.get(key);
 		}
 		// test whether its subset fails
-		for (String k : legalParitions.keySet()) {
-			if (!legalParitions.get(k)) // false
+		if (hasFailedSubset(key)) {
+			return false;
+		}
+		boolean legal;
+		if (verified != null) {
+			legal = verified;
+		} else {
+			Vector<Partition> xPar = new Vector<Partition>();
+			xPar.add(p);
+			Collection<ProgramRule> cpr = this.producePrograms(xPar);
+			legal = cpr != null && cpr.size() > 0;
+		}
+		legalParitions.put(key, legal);
+		return legal;
+	}
+
+	private boolean hasFailedSubset(String key) {
+		return hasFailedSubset(key, legalParitions);
+	}
+
+	private static boolean hasFailedSubset(String key, Map<String, Boolean> results) {
+		for (String k : results.keySet()) {
+			if (!results.get(k)) // false
 			{
 				if (key.indexOf(k) != -1) {
-					return false;
+					return true;
 				}
 			}
 		}
-		Vector<Partition> xPar = new Vector<Partition>();
-		xPar.add(p);
-		Collection<ProgramRule> cpr = this.producePrograms(xPar);
-		if (cpr == null || cpr.size() == 0) {
-			legalParitions.put(key, false);
-			return false;
-		} else {
-			legalParitions.put(key, true);
-			return true;
-		}
-
+		return false;
 	}
 
 	public void mergePartitions(Vector<Partition> pars) {
-		double maxScore = 0;
-		int[] pos = { -1, -1 };
+		// the pairs are merged and tested in parallel, the scores are read in
+		// the same order as a sequential scan so the result does not depend
+		// on which task finishes first
+		List<Callable<PairScore>> tasks = new ArrayList<Callable<PairScore>>();
+		ConcurrentHashMap<String, Boolean> scanResults = new ConcurrentHashMap<String, Boolean>();
 		for (int i = 0; i < pars.size(); i++) {
 			for (int j = i + 1; j < pars.size(); j++) {
-				double s = getCompScore(i, j, pars);
-				if (s < 0) {
+				tasks.add(new PairScore(i, j, pars, scanResults));
+			}
+		}
+		List<PairScore> scores = invokeAll(tasks);
+		if (scores == null)
+			return;
+		double maxScore = 0;
+		int[] pos = { -1, -1 };
+		for (PairScore ps : scores) {
+			double s = ps.getScore();
+			if (s < 0) {
+				continue;
+			}
+			if (s >= maxScore) {
+				pos[0] = ps.i;
+				pos[1] = ps.j;
+				maxScore = s;
+			}
+		}
+
+		if (pos[0] != -1 && pos[1] != -1)
+			UpdatePartitions(pos[0], pos[1], pars);
+	}
+
+	/*
+	 * Merges two partitions and verifies the merged partition. call() only
+	 * reads legalParitions, which is updated afterwards in getScore() on the
+	 * calling thread. The partitions verified during the scan are shared
+	 * through scanResults, so a partition is not verified again and a
+	 * partition containing one that already failed is not verified at all.
+	 * getScore() verifies a skipped partition if the sequential scan would
+	 * have.
+	 */
+	private class PairScore implements Callable<PairScore> {
+		final int i;
+		final int j;
+		private final Vector<Partition> pars;
+		private final ConcurrentHashMap<String, Boolean> scanResults;
+		private Partition merged;
+		private Boolean verified;
+		private int validCnt = 0;
+
+		PairScore(int i, int j, Vector<Partition> pars,
+				ConcurrentHashMap<String, Boolean> scanResults) {
+			this.i = i;
+			this.j = j;
+			this.pars = pars;
+			this.scanResults = scanResults;
+		}
+
+		public PairScore call() {
+			merged = pars.get(i).mergewith(pars.get(j));
+			if (merged == null)
+				return this;
+			String key = merged.getHashKey();
+			if (legalParitions.containsKey(key)) {
+				if (!legalParitions.get(key))
+					return this;
+			} else if (scanResults.containsKey(key)) {
+				verified = scanResults.get(key);
+				if (!verified)
+					return this;
+			} else if (!hasFailedSubset(key)
+					&& !hasFailedSubset(key, scanResults)) {
+				Vector<Partition> xPar = new Vector<Partition>();
+				xPar.add(merged);
+				Collection<ProgramRule> cpr = producePrograms(xPar);
+				verified = cpr != null && cpr.size() > 0;
+				scanResults.put(key, verified);
+				if (!verified)
+					return this;
+			}
+			for (int x = 0; x < pars.size(); x++) {
+				if (x == i || x == j) {
 					continue;
 				}
-				if (s >= maxScore) {
-					pos[0] = i;
-					pos[1] = j;
-					maxScore = s;
+				if (merged.mergewith(pars.get(x)) != null) {
+					validCnt++;
 				}
 			}
+			return this;
 		}
 
-		if (pos[0] != -1 && pos[1] != -1)
-			UpdatePartitions(pos[0], pos[1], pars);
+		double getScore() {
+			if (merged == null || !isLegalPartition(merged, verified)) {
+				return -Double.MAX_VALUE;
+			}
+			return validCnt;
+		}
 	}
 
 	public void UpdatePartitions(int i, int j, Vector<Partition> pars) {
@@ -165,45 +274,173 @@ public class ProgSynthesis {
 	public Collection<ProgramRule> producePrograms(Vector<Partition> pars) {
 		Program prog = new Program(pars, this.vocab);
 		HashSet<ProgramRule> rules = new HashSet<ProgramRule>();
-		int prog_cnt = 1;
-		int i = 0;
-		long startTime = System.currentTimeMillis();
-		while (i < prog_cnt) {
-			ProgramRule r = prog.toProgram1();
-			if (r == null)
-				return null;
-			String xString = "";
-			int termCnt = 0;
-			boolean findRule = true;
-			while ((xString = this.validRule(r, pars)) != "GOOD" && findRule) {
-				if (xString.compareTo("NO_CLASIF") == 0) {
-					return null; // indistinguishable classes.
+		ProgramRule r = prog.toProgram1();
+		if (r == null)
+			return null;
+		// the classifier does not change while the rules are refined
+		if (!isClassified(r, pars))
+			return null; // indistinguishable classes.
+		SearchDeadline deadline = new SearchDeadline(time_limit * 1000L);
+		// partitions of a single example can share segments through
+		// segmentCache, so they do not enumerate at the same time
+		Object sharedSegments = new Object();
+		List<Callable<PartitionSearch>> searches = new ArrayList<Callable<PartitionSearch>>();
+		for (Partition p : prog.partitions) {
+			Object lock = p.orgNodes.size() > 1 ? p : sharedSegments;
+			searches.add(new PartitionSearch(r, p, deadline, lock));
+		}
+		List<PartitionSearch> results = invokeAll(searches);
+		if (results == null)
+			return null;
+		boolean findRule = true;
+		int termCnt = 0;
+		// replay the updates in partition order, as the sequential search did
+		for (PartitionSearch ps : results) {
+			for (int k = 0; k < ps.triedRules.size(); k++) {
+				r.updateClassworker(ps.partition.label, ps.triedRules.get(k),
+						ps.triedWorkers.get(k));
+			}
+			termCnt += ps.triedRules.size();
+			findRule &= ps.found;
+		}
+		if (findRule)
+			rules.add(r);
+		synchronized (this) {
+			this.ruleNo += termCnt; // accumulate the no of rules while the
+		}
+		return rules;
+	}
+
+	private boolean isClassified(ProgramRule p, Vector<Partition> vp) {
+		for (Partition px : vp) {
+			for (int i = 0; i < px.orgNodes.size(); i++) {
+				String s1 = UtilTools.print(px.orgNodes.get(i));
+				if (p.getClassForValue(s1).compareTo(px.label) != 0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Runs the tasks on the search pool and returns their results in the order
+	 * of the tasks. Tasks started from a pool thread run on that thread.
+	 */
+	private <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>();
+		try {
+			if (tasks.size() <= 1 || ForkJoinTask.inForkJoinPool()) {
+				for (Callable<T> task : tasks) {
+					results.add(task.call());
 				}
-				if ((System.currentTimeMillis() - startTime) / 1000 >= time_limit) {
-					findRule = false;
-					break;
+				return results;
+			}
+			for (Future<T> f : searchPool.invokeAll(tasks)) {
+				results.add(f.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Enumerates the programs of one partition until one is consistent with
+	 * all of its examples. The rules are only tried here and recorded, the
+	 * ProgramRule is updated by the calling thread.
+	 */
+	private class PartitionSearch implements Callable<PartitionSearch> {
+		private final ProgramRule rule;
+		final Partition partition;
+		private final SearchDeadline deadline;
+		private final Object enumerationLock;
+		final List<String> triedRules = new ArrayList<String>();
+		final List<InterpreterType> triedWorkers = new ArrayList<InterpreterType>();
+		boolean found = false;
+
+		PartitionSearch(ProgramRule rule, Partition partition,
+				SearchDeadline deadline, Object enumerationLock) {
+			this.rule = rule;
+			this.partition = partition;
+			this.deadline = deadline;
+			this.enumerationLock = enumerationLock;
+		}
+
+		public PartitionSearch call() {
+			InterpreterType worker = rule.getWorkerForClass(partition.label);
+			while (!isConsistent(worker)) {
+				if (deadline.isExpired()) {
+					deadline.cancel();
+					return this;
 				}
-				for (Partition p : prog.partitions) {
-					if (p.label.compareTo(xString) == 0) {
-						String newRule = p.toProgram();
-						if (ConfigParameters.debug == 1)
-							System.out.println("updated Rule: " + p.label
-									+ ": " + newRule);
-						if (newRule.contains("null")) {
-							findRule = false;
-							break;
-						}
-						r.updateClassworker(xString, newRule);
-					}
+				String newRule;
+				synchronized (enumerationLock) {
+					newRule = partition.toProgram();
 				}
-				termCnt++;
+				if (ConfigParameters.debug == 1)
+					System.out.println("updated Rule: " + partition.label
+							+ ": " + newRule);
+				if (newRule.contains("null")) {
+					deadline.cancel();
+					return this;
+				}
+				worker = ProgramRule.itInterpretor.create(newRule);
+				triedRules.add(newRule);
+				triedWorkers.add(worker);
 			}
-			if (findRule)
-				rules.add(r);
-			this.ruleNo += termCnt; // accumulate the no of rules while the
-			i++;
+			found = true;
+			return this;
+		}
+
+		private boolean isConsistent(InterpreterType worker) {
+			for (int i = 0; i < partition.orgNodes.size(); i++) {
+				String s1 = UtilTools.print(partition.orgNodes.get(i));
+				String s2 = "";
+				try {
+					s2 = new String(worker.execute(s1).getBytes(), "UTF-8");
+				} catch (Exception e) {
+					// the sequential search could not recover from this
+					// either, it ran until the time limit
+					deadline.cancel();
+					return false;
+				}
+				String s3 = UtilTools.print(partition.tarNodes.get(i));
+				if (s3.compareTo(s2) != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * The time limit shared by the searches of one producePrograms call. It
+	 * is cancelled as soon as one partition has no consistent program, since
+	 * the other partitions cannot make the rule valid then.
+	 */
+	private static class SearchDeadline {
+		private final long endTime;
+		private volatile boolean cancelled = false;
+
+		SearchDeadline(long millis) {
+			this.endTime = System.currentTimeMillis() + millis;
+		}
+
+		void cancel() {
+			cancelled = true;
+		}
+
+		boolean isExpired() {
+			return cancelled || System.currentTimeMillis() >= endTime;
 		}
-		return rules;
 	}
 
 	public Collection<ProgramRule> run_main() {
@@ -226,8 +463,9 @@ public class ProgSynthesis {
 		if(ConfigParameters.debug==1)
 		{
 			MyLogger.logsth(Prober.PartitionDisplay1(vp));
+			MyLogger.logsth("segment cache: " + segmentCache + "\n");
 		}
-		Traces.AllSegs.clear();
+		segmentCache.clear();
 		return cpr;
 	}
 
@@ -1,6 +1,7 @@
 package edu.isi.karma.cleaning;
 
 import java.util.HashMap;
+import java.util.Map;
 
 public class ProgramRule {
 	public HashMap<String, InterpreterType> rules = new HashMap<String, InterpreterType>();
@@ -20,9 +21,31 @@ public class ProgramRule {
 		initInterpretor();
 		InterpreterType worker = itInterpretor.create(rule);
 		rules.put("attr_0", worker);
+		strRules.put("attr_0", rule);
 
 	}
 
+	private ProgramRule() {
+		initInterpretor();
+	}
+
+	/*
+	 * Returns a copy whose workers are created on the given interpretor, so
+	 * that the rule can be applied in several threads at once when each of
+	 * them uses its own interpretor. The classifier is shared.
+	 */
+	public ProgramRule copy(Interpretor interpretor) {
+		ProgramRule r = new ProgramRule();
+		r.pClassifier = this.pClassifier;
+		r.signString = this.signString;
+		r.nullRule = this.nullRule;
+		for (Map.Entry<String, String> e : this.strRules.entrySet()) {
+			r.rules.put(e.getKey(), interpretor.create(e.getValue()));
+			r.strRules.put(e.getKey(), e.getValue());
+		}
+		return r;
+	}
+
 	public String transform(String value) {
 		String s2 = rules.get("attr_0").execute(value);
 		return s2;
@@ -44,7 +67,10 @@ public class ProgramRule {
 		if (value.length() == 0)
 			return labelString;
 		if (pClassifier != null) {
-			labelString = pClassifier.getLabel(value);
+			// the classifier is shared by the copies of the rule
+			synchronized (pClassifier) {
+				labelString = pClassifier.getLabel(value);
+			}
 		}
 		return labelString;
 
@@ -60,14 +86,22 @@ public class ProgramRule {
 	}
 
 	public void updateClassworker(String category, String newRule) {
+		updateClassworker(category, newRule, itInterpretor.create(newRule));
+	}
+
+	public void updateClassworker(String category, String newRule,
+			InterpreterType worker) {
 		this.rules.remove(category);
 		this.strRules.remove(category);
-		addRule(category, newRule);
+		addRule(category, newRule, worker);
 
 	}
 
 	public void addRule(String partition, String rule) {
-		InterpreterType worker = itInterpretor.create(rule);
+		addRule(partition, rule, itInterpretor.create(rule));
+	}
+
+	public void addRule(String partition, String rule, InterpreterType worker) {
 		this.signString += rule;
 		rules.put(partition, worker);
 		strRules.put(partition, rule);
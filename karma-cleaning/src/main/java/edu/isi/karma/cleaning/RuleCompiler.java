@@ -0,0 +1,665 @@
+package edu.isi.karma.cleaning;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Compiles the programs produced by the synthesizer (substr, indexOf, loop and
+ * constant segments joined with +) into Java objects that behave like the
+ * Python Interpreter/FunctionList scripts, without going through Jython.
+ * compile returns null for programs outside this subset (e.g. switch/getClass)
+ * and for programs whose Java translation could differ from the python one
+ * (token replacements that depend on the dict order, regular expression
+ * constructs that python re and java.util.regex read differently, escapes and
+ * numbers with a different meaning); those are still run by the Python
+ * interpreter. Values the compiled rule cannot handle like python (characters
+ * outside the BMP, which Jython counts as one character) are passed on to the
+ * Python interpreter at run time.
+ */
+public class RuleCompiler {
+	// same token replacements as Translator.py
+	private static final Map<String, String> token2str = new LinkedHashMap<String, String>();
+	static {
+		token2str.put("NUM", "([\\d]+)");
+		token2str.put("LWRD", "([a-z]+)");
+		token2str.put("UWRD", "([A-Z])");
+		token2str.put("BNK", "([\\s])");
+		token2str.put("SYB", "([^a-zA-Z0-9\\s+])");
+		token2str.put("WORD", "([a-z|A-Z]+)");
+		token2str.put("ANY", "");
+		token2str.put("START", "^");
+		token2str.put("END", "$");
+	}
+
+	public static String translate(String script) {
+		for (Map.Entry<String, String> e : token2str.entrySet()) {
+			script = script.replace(e.getKey(), e.getValue());
+		}
+		return script;
+	}
+
+	/**
+	 * @param python
+	 *            creates the Jython interpreter for the values the compiled
+	 *            rule passes on to python
+	 * @return the compiled rule, or null if the script has to be run by the
+	 *         Python interpreter
+	 */
+	public static InterpreterType compile(String script, Interpretor python) {
+		if (!isAscii(script) || !isTranslationOrderFree(script))
+			return null;
+		try {
+			// python's eval ignores the trailing new lines of the script
+			RuleParser parser = new RuleParser(trimEnd(translate(script)));
+			Expression exp = parser.parseSum();
+			if (!parser.atEnd() || !exp.isString()) {
+				return null;
+			}
+			return new CompiledRule(script, exp, python);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static boolean isAscii(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 0x7f)
+				return false;
+		}
+		return true;
+	}
+
+	private static String trimEnd(String s) {
+		int end = s.length();
+		while (end > 0 && " \t\r\n".indexOf(s.charAt(end - 1)) != -1)
+			end--;
+		return s.substring(0, end);
+	}
+
+	/*
+	 * Translator.py replaces the tokens in the order of a python dict. The
+	 * result only depends on that order when the tokens overlap in the script
+	 * or when removing ANY joins its neighbours into a new token; the other
+	 * replacements start and end with characters that cannot be part of a
+	 * token.
+	 */
+	private static boolean isTranslationOrderFree(String script) {
+		boolean[] used = new boolean[script.length()];
+		for (String key : token2str.keySet()) {
+			for (int i = script.indexOf(key); i != -1; i = script.indexOf(key, i + 1)) {
+				for (int j = i; j < i + key.length(); j++) {
+					if (used[j])
+						return false;
+					used[j] = true;
+				}
+			}
+		}
+		String withoutAny = script.replace("ANY", "");
+		for (String key : token2str.keySet()) {
+			int expected = key.equals("ANY") ? 0 : RuleParser.countOccurrences(script, key);
+			if (RuleParser.countOccurrences(withoutAny, key) != expected)
+				return false;
+		}
+		return true;
+	}
+
+	// thrown when python would not give the same result as the compiled rule
+	private static class PythonOnlyException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	static class CompiledRule implements InterpreterType {
+		private final String script;
+		private final Expression exp;
+		private final Interpretor python;
+		private InterpreterType pythonRule;
+
+		CompiledRule(String script, Expression exp, Interpretor python) {
+			this.script = script;
+			this.exp = exp;
+			this.python = python;
+		}
+
+		public void func(String name, Object x) {
+		}
+
+		public String execute(String value) {
+			if (!hasSurrogates(value)) {
+				try {
+					return toStr(exp.eval(value, 0, false));
+				} catch (PythonOnlyException e) {
+				}
+			}
+			return getPythonRule().execute(value);
+		}
+
+		public String execute_debug(String value) {
+			if (!hasSurrogates(value)) {
+				try {
+					return toStr(exp.eval(value, 0, true));
+				} catch (PythonOnlyException e) {
+				}
+			}
+			return getPythonRule().execute_debug(value);
+		}
+
+		private synchronized InterpreterType getPythonRule() {
+			if (pythonRule == null)
+				pythonRule = python.createPythonInterpreter(script);
+			return pythonRule;
+		}
+
+		private String toStr(Object o) {
+			return o == null ? "None" : o.toString();
+		}
+
+		// Jython counts a surrogate pair as one character
+		private static boolean hasSurrogates(String value) {
+			for (int i = 0; i < value.length(); i++) {
+				if (Character.isSurrogate(value.charAt(i)))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	interface Expression {
+		// returns a String for string expressions, an Integer or null (None)
+		// for positions
+		Object eval(String value, int counter, boolean debug);
+
+		boolean isString();
+	}
+
+	static class Constant implements Expression {
+		private final String text;
+
+		Constant(String text) {
+			this.text = text;
+		}
+
+		public Object eval(String value, int counter, boolean debug) {
+			return text;
+		}
+
+		public boolean isString() {
+			return true;
+		}
+	}
+
+	static class Sum implements Expression {
+		private final List<Expression> terms;
+
+		Sum(List<Expression> terms) {
+			this.terms = terms;
+		}
+
+		public Object eval(String value, int counter, boolean debug) {
+			StringBuilder res = new StringBuilder();
+			for (Expression e : terms) {
+				res.append((String) e.eval(value, counter, debug));
+			}
+			return res.toString();
+		}
+
+		public boolean isString() {
+			return true;
+		}
+	}
+
+	static class Product implements Expression {
+		// the product of the factors, where null stands for the loop counter
+		private final List<Integer> factors;
+
+		Product(List<Integer> factors) {
+			this.factors = factors;
+		}
+
+		public Object eval(String value, int counter, boolean debug) {
+			// python switches to long integers, the positions only have to
+			// stay out of the string when they do not fit in an int
+			long res = 1;
+			for (Integer f : factors) {
+				res *= f == null ? counter : f;
+				res = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, res));
+			}
+			return (int) res;
+		}
+
+		public boolean isString() {
+			return false;
+		}
+	}
+
+	static class IndexOf implements Expression {
+		private final Pattern pattern;
+		private final boolean anchored;
+		private final Product cnt;
+
+		IndexOf(String lregx, String rregx, Product cnt) {
+			checkRegex(lregx);
+			checkRegex(rregx);
+			// without UNIX_LINES java's . and $ also stop at \r and other line
+			// terminators, python's only at \n
+			this.pattern = Pattern.compile("(" + lregx + ")" + rregx, Pattern.UNIX_LINES);
+			this.anchored = lregx.equals("^") || rregx.equals("$");
+			this.cnt = cnt;
+		}
+
+		public Object eval(String str, int counter, boolean debug) {
+			int tpos = 0;
+			int pre = -1;
+			List<Integer> poslist = new ArrayList<Integer>();
+			Matcher m = pattern.matcher(str);
+			while (tpos < str.length()) {
+				if (!m.find(tpos))
+					break;
+				int last = tpos;
+				if (m.groupCount() < 2) {
+					tpos = m.start() + 1;
+				} else if (anchored) {
+					tpos = m.start() + 1;
+				} else {
+					String g2 = m.group(2);
+					// python fails on len(None)
+					if (g2 == null)
+						throw new PythonOnlyException();
+					tpos = m.start() + g2.length();
+				}
+				// python never returns from an empty match at the search
+				// position, the compiled rule moves on instead of hanging
+				if (tpos <= last)
+					tpos = last + 1;
+				int cpos = m.start() + m.group(1).length();
+				if (cpos > pre) {
+					poslist.add(cpos);
+					pre = cpos;
+				}
+			}
+			int c = cnt == null ? 0 : (Integer) cnt.eval(str, counter, debug);
+			int index = c > 0 ? c - 1 : poslist.size() + c;
+			if (poslist.isEmpty() || index >= poslist.size() || index < 0)
+				return null;
+			return poslist.get(index);
+		}
+
+		public boolean isString() {
+			return false;
+		}
+
+		/*
+		 * Only accepts the regular expressions that python re and
+		 * java.util.regex read the same way: literals, . ^ $ |, plain and
+		 * (?: groups, the quantifiers * + ? {n,m} (lazy but not possessive) on
+		 * anything but a group, \d \D \s \S \w \W \t \n \r \f, escaped
+		 * punctuation and simple character classes. Backreferences, \b \A \Z,
+		 * \x, \p, nested classes or && and the like are left to python.
+		 */
+		static void checkRegex(String regex) {
+			int i = 0;
+			// whether the previous element can take a quantifier
+			boolean atom = false;
+			while (i < regex.length()) {
+				char c = regex.charAt(i);
+				if (c == '\\') {
+					checkEscape(regex, i);
+					i += 2;
+					atom = true;
+				} else if (c == '[') {
+					i = checkClass(regex, i);
+					atom = true;
+				} else if (c == '(') {
+					if (regex.startsWith("(?", i)) {
+						if (!regex.startsWith("(?:", i))
+							throw new IllegalArgumentException("group: " + regex);
+						i += 3;
+					} else {
+						i++;
+					}
+					atom = false;
+				} else if (c == ')' || c == '|' || c == '^' || c == '$') {
+					// a quantified group can be an error in python
+					i++;
+					atom = false;
+				} else if (c == '*' || c == '+' || c == '?' || c == '{') {
+					if (!atom)
+						throw new IllegalArgumentException("quantifier: " + regex);
+					if (c == '{') {
+						int end = regex.indexOf('}', i);
+						if (end == -1 || !regex.substring(i + 1, end).matches("\\d+(,\\d*)?"))
+							throw new IllegalArgumentException("quantifier: " + regex);
+						i = end + 1;
+					} else {
+						i++;
+					}
+					if (i < regex.length() && regex.charAt(i) == '?')
+						i++;
+					// a + would make the quantifier possessive in java
+					if (i < regex.length() && "*+?{".indexOf(regex.charAt(i)) != -1)
+						throw new IllegalArgumentException("quantifier: " + regex);
+					atom = false;
+				} else {
+					i++;
+					atom = true;
+				}
+			}
+		}
+
+		private static void checkEscape(String regex, int i) {
+			if (i + 1 >= regex.length())
+				throw new IllegalArgumentException("escape: " + regex);
+			char n = regex.charAt(i + 1);
+			if ("dDsSwWtnrf".indexOf(n) == -1 && Character.isLetterOrDigit(n))
+				throw new IllegalArgumentException("escape: " + regex);
+		}
+
+		// returns the position after the class starting at i
+		private static int checkClass(String regex, int i) {
+			int start = ++i;
+			if (i < regex.length() && regex.charAt(i) == '^')
+				start = ++i;
+			if (i < regex.length() && regex.charAt(i) == ']')
+				throw new IllegalArgumentException("class: " + regex);
+			while (i < regex.length() && regex.charAt(i) != ']') {
+				char c = regex.charAt(i);
+				if (c == '[' || regex.startsWith("&&", i))
+					throw new IllegalArgumentException("class: " + regex);
+				if (c == '\\') {
+					checkEscape(regex, i);
+					i += 2;
+					continue;
+				}
+				// ranges have to be between two plain characters
+				if (c == '-' && i > start && i + 1 < regex.length()
+						&& regex.charAt(i + 1) != ']') {
+					if (regex.charAt(i - 1) == '\\' || regex.charAt(i + 1) == '\\'
+							|| regex.charAt(i - 1) == '-' || regex.charAt(i + 1) == '-')
+						throw new IllegalArgumentException("class: " + regex);
+				}
+				i++;
+			}
+			if (i >= regex.length())
+				throw new IllegalArgumentException("class: " + regex);
+			return i + 1;
+		}
+	}
+
+	static class Substr implements Expression {
+		private final Expression p1;
+		private final Expression p2;
+
+		Substr(Expression p1, Expression p2) {
+			this.p1 = p1;
+			this.p2 = p2;
+		}
+
+		public Object eval(String str, int counter, boolean debug) {
+			Integer a = (Integer) p1.eval(str, counter, debug);
+			Integer b = (Integer) p2.eval(str, counter, debug);
+			if ((a == null || a < 0) && b != null)
+				return "<_2_FATAL_ERROR_>";
+			if (a != null && (b == null || b > str.length()))
+				return "<_2_FATAL_ERROR_>";
+			if (a == null && b == null)
+				return "<_3_FATAL_ERROR_>";
+			if (a > b)
+				return "<_1_FATAL_ERROR_>";
+			if (debug)
+				return String.format("{_S}%d{_C}%d{_S}", a, b);
+			return str.substring(a, b);
+		}
+
+		public boolean isString() {
+			return true;
+		}
+	}
+
+	static class Loop implements Expression {
+		// null when the body does not use the counter
+		private final Expression body;
+
+		Loop(Expression body) {
+			this.body = body;
+		}
+
+		public Object eval(String value, int counter, boolean debug) {
+			StringBuilder res = new StringBuilder();
+			if (body != null) {
+				for (int cnt = 1;; cnt++) {
+					String s = (String) body.eval(value, cnt, debug);
+					if (s.indexOf("_FATAL_ERROR_") != -1)
+						break;
+					res.append(s);
+				}
+			}
+			if (debug)
+				return "{_L}" + res + "{_L}";
+			return res.toString();
+		}
+
+		public boolean isString() {
+			return true;
+		}
+	}
+
+	static class RuleParser {
+		private final String s;
+		private final boolean inLoop;
+		private int pos = 0;
+		private int counterUsages = 0;
+
+		RuleParser(String s) {
+			this(s, false);
+		}
+
+		RuleParser(String s, boolean inLoop) {
+			this.s = s;
+			this.inLoop = inLoop;
+		}
+
+		boolean atEnd() {
+			skipSpaces();
+			return pos == s.length();
+		}
+
+		Expression parseSum() {
+			List<Expression> terms = new ArrayList<Expression>();
+			terms.add(parseTerm());
+			while (accept("+")) {
+				terms.add(parseTerm());
+			}
+			if (terms.size() == 1)
+				return terms.get(0);
+			for (Expression e : terms) {
+				// python would add numbers or fail on str + int
+				if (!e.isString())
+					throw new IllegalArgumentException("not a string: " + s);
+			}
+			return new Sum(terms);
+		}
+
+		private Expression parseTerm() {
+			skipSpaces();
+			if (accept("substr(")) {
+				expect("value");
+				expect(",");
+				Expression p1 = parsePosition();
+				expect(",");
+				Expression p2 = parsePosition();
+				expect(")");
+				return new Substr(p1, p2);
+			}
+			if (accept("loop(")) {
+				expect("value");
+				expect(",");
+				skipSpaces();
+				String body = parseString();
+				expect(")");
+				if (inLoop)
+					throw new IllegalArgumentException("nested loop: " + s);
+				if (body.indexOf("counter") == -1)
+					return new Loop(null);
+				RuleParser bodyParser = new RuleParser(body, true);
+				Expression exp = bodyParser.parseSum();
+				if (!bodyParser.atEnd() || !exp.isString())
+					throw new IllegalArgumentException("bad loop body: " + body);
+				// python replaces every occurrence of counter in the body text,
+				// only numbers are supported
+				if (countOccurrences(body, "counter") != bodyParser.counterUsages)
+					throw new IllegalArgumentException("counter in text: " + body);
+				return new Loop(exp);
+			}
+			char c = peek();
+			if (c == '\'' || c == '"' || c == 'r') {
+				return new Constant(parseString());
+			}
+			return parsePosition();
+		}
+
+		private Expression parsePosition() {
+			skipSpaces();
+			if (accept("indexOf(")) {
+				expect("value");
+				expect(",");
+				skipSpaces();
+				String lregx = parseString();
+				expect(",");
+				skipSpaces();
+				String rregx = parseString();
+				Product cnt = null;
+				if (accept(",")) {
+					cnt = parseNumber();
+				}
+				expect(")");
+				return new IndexOf(lregx, rregx, cnt);
+			}
+			return parseNumber();
+		}
+
+		private Product parseNumber() {
+			List<Integer> factors = new ArrayList<Integer>();
+			do {
+				skipSpaces();
+				if (accept("counter")) {
+					if (!inLoop)
+						throw new IllegalArgumentException("counter outside loop: " + s);
+					counterUsages++;
+					factors.add(null);
+					continue;
+				}
+				int start = pos;
+				if (pos < s.length() && s.charAt(pos) == '-')
+					pos++;
+				int digits = pos;
+				while (pos < s.length() && Character.isDigit(s.charAt(pos)))
+					pos++;
+				// python 2 reads a leading 0 as an octal number
+				if (pos - digits > 1 && s.charAt(digits) == '0')
+					throw new IllegalArgumentException("octal number: " + s);
+				try {
+					factors.add(Integer.valueOf(s.substring(start, pos)));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("number expected: " + s);
+				}
+			} while (accept("*"));
+			return new Product(factors);
+		}
+
+		private String parseString() {
+			boolean raw = false;
+			if (peek() == 'r') {
+				raw = true;
+				pos++;
+			}
+			char quote = peek();
+			if (quote != '\'' && quote != '"')
+				throw new IllegalArgumentException("string expected: " + s);
+			pos++;
+			StringBuilder res = new StringBuilder();
+			while (pos < s.length() && s.charAt(pos) != quote) {
+				char c = s.charAt(pos++);
+				if (c == '\n' || c == '\r')
+					throw new IllegalArgumentException("new line in string: " + s);
+				if (c == '\\' && pos < s.length()) {
+					char n = s.charAt(pos++);
+					if (n == '\n' || n == '\r')
+						throw new IllegalArgumentException("new line in string: " + s);
+					if (raw) {
+						res.append(c).append(n);
+						continue;
+					}
+					switch (n) {
+					case '\\':
+					case '\'':
+					case '"':
+						res.append(n);
+						break;
+					case 'n':
+						res.append('\n');
+						break;
+					case 't':
+						res.append('\t');
+						break;
+					case 'r':
+						res.append('\r');
+						break;
+					case 'a':
+					case 'b':
+					case 'f':
+					case 'v':
+					case 'x':
+					case 'u':
+					case 'U':
+					case 'N':
+						throw new IllegalArgumentException("escape: " + s);
+					default:
+						if (Character.isDigit(n))
+							throw new IllegalArgumentException("octal escape: " + s);
+						// python keeps unknown escapes as they are
+						res.append(c).append(n);
+					}
+				} else {
+					res.append(c);
+				}
+			}
+			if (pos >= s.length())
+				throw new IllegalArgumentException("unterminated string: " + s);
+			pos++;
+			return res.toString();
+		}
+
+		private static int countOccurrences(String text, String word) {
+			int cnt = 0;
+			for (int i = text.indexOf(word); i != -1; i = text.indexOf(word, i + 1))
+				cnt++;
+			return cnt;
+		}
+
+		private char peek() {
+			return pos < s.length() ? s.charAt(pos) : '\0';
+		}
+
+		private boolean accept(String token) {
+			skipSpaces();
+			if (s.startsWith(token, pos)) {
+				pos += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String token) {
+			if (!accept(token))
+				throw new IllegalArgumentException("expected " + token + ": " + s);
+		}
+
+		private void skipSpaces() {
+			while (pos < s.length() && (s.charAt(pos) == ' ' || s.charAt(pos) == '\t'))
+				pos++;
+		}
+	}
+}
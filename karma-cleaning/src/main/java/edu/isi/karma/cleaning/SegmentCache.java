@@ -0,0 +1,67 @@
+package edu.isi.karma.cleaning;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Keeps the segments built by Traces during one synthesis run to prevent
+ * repeated construction. The number of segments is bounded, the least
+ * recently used one is evicted first. The hits and misses show how much the
+ * cache is used.
+ */
+public class SegmentCache {
+	public static final int DEFAULT_CAPACITY = 10000;
+	private final LinkedHashMap<String, Segment> segments;
+	private long hits = 0;
+	private long misses = 0;
+
+	public SegmentCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public SegmentCache(final int capacity) {
+		segments = new LinkedHashMap<String, Segment>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Segment> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	public synchronized Segment get(String key) {
+		Segment seg = segments.get(key);
+		if (seg == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return seg;
+	}
+
+	public synchronized void put(String key, Segment seg) {
+		segments.put(key, seg);
+	}
+
+	public synchronized int size() {
+		return segments.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void clear() {
+		segments.clear();
+	}
+
+	public synchronized String toString() {
+		return String.format("segments:%d hits:%d misses:%d", segments.size(),
+				hits, misses);
+	}
+}
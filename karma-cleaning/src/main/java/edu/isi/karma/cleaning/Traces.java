@@ -10,12 +10,19 @@ public class Traces implements GrammarTreeNode {
 	public HashMap<Integer, HashMap<String, Template>> loopline = new HashMap<Integer, HashMap<String, Template>>();
 	private int curState = 0;
 	private Vector<Template> totalOrderVector = new Vector<Template>();
-	// keep all the segment expression to prevent repeated construction
-	public static HashMap<String, Segment> AllSegs = new HashMap<String, Segment>();
+	// keep the segment expressions of the synthesis run to prevent repeated
+	// construction
+	private SegmentCache segmentCache;
 
 	public Traces(Vector<TNode> org, Vector<TNode> tar) {
+		this(org, tar, new SegmentCache());
+	}
+
+	public Traces(Vector<TNode> org, Vector<TNode> tar,
+			SegmentCache segmentCache) {
 		this.orgNodes = org;
 		this.tarNodes = tar;
+		this.segmentCache = segmentCache;
 		this.createTraces();
 		createTotalOrderVector();
 	}
@@ -143,12 +150,10 @@ public class Traces implements GrammarTreeNode {
 				q = Ruler.Search(orgNodes, tmp, 0);
 			}
 			String key = UtilTools.print(this.tarNodes) + pos + cnt;
-			Segment seg;
-			if (AllSegs.containsKey(key)) {
-				seg = AllSegs.get(key);
-			} else {
+			Segment seg = segmentCache.get(key);
+			if (seg == null) {
 				seg = new Segment(pos, cnt, tvec);
-				AllSegs.put(key, seg);
+				segmentCache.put(key, seg);
 			}
 			segs.add(seg);
 			return segs;
@@ -172,12 +177,10 @@ public class Traces implements GrammarTreeNode {
 				}
 				// create a segment now
 				String key = UtilTools.print(this.tarNodes) + pos + (i + 1);
-				Segment s;
-				if (AllSegs.containsKey(key)) {
-					s = AllSegs.get(key);
-				} else {
+				Segment s = segmentCache.get(key);
+				if (s == null) {
 					s = new Segment(pos, i + 1, corrm, orgNodes, tarNodes);
-					AllSegs.put(key, s);
+					segmentCache.put(key, s);
 				}
 				if (s.section.size() > 0)
 					segs.add(s);
@@ -191,12 +194,10 @@ public class Traces implements GrammarTreeNode {
 					corrm.add(m);
 					String key = UtilTools.print(this.tarNodes)
 							+ UtilTools.print(this.orgNodes);
-					Segment s;
-					if (AllSegs.containsKey(key)) {
-						s = AllSegs.get(key);
-					} else {
+					Segment s = segmentCache.get(key);
+					if (s == null) {
 						s = new Segment(pos, i + 1, corrm, orgNodes, tarNodes);
-						AllSegs.put(key, s);
+						segmentCache.put(key, s);
 					}
 					if (s.section.size() > 0)
 						segs.add(s);
@@ -219,13 +220,11 @@ public class Traces implements GrammarTreeNode {
 						corrm.add(m);
 						String key = UtilTools.print(this.tarNodes) + pos
 								+ (i + 1);
-						Segment s;
-						if (AllSegs.containsKey(key)) {
-							s = AllSegs.get(key);
-						} else {
+						Segment s = segmentCache.get(key);
+						if (s == null) {
 							s = new Segment(pos, i + 1, corrm, orgNodes,
 									tarNodes);
-							AllSegs.put(key, s);
+							segmentCache.put(key, s);
 						}
 						if (s.section.size() > 0)
 							segs.add(s);
@@ -21,6 +21,7 @@
 package edu.isi.karma.rep.cleaning;
 
 import edu.isi.karma.cleaning.InterpreterType;
+import edu.isi.karma.cleaning.Interpretor;
 import edu.isi.karma.cleaning.ProgramRule;
 
 
@@ -58,6 +59,11 @@ public class RamblerTransformation implements Transformation {
 		}
 		return false;
 	}
+	// a transformation with its own workers, for use in another thread
+	public RamblerTransformation copy(Interpretor interpretor)
+	{
+		return new RamblerTransformation(prog.copy(interpretor));
+	}
 	public String getClassLabel(String value)
 	{
 		return prog.getClassForValue(value);
@@ -20,19 +20,29 @@
  ******************************************************************************/
 package edu.isi.karma.rep.cleaning;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import edu.isi.karma.cleaning.Interpretor;
 import edu.isi.karma.cleaning.ProgSynthesis;
 import edu.isi.karma.cleaning.ProgramRule;
+import edu.isi.karma.util.TransformationExecutor;
 
 public class RamblerTransformationOutput implements TransformationOutput {
+	// below this number of distinct values per thread the values are
+	// transformed in the calling thread
+	private static final int MIN_VALUES_PER_THREAD = 1000;
 
 	private RamblerTransformationInputs input;
 	private HashMap<String, Transformation> transformations;
@@ -104,21 +114,85 @@ public class RamblerTransformationOutput implements TransformationOutput {
 		Transformation t = transformations.get(TransformatinId);
 		ValueCollection v = input.getInputValues();
 		ValueCollection vo = new RamblerValueCollection();
+		// identical values are transformed only once
+		List<String> distinct = new ArrayList<String>(
+				new LinkedHashSet<String>(v.getValues()));
+		distinct.remove("");
+		String[] transformed = transformValues(t, distinct);
+		HashMap<String, String> results = new HashMap<String, String>();
+		for (int i = 0; i < transformed.length; i++) {
+			results.put(distinct.get(i), transformed[i]);
+		}
+		results.put("", "");
 		Collection<String> keys = v.getNodeIDs();
 		Iterator<String> iter = keys.iterator();
 		while (iter.hasNext()) {
 			String k = iter.next();
-			String val = v.getValue(k);
-			if (val.length() > 0)
-				val = t.transform(val);
-			else
-				val = "";
-			vo.setValue(k, val);
+			vo.setValue(k, results.get(v.getValue(k)));
 			// logger.debug(k+","+val);
 		}
 		return vo;
 	}
 
+	/*
+	 * Transforms the values in parallel partitions on the shared
+	 * transformation executor. Every partition uses its own copy of the
+	 * program, created on an interpretor that no other partition uses at the
+	 * same time. The results are in the order of the values.
+	 */
+	private String[] transformValues(Transformation t, final List<String> values) {
+		final String[] results = new String[values.size()];
+		int numThreads = Math.min(TransformationExecutor.getThreads(),
+				values.size() / MIN_VALUES_PER_THREAD);
+		if (numThreads <= 1 || !(t instanceof RamblerTransformation)) {
+			for (int i = 0; i < values.size(); i++) {
+				results[i] = t.transform(values.get(i));
+			}
+			return results;
+		}
+		final RamblerTransformation rt = (RamblerTransformation) t;
+		ExecutorService executor = TransformationExecutor.getExecutor();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			int partitionSize = (values.size() + numThreads - 1) / numThreads;
+			for (int start = 0; start < values.size(); start += partitionSize) {
+				final int from = start;
+				final int to = Math.min(start + partitionSize, values.size());
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() {
+						Interpretor interpretor = Interpretor.borrowInterpretor();
+						try {
+							RamblerTransformation worker = rt.copy(interpretor);
+							for (int i = from; i < to; i++) {
+								results[i] = worker.transform(values.get(i));
+							}
+						} finally {
+							Interpretor.returnInterpretor(interpretor);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(futures);
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+
+	private void cancel(List<Future<?>> futures) {
+		for (Future<?> f : futures) {
+			f.cancel(true);
+		}
+	}
+
 	public Collection<String> getRecommandedNextExample() {
 		return null;
 	}
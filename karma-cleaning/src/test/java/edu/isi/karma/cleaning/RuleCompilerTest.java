@@ -0,0 +1,96 @@
+package edu.isi.karma.cleaning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RuleCompilerTest {
+
+	private static final Interpretor interpretor = new Interpretor();
+
+	// the examples of testcase.py and Interpreter.py and rules in the form
+	// the synthesizer writes them (Position, Section, Template)
+	private static final String[] compiledRules = {
+			"substr(value,indexOf(value,'START','NUM',1),12)+loop(value,\"substr(value,-11,18)\")+substr(value,12,-12)\n",
+			"substr(value,indexOf(value,'NUM','\\.',1),indexOf(value,'\\.','22',1))+'edu'+'/'+'images'+'/'+substr(value,indexOf(value,'ANY','NUM',-1),-12)+'/'+substr(value,indexOf(value,'START','NUM',1),-12)+substr(value,-9,-8)+substr(value,5,16)\n",
+			"substr(value,indexOf(value,\"SYB\",\"[.|\\s]+\"),indexOf(value,\"[a-z]+\",\"END\"))+substr(value,indexOf(value,\"[a-z]+\",\"SYB\"),indexOf(value,\",\",\"[.|\\s]+\"))+substr(value,indexOf(value,\"START\",\"[.]+\"),indexOf(value,\"[a-z]+\",\",\"))",
+			"substr(value,0,0)",
+			"substr(value,indexOf(value,'START','ANY',1),indexOf(value,'ANY','END',-1))",
+			"substr(value,indexOf(value,'START','ANY',1),indexOf(value,'LWRD','END',1))",
+			"substr(value,indexOf(value,'BNK','NUM',1),indexOf(value,'NUM','END',-1))+' - '+substr(value,indexOf(value,'START','ANY',1),indexOf(value,'WORD','BNK',1))",
+			"loop(value,\"substr(value,indexOf(value,'BNK','NUM',1*counter),indexOf(value,'NUM','ANY',1*counter))+','\")",
+			"loop(value,r\"substr(value,indexOf(value,'START','UWRD',1*counter),indexOf(value,'UWRD','LWRD',1*counter))\")+substr(value,indexOf(value,'SYB','ANY',-1),indexOf(value,'ANY','END',-1))",
+			"'<'+loop(value,\"substr(value,indexOf(value,'ANY','LWRD',-1*counter),indexOf(value,'LWRD','ANY',-1*counter))\")+'>'",
+			"substr(value,indexOf(value,'[a-z]{2,}','\\s*?',2),indexOf(value,'(?:ab|c)','.',1))",
+			"substr(value,indexOf(value,'a','(?:(b)|c)',1),3)",
+	};
+
+	private static final String[] pythonRules = {
+			"switch([(getClass(\"x\",value)[1:7]=='attr_0',substr(value,0,1))])",
+			ProgramRule.IDENTITY,
+			"substr(value,indexOf(value,'SYBNK','NUM',1),3)",
+			"substr(value,indexOf(value,'NANYUM','BNK',1),3)",
+			"substr(value,indexOf(value,r'\\Z','NUM',1),3)",
+			"substr(value,indexOf(value,r'\\b','NUM',1),3)",
+			"substr(value,indexOf(value,'[[a]b]','NUM',1),3)",
+			"substr(value,indexOf(value,'[a&&b]','NUM',1),3)",
+			"substr(value,indexOf(value,'a*+','NUM',1),3)",
+			"substr(value,indexOf(value,'(a)*','NUM',1),3)",
+			"substr(value,indexOf(value,'a{,2}','NUM',1),3)",
+			"substr(value,indexOf(value,'(?P<x>a)','NUM',1),3)",
+			"substr(value,012,14)",
+			"substr(value,0,1)+'\\x41'",
+			"substr(value,0,1)+'\u00e9'",
+			"indexOf(value,'START','NUM',1)",
+			"substr(value,0,99999999999)",
+	};
+
+	private static final String[] values = {
+			"13 Jan 2008 00:00:00 +0000",
+			"1978.43.8_1a.jpg",
+			"1 normandie ave, Los angels",
+			"International Bussiness Machine",
+			"Los Angeles, CA 90089\n",
+			"",
+			"abc\n",
+			"abc\r",
+			"ab\rcd\u0085ef\u2028 12",
+			"a\u000Bb c\u001Cd\u001F 7",
+			"caf\u00e9 \u00a0 na\u00efve 12 \u0663\u00b2",
+			"\uD83D\uDE00 smile 42 Ab",
+			"aab c ab",
+			"ac",
+	};
+
+	@Test
+	public void compiledRulesTest() {
+		for (String rule : compiledRules) {
+			InterpreterType compiled = interpretor.create(rule);
+			assertTrue(rule, compiled instanceof RuleCompiler.CompiledRule);
+			InterpreterType python = interpretor.createPythonInterpreter(rule);
+			for (String value : values) {
+				String message = rule + " on " + value;
+				assertEquals(message, execute(python, value, false), execute(compiled, value, false));
+				assertEquals(message, execute(python, value, true), execute(compiled, value, true));
+			}
+		}
+	}
+
+	@Test
+	public void pythonRulesTest() {
+		for (String rule : pythonRules) {
+			assertNull(rule, RuleCompiler.compile(rule, interpretor));
+		}
+	}
+
+	private String execute(InterpreterType rule, String value, boolean debug) {
+		try {
+			return debug ? rule.execute_debug(value) : rule.execute(value);
+		} catch (RuntimeException e) {
+			// python fails on some rules, the compiled rule has to fail as well
+			return "<exception>";
+		}
+	}
+}
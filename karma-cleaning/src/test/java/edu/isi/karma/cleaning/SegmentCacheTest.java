@@ -0,0 +1,130 @@
+package edu.isi.karma.cleaning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class SegmentCacheTest {
+
+	private static final int THREADS = 8;
+
+	private static final String[][] examples = {
+			{ "13 Jan 2008 00:00:00 +0000", "Jan 13, 2008" },
+			{ "1978.43.8_1a.jpg", "1978/43/8" },
+			{ "1 normandie ave, Los angels", "Los angels: 1 normandie ave" },
+			{ "International Bussiness Machine", "I.B.M." },
+	};
+
+	@Test
+	public void boundedUnderContentionTest() throws Exception {
+		final int capacity = 100;
+		final int lookups = 20000;
+		final SegmentCache cache = new SegmentCache(capacity);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int seed = t;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int i = 0; i < lookups; i++) {
+						String key = "seg" + ((i * 31 + seed) % 500);
+						Segment seg = cache.get(key);
+						if (seg == null) {
+							cache.put(key, new Segment(0, 1, new Vector<TNode>()));
+						}
+						assertTrue(cache.size() <= capacity);
+					}
+					return null;
+				}
+			});
+		}
+		runAll(tasks);
+		assertTrue(cache.size() <= capacity);
+		assertEquals(THREADS * lookups, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void noLostUpdatesTest() throws Exception {
+		final int keysPerThread = 5000;
+		final SegmentCache cache = new SegmentCache(THREADS * keysPerThread);
+		final Segment[][] stored = new Segment[THREADS][keysPerThread];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int i = 0; i < keysPerThread; i++) {
+						stored[thread][i] = new Segment(i, i + 1, new Vector<TNode>());
+						cache.put(thread + ":" + i, stored[thread][i]);
+					}
+					return null;
+				}
+			});
+		}
+		runAll(tasks);
+		assertEquals(THREADS * keysPerThread, cache.size());
+		for (int t = 0; t < THREADS; t++) {
+			for (int i = 0; i < keysPerThread; i++) {
+				assertSame(stored[t][i], cache.get(t + ":" + i));
+			}
+		}
+	}
+
+	@Test
+	public void sharedByConcurrentTracesTest() throws Exception {
+		final List<Vector<TNode>> org = new ArrayList<Vector<TNode>>();
+		final List<Vector<TNode>> tar = new ArrayList<Vector<TNode>>();
+		final long[] expected = new long[examples.length];
+		for (int i = 0; i < examples.length; i++) {
+			org.add(tokenize(examples[i][0]));
+			tar.add(tokenize(examples[i][1]));
+			expected[i] = new Traces(org.get(i), tar.get(i)).size();
+		}
+		final SegmentCache cache = new SegmentCache();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int seed = t;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int round = 0; round < 5; round++) {
+						for (int k = 0; k < examples.length; k++) {
+							int i = (k + seed) % examples.length;
+							Traces traces = new Traces(org.get(i), tar.get(i), cache);
+							assertEquals(expected[i], traces.size());
+						}
+					}
+					return null;
+				}
+			});
+		}
+		runAll(tasks);
+		assertTrue(cache.getHits() > 0);
+	}
+
+	private Vector<TNode> tokenize(String value) {
+		Ruler r = new Ruler();
+		r.setNewInput(value);
+		return r.vec;
+	}
+
+	// runs the tasks at the same time and rethrows the first failure
+	private void runAll(List<Callable<Void>> tasks) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -33,6 +33,7 @@ public class WorksheetCommandHistoryReader {
 	
 		JSONArray filteredHistoryJson = new JSONArray();
 		try {
+			workspace.getCommandHistory().exportWorksheetHistory(workspace, worksheetId);
 			JSONArray historyJson = HistoryJsonUtil.readCommandsFromFile(findHistoryFile());
 			filteredHistoryJson = HistoryJsonUtil.filterCommandsByTag(tag, historyJson);
 		} catch (FileNotFoundException e) {
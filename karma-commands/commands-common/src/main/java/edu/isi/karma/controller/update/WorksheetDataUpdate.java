@@ -22,11 +22,12 @@
 package edu.isi.karma.controller.update;
 
 import java.io.PrintWriter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +36,7 @@ import edu.isi.karma.rep.Row;
 import edu.isi.karma.rep.Table;
 import edu.isi.karma.rep.TablePager;
 import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.util.JSONUtil;
 import edu.isi.karma.view.VHNode;
 import edu.isi.karma.view.VWorksheet;
 import edu.isi.karma.view.VWorkspace;
@@ -50,6 +52,22 @@ public class WorksheetDataUpdate extends AbstractUpdate {
 		displayValue, expandedValue, nestedRows, additionalRowsCount, tableId, nodeId, rowID
 	}
 
+	// the keys of the objects in the order in which the JSONObjects that this
+	// update used to build wrote them, so that the streamed JSON is the same
+	private static final List<String> worksheetKeys = JSONUtil.getJSONObjectKeyOrder(
+			JsonKeys.worksheetId.name(), GenericJsonKeys.updateType.name(),
+			JsonKeys.additionalRowsCount.name(), JsonKeys.tableId.name(),
+			JsonKeys.rows.name());
+	private static final List<String> nestedTableCellKeys = JSONUtil.getJSONObjectKeyOrder(
+			JsonKeys.columnClass.name(), JsonKeys.nodeId.name(),
+			JsonKeys.rowID.name(), JsonKeys.hasNestedTable.name(),
+			JsonKeys.nestedRows.name(), JsonKeys.tableId.name(),
+			JsonKeys.additionalRowsCount.name());
+	private static final List<String> valueCellKeys = JSONUtil.getJSONObjectKeyOrder(
+			JsonKeys.columnClass.name(), JsonKeys.nodeId.name(),
+			JsonKeys.rowID.name(), JsonKeys.displayValue.name(),
+			JsonKeys.expandedValue.name(), JsonKeys.hasNestedTable.name());
+
 	public WorksheetDataUpdate(String worksheetId) {
 		super();
 		this.worksheetId = worksheetId;
@@ -60,83 +78,92 @@ public class WorksheetDataUpdate extends AbstractUpdate {
 		VWorksheet vWorksheet =  vWorkspace.getViewFactory().getVWorksheetByWorksheetId(worksheetId);
 		
 		try {
-			JSONObject response = new JSONObject();
-			response.put(JsonKeys.worksheetId.name(), worksheetId);
-			response.put(AbstractUpdate.GenericJsonKeys.updateType.name(), 
-					this.getClass().getSimpleName());
-			
+			// The rows are written to pw as they are visited, without building
+			// the whole JSON tree in memory first.
 			Worksheet wk = vWorksheet.getWorksheet();
 			Table dataTable = wk.getDataTable();
 			TablePager pager = vWorksheet.getTopTablePager();
-			
-			JSONArray rows = getRowsUsingPager(
-							pager, vWorksheet,
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put(JsonKeys.worksheetId.name(), worksheetId);
+			values.put(GenericJsonKeys.updateType.name(), this.getClass().getSimpleName());
+			values.put(JsonKeys.additionalRowsCount.name(), pager.getAdditionalRowsLeftCount());
+			values.put(JsonKeys.tableId.name(), dataTable.getId());
+
+			JSONWriter writer = new JSONWriter(pw);
+			writer.object();
+			for (String key : worksheetKeys) {
+				writer.key(key);
+				if (key.equals(JsonKeys.rows.name())) {
+					writeRows(writer, pager.getRows(), vWorksheet,
 							vWorksheet.getHeaderViewNodes(), vWorkspace.getPreferences().getIntViewPreferenceValue(
 							ViewPreference.maxCharactersInCell));
-			int rowsLeft = dataTable.getNumRows() - rows.length();
-			rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
-			response.put(JsonKeys.additionalRowsCount.name(), rowsLeft);
-			response.put(JsonKeys.tableId.name(), dataTable.getId());
-			response.put(JsonKeys.rows.name(), rows);
-			
-//			logger.debug(response.toString(2));
-			pw.println(response.toString());
+				} else {
+					writer.value(values.get(key));
+				}
+			}
+			writer.endObject();
+			pw.println();
 		} catch (JSONException e) {
-			e.printStackTrace();
+			// the caller has to discard what was written so far
+			logger.error("Error writing the worksheet data update", e);
+			throw e;
 		}
 	}
 
-	private JSONArray getRowsUsingPager(TablePager pager, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, int maxDataDisplayLength) throws JSONException {
-		return getRowsJsonArray(pager.getRows(),vWorksheet,  orderedHnodeIds, maxDataDisplayLength);
-	}
-	
-	public JSONArray getRowsJsonArray(List<Row> rows, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, 
+	/**
+	 * Writes the rows as a JSON array of rows, each row being an array with
+	 * an object for every visible column.
+	 */
+	public void writeRows(JSONWriter writer, List<Row> rows, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, 
 			int maxDataDisplayLength) throws JSONException {
-		JSONArray rowsArr = new JSONArray();
-		
-//		HTable hTable = null;
-		
+		Map<String, Object> cell = new HashMap<String, Object>();
+		writer.array();
 		for (Row row:rows) {
-			JSONArray rowValueArray = new JSONArray();
-		
-			
+			writer.array();
 			for (VHNode vNode : orderedHnodeIds) {
 				if(vNode.isVisible()) {
 					Node rowNode = row.getNode(vNode.getId());
-					JSONObject nodeObj = new JSONObject();
-					nodeObj.put(JsonKeys.columnClass.name(), 
+					cell.clear();
+					cell.put(JsonKeys.columnClass.name(),
 							WorksheetHeadersUpdate.getColumnClass(vNode.getId()));
-					nodeObj.put(JsonKeys.nodeId.name(), rowNode.getId());
-					nodeObj.put(JsonKeys.rowID.name(), row.getId());
+					cell.put(JsonKeys.nodeId.name(), rowNode.getId());
+					cell.put(JsonKeys.rowID.name(), row.getId());
+					writer.object();
 					if (vNode.hasNestedTable()) {
-						nodeObj.put(JsonKeys.hasNestedTable.name(), true);
 						Table nestedTable = rowNode.getNestedTable();
-						JSONArray nestedTableRows = getRowsUsingPager( 
-								vWorksheet.getNestedTablePager(nestedTable), 
-								vWorksheet,
-								vNode.getNestedNodes(), 
-								maxDataDisplayLength);
-						nodeObj.put(JsonKeys.nestedRows.name(), nestedTableRows);
-						nodeObj.put(JsonKeys.tableId.name(), rowNode.getNestedTable().getId());
-						
-						int rowsLeft = nestedTable.getNumRows() - nestedTableRows.length();
-						rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
-						nodeObj.put(JsonKeys.additionalRowsCount.name(), rowsLeft);
-						
+						TablePager nestedPager = vWorksheet.getNestedTablePager(nestedTable);
+						cell.put(JsonKeys.hasNestedTable.name(), true);
+						cell.put(JsonKeys.tableId.name(), nestedTable.getId());
+						cell.put(JsonKeys.additionalRowsCount.name(),
+								nestedPager.getAdditionalRowsLeftCount());
+						for (String key : nestedTableCellKeys) {
+							writer.key(key);
+							if (key.equals(JsonKeys.nestedRows.name())) {
+								writeRows(writer, nestedPager.getRows(), 
+										vWorksheet,
+										vNode.getNestedNodes(), 
+										maxDataDisplayLength);
+							} else {
+								writer.value(cell.get(key));
+							}
+						}
 					} else {
 						String nodeVal = rowNode.getValue().asString();
 						nodeVal = (nodeVal == null) ? "" : nodeVal;
 						String displayVal = (nodeVal.length() > maxDataDisplayLength) 
 								? nodeVal.substring(0, maxDataDisplayLength) + "..." : nodeVal;
-						nodeObj.put(JsonKeys.displayValue.name(), displayVal);
-						nodeObj.put(JsonKeys.expandedValue.name(), nodeVal);
-						nodeObj.put(JsonKeys.hasNestedTable.name(), false);
+						cell.put(JsonKeys.displayValue.name(), displayVal);
+						cell.put(JsonKeys.expandedValue.name(), nodeVal);
+						cell.put(JsonKeys.hasNestedTable.name(), false);
+						for (String key : valueCellKeys) {
+							writer.key(key).value(cell.get(key));
+						}
 					}
-					rowValueArray.put(nodeObj);
+					writer.endObject();
 				}
 			}
-			rowsArr.put(rowValueArray);
+			writer.endArray();
 		}
-		return rowsArr;
+		writer.endArray();
 	}
-}
\ No newline at end of file
+}
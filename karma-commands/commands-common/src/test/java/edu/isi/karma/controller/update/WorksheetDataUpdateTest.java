@@ -0,0 +1,176 @@
+package edu.isi.karma.controller.update;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.HTable;
+import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Table;
+import edu.isi.karma.rep.TablePager;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+import edu.isi.karma.view.VHNode;
+import edu.isi.karma.view.VWorksheet;
+import edu.isi.karma.view.VWorkspace;
+import edu.isi.karma.view.ViewPreferences.ViewPreference;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class WorksheetDataUpdateTest {
+
+	@Rule
+	public TemporaryFolder preferences = new TemporaryFolder();
+
+	private VWorkspace vWorkspace;
+	private Worksheet worksheet;
+	private HNode address;
+
+	@Before
+	public void createWorksheet() {
+		// the workspace writes its preferences file
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY,
+				preferences.getRoot().getAbsolutePath() + "/");
+		Workspace workspace = WorkspaceManager.getInstance().createWorkspace();
+		RepFactory factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("people", workspace, "UTF-8");
+		HTable headers = worksheet.getHeaders();
+		HNode name = headers.addHNode("name", worksheet, factory);
+		address = headers.addHNode("address", worksheet, factory);
+		HNode notes = headers.addHNode("notes", worksheet, factory);
+		HTable addressHeaders = address.addNestedTable("address", worksheet, factory);
+		HNode street = addressHeaders.addHNode("street", worksheet, factory);
+		HNode city = addressHeaders.addHNode("city", worksheet, factory);
+
+		StringBuilder longValue = new StringBuilder();
+		for (int i = 0; i < 30; i++) {
+			longValue.append("long value ");
+		}
+		// more rows than the pagers show, in the top table and in the nested
+		// tables of the first rows
+		for (int i = 0; i < 60; i++) {
+			Row row = worksheet.addRow(factory);
+			row.setValue(name.getId(), "name \"" + i + "\" é中\\/", factory);
+			row.setValue(notes.getId(), i % 2 == 0 ? longValue.toString() : "", factory);
+			for (int j = 0; j < 10 - i; j++) {
+				Row nestedRow = row.addNestedRow(address.getId(), factory);
+				nestedRow.setValue(street.getId(), "street\t" + j, factory);
+				nestedRow.setValue(city.getId(), "city\n" + i, factory);
+			}
+		}
+
+		vWorkspace = new VWorkspace(workspace);
+		vWorkspace.getViewFactory().createVWorksheetWithDefaultPreferences(vWorkspace, worksheet);
+	}
+
+	@After
+	public void resetPreferences() {
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, "");
+	}
+
+	@Test
+	public void sameAsJSONObjectOutputTest() {
+		StringWriter streamed = new StringWriter();
+		PrintWriter pw = new PrintWriter(streamed);
+		new WorksheetDataUpdate(worksheet.getId()).generateJson("", pw, vWorkspace);
+		pw.flush();
+
+		assertEquals(getJSONObjectOutput(), streamed.toString());
+	}
+
+	@Test
+	public void sameAsJSONObjectOutputAfterLoadingRowsTest() {
+		VWorksheet vWorksheet = vWorkspace.getViewFactory().getVWorksheetByWorksheetId(worksheet.getId());
+		vWorksheet.getTopTablePager().loadAdditionalRows();
+		Table nestedTable = worksheet.getDataTable().getRows(0, 1).get(0)
+				.getNode(address.getId()).getNestedTable();
+		vWorksheet.getNestedTablePager(nestedTable).loadAdditionalRows();
+
+		StringWriter streamed = new StringWriter();
+		PrintWriter pw = new PrintWriter(streamed);
+		new WorksheetDataUpdate(worksheet.getId()).generateJson("", pw, vWorkspace);
+		pw.flush();
+
+		assertEquals(getJSONObjectOutput(), streamed.toString());
+	}
+
+	/**
+	 * The output of the update when it built the whole response as a
+	 * JSONObject.
+	 */
+	private String getJSONObjectOutput() {
+		VWorksheet vWorksheet = vWorkspace.getViewFactory().getVWorksheetByWorksheetId(worksheet.getId());
+		Table dataTable = worksheet.getDataTable();
+		JSONObject response = new JSONObject();
+		response.put("worksheetId", worksheet.getId());
+		response.put("updateType", WorksheetDataUpdate.class.getSimpleName());
+		JSONArray rows = getRowsJsonArray(vWorksheet.getTopTablePager(), vWorksheet,
+				vWorksheet.getHeaderViewNodes(), vWorkspace.getPreferences()
+						.getIntViewPreferenceValue(ViewPreference.maxCharactersInCell));
+		int rowsLeft = dataTable.getNumRows() - rows.length();
+		rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
+		response.put("additionalRowsCount", rowsLeft);
+		response.put("tableId", dataTable.getId());
+		response.put("rows", rows);
+
+		StringWriter out = new StringWriter();
+		PrintWriter pw = new PrintWriter(out);
+		pw.println(response.toString());
+		pw.flush();
+		return out.toString();
+	}
+
+	private JSONArray getRowsJsonArray(TablePager pager, VWorksheet vWorksheet,
+			List<VHNode> orderedHnodeIds, int maxDataDisplayLength) {
+		JSONArray rowsArr = new JSONArray();
+		for (Row row : pager.getRows()) {
+			JSONArray rowValueArray = new JSONArray();
+			for (VHNode vNode : orderedHnodeIds) {
+				if (vNode.isVisible()) {
+					Node rowNode = row.getNode(vNode.getId());
+					JSONObject nodeObj = new JSONObject();
+					nodeObj.put("columnClass", WorksheetHeadersUpdate.getColumnClass(vNode.getId()));
+					nodeObj.put("nodeId", rowNode.getId());
+					nodeObj.put("rowID", row.getId());
+					if (vNode.hasNestedTable()) {
+						nodeObj.put("hasNestedTable", true);
+						Table nestedTable = rowNode.getNestedTable();
+						JSONArray nestedTableRows = getRowsJsonArray(
+								vWorksheet.getNestedTablePager(nestedTable), vWorksheet,
+								vNode.getNestedNodes(), maxDataDisplayLength);
+						nodeObj.put("nestedRows", nestedTableRows);
+						nodeObj.put("tableId", nestedTable.getId());
+						int rowsLeft = nestedTable.getNumRows() - nestedTableRows.length();
+						rowsLeft = rowsLeft < 0 ? 0 : rowsLeft;
+						nodeObj.put("additionalRowsCount", rowsLeft);
+					} else {
+						String nodeVal = rowNode.getValue().asString();
+						nodeVal = (nodeVal == null) ? "" : nodeVal;
+						String displayVal = (nodeVal.length() > maxDataDisplayLength)
+								? nodeVal.substring(0, maxDataDisplayLength) + "..." : nodeVal;
+						nodeObj.put("displayValue", displayVal);
+						nodeObj.put("expandedValue", nodeVal);
+						nodeObj.put("hasNestedTable", false);
+					}
+					rowValueArray.put(nodeObj);
+				}
+			}
+			rowsArr.put(rowValueArray);
+		}
+		return rowsArr;
+	}
+}
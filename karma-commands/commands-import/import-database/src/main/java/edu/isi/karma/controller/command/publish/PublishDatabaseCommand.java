@@ -28,6 +28,7 @@ import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.rep.Node;
 import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Table;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.rep.alignment.SemanticType;
@@ -35,12 +36,15 @@ import edu.isi.karma.util.AbstractJDBCUtil;
 import edu.isi.karma.util.DBType;
 import edu.isi.karma.util.JDBCUtilFactory;
 import edu.isi.karma.view.VWorkspace;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.PrintWriter;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
@@ -62,6 +66,9 @@ public class PublishDatabaseCommand extends Command {
 	private AbstractJDBCUtil dbUtil;
 
 	int numRowsNotInserted = 0;
+	
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+	private static final int DEFAULT_COMMIT_SIZE = 10000;
 
 	public enum JsonKeys {
 		updateType, worksheetId, numRowsNotInserted
@@ -271,7 +278,9 @@ public class PublishDatabaseCommand extends Command {
 	}
 	
 	/**
-	 * Inserts the worksheet data in the DB table.
+	 * Inserts the worksheet data in the DB table. The rows are sent with a
+	 * prepared statement in batches of DB_PUBLISH_BATCH_SIZE rows and
+	 * committed every DB_PUBLISH_COMMIT_SIZE rows.
 	 * @param w
 	 * @param tableName
 	 * @param colNamesMap
@@ -290,9 +299,10 @@ public class PublishDatabaseCommand extends Command {
 		List<String> existingColNames = dbUtil.getColumnNames(null, tableName, conn);
 		List<String> existingColTypes = dbUtil.getColumnTypes(null, tableName, conn);
 		//add in the insert only values for these columns; other columns do not exist in the remote table
-		Map<String, String> addTheseColumns = new HashMap<String, String>();
-		//the types of the columns 
-		Map<String, String> addTheseTypes = new HashMap<String, String>();
+		List<String> addTheseColumns = new ArrayList<String>();
+		List<String> addTheseColNames = new ArrayList<String>();
+		//true if the column has a string type
+		List<Boolean> addTheseTypes = new ArrayList<Boolean>();
 
 		for(Map.Entry<String, String> colNameInWorksheet: colNamesMap.entrySet()){
 			String semType = colNameInWorksheet.getValue();
@@ -300,90 +310,90 @@ public class PublishDatabaseCommand extends Command {
 			int ind = existingColNames.indexOf(semType);
 			if(ind>=0){
 				//it is there
-				addTheseColumns.put(colNameInWorksheet.getKey(), semType);
-				addTheseTypes.put(colNameInWorksheet.getKey(),existingColTypes.get(ind));
+				addTheseColumns.add(colNameInWorksheet.getKey());
+				addTheseColNames.add(semType);
+				addTheseTypes.add(isDbTypeString(existingColTypes.get(ind)));
 			}
 		}
 		
-		ArrayList<Row> rows = w.getDataTable().getRows(0, w.getDataTable().getNumRows());
-		for(Row r:rows){
-			//insert one row
-			String insertRow = insertInTableRow(r, tableName, addTheseColumns, addTheseTypes);
-			//returns null if that particular row could not be inserted
-			//because there is a number column for which the values are not numbers
-			if(insertRow!=null)
-				dbUtil.executeUpdate(conn, insertRow);
-			else numOfRowsNotInserted++;
+		String insertQ = dbUtil.getInsertStatement(tableName, addTheseColNames);
+		int batchSize = getSizeParameter(ContextParameter.DB_PUBLISH_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+		int commitSize = getSizeParameter(ContextParameter.DB_PUBLISH_COMMIT_SIZE, DEFAULT_COMMIT_SIZE);
+		
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		try {
+			List<Object[]> transaction = new ArrayList<Object[]>();
+			Table dataTable = w.getDataTable();
+			for(Row r: dataTable.getRows(0, dataTable.getNumRows())){
+				//returns null if that particular row could not be inserted
+				//because there is a number column for which the values are not numbers
+				Object[] values = getRowValues(r, addTheseColumns, addTheseTypes);
+				if(values == null) {
+					numOfRowsNotInserted++;
+					continue;
+				}
+				transaction.add(values);
+				if(transaction.size() == commitSize) {
+					dbUtil.executeBatchInsert(conn, insertQ, transaction, batchSize);
+					transaction.clear();
+				}
+			}
+			dbUtil.executeBatchInsert(conn, insertQ, transaction, batchSize);
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(autoCommit);
 		}
 		return numOfRowsNotInserted;
 	}
 	
 	/**
 	 * @param r
-	 * @param tableName
-	 * @param colNamesMap
-	 * 	key=hNodeId; val=column name (same as semantic type for this column)
-	 * @param colTypesMap
-	 * 	key=hNodeId; val=column type 
+	 * @param hNodeIds
+	 * 	the hNodeIds of the columns to insert
+	 * @param isStringColumn
+	 * 	true for the columns that have a string type in the database
 	 * @return
-	 * 		number of rows not inserted. A row is not inserted if we have a type mismatch.
+	 * 		the values to insert, a String for string columns, a BigDecimal or
+	 * 		null for number columns; null if we have a type mismatch.
 	 */
-	private String insertInTableRow(Row r, String tableName,
-			Map<String, String> colNamesMap, Map<String, String> colTypesMap) {
-
-		//add escaping in case we have unusual chars
-		tableName=dbUtil.prepareName(tableName);
-
-		String colNames = "";
-		String colValues = "";
-		boolean firstCol=true;
-		for(Map.Entry<String, Node> node: r.getNodesMap().entrySet()){
+	private Object[] getRowValues(Row r, List<String> hNodeIds, List<Boolean> isStringColumn) {
+		Object[] values = new Object[hNodeIds.size()];
+		for(int i = 0; i < hNodeIds.size(); i++){
 			//get value
-			String val = node.getValue().getValue().asString();
-			String hNodeId = node.getKey();
-			//get column name
-			String colName = colNamesMap.get(hNodeId);
-			if(colName!=null){
-				if(!firstCol){
-					colNames +=",";
-					colValues +=",";
-				}
-				colNames += dbUtil.prepareName(colName);
-				//handle null vaules in worksheets
-				if(val==null)
-					val="";
-				//escape string
-				val = val.replaceAll("'", "''");
-				if (isDbTypeString(colTypesMap.get(hNodeId))) {
-					val = "'" + val + "'";
-				} else {
-					// it's a number
-					if (val.trim().equals(""))
-						val = null;
-					else{
-						//check that it is really a number
-						try{
-							Double.valueOf(val);
-						}catch(NumberFormatException e){
-							logger.error("Row not inserted:" + val + " is not a number as required by the database");
-							return null;
-						}
+			Node node = r.getNode(hNodeIds.get(i));
+			String val = node == null ? null : node.getValue().asString();
+			//handle null vaules in worksheets
+			if(val==null)
+				val="";
+			if (isStringColumn.get(i)) {
+				values[i] = val;
+			} else {
+				// it's a number
+				if (val.trim().equals(""))
+					values[i] = null;
+				else{
+					//check that it is really a number
+					try{
+						values[i] = new BigDecimal(val.trim());
+					}catch(NumberFormatException e){
+						logger.error("Row not inserted:" + val + " is not a number as required by the database");
+						return null;
 					}
 				}
-
-				colValues += val;
 			}
-			else{
-				//don't insert this column
-			}			
-			firstCol=false;
 		}
+		return values;
+	}
 
-		String insertQ="insert into " + tableName + "(" + colNames + ") values (" + colValues + ")";
-		
-		//logger.info("insertQ=" + insertQ);
-		
-		return insertQ;
+	private int getSizeParameter(ContextParameter param, int defaultValue) {
+		try {
+			return Math.max(1, Integer.parseInt(ServletContextParameterMap.getParameterValue(param)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 
 	// for now everything is a string
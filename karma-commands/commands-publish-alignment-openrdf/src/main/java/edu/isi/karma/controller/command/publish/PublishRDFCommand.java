@@ -28,6 +28,7 @@ import edu.isi.karma.controller.command.CommandType;
 import edu.isi.karma.controller.update.AbstractUpdate;
 import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
+import edu.isi.karma.er.helper.TripleStoreStreamWriter;
 import edu.isi.karma.er.helper.TripleStoreUtil;
 import edu.isi.karma.kr2rml.ErrorReport;
 import edu.isi.karma.kr2rml.KR2RMLWorksheetRDFGenerator;
@@ -49,10 +50,15 @@ import com.hp.hpl.jena.db.DBConnection;
 import com.hp.hpl.jena.db.IDBConnection;
 import com.hp.hpl.jena.db.ModelRDB;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 
 public class PublishRDFCommand extends Command {
 	private final String worksheetId;
@@ -149,12 +155,25 @@ public class PublishRDFCommand extends Command {
 		KR2RMLMapping mapping = mappingGen.getKR2RMLMapping();
 		logger.debug(mapping.toString());
 		
-		KR2RMLWorksheetRDFGenerator rdfGen = new KR2RMLWorksheetRDFGenerator(worksheet, 
-				workspace.getFactory(), workspace.getOntologyManager(),
-				rdfFileLocalPath, false, mapping, errorReport);
+		if (tripleStoreUrl == null || tripleStoreUrl.isEmpty()) {
+			tripleStoreUrl = TripleStoreUtil.defaultDataRepoUrl;
+		}
+		logger.info("tripleStoreURl : " + tripleStoreUrl);
 		
-		// Generate the RDF using KR2RML data structures
+		// Generate the RDF using KR2RML data structures. The triples are
+		// written to the file and uploaded to the triple store as they are
+		// generated.
+		Writer fileWriter = null;
+		TripleStoreStreamWriter storeWriter = null;
 		try {
+			File rdfFile = new File(rdfFileLocalPath);
+			rdfFile.getParentFile().mkdirs();
+			fileWriter = new OutputStreamWriter(new FileOutputStream(rdfFile), "UTF-8");
+			storeWriter = new TripleStoreStreamWriter(tripleStoreUrl, this.graphUri, 
+					this.replaceContext, this.rdfSourceNamespace, fileWriter);
+			KR2RMLWorksheetRDFGenerator rdfGen = new KR2RMLWorksheetRDFGenerator(worksheet, 
+					workspace.getFactory(), workspace.getOntologyManager(),
+					new PrintWriter(new BufferedWriter(storeWriter)), mapping, errorReport, false);
 			rdfGen.generateRDF(true);
 			logger.info("RDF written to file: " + rdfFileLocalPath);
 			if(saveToStore){
@@ -162,38 +181,28 @@ public class PublishRDFCommand extends Command {
 				logger.info("Using Jena DB:" + hostName + "/"+dbName + " user="+userName);
 				saveToStore(rdfFileLocalPath);
 			}
-		} catch (Exception e1) {
-			logger.error("Error occured while generating RDF!", e1);
-			return new UpdateContainer(new ErrorUpdate("Error occured while generating RDF: " + e1.getMessage()));
-		}
-		try {
 			
-			// Get the graph name from properties if empty graph uri 
-//			String graphName = worksheet.getMetadataContainer().getWorksheetProperties()
-//					.getPropertyValue(Property.graphName);
-//			if (this.graphUri == null || this.graphUri.isEmpty()) {
-//				// Set to default
-//				worksheet.getMetadataContainer().getWorksheetProperties().setPropertyValue(
-//						Property.graphName, WorksheetProperties.createDefaultGraphName(worksheet.getTitle()));
-//				this.graphUri = WorksheetProperties.createDefaultGraphName(worksheet.getTitle());
-//			}
-			
-			if (tripleStoreUrl == null || tripleStoreUrl.isEmpty()) {
-				tripleStoreUrl = TripleStoreUtil.defaultDataRepoUrl;
-			}
-			logger.info("tripleStoreURl : " + tripleStoreUrl);
-			TripleStoreUtil utilObj = new TripleStoreUtil();
-			boolean result = utilObj.saveToStore(rdfFileLocalPath, tripleStoreUrl, this.graphUri, this.replaceContext, this.rdfSourceNamespace);
-			if(result) {
+			if(storeWriter.awaitCompletion()) {
 				logger.info("Saved rdf to store");
 			} else {
 				logger.error("Falied to store rdf to karma_data store");
-				return new UpdateContainer(new ErrorUpdate("Error: Failed to store RDF to the triple store"));
+				return new UpdateContainer(new ErrorUpdate("Error: Failed to store RDF to the triple store. " 
+						+ storeWriter.getErrorMessage()));
+			}
+		} catch (Exception e1) {
+			logger.error("Error occured while generating RDF!", e1);
+			return new UpdateContainer(new ErrorUpdate("Error occured while generating RDF: " + e1.getMessage()));
+		} finally {
+			// does nothing to the store once the upload is complete
+			if (storeWriter != null) {
+				storeWriter.abort();
+			} else if (fileWriter != null) {
+				try {
+					fileWriter.close();
+				} catch (IOException e) {
+					logger.error("Error occured while closing the RDF file!", e);
+				}
 			}
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-			e.printStackTrace();
-			return new UpdateContainer(new ErrorUpdate("Error occured while generating RDF: " + e.getMessage()));
 		}
 		
 		try {
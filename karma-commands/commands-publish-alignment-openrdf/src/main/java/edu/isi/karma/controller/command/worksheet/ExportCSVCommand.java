@@ -20,10 +20,8 @@
  ******************************************************************************/
 package edu.isi.karma.controller.command.worksheet;
 
-import java.io.File;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.HashMap;
 
 import org.json.JSONException;
@@ -31,21 +29,12 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ibm.icu.text.SimpleDateFormat;
-
 import edu.isi.karma.controller.command.CommandType;
 import edu.isi.karma.controller.command.WorksheetCommand;
 import edu.isi.karma.controller.update.AbstractUpdate;
 import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.er.helper.ExportCSVUtil;
-import edu.isi.karma.er.helper.TripleStoreUtil;
-import edu.isi.karma.kr2rml.ErrorReport;
-import edu.isi.karma.kr2rml.KR2RMLWorksheetRDFGenerator;
-import edu.isi.karma.kr2rml.mapping.KR2RMLMapping;
-import edu.isi.karma.kr2rml.mapping.KR2RMLMappingGenerator;
-import edu.isi.karma.modeling.alignment.Alignment;
-import edu.isi.karma.modeling.alignment.AlignmentManager;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.view.VWorkspace;
@@ -60,7 +49,6 @@ public class ExportCSVCommand extends WorksheetCommand {
 	private final String rootNodeId;
 	private String tripleStoreUrl;
 	private String graphUrl;
-	private String generatedRDFFileName = null;
 	private final ArrayList<HashMap<String, String>> columnList;
 	
 	private static Logger logger = LoggerFactory.getLogger(ExportCSVCommand.class);
@@ -104,14 +92,6 @@ public class ExportCSVCommand extends WorksheetCommand {
 	public UpdateContainer doIt(Workspace workspace) {
 		Worksheet worksheet = workspace.getWorksheet(worksheetId);
 		UpdateContainer uc = new UpdateContainer();
-		// first check if current worksheet option is select - if yes, publish this worksheet with a new graphURi and 
-		// fetch data from this graph
-		if(this.graphUrl.equalsIgnoreCase("000")) {
-			uc = generateRDF(workspace);
-			if(uc != null) {
-				return uc;
-			}
-		}
 		
 		// Prepare the model file path and names
 		final String csvFileName = workspace.getCommandPreferencesId() + worksheetId + "-" + 
@@ -119,14 +99,13 @@ public class ExportCSVCommand extends WorksheetCommand {
 		final String modelFileLocalPath = ServletContextParameterMap.getParameterValue(ContextParameter.CSV_PUBLISH_DIR) +  
 				csvFileName;
 
-		HashMap<String, String> result = 
-				ExportCSVUtil.generateCSVFile(workspace, this.worksheetId, this.rootNodeId, this.columnList, this.graphUrl, this.tripleStoreUrl, modelFileLocalPath);
-
-		if(this.generatedRDFFileName != null) {
-			// delete the created RDF file
-			File f = new File(generatedRDFFileName);
-			f.delete();
-//			TripleStoreUtil.clearContexts(this.tripleStoreUrl, this.graphUrl);
+		// if the current worksheet option is selected, export the columns directly from the 
+		// worksheet, else fetch them from the selected graph
+		HashMap<String, String> result;
+		if(this.graphUrl.equalsIgnoreCase("000")) {
+			result = ExportCSVUtil.generateCSVFileFromWorksheet(workspace, this.worksheetId, this.rootNodeId, this.columnList, modelFileLocalPath);
+		} else {
+			result = ExportCSVUtil.generateCSVFile(workspace, this.worksheetId, this.rootNodeId, this.columnList, this.graphUrl, this.tripleStoreUrl, modelFileLocalPath);
 		}
 		
 		if (!result.containsKey("Error")) {
@@ -166,65 +145,4 @@ public class ExportCSVCommand extends WorksheetCommand {
 		return null;
 	}
 
-	private UpdateContainer generateRDF(Workspace workspace) {
-		
-		// Prepare the file path and names
-		SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy-kkmmssS");
-		String ts = sdf.format(Calendar.getInstance().getTime());
-		final String rdfFileName = workspace.getCommandPreferencesId() + worksheetId + "-" + ts+ ".ttl";
-		
-		generatedRDFFileName = ServletContextParameterMap.getParameterValue(ContextParameter.RDF_PUBLISH_DIR) + rdfFileName;
-		
-		final String graphUri = "http://localhost/"+workspace.getCommandPreferencesId() + "/" + worksheetId + "/" + ts;
-
-		logger.info("Generating RDF for current worksheet - " + rdfFileName);
-		
-		// Get the alignment for this worksheet
-		Alignment alignment = AlignmentManager.Instance().getAlignment(
-				AlignmentManager.Instance().constructAlignmentId(workspace.getId(), worksheetId));
-
-		if (alignment == null) {
-			logger.info("Alignment is NULL for " + worksheetId);
-			return new UpdateContainer(new ErrorUpdate(
-					"Please align the worksheet before generating RDF!"));
-		}
-				
-		Worksheet worksheet = workspace.getWorksheet(worksheetId);
-		
-		// Generate the KR2RML data structures for the RDF generation
-		final ErrorReport errorReport = new ErrorReport();
-		KR2RMLMappingGenerator mappingGen = new KR2RMLMappingGenerator(workspace, worksheet,
-				alignment, worksheet.getSemanticTypes(), "s", graphUri, false, errorReport);
-				
-		KR2RMLMapping mapping = mappingGen.getKR2RMLMapping();
-		logger.debug(mapping.toString());
-		
-		KR2RMLWorksheetRDFGenerator rdfGen = new KR2RMLWorksheetRDFGenerator(worksheet, 
-				workspace.getFactory(), workspace.getOntologyManager(),
-				generatedRDFFileName, false, mapping, errorReport);
-				
-		// Generate the RDF using KR2RML data structures
-		try {
-			rdfGen.generateRDF(true);
-			logger.info("RDF written to file: " + generatedRDFFileName);
-		} catch (Exception e1) {
-			logger.error("Error occured while generating RDF!", e1);
-			return new UpdateContainer(new ErrorUpdate("Error occured while generating RDF: " + e1.getMessage()));
-		}
-		
-		TripleStoreUtil utilObj = new TripleStoreUtil();
-		boolean result = utilObj.saveToStore(generatedRDFFileName, TripleStoreUtil.defaultDataRepoUrl, graphUri, true, null);
-		// if we the RDF is generated correctly, then we dont need to retur an UpdateContainer
-		// hence we return null
-		if(result) {
-			logger.info("Saved rdf to store");
-			this.graphUrl = graphUri;
-			this.tripleStoreUrl = TripleStoreUtil.defaultDataRepoUrl;
-		} else {
-			logger.error("Falied to store rdf to karma_data store");
-			return new UpdateContainer(new ErrorUpdate("Error: Failed to store RDF to the triple store"));
-		}
-		return null;
-	}
-
 }
@@ -21,13 +21,17 @@
 
 package edu.isi.karma.er.helper;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +39,9 @@ import org.slf4j.LoggerFactory;
 import edu.isi.karma.controller.command.alignment.GenerateR2RMLModelCommand.PreferencesKeys;
 import edu.isi.karma.controller.command.publish.PublishRDFCommand;
 import edu.isi.karma.kr2rml.ErrorReport;
+import edu.isi.karma.kr2rml.KR2RMLWorksheetRDFGenerator;
+import edu.isi.karma.kr2rml.URIFormatter;
+import edu.isi.karma.kr2rml.mapping.KR2RMLMapping;
 import edu.isi.karma.kr2rml.mapping.KR2RMLMappingGenerator;
 import edu.isi.karma.kr2rml.planning.TriplesMap;
 import edu.isi.karma.modeling.Namespaces;
@@ -78,29 +85,8 @@ public class ExportCSVUtil {
 			retVal.put("Error", "Please align the worksheet before generating CSV!");
 			return retVal;
 		}
-		// Get the namespace and prefix from the preferences
-		String namespace = "";
-		String prefix = "";
 		try {
-			JSONObject prefObject = workspace.getCommandPreferences().getCommandPreferencesJSONObject(
-					PublishRDFCommand.class.getSimpleName()+"Preferences");
-			if (prefObject != null) {
-				namespace = prefObject.getString(PreferencesKeys.rdfNamespace.name());
-				prefix = prefObject.getString(PreferencesKeys.rdfPrefix.name());
-				namespace = ((namespace == null) || (namespace.equals(""))) ? 
-						Namespaces.KARMA_DEV : namespace;
-				prefix = ((prefix == null) || (prefix.equals(""))) ? 
-						Prefixes.KARMA_DEV : prefix;
-			} else {
-				namespace = Namespaces.KARMA_DEV;
-				prefix = Prefixes.KARMA_DEV;
-			}
-	
-	
-			// Generate the KR2RML data structures for the RDF generation
-			final ErrorReport errorReport = new ErrorReport();
-			KR2RMLMappingGenerator mappingGen = new KR2RMLMappingGenerator(workspace, worksheet, alignment, 
-					worksheet.getSemanticTypes(), prefix, namespace, true, errorReport);
+			KR2RMLMappingGenerator mappingGen = getMappingGenerator(workspace, worksheet, alignment, true);
 	
 			// Generate the Spqrql query for the columns starting from the given root node
 			SPARQLGeneratorUtil genObj = new SPARQLGeneratorUtil();
@@ -206,4 +192,97 @@ public class ExportCSVUtil {
 		
 	}
 	
+	/**
+	 * Generates the KR2RML mapping of the worksheet with the namespace and prefix
+	 * from the RDF publish preferences
+	 * */
+	private static KR2RMLMappingGenerator getMappingGenerator(Workspace workspace, Worksheet worksheet,
+			Alignment alignment, boolean generateInverse) throws JSONException {
+		// Get the namespace and prefix from the preferences
+		String namespace = "";
+		String prefix = "";
+		JSONObject prefObject = workspace.getCommandPreferences().getCommandPreferencesJSONObject(
+				PublishRDFCommand.class.getSimpleName()+"Preferences");
+		if (prefObject != null) {
+			namespace = prefObject.getString(PreferencesKeys.rdfNamespace.name());
+			prefix = prefObject.getString(PreferencesKeys.rdfPrefix.name());
+			namespace = ((namespace == null) || (namespace.equals(""))) ? 
+					Namespaces.KARMA_DEV : namespace;
+			prefix = ((prefix == null) || (prefix.equals(""))) ? 
+					Prefixes.KARMA_DEV : prefix;
+		} else {
+			namespace = Namespaces.KARMA_DEV;
+			prefix = Prefixes.KARMA_DEV;
+		}
+
+		// Generate the KR2RML data structures for the RDF generation
+		final ErrorReport errorReport = new ErrorReport();
+		return new KR2RMLMappingGenerator(workspace, worksheet, alignment, 
+				worksheet.getSemanticTypes(), prefix, namespace, generateInverse, errorReport);
+	}
+	
+	/**
+	 * @param workspace The Workspace object used to generate the KR2RML model
+	 * @param worksheetId
+	 * @param rootNodeId The root Node Id from where the csv is to be generated
+	 * @param columnList An ArrayList<HashMap<String, String>> that has the list of columns to be fetched. These columns are identified by their complete URL as defined in the ontology.
+	 * @param csvFilePath The path of the csv file to write
+	 * 
+	 * @return HashMap<String, String> that is empty or of the format 'Error: <The error message>'
+	 * <br /> Writes the same columns as generateCSVFile, but reads them from the worksheet 
+	 * in memory instead of publishing it and querying the triple store.
+	 * */
+	public static HashMap<String, String> generateCSVFileFromWorksheet(Workspace workspace, final String worksheetId, 
+			final String rootNodeId, final ArrayList<HashMap<String, String>> columnList, final String csvFilePath) {
+		HashMap<String, String> retVal = new HashMap<String, String>();
+		Worksheet worksheet = workspace.getWorksheet(worksheetId);
+		Alignment alignment = AlignmentManager.Instance().getAlignment(AlignmentManager.
+				Instance().constructAlignmentId(workspace.getId(), worksheetId));
+
+		if (alignment == null) {
+			logger.info("Alignment is NULL for " + worksheetId);
+			retVal.put("Error", "Please align the worksheet before generating CSV!");
+			return retVal;
+		}
+		PrintWriter writer = null;
+		try {
+			KR2RMLMapping mapping = getMappingGenerator(workspace, worksheet, alignment, true).getKR2RMLMapping();
+			TriplesMap root_node = null;
+			for (TriplesMap row : mapping.getTriplesMapList()) {
+				if (row.getSubject().getId().equalsIgnoreCase(rootNodeId) ) {
+					root_node = row;
+					break;
+				}
+			}
+			if (root_node == null) {
+				retVal.put("Error", "Could not find the root node " + rootNodeId);
+				return retVal;
+			}
+
+			// Generate the RDF of the worksheet into the exporter, which keeps the
+			// values of the columns to export
+			ErrorReport errorReport = new ErrorReport();
+			WorksheetCSVExporter exporter = new WorksheetCSVExporter(root_node, columnList, 
+					new URIFormatter(workspace.getOntologyManager(), errorReport));
+			KR2RMLWorksheetRDFGenerator rdfGen = new KR2RMLWorksheetRDFGenerator(worksheet, 
+					workspace.getFactory(), workspace.getOntologyManager(), exporter, mapping, errorReport, false);
+			rdfGen.generateRDF(true);
+
+			File f = new File(csvFilePath);
+			File parentDir = f.getParentFile();
+			parentDir.mkdirs();
+			writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8")));
+			int rows = exporter.writeCSV(writer);
+			logger.info("Writing CSV file :" + csvFilePath + " with " + rows + " rows");
+		} catch(Exception e) {
+			logger.error("Error while generating csv : ",e);
+			retVal.put("Error", e.getMessage());
+		} finally {
+			if (writer != null) {
+				writer.close();
+			}
+		}
+		return retVal;
+	}
+	
 }
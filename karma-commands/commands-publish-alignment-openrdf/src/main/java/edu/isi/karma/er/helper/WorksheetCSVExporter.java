@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+
+package edu.isi.karma.er.helper;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.kr2rml.KR2RMLRDFWriter;
+import edu.isi.karma.kr2rml.Predicate;
+import edu.isi.karma.kr2rml.PredicateObjectMap;
+import edu.isi.karma.kr2rml.URIFormatter;
+import edu.isi.karma.kr2rml.planning.TriplesMap;
+import edu.isi.karma.modeling.Uris;
+
+/**
+ * Exports the columns of a worksheet to CSV without going through a triple
+ * store. The exporter is used as the KR2RMLRDFWriter of the RDF generator and
+ * keeps only the types, links and values that the export needs. writeCSV then
+ * walks the triples maps starting from the root node the same way as the
+ * query of SPARQLGeneratorUtil.get_query(root, columns, true), and writes one
+ * distinct line per match with the columns in the order they are given.
+ *
+ * A triples map takes part in the match if it maps any column or lies on the
+ * path from the root to one that does. Its instances must have its type and
+ * be linked to the instance of its parent, and every selected column it maps
+ * must have a value.
+ */
+public class WorksheetCSVExporter implements KR2RMLRDFWriter {
+
+	private static Logger logger = LoggerFactory.getLogger(WorksheetCSVExporter.class);
+
+	private final URIFormatter uriFormatter;
+	private final List<String> columnNames = new ArrayList<String>();
+	private final PatternNode root;
+
+	private final Set<String> types = new HashSet<String>();
+	private final Set<String> predicates = new HashSet<String>();
+
+	/**
+	 * The subjects of each type, in the order in which they were generated
+	 */
+	private final Map<String, Set<String>> subjectsByType = new HashMap<String, Set<String>>();
+	/**
+	 * The objects of each subject and predicate, keyed by subject and predicate
+	 */
+	private final Map<String, Set<String>> objects = new HashMap<String, Set<String>>();
+
+	/**
+	 * @param root The triples map of the root node
+	 * @param columns The columns to export, with the column name under "name"
+	 * and the url of its property under "url"
+	 * @param uriFormatter The formatter the RDF generator uses for the mapping
+	 */
+	public WorksheetCSVExporter(TriplesMap root, List<HashMap<String, String>> columns,
+			URIFormatter uriFormatter) {
+		this.uriFormatter = uriFormatter;
+		for (HashMap<String, String> col : columns) {
+			columnNames.add(col.get("name"));
+		}
+		this.root = buildPattern(root, columns);
+	}
+
+	/**
+	 * Builds the tree of triples maps below the root and assigns each column
+	 * to the first property with its url in breadth first order, as
+	 * SPARQLGeneratorUtil does.
+	 */
+	private PatternNode buildPattern(TriplesMap rootMap, List<HashMap<String, String>> columns) {
+		HashMap<String, String> columnList = new HashMap<String, String>();
+		for (HashMap<String, String> col : columns) {
+			columnList.put(col.get("name"), col.get("url"));
+		}
+		List<String> visitedColumns = new ArrayList<String>();
+		Set<TriplesMap> visitedMaps = new HashSet<TriplesMap>();
+
+		PatternNode rootNode = new PatternNode(rootMap, null);
+		List<Object> queue = new ArrayList<Object>();
+		queue.add(rootNode);
+		visitedMaps.add(rootMap);
+		Map<Predicate, PatternNode> predicateNodes = new HashMap<Predicate, PatternNode>();
+		while (queue.size() > 0) {
+			Object currentObj = queue.remove(0);
+			if (currentObj instanceof PatternNode) {
+				PatternNode node = (PatternNode) currentObj;
+				for (PredicateObjectMap pMap : node.triplesMap.getPredicateObjectMaps()) {
+					if (pMap.getObject().hasRefObjectMap()) {
+						TriplesMap child = pMap.getObject().getRefObjectMap().getParentTriplesMap();
+						if (visitedMaps.add(child)) {
+							PatternNode childNode = new PatternNode(child,
+									normalize(pMap.getPredicate().getTemplate().toString()));
+							node.children.add(childNode);
+							queue.add(childNode);
+						}
+					} else {
+						node.hasValues = true;
+						predicateNodes.put(pMap.getPredicate(), node);
+						queue.add(pMap.getPredicate());
+					}
+				}
+			} else {
+				Predicate predicate = (Predicate) currentObj;
+				String template = predicate.getTemplate().toString();
+				String url = template.replace('<', ' ').replace('>', ' ').trim();
+				for (String cName : columnList.keySet()) {
+					if (columnList.get(cName).equals(url) && !visitedColumns.contains(cName)) {
+						visitedColumns.add(cName);
+						predicateNodes.get(predicate).columns.put(columnNames.indexOf(cName),
+								normalize(template));
+						break;
+					}
+				}
+			}
+		}
+		if (!prune(rootNode)) {
+			logger.info("No columns to export below the root node " + rootMap.getId());
+		}
+		return rootNode;
+	}
+
+	/**
+	 * Removes the branches that do not map any values and collects the types
+	 * and predicates the export needs.
+	 * @return true if the node takes part in the match
+	 */
+	private boolean prune(PatternNode node) {
+		Iterator<PatternNode> itr = node.children.iterator();
+		while (itr.hasNext()) {
+			PatternNode child = itr.next();
+			if (!prune(child)) {
+				itr.remove();
+			}
+		}
+		if (!node.hasValues && node.children.isEmpty()) {
+			return false;
+		}
+		types.add(node.type);
+		if (node.linkPredicate != null) {
+			predicates.add(node.linkPredicate);
+		}
+		predicates.addAll(node.columns.values());
+		return true;
+	}
+
+	private String normalize(String uri) {
+		uri = uriFormatter.getExpandedAndNormalizedUri(uri);
+		if (uri.startsWith("<") && uri.endsWith(">")) {
+			return uri.substring(1, uri.length() - 1);
+		}
+		return uri;
+	}
+
+	private static String getKey(String subject, String predicate) {
+		return subject + " " + predicate;
+	}
+
+	@Override
+	public synchronized void outputTripleWithURIObject(String subjUri, String predicateUri,
+			String objectUri) {
+		String predicate = normalize(predicateUri);
+		if (predicate.equals(Uris.RDF_TYPE_URI)) {
+			String type = normalize(objectUri);
+			if (types.contains(type)) {
+				Set<String> subjects = subjectsByType.get(type);
+				if (subjects == null) {
+					subjects = new LinkedHashSet<String>();
+					subjectsByType.put(type, subjects);
+				}
+				subjects.add(subjUri);
+			}
+		} else if (predicates.contains(predicate)) {
+			addObject(subjUri, predicate, objectUri);
+		}
+	}
+
+	@Override
+	public synchronized void outputTripleWithLiteralObject(String subjUri, String predicateUri,
+			String value, String literalType) {
+		String predicate = normalize(predicateUri);
+		if (predicates.contains(predicate)) {
+			addObject(subjUri, predicate, value);
+		}
+	}
+
+	@Override
+	public void outputQuadWithLiteralObject(String subjUri, String predicateUri,
+			String value, String literalType, String graph) {
+		outputTripleWithLiteralObject(subjUri, predicateUri, value, literalType);
+	}
+
+	private void addObject(String subject, String predicate, String object) {
+		String key = getKey(subject, predicate);
+		Set<String> values = objects.get(key);
+		if (values == null) {
+			values = new LinkedHashSet<String>();
+			objects.put(key, values);
+		}
+		values.add(object);
+	}
+
+	@Override
+	public void finishRow() {
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Writes the header and the distinct lines of the export.
+	 * @return the number of lines written after the header
+	 */
+	public synchronized int writeCSV(PrintWriter writer) {
+		for (int j = 0; j < columnNames.size(); j++) {
+			writer.write(columnNames.get(j).replaceAll("\"", "\\\""));
+			if (j < columnNames.size() - 1) {
+				writer.write(",");
+			}
+		}
+		int count = 0;
+		Set<List<String>> written = new HashSet<List<String>>();
+		Set<String> subjects = subjectsByType.get(root.type);
+		if (subjects != null && (root.hasValues || !root.children.isEmpty())) {
+			for (String subject : subjects) {
+				for (String[] line : match(root, subject)) {
+					if (!written.add(Arrays.asList(line))) {
+						continue;
+					}
+					writer.write("\n");
+					for (int j = 0; j < line.length; j++) {
+						if (line[j] != null) {
+							writer.write(line[j].replaceAll("\"", "\\\""));
+						}
+						if (j < line.length - 1) {
+							writer.write(",");
+						}
+					}
+					count++;
+				}
+			}
+		}
+		writer.write("\n");
+		return count;
+	}
+
+	/**
+	 * @return the lines that the subject and the instances linked to it
+	 * produce, with null in the columns of other nodes
+	 */
+	private List<String[]> match(PatternNode node, String subject) {
+		List<String[]> lines = new ArrayList<String[]>();
+		lines.add(new String[columnNames.size()]);
+		for (Map.Entry<Integer, String> column : node.columns.entrySet()) {
+			Set<String> values = objects.get(getKey(subject, column.getValue()));
+			if (values == null) {
+				return Collections.emptyList();
+			}
+			List<String[]> valueLines = new ArrayList<String[]>(values.size());
+			for (String value : values) {
+				String[] line = new String[columnNames.size()];
+				line[column.getKey()] = getValue(value);
+				valueLines.add(line);
+			}
+			lines = combine(lines, valueLines);
+		}
+		for (PatternNode child : node.children) {
+			Set<String> linked = objects.get(getKey(subject, child.linkPredicate));
+			Set<String> childSubjects = subjectsByType.get(child.type);
+			if (linked == null || childSubjects == null) {
+				return Collections.emptyList();
+			}
+			List<String[]> childLines = new ArrayList<String[]>();
+			for (String object : linked) {
+				if (childSubjects.contains(object)) {
+					childLines.addAll(match(child, object));
+				}
+			}
+			if (childLines.isEmpty()) {
+				return Collections.emptyList();
+			}
+			lines = combine(lines, childLines);
+		}
+		return lines;
+	}
+
+	private List<String[]> combine(List<String[]> lines, List<String[]> others) {
+		List<String[]> result = new ArrayList<String[]>(lines.size() * others.size());
+		for (String[] line : lines) {
+			for (String[] other : others) {
+				String[] combined = line.clone();
+				for (int j = 0; j < other.length; j++) {
+					if (other[j] != null) {
+						combined[j] = other[j];
+					}
+				}
+				result.add(combined);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the angled brackets of URI objects, as the values of a SPARQL
+	 * result do not have them
+	 */
+	private static String getValue(String object) {
+		if (object.startsWith("<") && object.endsWith(">")) {
+			return object.substring(1, object.length() - 1);
+		}
+		return object;
+	}
+
+	private class PatternNode {
+		private final TriplesMap triplesMap;
+		private final String type;
+		private final String linkPredicate;
+		private final List<PatternNode> children = new ArrayList<PatternNode>();
+		/**
+		 * The predicate of each column the node maps, by column index
+		 */
+		private final Map<Integer, String> columns = new HashMap<Integer, String>();
+		private boolean hasValues = false;
+
+		PatternNode(TriplesMap triplesMap, String linkPredicate) {
+			this.triplesMap = triplesMap;
+			this.type = normalize(triplesMap.getSubject().getRdfsType().get(0).toString());
+			this.linkPredicate = linkPredicate;
+		}
+	}
+}
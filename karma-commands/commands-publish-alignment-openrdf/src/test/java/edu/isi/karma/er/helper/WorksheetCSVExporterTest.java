@@ -0,0 +1,270 @@
+package edu.isi.karma.er.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import edu.isi.karma.kr2rml.ErrorReport;
+import edu.isi.karma.kr2rml.ObjectMap;
+import edu.isi.karma.kr2rml.Predicate;
+import edu.isi.karma.kr2rml.PredicateObjectMap;
+import edu.isi.karma.kr2rml.RefObjectMap;
+import edu.isi.karma.kr2rml.SubjectMap;
+import edu.isi.karma.kr2rml.URIFormatter;
+import edu.isi.karma.kr2rml.planning.TriplesMap;
+import edu.isi.karma.kr2rml.template.StringTemplateTerm;
+import edu.isi.karma.kr2rml.template.TemplateTermSet;
+import edu.isi.karma.modeling.Uris;
+import edu.isi.karma.modeling.ontology.OntologyManager;
+
+/**
+ * Compares the CSV that WorksheetCSVExporter writes with the CSV that
+ * ExportCSVUtil.generateCSVFile writes from the result of the SPARQL query of
+ * the same columns, over the same triples.
+ */
+public class WorksheetCSVExporterTest {
+
+	private static final String NS = "http://example.org/";
+
+	private final URIFormatter uriFormatter = new URIFormatter(new OntologyManager(), new ErrorReport());
+	private final ArrayList<HashMap<String, String>> columns = new ArrayList<HashMap<String, String>>();
+
+	private Repository repository;
+	private RepositoryConnection connection;
+	private WorksheetCSVExporter exporter;
+	private int ids;
+
+	@Before
+	public void createRepository() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		connection = repository.getConnection();
+		// the name of a person and the name of an organization have the same
+		// property, the columns get them in breadth first order
+		addColumn("personName", "name");
+		addColumn("city", "city");
+		addColumn("orgName", "name");
+	}
+
+	@After
+	public void closeRepository() throws Exception {
+		connection.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void sameLinesAsSPARQLTest() throws Exception {
+		TriplesMap root = createMapping(false);
+		exporter = new WorksheetCSVExporter(root, columns, uriFormatter);
+		addTriples(false);
+
+		assertEquals(getSPARQLCSV(root), getExporterCSV());
+	}
+
+	@Test
+	public void inverseLinksTest() throws Exception {
+		// the SPARQL query of a mapping with inverse links does not end, it is
+		// compared with the query of the mapping without them
+		TriplesMap root = createMapping(false);
+		exporter = new WorksheetCSVExporter(createMapping(true), columns, uriFormatter);
+		addTriples(true);
+
+		assertEquals(getSPARQLCSV(root), getExporterCSV());
+	}
+
+	private void addColumn(String name, String property) {
+		HashMap<String, String> column = new HashMap<String, String>();
+		column.put("name", name);
+		column.put("url", NS + property);
+		columns.add(column);
+	}
+
+	/**
+	 * A person with a name, an age, addresses and an organization. The
+	 * organization has a name and a phone with a number.
+	 * @return the triples map of the person
+	 */
+	private TriplesMap createMapping(boolean withInverse) {
+		TriplesMap person = createTriplesMap("Person");
+		TriplesMap address = createTriplesMap("Address");
+		TriplesMap organization = createTriplesMap("Organization");
+		TriplesMap phone = createTriplesMap("Phone");
+		addValue(person, "name");
+		addValue(person, "age");
+		addLink(person, "livesIn", address);
+		addLink(person, "worksFor", organization);
+		addValue(address, "city");
+		addValue(organization, "name");
+		addLink(organization, "phone", phone);
+		addValue(phone, "number");
+		if (withInverse) {
+			addLink(organization, "employs", person);
+			addLink(address, "residentOf", person);
+		}
+		return person;
+	}
+
+	private TriplesMap createTriplesMap(String type) {
+		SubjectMap subject = new SubjectMap(type + (++ids));
+		subject.addRdfsType(getTemplate(NS + type));
+		return new TriplesMap("TM" + ids, subject);
+	}
+
+	private void addValue(TriplesMap triplesMap, String property) {
+		PredicateObjectMap poMap = new PredicateObjectMap(triplesMap);
+		poMap.setPredicate(getPredicate(property));
+		poMap.setObject(new ObjectMap("O" + (++ids), new TemplateTermSet(), null));
+		triplesMap.addPredicateObjectMap(poMap);
+	}
+
+	private void addLink(TriplesMap triplesMap, String property, TriplesMap parent) {
+		PredicateObjectMap poMap = new PredicateObjectMap(triplesMap);
+		poMap.setPredicate(getPredicate(property));
+		poMap.setObject(new ObjectMap("O" + (++ids), new RefObjectMap("R" + ids, parent)));
+		triplesMap.addPredicateObjectMap(poMap);
+	}
+
+	private Predicate getPredicate(String property) {
+		Predicate predicate = new Predicate("P" + (++ids));
+		predicate.setTemplate(getTemplate(NS + property));
+		return predicate;
+	}
+
+	private TemplateTermSet getTemplate(String uri) {
+		TemplateTermSet template = new TemplateTermSet();
+		template.addTemplateTermToSet(new StringTemplateTerm(uri, true));
+		return template;
+	}
+
+	private void addTriples(boolean withInverse) throws Exception {
+		addPerson("p1", "Ann", "30", Arrays.asList("a1", "a2"), "o1", withInverse);
+		// no phone for the organization
+		addPerson("p2", "Bob \"B\"", "41", Arrays.asList("a3"), "o2", withInverse);
+		// no address
+		addPerson("p3", "Cy", "25", Collections.<String>emptyList(), "o1", withInverse);
+		// the same line as the first person with the first address
+		addPerson("p4", "Ann", "52", Arrays.asList("a1"), "o1", withInverse);
+		// no age, which is not exported
+		addPerson("p5", "Dee, Jr", null, Arrays.asList("a2", "a3"), "o1", withInverse);
+
+		addType("a1", "Address");
+		addValue("a1", "city", "Los Angeles");
+		addType("a2", "Address");
+		addValue("a2", "city", "New York");
+		addType("a3", "Address");
+		addValue("a3", "city", "San Francisco");
+		addType("o1", "Organization");
+		addValue("o1", "name", "ISI");
+		addLink("o1", "phone", "ph1");
+		addType("o2", "Organization");
+		addValue("o2", "name", "USC");
+		addType("ph1", "Phone");
+		addValue("ph1", "number", "555");
+	}
+
+	private void addPerson(String id, String name, String age, List<String> addresses,
+			String organization, boolean withInverse) throws Exception {
+		addType(id, "Person");
+		addValue(id, "name", name);
+		if (age != null) {
+			addValue(id, "age", age);
+		}
+		for (String address : addresses) {
+			addLink(id, "livesIn", address);
+			if (withInverse) {
+				addLink(address, "residentOf", id);
+			}
+		}
+		addLink(id, "worksFor", organization);
+		if (withInverse) {
+			addLink(organization, "employs", id);
+		}
+	}
+
+	private void addType(String subject, String type) throws Exception {
+		exporter.outputTripleWithURIObject("<" + NS + subject + ">", "<" + Uris.RDF_TYPE_URI + ">",
+				"<" + NS + type + ">");
+		ValueFactory f = connection.getValueFactory();
+		connection.add(f.createURI(NS + subject), f.createURI(Uris.RDF_TYPE_URI), f.createURI(NS + type));
+	}
+
+	private void addLink(String subject, String property, String object) throws Exception {
+		exporter.outputTripleWithURIObject("<" + NS + subject + ">", "<" + NS + property + ">",
+				"<" + NS + object + ">");
+		ValueFactory f = connection.getValueFactory();
+		connection.add(f.createURI(NS + subject), f.createURI(NS + property), f.createURI(NS + object));
+	}
+
+	private void addValue(String subject, String property, String value) throws Exception {
+		exporter.outputTripleWithLiteralObject("<" + NS + subject + ">", "<" + NS + property + ">",
+				value, "");
+		ValueFactory f = connection.getValueFactory();
+		connection.add(f.createURI(NS + subject), f.createURI(NS + property), f.createLiteral(value));
+	}
+
+	/**
+	 * The header and the lines of the exporter, with the lines sorted, as the
+	 * order of the lines of a query result is not defined
+	 */
+	private List<String> getExporterCSV() {
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
+		exporter.writeCSV(writer);
+		writer.flush();
+		return sortLines(out.toString());
+	}
+
+	/**
+	 * Writes the result of the query the way ExportCSVUtil.generateCSVFile
+	 * writes the JSON result of the triple store
+	 */
+	private List<String> getSPARQLCSV(TriplesMap root) throws Exception {
+		String query = new SPARQLGeneratorUtil().get_query(root, columns, true);
+		TupleQueryResult result = connection.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+		StringBuilder csv = new StringBuilder();
+		List<String> headers = result.getBindingNames();
+		for (int j = 0; j < headers.size(); j++) {
+			csv.append(headers.get(j).replaceAll("\"", "\\\""));
+			if (j < headers.size() - 1) {
+				csv.append(",");
+			}
+		}
+		while (result.hasNext()) {
+			BindingSet row = result.next();
+			csv.append("\n");
+			for (int j = 0; j < headers.size(); j++) {
+				csv.append(row.getValue(headers.get(j)).stringValue().replaceAll("\"", "\\\""));
+				if (j < headers.size() - 1) {
+					csv.append(",");
+				}
+			}
+		}
+		result.close();
+		csv.append("\n");
+		return sortLines(csv.toString());
+	}
+
+	private List<String> sortLines(String csv) {
+		List<String> lines = new ArrayList<String>(Arrays.asList(csv.split("\n", -1)));
+		Collections.sort(lines.subList(1, lines.size()));
+		return lines;
+	}
+}
@@ -1,11 +1,13 @@
 package edu.isi.karma.controller.command.publish;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,13 +23,18 @@ import edu.isi.karma.controller.update.WorksheetCleaningUpdate;
 import edu.isi.karma.controller.update.WorksheetDataUpdate;
 import edu.isi.karma.controller.update.WorksheetHeadersUpdate;
 import edu.isi.karma.controller.update.WorksheetListUpdate;
-import edu.isi.karma.imp.json.JsonImport;
+import edu.isi.karma.imp.json.JsonImportValues;
+import edu.isi.karma.rep.ColumnMetadata.DataStructure;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.HTable;
 import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.RepFactory;
 import edu.isi.karma.rep.Row;
 import edu.isi.karma.rep.Table;
-import edu.isi.karma.rep.TablePager;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.metadata.WorksheetProperties.Property;
+import edu.isi.karma.rep.metadata.WorksheetProperties.SourceTypes;
 import edu.isi.karma.view.VHNode;
 import edu.isi.karma.view.VWorksheet;
 import edu.isi.karma.view.VWorkspace;
@@ -93,15 +100,18 @@ public class PublishJSONCommand extends Command {
 			public void applyUpdate(VWorkspace vWorkspace) {
 				VWorksheet vWorksheet =  vWorkspace.getViewFactory().getVWorksheetByWorksheetId(worksheetId);
 				try {
-					PrintWriter fileWriter = new PrintWriter(new FileWriter(new File(fileLocalPath)));
-					TablePager pager = vWorksheet.getTopTablePager();
-					generateRowsUsingPager(pager, vWorksheet, vWorksheet.getHeaderViewNodes(), fileWriter,"");
-					fileWriter.close();
+					PrintWriter fileWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(new File(fileLocalPath)), "UTF-8")));
+					try {
+						generateRowsJSONArray(worksheet.getDataTable(), vWorksheet.getHeaderViewNodes(), fileWriter, "");
+					} finally {
+						fileWriter.close();
+					}
 					
 					if(importAsWorksheet) {
-						JsonImport jsonImp = new JsonImport(new File(fileLocalPath), newWorksheetName, finalWorkspace, "utf-8", -1);
-						jsonImp.generateWorksheet();
-						newWSId = jsonImp.getWorksheet().getId();
+						Worksheet newWorksheet = copyWorksheet(worksheet, vWorksheet.getHeaderViewNodes(), 
+								newWorksheetName, finalWorkspace);
+						newWSId = newWorksheet.getId();
 						new WorksheetListUpdate().applyUpdate(vWorkspace);
 					}
 					
@@ -145,61 +155,96 @@ public class PublishJSONCommand extends Command {
 		return uc;
 	}
 
-	private void generateRowsUsingPager(TablePager pager, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, PrintWriter pw, String space) throws JSONException {
-		List<Row> rows = pager.getRows();
+	/**
+	 * Writes the rows of the table as a JSON array, one value at a time
+	 */
+	private void generateRowsJSONArray(Table table, List<VHNode> orderedHnodeIds, 
+			PrintWriter pw, String space) {
 		pw.print(space + "[");
-		while(true) {
-			
-			generateRowsJSONArray(rows, vWorksheet, orderedHnodeIds, pw, space + " ");
-			if(pager.isAtEndOfTable()) {
-				break;
-			}
-			pw.print(",");
-			rows = pager.loadAdditionalRows();
-		}
-		pw.println();
-		pw.println(space + "]");
-	}
-	
-	private void generateRowsJSONArray(List<Row> rows, VWorksheet vWorksheet, List<VHNode> orderedHnodeIds, 
-			PrintWriter pw, String space) throws JSONException {
 		String sep = "";
-		for (Row row:rows) {
+		for (Row row : table.getRows(0, table.getNumRows())) {
 			pw.print(sep);
 			String rowSep = "";
 			pw.println();
-			pw.print(space + "{");
+			pw.print(space + " {");
 			for (VHNode vNode : orderedHnodeIds) {
 				if(vNode.isVisible()) {
 					pw.print(rowSep);
 					
 					Node rowNode = row.getNode(vNode.getId());
-					
+					pw.print(JSONObject.quote(vNode.getColumnName()));
+					pw.print(":");
 					if (vNode.hasNestedTable()) {
-						JSONObject nodeObj = new JSONObject();
-						nodeObj.put(vNode.getColumnName(), "");
-						String str = nodeObj.toString();
-						pw.print(str.substring(1, str.length()-3));
-						
-						Table nestedTable = rowNode.getNestedTable();
-						generateRowsUsingPager( 
-								vWorksheet.getNestedTablePager(nestedTable), 
-								vWorksheet,
-								vNode.getNestedNodes(), 
-								pw, space + "  ");
+						generateRowsJSONArray(rowNode.getNestedTable(), vNode.getNestedNodes(), 
+								pw, space + "   ");
 					} else {
-						JSONObject nodeObj = new JSONObject();
-						nodeObj.put(vNode.getColumnName(), rowNode.getValue().asString());
-						String str = nodeObj.toString();
-						pw.print(str.substring(1, str.length()-1));
+						pw.print(JSONObject.quote(rowNode.getValue().asString()));
 					}
 					rowSep = ",";
 				}
 				
 			}
-			pw.print(space + "}");
+			pw.print(space + " }");
 			sep = ",";
 		}
+		pw.println();
+		pw.println(space + "]");
+	}
+	
+	/**
+	 * Creates a new worksheet with the visible columns and the values of the worksheet, 
+	 * structured like the worksheet JsonImport creates from the published JSON
+	 */
+	private Worksheet copyWorksheet(Worksheet worksheet, List<VHNode> orderedHnodeIds, 
+			String newWorksheetName, Workspace workspace) {
+		RepFactory factory = workspace.getFactory();
+		Worksheet newWorksheet = factory.createWorksheet(newWorksheetName, workspace, "utf-8");
+		newWorksheet.getMetadataContainer().getWorksheetProperties().setWorksheetDataStructure(DataStructure.COLLECTION);
+		copyTable(worksheet.getDataTable(), orderedHnodeIds, newWorksheet.getHeaders(), 
+				newWorksheet.getDataTable(), newWorksheet, factory);
+		newWorksheet.getMetadataContainer().getWorksheetProperties().setPropertyValue(
+				Property.sourceType, SourceTypes.JSON.toString());
+		return newWorksheet;
+	}
+	
+	private void copyTable(Table table, List<VHNode> orderedHnodeIds, HTable newHeaders, 
+			Table newTable, Worksheet newWorksheet, RepFactory factory) {
+		// Add the columns before the rows, so that the new rows get their nested tables
+		List<VHNode> vNodes = new ArrayList<VHNode>();
+		List<HNode> newHNodes = new ArrayList<HNode>();
+		for (VHNode vNode : orderedHnodeIds) {
+			if(vNode.isVisible()) {
+				HNode newHNode = newHeaders.getHNodeFromColumnName(vNode.getColumnName());
+				if (newHNode == null) {
+					newHNode = newHeaders.addHNode(vNode.getColumnName(), newWorksheet, factory);
+					newWorksheet.getMetadataContainer().getColumnMetadata().addColumnDataStructure(
+							newHNode.getId(), DataStructure.OBJECT);
+					if (vNode.hasNestedTable()) {
+						newHNode.addNestedTable(JsonImportValues.createNestedTableName(vNode.getColumnName()), 
+								newWorksheet, factory);
+					}
+				}
+				vNodes.add(vNode);
+				newHNodes.add(newHNode);
+			}
+		}
+		
+		for (Row row : table.getRows(0, table.getNumRows())) {
+			Row newRow = newTable.addRow(factory);
+			for (int i = 0; i < vNodes.size(); i++) {
+				VHNode vNode = vNodes.get(i);
+				HNode newHNode = newHNodes.get(i);
+				Node rowNode = row.getNode(vNode.getId());
+				if (vNode.hasNestedTable()) {
+					if (newHNode.hasNestedTable()) {
+						copyTable(rowNode.getNestedTable(), vNode.getNestedNodes(), newHNode.getNestedTable(), 
+								newRow.getNode(newHNode.getId()).getNestedTable(), newWorksheet, factory);
+					}
+				} else if (!newHNode.hasNestedTable()) {
+					newRow.setValue(newHNode.getId(), rowNode.getValue().asString(), factory);
+				}
+			}
+		}
 	}
 	
 	@Override
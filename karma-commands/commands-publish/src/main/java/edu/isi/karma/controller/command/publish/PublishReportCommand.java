@@ -129,6 +129,7 @@ public class PublishReportCommand extends Command {
 	}
 
 	private void writePyTransforms(Workspace workspace, Worksheet worksheet, PrintWriter pw) throws IOException {
+		workspace.getCommandHistory().exportWorksheetHistory(workspace, worksheet.getId());
 		String historyFilePath = HistoryJsonUtil.constructWorksheetHistoryJsonFilePath(
 				worksheet.getTitle(), workspace.getCommandPreferencesId());
 		File historyFile = new File(historyFilePath);
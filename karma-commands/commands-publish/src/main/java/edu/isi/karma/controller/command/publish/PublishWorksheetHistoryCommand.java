@@ -58,6 +58,7 @@ public class PublishWorksheetHistoryCommand extends Command {
 		Worksheet worksheet = workspace.getWorksheet(worksheetId);
 		final String wkName = worksheet.getTitle();
 		final String wsPreferenceId = workspace.getCommandPreferencesId();
+		workspace.getCommandHistory().exportWorksheetHistory(workspace, worksheetId);
 		if(!HistoryJsonUtil.historyExists(wkName, wsPreferenceId)) {
 			return new UpdateContainer(new ErrorUpdate("No history exists for the worksheet!"));
 		}
@@ -55,13 +55,7 @@ public class DataSourceLoader extends SourceLoader {
 	
     @Override
 	public DataSource getSourceByUri(String uri) {
-		
-		Model m = Repository.Instance().getNamedModel(uri);
-		if (m == null)
-			return null;
-
-		DataSource source = importSourceFromJenaModel(m);
-		return source;
+		return (DataSource) getCachedSourceByUri(uri);
 	}
 
     @Override
@@ -210,9 +204,9 @@ public class DataSourceLoader extends SourceLoader {
 			return null;
 		
 		for (String sourceId : sourceIdsAndMappings.keySet()) {
-			Model m = Repository.Instance().getNamedModel(sourceId);
-			if (m != null)
-				sourcesAndMappings.put(importSourceFromJenaModel(m), sourceIdsAndMappings.get(sourceId));
+			DataSource source = getSourceByUri(sourceId);
+			if (source != null)
+				sourcesAndMappings.put(source, sourceIdsAndMappings.get(sourceId));
 		}
 		
 		return sourcesAndMappings;
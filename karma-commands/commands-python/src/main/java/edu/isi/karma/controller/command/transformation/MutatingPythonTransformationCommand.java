@@ -21,9 +21,6 @@
 
 package edu.isi.karma.controller.command.transformation;
 
-import edu.isi.karma.controller.command.worksheet.MultipleValueEditColumnCommand;
-import edu.isi.karma.controller.command.worksheet.MultipleValueEditColumnCommandFactory;
-import edu.isi.karma.controller.history.HistoryJsonUtil.ParameterType;
 import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.InfoUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
@@ -32,10 +29,8 @@ import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.RepFactory;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
-import edu.isi.karma.util.CommandInputJSONUtil;
 import edu.isi.karma.webserver.ExecutionController;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,17 +61,9 @@ public abstract class MutatingPythonTransformationCommand extends
 	
 		
 		try {
-			JSONArray transformedRows = new JSONArray();
 			JSONArray errorValues = new JSONArray();
-			generateTransformedValues(workspace, 
-					worksheet, f, hNode, transformedRows, errorValues, null);
-
-			// Invoke the MultipleValueEditColumnCommand
-			JSONArray multiCellEditInput = getMultiCellValueEditInputJSON(transformedRows, newHNodeId);
-			MultipleValueEditColumnCommandFactory mfc = (MultipleValueEditColumnCommandFactory)
-					ctrl.getCommandFactoryMap().get(MultipleValueEditColumnCommand.class.getSimpleName());
-			MultipleValueEditColumnCommand mvecc = (MultipleValueEditColumnCommand) mfc.createCommand(multiCellEditInput, workspace);
-			mvecc.doIt(workspace);
+			applyTransformedValues(workspace, worksheet, f, hNode,
+					f.getHNode(newHNodeId), errorValues);
 			
 		} catch (Exception e) {
 			logger.error("Error occured during python transformation.",e);
@@ -96,15 +83,4 @@ public abstract class MutatingPythonTransformationCommand extends
 		c.add(new InfoUpdate("Transformation complete"));
 		return c;
 	}
-
-	private JSONArray getMultiCellValueEditInputJSON(JSONArray rowsArray, String newHNodeId) throws JSONException {
-		JSONArray arr = new JSONArray();
-		arr.put(CommandInputJSONUtil.createJsonObject(MultipleValueEditColumnCommandFactory.Arguments.worksheetId.name(), 
-				worksheetId, ParameterType.worksheetId));
-		arr.put(CommandInputJSONUtil.createJsonObject(MultipleValueEditColumnCommandFactory.Arguments.hNodeID.name(), 
-				newHNodeId, ParameterType.worksheetId));
-		arr.put(CommandInputJSONUtil.createJsonObject(MultipleValueEditColumnCommandFactory.Arguments.rows.name(), 
-				rowsArray, ParameterType.other));
-		return arr;
-	}
 }
@@ -21,12 +21,14 @@
 
 package edu.isi.karma.controller.command.transformation;
 
-import java.io.File;
-import java.io.FilenameFilter;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -38,20 +40,25 @@ import org.python.util.PythonInterpreter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.isi.karma.controller.command.CommandException;
 import edu.isi.karma.controller.command.CommandType;
 import edu.isi.karma.controller.command.WorksheetCommand;
 import edu.isi.karma.controller.command.worksheet.MultipleValueEditColumnCommandFactory;
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.controller.update.WorksheetUpdateFactory;
+import edu.isi.karma.rep.CellValue;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.Node.NodeStatus;
 import edu.isi.karma.rep.RepFactory;
 import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.StringCellValue;
 import edu.isi.karma.rep.Worksheet;
 import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.transformation.ColumnValueAccessor;
+import edu.isi.karma.transformation.PythonInterpreterPool;
 import edu.isi.karma.transformation.PythonTransformationHelper;
-import edu.isi.karma.webserver.ServletContextParameterMap;
-import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+import edu.isi.karma.util.TransformationExecutor;
 
 public abstract class PythonTransformationCommand extends WorksheetCommand {
 
@@ -62,6 +69,9 @@ public abstract class PythonTransformationCommand extends WorksheetCommand {
 	private static Logger logger = LoggerFactory
 			.getLogger(PythonTransformationCommand.class);
 
+	// Fewer rows than this are not worth a thread of their own
+	private static final int MIN_ROWS_PER_PARTITION = 5000;
+
 	private enum JsonKeys {
 		row, error
 	}
@@ -99,7 +109,59 @@ public abstract class PythonTransformationCommand extends WorksheetCommand {
 	protected void generateTransformedValues(Workspace workspace,
 			Worksheet worksheet, RepFactory f, HNode hNode,
 			JSONArray transformedRows, JSONArray errorValues, Integer limit)
-			throws JSONException {
+			throws JSONException, CommandException {
+		List<Node> nodes = new ArrayList<Node>();
+		String[] transformedValues = transformValues(workspace, worksheet, f,
+				hNode, nodes, errorValues, limit);
+		for (int i = 0; i < nodes.size(); i++) {
+			if (transformedValues[i] != null) {
+				addTransformedValue(transformedRows, nodes.get(i)
+						.getBelongsToRow(), transformedValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Applies the transformation to the column of hNode and writes the results
+	 * directly into the column of targetHNode, in the same row as the value
+	 * they were computed from.
+	 * 
+	 * @throws CommandException
+	 *             if targetHNode does not belong to the same table as hNode
+	 */
+	protected void applyTransformedValues(Workspace workspace,
+			Worksheet worksheet, RepFactory f, HNode hNode, HNode targetHNode,
+			JSONArray errorValues) throws JSONException, CommandException {
+		if (!hNode.getHTableId().equals(targetHNode.getHTableId())) {
+			throw new CommandException(this, "Column " + targetHNode.getColumnName()
+					+ " is not in the same table as " + hNode.getColumnName());
+		}
+		List<Node> nodes = new ArrayList<Node>();
+		String[] transformedValues = transformValues(workspace, worksheet, f,
+				hNode, nodes, errorValues, null);
+		Map<String, CellValue> values = new HashMap<String, CellValue>();
+		for (int i = 0; i < nodes.size(); i++) {
+			if (transformedValues[i] != null) {
+				values.put(nodes.get(i).getBelongsToRow().getId(),
+						new StringCellValue(transformedValues[i]));
+			}
+		}
+		worksheet.setColumnValues(targetHNode.getHNodePath(f), values,
+				NodeStatus.original, f);
+	}
+
+	/**
+	 * Transforms the values of the column of hNode. The transformed nodes are
+	 * added to nodes, and the returned array holds the transformed value of
+	 * each of them, or null if a row could not be transformed at all.
+	 * 
+	 * @throws CommandException
+	 *             if a partition could not be transformed, in which case none
+	 *             of the values should be used.
+	 */
+	private String[] transformValues(Workspace workspace,
+			Worksheet worksheet, RepFactory f, HNode hNode, List<Node> nodes,
+			JSONArray errorValues, Integer limit) throws JSONException, CommandException {
 
 		PythonTransformationHelper pyHelper = new PythonTransformationHelper();
 		String trimmedTransformationCode = transformationCode.trim();
@@ -117,59 +179,42 @@ public abstract class PythonTransformationCommand extends WorksheetCommand {
 		
 		logger.debug("Executing PyTransform\n" + transformMethodStmt);
 
-		// Prepare the Python interpreter
-		PythonInterpreter interpreter = new PythonInterpreter();
-		
-		
-		interpreter.exec(pyHelper.getImportStatements());
-		importUserScripts(interpreter);
-		interpreter.exec(pyHelper.getGetValueDefStatement());
-		interpreter.exec(pyHelper.getVDefStatement());
-		interpreter.exec(transformMethodStmt);
-
-		Collection<Node> nodes = new ArrayList<Node>(Math.max(1000, worksheet
+		List<Node> columnNodes = new ArrayList<Node>(Math.max(1000, worksheet
 				.getDataTable().getNumRows()));
-		worksheet.getDataTable().collectNodes(hNode.getHNodePath(f), nodes);
-
-		Map<String, String> rowToValueMap = new HashMap<String, String>();
+		worksheet.getDataTable().collectNodes(hNode.getHNodePath(f), columnNodes);
+		if (limit != null && columnNodes.size() > limit) {
+			nodes.addAll(columnNodes.subList(0, limit));
+		} else {
+			nodes.addAll(columnNodes);
+		}
 
-		int counter = 0;
 		long starttime = System.currentTimeMillis();
-		// Go through all nodes collected for the column with given hNodeId
-		
-		interpreter.set("workspaceid", workspace.getId());
-		
-		PyCode py = interpreter.compile("transform(nodeid)");
+		// Go through all nodes collected for the column with given hNodeId,
+		// split in partitions that are transformed in parallel when the
+		// transformation does not keep state between rows
+		ColumnValueAccessor columnValues = new ColumnValueAccessor(hNode, f);
+		String[] transformedValues = new String[nodes.size()];
+		int numPartitions = getNumPartitions(nodes.size(),
+				pyHelper.isStatefulTransformation(trimmedTransformationCode));
+		List<PartitionErrors> partitionErrors = new ArrayList<PartitionErrors>();
+		if (numPartitions == 1) {
+			partitionErrors.add(transformPartition(transformMethodStmt,
+					workspace.getId(), columnValues, nodes, 0, nodes.size(),
+					transformedValues));
+		} else {
+			partitionErrors.addAll(transformPartitionsInParallel(
+					transformMethodStmt, workspace.getId(), columnValues,
+					nodes, numPartitions, transformedValues));
+		}
 
+		// Merge the errors back in row order
 		int numRowsWithErrors = 0;
-
-		for (Node node : nodes) {
-			Row row = node.getBelongsToRow();
-
-			interpreter.set("nodeid", node.getId());
-
-			try {
-				PyObject output = interpreter.eval(py);
-				String transformedValue = pyHelper
-						.getPyObjectValueAsString(output);
-				addTransformedValue(transformedRows, row, transformedValue);
-			} catch (PyException p) {
-				logger.info("error in evaluation python, skipping one row");
-				numRowsWithErrors++;
-				// Error occured in the Python method execution
-				addTransformedValue(transformedRows, row, errorDefaultValue);
-				addError(errorValues, row, counter, p.value);
-			} catch (Exception t) {
-				// Error occured in the Python method execution
-				logger.debug(
-						"Error occured while transforming, using default value.",
-						t);
-				numRowsWithErrors++;
-				rowToValueMap.put(row.getId(), errorDefaultValue);
-			}
-			if (limit != null && ++counter >= limit) {
-				break;
+		for (PartitionErrors errors : partitionErrors) {
+			for (int i = 0; i < errors.rowIndexes.size(); i++) {
+				addError(errorValues, errors.rowIndexes.get(i),
+						errors.values.get(i));
 			}
+			numRowsWithErrors += errors.numRowsWithErrors;
 		}
 		if (numRowsWithErrors > 0) {
 			logger.debug("PyTransform errors in "
@@ -177,29 +222,126 @@ public abstract class PythonTransformationCommand extends WorksheetCommand {
 					+ " rows. This could be normal when rows have unexpected values.");
 		}
 		logger.debug("transform time "
-				+ (System.currentTimeMillis() - starttime));
+				+ (System.currentTimeMillis() - starttime) + " using "
+				+ numPartitions + " partition(s)");
+		return transformedValues;
 	}
 
-	private void importUserScripts(PythonInterpreter interpreter) {
-		String dirpathString = ServletContextParameterMap
-				.getParameterValue(ContextParameter.USER_PYTHON_SCRIPTS_DIRECTORY)+ "karma" + File.separator + "transformation";
-		
-		if (dirpathString != null && dirpathString.compareTo("") != 0) {
-			File f = new File(dirpathString);
-			String[] scripts = f.list(new FilenameFilter(){
+	private int getNumPartitions(int numRows, boolean stateful) {
+		if (stateful) {
+			return 1;
+		}
+		return Math.max(1, Math.min(TransformationExecutor.getThreads(),
+				numRows / MIN_ROWS_PER_PARTITION));
+	}
 
+	private List<PartitionErrors> transformPartitionsInParallel(
+			final String transformMethodStmt, final String workspaceId,
+			final ColumnValueAccessor columnValues, final List<Node> nodes,
+			int numPartitions, final String[] transformedValues)
+			throws CommandException {
+		ExecutorService service = TransformationExecutor.getExecutor();
+		List<Future<PartitionErrors>> futures = new ArrayList<Future<PartitionErrors>>();
+		int partitionSize = (nodes.size() + numPartitions - 1) / numPartitions;
+		for (int start = 0; start < nodes.size(); start += partitionSize) {
+			final int partitionStart = start;
+			final int partitionEnd = Math.min(nodes.size(), start + partitionSize);
+			futures.add(service.submit(new Callable<PartitionErrors>() {
 				@Override
-				public boolean accept(File dir, String name) {
-					return name.endsWith(".py");
-				}});
-			for(String script : scripts)
-			{
-				interpreter.execfile(dirpathString  + File.separator + script);
+				public PartitionErrors call() throws Exception {
+					return transformPartition(transformMethodStmt, workspaceId,
+							columnValues, nodes, partitionStart, partitionEnd,
+							transformedValues);
+				}
+			}));
+		}
+
+		List<PartitionErrors> partitionErrors = new ArrayList<PartitionErrors>();
+		try {
+			for (Future<PartitionErrors> future : futures) {
+				partitionErrors.add(future.get());
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(futures);
+			throw new CommandException(this, "Interrupted while applying the Python transformation");
+		} catch (ExecutionException e) {
+			logger.error("Error occured while transforming a partition",
+					e.getCause());
+			cancel(futures);
+			throw new CommandException(this, "Error occured while applying the Python transformation: "
+					+ e.getCause().getMessage());
 		}
+		return partitionErrors;
+	}
+
+	private void cancel(List<Future<PartitionErrors>> futures) {
+		for (Future<PartitionErrors> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Transforms the nodes from start (inclusive) to end (exclusive) on a Python
+	 * interpreter that is used only by the calling thread. The transformed
+	 * values are stored at the same indexes in transformedValues; rows that
+	 * could not be transformed at all are left null.
+	 */
+	private PartitionErrors transformPartition(String transformMethodStmt,
+			String workspaceId, ColumnValueAccessor columnValues,
+			List<Node> nodes, int start, int end, String[] transformedValues) {
+		PythonTransformationHelper pyHelper = new PythonTransformationHelper();
+		PartitionErrors errors = new PartitionErrors();
+
+		// Borrow a warm Python interpreter
+		PythonInterpreterPool pool = PythonInterpreterPool.getInstance();
+		PythonInterpreter interpreter = pool.borrowInterpreter(transformMethodStmt);
+		try {
+			interpreter.set("workspaceid", workspaceId);
+			interpreter.set("columnValues", columnValues);
+
+			PyCode py = pool.compile(interpreter, "transform(nodeid)");
+
+			for (int i = start; i < end; i++) {
+				Node node = nodes.get(i);
+
+				interpreter.set("nodeid", node.getId());
+				interpreter.set("node", node);
+
+				try {
+					PyObject output = interpreter.eval(py);
+					transformedValues[i] = pyHelper
+							.getPyObjectValueAsString(output);
+				} catch (PyException p) {
+					logger.info("error in evaluation python, skipping one row");
+					errors.numRowsWithErrors++;
+					// Error occured in the Python method execution
+					transformedValues[i] = errorDefaultValue;
+					errors.rowIndexes.add(i);
+					errors.values.add(p.value);
+				} catch (Exception t) {
+					// Error occured in the Python method execution
+					logger.debug(
+							"Error occured while transforming, using default value.",
+							t);
+					errors.numRowsWithErrors++;
+				}
+			}
+		} finally {
+			interpreter.set("columnValues", null);
+			interpreter.set("node", null);
+			pool.returnInterpreter(interpreter);
+		}
+		return errors;
+	}
+
+	private static class PartitionErrors {
+		private final List<Integer> rowIndexes = new ArrayList<Integer>();
+		private final List<PyObject> values = new ArrayList<PyObject>();
+		private int numRowsWithErrors = 0;
 	}
 
-	private void addError(JSONArray errorValues, Row row, int counter,
+	private void addError(JSONArray errorValues, int counter,
 			PyObject value) throws JSONException {
 		errorValues.put(new JSONObject().put(JsonKeys.row.name(), counter).put(
 				JsonKeys.error.name(), value));
@@ -157,6 +157,7 @@ public class KR2RMLMappingGenerator {
 	}
 	
 	private void addWorksheetHistory() {
+		workspace.getCommandHistory().exportWorksheetHistory(workspace, worksheet.getId());
 		String historyFilePath = HistoryJsonUtil.constructWorksheetHistoryJsonFilePath(
 				worksheet.getTitle(), workspace.getCommandPreferencesId());
 		File historyFile = new File(historyFilePath);
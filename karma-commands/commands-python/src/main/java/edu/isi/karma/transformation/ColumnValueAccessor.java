@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This code was developed by the Information Integration Group as part 
+ * of the Karma project at the Information Sciences Institute of the 
+ * University of Southern California.  For more information, publications, 
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+
+package edu.isi.karma.transformation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.isi.karma.rep.CellValue;
+import edu.isi.karma.rep.ColumnAccessor;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.RepFactory;
+
+/**
+ * Gives Python transformations access to the values of the columns reachable
+ * from the transformed column. Column names are resolved to a ColumnAccessor
+ * once, the first time they are used, so reading a value for a row is a map
+ * lookup instead of a scan over the columns of the table.
+ */
+public class ColumnValueAccessor {
+
+	private final HNode hNode;
+	private final RepFactory factory;
+	private final Map<String, ColumnAccessor> columnAccessors = new ConcurrentHashMap<String, ColumnAccessor>();
+	// column names that could not be resolved
+	private final Set<String> unresolvedColumnNames = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	public ColumnValueAccessor(HNode hNode, RepFactory factory) {
+		this.hNode = hNode;
+		this.factory = factory;
+	}
+
+	/**
+	 * @param node
+	 *            a node of the transformed column
+	 * @param columnName
+	 *            the name of a column reachable from the transformed column
+	 * @return the value of the named column in the row of the node, or the
+	 *         empty string if there is none
+	 */
+	public String getValue(Node node, String columnName) {
+		ColumnAccessor column = resolve(columnName);
+		if (column == null) {
+			return "";
+		}
+		Node targetNode = column.getNode(node);
+		if (targetNode == null) {
+			return "";
+		}
+		CellValue value = targetNode.getValue();
+		if (value == null) {
+			return "";
+		}
+		String valueAsString = value.asString();
+		return valueAsString == null ? "" : valueAsString;
+	}
+
+	private ColumnAccessor resolve(String columnName) {
+		ColumnAccessor column = columnAccessors.get(columnName);
+		if (column == null && !unresolvedColumnNames.contains(columnName)) {
+			column = ColumnAccessor.resolve(hNode.getHTable(factory), columnName, factory);
+			if (column == null) {
+				unresolvedColumnNames.add(columnName);
+			} else {
+				columnAccessors.put(columnName, column);
+			}
+		}
+		return column;
+	}
+}
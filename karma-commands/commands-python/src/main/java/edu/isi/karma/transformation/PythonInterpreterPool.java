@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This code was developed by the Information Integration Group as part 
+ * of the Karma project at the Information Sciences Institute of the 
+ * University of Southern California.  For more information, publications, 
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+
+package edu.isi.karma.transformation;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.python.core.PyCode;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+/**
+ * Keeps warm Python interpreters for the Python transformations. Interpreters
+ * handed out by the pool already have the imports, the user scripts and the
+ * getValue/v definitions loaded. Code is compiled once and cached by its text,
+ * so running the same transformation again only binds the compiled function.
+ * The cache keeps the MAX_COMPILED_CODE most recently used pieces of code.
+ * 
+ * Each interpreter has its own sys.modules. When an interpreter is given back,
+ * its globals and modules are reset to what they were after it was created, so
+ * a transformation does not see the names or modules of the previous one.
+ * 
+ * When the user scripts change on disk, the idle interpreters are discarded and
+ * the scripts are compiled again.
+ */
+public class PythonInterpreterPool {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(PythonInterpreterPool.class);
+
+	private static final int MAX_IDLE_INTERPRETERS = 8;
+	private static final int MAX_COMPILED_CODE = 256;
+
+	private static PythonInterpreterPool instance = null;
+
+	private final PythonTransformationHelper pyHelper = new PythonTransformationHelper();
+	private final ConcurrentLinkedQueue<PythonInterpreter> idleInterpreters = new ConcurrentLinkedQueue<PythonInterpreter>();
+	private final Map<PythonInterpreter, String> interpreterScriptsVersion = new ConcurrentHashMap<PythonInterpreter, String>();
+	private final Map<PythonInterpreter, InterpreterState> interpreterInitialState = new ConcurrentHashMap<PythonInterpreter, InterpreterState>();
+	private final Map<String, PyCode> compiledCode = new LinkedHashMap<String, PyCode>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PyCode> eldest) {
+			return size() > MAX_COMPILED_CODE;
+		}
+	};
+
+	private String userScriptsVersion = null;
+	private List<PyCode> userScripts = new ArrayList<PyCode>();
+
+	public static synchronized PythonInterpreterPool getInstance() {
+		if (instance == null) {
+			instance = new PythonInterpreterPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns an interpreter with the transform method defined by
+	 * transformMethodStmt. The interpreter must be given back with
+	 * {@link #returnInterpreter(PythonInterpreter)} once the caller is done.
+	 */
+	public PythonInterpreter borrowInterpreter(String transformMethodStmt) {
+		String scriptsVersion = refreshUserScripts();
+		PythonInterpreter interpreter;
+		while ((interpreter = idleInterpreters.poll()) != null) {
+			if (scriptsVersion.equals(interpreterScriptsVersion.get(interpreter))) {
+				break;
+			}
+			discard(interpreter);
+		}
+		if (interpreter == null) {
+			interpreter = createInterpreter(scriptsVersion);
+		}
+		interpreter.exec(compile(interpreter, transformMethodStmt));
+		return interpreter;
+	}
+
+	public void returnInterpreter(PythonInterpreter interpreter) {
+		if (idleInterpreters.size() >= MAX_IDLE_INTERPRETERS) {
+			discard(interpreter);
+			return;
+		}
+		try {
+			reset(interpreter);
+		} catch (Exception e) {
+			logger.debug("Unable to reset the Python interpreter, discarding it", e);
+			discard(interpreter);
+			return;
+		}
+		idleInterpreters.add(interpreter);
+	}
+
+	/**
+	 * Compiles the code, or returns the cached compiled code if the same code
+	 * was compiled before.
+	 */
+	public PyCode compile(PythonInterpreter interpreter, String code) {
+		PyCode py;
+		synchronized (compiledCode) {
+			py = compiledCode.get(code);
+		}
+		if (py == null) {
+			py = interpreter.compile(code);
+			synchronized (compiledCode) {
+				compiledCode.put(code, py);
+			}
+		}
+		return py;
+	}
+
+	private PythonInterpreter createInterpreter(String scriptsVersion) {
+		PythonInterpreter interpreter = new PythonInterpreter(null, new PySystemState());
+		interpreter.exec(compile(interpreter, pyHelper.getImportStatements()));
+		for (PyCode script : getUserScripts()) {
+			interpreter.exec(script);
+		}
+		interpreter.exec(compile(interpreter, pyHelper.getGetValueDefStatement()));
+		interpreter.exec(compile(interpreter, pyHelper.getVDefStatement()));
+		interpreterScriptsVersion.put(interpreter, scriptsVersion);
+		interpreterInitialState.put(interpreter, new InterpreterState(interpreter));
+		return interpreter;
+	}
+
+	/**
+	 * Removes the globals and modules that were added since the interpreter was
+	 * created and binds the initial globals again.
+	 */
+	private void reset(PythonInterpreter interpreter) {
+		InterpreterState initialState = interpreterInitialState.get(interpreter);
+		PyObject globals = interpreter.getLocals();
+		for (String name : getKeys(globals)) {
+			if (!initialState.globals.containsKey(name)) {
+				globals.__delitem__(name);
+			}
+		}
+		for (Map.Entry<String, PyObject> global : initialState.globals.entrySet()) {
+			if (globals.__finditem__(global.getKey()) != global.getValue()) {
+				globals.__setitem__(global.getKey(), global.getValue());
+			}
+		}
+		PyObject modules = interpreter.getSystemState().modules;
+		for (String name : getKeys(modules)) {
+			if (!initialState.modules.contains(name)) {
+				modules.__delitem__(name);
+			}
+		}
+	}
+
+	private static List<String> getKeys(PyObject dict) {
+		List<String> keys = new ArrayList<String>();
+		for (PyObject key : dict.asIterable()) {
+			keys.add(key.toString());
+		}
+		return keys;
+	}
+
+	private void discard(PythonInterpreter interpreter) {
+		interpreterScriptsVersion.remove(interpreter);
+		interpreterInitialState.remove(interpreter);
+		interpreter.cleanup();
+	}
+
+	private synchronized List<PyCode> getUserScripts() {
+		return userScripts;
+	}
+
+	/**
+	 * Compiles the user scripts again if any of them was added, removed or
+	 * modified since they were last compiled.
+	 * 
+	 * @return the version of the user scripts currently loaded
+	 */
+	private synchronized String refreshUserScripts() {
+		String dirpathString = ServletContextParameterMap
+				.getParameterValue(ContextParameter.USER_PYTHON_SCRIPTS_DIRECTORY)+ "karma" + File.separator + "transformation";
+		File dir = new File(dirpathString);
+		String[] scripts = dir.list(new FilenameFilter(){
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".py");
+			}});
+		if (scripts == null) {
+			scripts = new String[0];
+		}
+		Arrays.sort(scripts);
+
+		StringBuilder version = new StringBuilder();
+		for (String script : scripts) {
+			File scriptFile = new File(dir, script);
+			version.append(script).append(':').append(scriptFile.lastModified())
+					.append(':').append(scriptFile.length()).append(';');
+		}
+		if (version.toString().equals(userScriptsVersion)) {
+			return userScriptsVersion;
+		}
+
+		PythonInterpreter compiler = new PythonInterpreter();
+		List<PyCode> compiledScripts = new ArrayList<PyCode>();
+		for (String script : scripts) {
+			String scriptPath = dirpathString + File.separator + script;
+			Reader reader = null;
+			try {
+				reader = new FileReader(scriptPath);
+				compiledScripts.add(compiler.compile(reader, scriptPath));
+			} catch (IOException e) {
+				logger.error("Unable to read Python script " + scriptPath, e);
+			} finally {
+				if (reader != null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						logger.debug("Unable to close Python script " + scriptPath, e);
+					}
+				}
+			}
+		}
+		compiler.cleanup();
+		userScripts = compiledScripts;
+		userScriptsVersion = version.toString();
+		return userScriptsVersion;
+	}
+
+	/**
+	 * The globals and the names of the modules of an interpreter right after it
+	 * was created
+	 */
+	private static class InterpreterState {
+		private final Map<String, PyObject> globals = new HashMap<String, PyObject>();
+		private final Set<String> modules = new HashSet<String>();
+
+		InterpreterState(PythonInterpreter interpreter) {
+			PyObject locals = interpreter.getLocals();
+			for (String name : getKeys(locals)) {
+				globals.put(name, locals.__finditem__(name));
+			}
+			modules.addAll(getKeys(interpreter.getSystemState().modules));
+		}
+	}
+}
@@ -21,12 +21,18 @@
 
 package edu.isi.karma.transformation;
 
+import java.util.regex.Pattern;
+
 import org.python.core.PyObject;
 import org.python.core.PyType;
 
 import edu.isi.karma.rep.Worksheet;
 
 public class PythonTransformationHelper {
+	private static final Pattern STATEFUL_PATTERN = Pattern.compile(
+			"^\\s*(#\\s*stateful\\s*$|global\\s)", Pattern.MULTILINE
+					| Pattern.CASE_INSENSITIVE);
+
 	public String getPyObjectValueAsString(PyObject obj) {
 		if (obj == null)
 			return "";
@@ -50,6 +56,16 @@ public class PythonTransformationHelper {
 		return importStmt.toString();
 	}
 	
+	/**
+	 * A transformation is stateful when it declares itself so with a
+	 * "# stateful" comment line, or when it uses the global statement. The
+	 * rows of stateful transformations must be transformed in order on a
+	 * single interpreter.
+	 */
+	public boolean isStatefulTransformation(String transformationCode) {
+		return STATEFUL_PATTERN.matcher(transformationCode).find();
+	}
+	
 	public String normalizeString(String string) {
 		return string.replaceAll(" ", "").replaceAll("[^\\p{L}\\p{N}]","");
 	}
@@ -68,16 +84,7 @@ public class PythonTransformationHelper {
 	public String getGetValueDefStatement() {
 		StringBuilder methodStmt = new StringBuilder();
 		methodStmt.append("def getValue(columnName):\n");
-		methodStmt.append("	factory = edu.isi.karma.rep.WorkspaceManager.getInstance().getWorkspace(workspaceid).getFactory()\n");
-		methodStmt.append("	node = factory.getNode(nodeid)\n");
-		methodStmt.append("	targetNode = node.getNeighborByColumnName(columnName, factory)\n");
-		methodStmt.append("	if targetNode is not None:\n");
-		methodStmt.append("		value = targetNode.getValue()\n");
-		methodStmt.append("		if value is not None:\n");
-		methodStmt.append("			valueAsString = value.asString()\n");
-		methodStmt.append("			if valueAsString is not None:\n");
-		methodStmt.append("				return valueAsString\n");
-		methodStmt.append("	return ''\n");
+		methodStmt.append("	return columnValues.getValue(node, columnName)\n");
 		
 		return methodStmt.toString();
 	}
@@ -21,6 +21,7 @@
 
 package edu.isi.karma.controller.command;
 
+import edu.isi.karma.controller.history.CommandHistoryJournal;
 import edu.isi.karma.controller.update.AbstractUpdate;
 import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.InfoUpdate;
@@ -94,6 +95,7 @@ public class ResetKarmaCommand extends Command {
 			@Override
 			public void applyUpdate(VWorkspace vWorkspace){
 			/** Delete the model history files **/
+			CommandHistoryJournal.waitForPendingWrites();
 			final String vwsPrefId = vWorkspace.getPreferencesId();
 			File historyDir = new File(ServletContextParameterMap.getParameterValue(ContextParameter.USER_DIRECTORY_PATH) + "publish/History/");
 			if (!historyDir.exists() || !historyDir.isDirectory()) {
@@ -24,20 +24,22 @@ package edu.isi.karma.controller.update;
 import edu.isi.karma.rep.Row;
 import edu.isi.karma.rep.TablePager;
 import edu.isi.karma.rep.Node;
+import edu.isi.karma.util.JSONUtil;
 import edu.isi.karma.view.VHNode;
 import edu.isi.karma.view.VWorksheet;
 import edu.isi.karma.view.VWorkspace;
 import edu.isi.karma.view.ViewPreferences.ViewPreference;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
+import org.json.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class AdditionalRowsUpdate extends AbstractUpdate {
 
@@ -52,6 +54,13 @@ public class AdditionalRowsUpdate extends AbstractUpdate {
 		displayValue, expandedValue, nestedRows, additionalRowsCount, tableId
 	}
 	
+	// the keys in the order in which the JSONObject that this update used to
+	// build wrote them, so that the streamed JSON is the same
+	private static final List<String> keys = JSONUtil.getJSONObjectKeyOrder(
+			JsonKeys.tableId.name(), JsonKeys.rows.name(),
+			JsonKeys.additionalRowsCount.name(),
+			AbstractUpdate.GenericJsonKeys.updateType.name());
+
 	public AdditionalRowsUpdate(String worksheetId, String tableId) {
 		this.worksheetId = worksheetId;
 		this.tableId = tableId;
@@ -67,26 +76,35 @@ public class AdditionalRowsUpdate extends AbstractUpdate {
 		WorksheetDataUpdate upd = new WorksheetDataUpdate(vWorksheet.getId());
 		
 		try {
-			JSONArray rowsJson = new JSONArray();
-			if(additionalRows.size()  > 0) {
-				Row row = additionalRows.get(0);
-				ArrayList<VHNode> nodeList = getNestedNodeList(row, vWorksheet.getHeaderViewNodes());
-				rowsJson = upd.getRowsJsonArray(additionalRows, vWorksheet, 
-							nodeList,
-							vWorkspace.getPreferences().getIntViewPreferenceValue(
-							ViewPreference.maxCharactersInCell));
-			}
-			JSONObject responseObj = new JSONObject();
-			responseObj.put(JsonKeys.tableId.name(), tableId);
-			responseObj.put(JsonKeys.rows.name(), rowsJson);
-			responseObj.put(JsonKeys.additionalRowsCount.name(), 
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put(JsonKeys.tableId.name(), tableId);
+			values.put(JsonKeys.additionalRowsCount.name(),
 					pager.getAdditionalRowsLeftCount());
-			responseObj.put(AbstractUpdate.GenericJsonKeys.updateType.name(), 
+			values.put(AbstractUpdate.GenericJsonKeys.updateType.name(),
 					AdditionalRowsUpdate.class.getSimpleName());
-			
-			pw.print(responseObj.toString());
+
+			JSONWriter writer = new JSONWriter(pw);
+			writer.object();
+			for (String key : keys) {
+				writer.key(key);
+				if (!key.equals(JsonKeys.rows.name())) {
+					writer.value(values.get(key));
+				} else if(additionalRows.size()  > 0) {
+					Row row = additionalRows.get(0);
+					ArrayList<VHNode> nodeList = getNestedNodeList(row, vWorksheet.getHeaderViewNodes());
+					upd.writeRows(writer, additionalRows, vWorksheet, 
+								nodeList,
+								vWorkspace.getPreferences().getIntViewPreferenceValue(
+								ViewPreference.maxCharactersInCell));
+				} else {
+					writer.array().endArray();
+				}
+			}
+			writer.endObject();
 		} catch (JSONException e) {
+			// the caller has to discard what was written so far
 			logger.error("Error creating additional rows update!", e);
+			throw e;
 		}
 
 	}
@@ -16,6 +16,7 @@ import edu.isi.karma.controller.update.ErrorUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.controller.update.WorksheetListUpdate;
 import edu.isi.karma.controller.update.WorksheetUpdateFactory;
+import edu.isi.karma.rep.ColumnAccessor;
 import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HTable;
 import edu.isi.karma.rep.Node;
@@ -136,16 +137,7 @@ public class GroupByCommand extends WorksheetCommand {
 		HTable newht =  newws.getHeaders();
 		ArrayList<Row> rows = oldws.getDataTable().getRows(0, oldws.getDataTable().getNumRows());
 		HTable oldht =  oldws.getHeaders();
-		Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
-		for (Row row : rows) {
-			String hashValue = HashValueManager.getHashValue(row, hnodeIDs);
-			ArrayList<String> ids = hash.get(hashValue);
-			if (ids == null)
-				ids = new ArrayList<String>();
-			ids.add(row.getId());
-			hash.put(hashValue, ids);
-			//System.out.println("Hash: " + HashValueManager.getHashValue(row, hnodeIDs));
-		}	
+		Map<RowGrouper.GroupKey, List<Row>> groups = RowGrouper.groupRows(rows, hnodeIDs, factory);
 		//HTable newKeyTable = newht.getHNodeFromColumnName("Keys").addNestedTable("Table for keys", newws, factory);
 		//newValueTable.addHNode("Values", newws, factory);
 		//HTable newValueNestedTable = newValueTable.getHNodeFromColumnName("Values").addNestedTable("Table for nested values", newws, factory);
@@ -153,13 +145,11 @@ public class GroupByCommand extends WorksheetCommand {
 		newht.addHNode("Values", newws, factory);
 		HTable newValueTable = newht.getHNodeFromColumnName("Values").addNestedTable("Table for values", newws, factory);
 		CloneTableUtils.cloneHTable(oldht, newValueTable, newws, factory, valuehnodes);
-		for (String key : hash.keySet()) {
-			//System.out.println("key: " + hash.get(key));
-			ArrayList<String> r = hash.get(key);
-			Row lastRow = CloneTableUtils.cloneDataTable(CloneTableUtils.getRow(rows, r.get(0)), newws.getDataTable(), oldws.getHeaders(), newht, keyhnodes, factory);
-			for (String rowid : r) {
-				Row cur = CloneTableUtils.getRow(rows, rowid);
-				Table dataTable = lastRow.getNeighborByColumnName("Values", factory).getNestedTable();
+		ColumnAccessor values = ColumnAccessor.resolve(newht, "Values", factory);
+		for (List<Row> r : groups.values()) {
+			Row lastRow = CloneTableUtils.cloneDataTable(r.get(0), newws.getDataTable(), oldws.getHeaders(), newht, keyhnodes, factory);
+			for (Row cur : r) {
+				Table dataTable = values.getNode(lastRow).getNestedTable();
 				CloneTableUtils.cloneDataTable(cur, dataTable, oldws.getHeaders(), newValueTable, valuehnodes, factory);
 			}
 		}
@@ -182,6 +172,7 @@ public class GroupByCommand extends WorksheetCommand {
 		newht.addHNode("Values", oldws, factory);
 		HTable newValueTable = newht.getHNodeFromColumnName("Values").addNestedTable("Table for values", oldws, factory);
 		CloneTableUtils.cloneHTable(ht, newValueTable, oldws, factory, valuehnodes);
+		ColumnAccessor values = ColumnAccessor.resolve(newht, "Values", factory);
 		for (Row parentRow : parentRows) {
 			Table t = null;
 			for (Node node : parentRow.getNodes()) {
@@ -191,24 +182,12 @@ public class GroupByCommand extends WorksheetCommand {
 				}	
 			}
 			ArrayList<Row> rows = t.getRows(0, t.getNumRows());
-			Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
-			for (Row row : rows) {
-				String hashValue = HashValueManager.getHashValue(row, hnodeIDs);
-				ArrayList<String> ids = hash.get(hashValue);
-				if (ids == null)
-					ids = new ArrayList<String>();
-				ids.add(row.getId());
-				hash.put(hashValue, ids);
-			}	
-			
-			for (String key : hash.keySet()) {
-				//System.out.println("key: " + hash.get(key));
-				ArrayList<String> r = hash.get(key);
+			Map<RowGrouper.GroupKey, List<Row>> groups = RowGrouper.groupRows(rows, hnodeIDs, factory);
+			for (List<Row> r : groups.values()) {
 				Node node = parentRow.getNeighbor(newNode.getId());
-				Row lastRow = CloneTableUtils.cloneDataTable(CloneTableUtils.getRow(rows, r.get(0)), node.getNestedTable(), ht, newht, keyhnodes, factory);
-				for (String rowid : r) {
-					Row cur = CloneTableUtils.getRow(rows, rowid);
-					Table dataTable = lastRow.getNeighborByColumnName("Values", factory).getNestedTable();
+				Row lastRow = CloneTableUtils.cloneDataTable(r.get(0), node.getNestedTable(), ht, newht, keyhnodes, factory);
+				for (Row cur : r) {
+					Table dataTable = values.getNode(lastRow).getNestedTable();
 					CloneTableUtils.cloneDataTable(cur, dataTable, ht, newValueTable, valuehnodes, factory);
 				}
 			}
@@ -0,0 +1,109 @@
+package edu.isi.karma.controller.command.worksheet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.isi.karma.rep.Node;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Table;
+
+/**
+ * Groups the rows of a table by the values of a set of columns. Two rows are
+ * in the same group when they have equal values in every key column. A nested
+ * table in a key column matches another one with the same rows, in any order.
+ * The grouper keeps no state between calls.
+ */
+public class RowGrouper {
+
+	private RowGrouper() {
+	}
+
+	/**
+	 * Returns the groups in the order of their first row; the rows of a group
+	 * keep their order in the table.
+	 */
+	public static Map<GroupKey, List<Row>> groupRows(List<Row> rows,
+			List<String> hNodeIds, RepFactory factory) {
+		Map<GroupKey, List<Row>> groups = new LinkedHashMap<GroupKey, List<Row>>();
+		for (Row row : rows) {
+			GroupKey key = getKey(row, hNodeIds, factory);
+			List<Row> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Row>();
+				groups.put(key, group);
+			}
+			group.add(row);
+		}
+		return groups;
+	}
+
+	public static GroupKey getKey(Row row, List<String> hNodeIds,
+			RepFactory factory) {
+		List<Object> parts = new ArrayList<Object>(hNodeIds.size());
+		for (String hNodeId : hNodeIds) {
+			Node n = row.getNode(hNodeId);
+			if (n == null) {
+				parts.add(null);
+			} else if (n.hasNestedTable()) {
+				parts.add(getNestedTableKey(n.getNestedTable(), factory));
+			} else {
+				parts.add(n.getValue().asString());
+			}
+		}
+		return new GroupKey(parts);
+	}
+
+	// the nested rows as a multiset, each nested row keyed by all its columns
+	// in the order of the columns of the nested table, so that equal rows
+	// have equal keys
+	private static Map<GroupKey, Integer> getNestedTableKey(Table table,
+			RepFactory factory) {
+		Map<GroupKey, Integer> rowCounts = new HashMap<GroupKey, Integer>();
+		List<String> ids = factory.getHTable(table.getHTableId())
+				.getOrderedNodeIds();
+		for (Row nestedRow : table.getRows(0, table.getNumRows())) {
+			GroupKey key = getKey(nestedRow, ids, factory);
+			Integer count = rowCounts.get(key);
+			rowCounts.put(key, count == null ? 1 : count + 1);
+		}
+		return rowCounts;
+	}
+
+	/**
+	 * The values of the key columns of a row. The hash code is computed once,
+	 * as keys are immutable.
+	 */
+	public static final class GroupKey {
+		private final List<Object> parts;
+		private final int hashCode;
+
+		private GroupKey(List<Object> parts) {
+			this.parts = parts;
+			this.hashCode = parts.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof GroupKey))
+				return false;
+			GroupKey other = (GroupKey) obj;
+			return hashCode == other.hashCode && parts.equals(other.parts);
+		}
+
+		@Override
+		public String toString() {
+			return parts.toString();
+		}
+	}
+}
@@ -79,7 +79,7 @@ public class SplitColumnByDelimiter {
 			if (oldNodeStatusMap != null)
 				oldNodeStatusMap.put(node, node.getStatus());
 			
-			node.clearValue(NodeStatus.edited);
+			node.clearValue(NodeStatus.edited, factory);
 		}
 		
 		//pedro: 2012-10-09
@@ -121,7 +121,7 @@ public class SplitColumnByDelimiter {
 					logger.error("Error reading Line: " + originalVal, e);
 				}
 				// Clear the old value
-				node.clearValue(NodeStatus.edited);
+				node.clearValue(NodeStatus.edited, factory);
 			}
 		}
 
@@ -150,45 +150,31 @@ public class UnfoldCommand extends WorksheetCommand {
 					break;
 				}	
 			}
-			Map<String, String> keyMapping = new HashMap<String, String>();
+			Set<String> keyValues = new LinkedHashSet<String>();
 			Map<String, String> HNodeidMapping = new HashMap<String, String>();
 			ArrayList<Row> rows = t.getRows(0, t.getNumRows());
 			for (Row row : rows) {
-				Node n = row.getNode(key.getId());
-				keyMapping.put(HashValueManager.getHashValue(oldws, n.getId()), n.getValue().asString());
+				keyValues.add(row.getNode(key.getId()).getValue().asString());
 			}
-			for (String mapkey : keyMapping.keySet()) {
-				HNode hn = newHT.getHNodeFromColumnName(keyMapping.get(mapkey).toLowerCase().replace('/', '_'));
+			for (String keyValue : keyValues) {
+				HNode hn = newHT.getHNodeFromColumnName(keyValue.toLowerCase().replace('/', '_'));
 				if (hn == null) {
-					HNode n = newHT.addHNode(keyMapping.get(mapkey).toLowerCase().replace('/', '_'), oldws, factory);
+					HNode n = newHT.addHNode(keyValue.toLowerCase().replace('/', '_'), oldws, factory);
 					HTable htt = n.addNestedTable("values", oldws, factory);
 					htt.addHNode("Values", oldws, factory);
-					HNodeidMapping.put(keyMapping.get(mapkey), n.getId());
+					HNodeidMapping.put(keyValue, n.getId());
 				}
 				else
-					HNodeidMapping.put(keyMapping.get(mapkey), hn.getId());
+					HNodeidMapping.put(keyValue, hn.getId());
 			}
-			Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
-			for (Row row : rows) {
-				String hashValue = HashValueManager.getHashValue(row, hnodeIds);
-				ArrayList<String> ids = hash.get(hashValue);
-				if (ids == null)
-					ids = new ArrayList<String>();
-				ids.add(row.getId());
-				hash.put(hashValue, ids);
-				//System.out.println("Hash: " + HashValueManager.getHashValue(row, hnodeIDs));
-			}
-
-			for (String hashKey : hash.keySet()) {
-				ArrayList<String> r = hash.get(hashKey);
+			Map<RowGrouper.GroupKey, List<Row>> groups = RowGrouper.groupRows(rows, hnodeIds, factory);
+			for (List<Row> r : groups.values()) {
 				Node node = parentRow.getNeighbor(newNode.getId());
-				Row lastRow = CloneTableUtils.cloneDataTable(CloneTableUtils.getRow(t.getRows(0, t.getNumRows()), r.get(0)), node.getNestedTable(), parentHT, newHT, hnodes, factory);
-				for (String rowid : r) {
-					Row cur = CloneTableUtils.getRow(rows, rowid);
+				Row lastRow = CloneTableUtils.cloneDataTable(r.get(0), node.getNestedTable(), parentHT, newHT, hnodes, factory);
+				for (Row cur : r) {
 					String newId = HNodeidMapping.get(cur.getNode(key.getId()).getValue().asString());
 					Node newnode = lastRow.getNode(newId);
 					Node oldnode = cur.getNode(value.getId());
-					System.out.println("values: " + oldnode.getValue().asString());
 					Row tmprow = newnode.getNestedTable().addRow(factory);
 					tmprow.getNeighborByColumnName("Values", factory).setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
 					//newnode.setValue(oldnode.getValue().asString(), oldnode.getStatus(), factory);
@@ -213,35 +199,22 @@ public class UnfoldCommand extends WorksheetCommand {
 			}
 		}
 		CloneTableUtils.cloneHTable(oldws.getHeaders(), newws.getHeaders(), newws, factory, hnodes);
-		Map<String, String> keyMapping = new HashMap<String, String>();
+		Set<String> keyValues = new LinkedHashSet<String>();
 		Map<String, String> HNodeidMapping = new HashMap<String, String>();
 		for (Row row : rows) {
-			Node n = row.getNode(key.getId());
-			keyMapping.put(HashValueManager.getHashValue(oldws, n.getId()), n.getValue().asString());
+			keyValues.add(row.getNode(key.getId()).getValue().asString());
 		}
-		for (String mapkey : keyMapping.keySet()) {
-			HNode n = newws.getHeaders().addHNode(keyMapping.get(mapkey), newws, factory);
+		for (String keyValue : keyValues) {
+			HNode n = newws.getHeaders().addHNode(keyValue, newws, factory);
 			HTable ht = n.addNestedTable("values", newws, factory);
 			ht.addHNode("Values", newws, factory);
-			HNodeidMapping.put(keyMapping.get(mapkey), n.getId());
-		}
-
-		Map<String, ArrayList<String>> hash = new TreeMap<String, ArrayList<String>>();
-		for (Row row : rows) {
-			String hashValue = HashValueManager.getHashValue(row, hnodeIds);
-			ArrayList<String> ids = hash.get(hashValue);
-			if (ids == null)
-				ids = new ArrayList<String>();
-			ids.add(row.getId());
-			hash.put(hashValue, ids);
-			//System.out.println("Hash: " + HashValueManager.getHashValue(row, hnodeIDs));
+			HNodeidMapping.put(keyValue, n.getId());
 		}
 
-		for (String hashKey : hash.keySet()) {
-			ArrayList<String> r = hash.get(hashKey);
-			Row lastRow = CloneTableUtils.cloneDataTable(CloneTableUtils.getRow(rows, r.get(0)), newws.getDataTable(), oldws.getHeaders(), newws.getHeaders(), hnodes, factory);
-			for (String rowid : r) {
-				Row cur = CloneTableUtils.getRow(rows, rowid);
+		Map<RowGrouper.GroupKey, List<Row>> groups = RowGrouper.groupRows(rows, hnodeIds, factory);
+		for (List<Row> r : groups.values()) {
+			Row lastRow = CloneTableUtils.cloneDataTable(r.get(0), newws.getDataTable(), oldws.getHeaders(), newws.getHeaders(), hnodes, factory);
+			for (Row cur : r) {
 				String newId = HNodeidMapping.get(cur.getNode(key.getId()).getValue().asString());
 				Node newnode = lastRow.getNode(newId);
 				Node oldnode = cur.getNode(value.getId());
@@ -33,7 +33,6 @@ import edu.isi.karma.controller.update.HistoryUpdate;
 import edu.isi.karma.controller.update.UpdateContainer;
 import edu.isi.karma.rep.Workspace;
 import edu.isi.karma.view.VWorkspace;
-import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +64,12 @@ public class CommandHistory {
 	 */
 	private Command currentCommand;
 	
+	/**
+	 * Appends the changes of the history to the worksheet history files.
+	 * Created on first use, and again after a reset.
+	 */
+	private CommandHistoryJournal journal;
+	
 	private final Logger logger = LoggerFactory.getLogger(this.getClass().getSimpleName());
 
 	public CommandHistory() {
@@ -134,19 +139,20 @@ public class CommandHistory {
 			}
 			lastCommandWasUndo = false;
 			
+			// A new journal starts from the history, so it has to be created
+			// before the command is added to it
+			CommandHistoryJournal historyJournal = instanceOf(command, "ResetKarmaCommand")
+					? null : getJournal(workspace);
 			history.add(command);
 			effects.add(new HistoryAddCommandUpdate(command));
+			if (historyJournal != null) {
+				historyJournal.commandAdded(command);
+			}
 		}
 		
-		// Save the modeling commands
-		if (!(instanceOf(command, "ResetKarmaCommand"))) {
-			CommandHistoryWriter chWriter = new CommandHistoryWriter(history, workspace);
-			try {
-				chWriter.writeHistoryPerWorksheet();
-			} catch (JSONException e) {
-				logger.error("Error occured while writing history!" , e);
-				e.printStackTrace();
-			}
+		// A reset deletes the history files, the next command writes them again
+		if (instanceOf(command, "ResetKarmaCommand")) {
+			journal = null;
 		}
 		return effects;
 	}
@@ -193,9 +199,11 @@ public class CommandHistory {
 
 		UpdateContainer effects = new UpdateContainer();
 		for (ICommand c : commandsToUndo) {
+			CommandHistoryJournal historyJournal = getJournal(workspace);
 			history.remove(c);
 			redoStack.add(c);
 			effects.append(c.undoIt(workspace));
+			historyJournal.commandRemoved(c);
 		}
 		return effects;
 	}
@@ -214,9 +222,11 @@ public class CommandHistory {
 
 			UpdateContainer effects = new UpdateContainer();
 			for (ICommand c : commandsToRedo) {
+				CommandHistoryJournal historyJournal = getJournal(workspace);
 				redoStack.remove(c);
 				history.add(c);
 				effects.append(c.doIt(workspace));
+				historyJournal.commandAdded(c);
 			}
 			return effects;
 		} else {
@@ -284,6 +294,26 @@ public class CommandHistory {
 				commandsToBeRemoved.add(command);
 		}
 		history.removeAll(commandsToBeRemoved);
+		if (journal != null) {
+			for (ICommand command : commandsToBeRemoved) {
+				journal.commandRemoved(command);
+			}
+		}
+	}
+	
+	/**
+	 * Brings the history file of the worksheet up to date, for code that
+	 * reads the file while the worksheet is open.
+	 */
+	public void exportWorksheetHistory(Workspace workspace, String worksheetId) {
+		getJournal(workspace).exportHistory(worksheetId);
+	}
+	
+	private CommandHistoryJournal getJournal(Workspace workspace) {
+		if (journal == null) {
+			journal = new CommandHistoryJournal(history, workspace);
+		}
+		return journal;
 	}
 	
 	public ICommand getCommand(String commandId)
@@ -0,0 +1,403 @@
+package edu.isi.karma.controller.history;
+
+import edu.isi.karma.controller.command.ICommand;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.util.JSONUtil;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps the worksheet history files up to date without rewriting them after
+ * every command. A command that goes on or comes off the history is appended
+ * as one record to a journal file next to the history file of its worksheet.
+ * The journal records are written and synced to disk in batches by a
+ * background thread. The JSON of a command is made once, when it goes on the
+ * history, and compacting writes that JSON again, so the history file does
+ * not depend on whether it was compacted after a column was renamed. After COMPACT_THRESHOLD records the history file is
+ * rewritten in the usual JSON format and the journal is emptied; exportHistory
+ * does the same on demand.
+ *
+ * A journal left over from an earlier session is folded into the history file
+ * by readHistory, so the history replays the same commands either way.
+ */
+public class CommandHistoryJournal {
+
+	public static final String JOURNAL_FILE_SUFFIX = ".journal";
+
+	private static final int COMPACT_THRESHOLD = 100;
+
+	private enum JournalKeys {
+		op, command, index
+	}
+
+	private enum JournalOp {
+		add, remove
+	}
+
+	private static Logger logger = LoggerFactory.getLogger(CommandHistoryJournal.class);
+
+	private static final JournalWriter writer = new JournalWriter();
+
+	private final Workspace workspace;
+	private final CommandHistoryWriter historyWriter;
+
+	/**
+	 * The saved commands of each worksheet, by worksheet id, in the order in
+	 * which they are in the history file.
+	 */
+	private final Map<String, WorksheetJournal> journals = new LinkedHashMap<String, WorksheetJournal>();
+
+	public CommandHistoryJournal(List<ICommand> history, Workspace workspace) {
+		this.workspace = workspace;
+		this.historyWriter = new CommandHistoryWriter(history, workspace);
+		for (ICommand command : history) {
+			if (!CommandHistoryWriter.isSavedInWorksheetHistory(command))
+				continue;
+			try {
+				getJournal(CommandHistoryWriter.getWorksheetId(command)).add(command,
+						historyWriter.getCommandJson(command));
+			} catch (JSONException e) {
+				logger.error("Error occured while reading the worksheet of a command!", e);
+			}
+		}
+	}
+
+	public synchronized void commandAdded(ICommand command) {
+		if (!CommandHistoryWriter.isHistoryEnabled()
+				|| !CommandHistoryWriter.isSavedInWorksheetHistory(command)) {
+			return;
+		}
+		try {
+			String worksheetId = CommandHistoryWriter.getWorksheetId(command);
+			WorksheetJournal journal = getJournal(worksheetId);
+			JSONObject commandJson = historyWriter.getCommandJson(command);
+			journal.add(command, commandJson);
+			String filePath = getHistoryFilePath(worksheetId);
+			if (filePath == null) {
+				return;
+			}
+			if (!filePath.equals(journal.filePath)) {
+				compact(journal, filePath);
+				return;
+			}
+			JSONObject record = new JSONObject();
+			record.put(JournalKeys.op.name(), JournalOp.add.name());
+			record.put(JournalKeys.command.name(), commandJson);
+			append(journal, record);
+		} catch (JSONException e) {
+			logger.error("Error occured while writing history!", e);
+		}
+	}
+
+	public synchronized void commandRemoved(ICommand command) {
+		if (!CommandHistoryWriter.isHistoryEnabled()
+				|| !CommandHistoryWriter.isSavedInWorksheetHistory(command)) {
+			return;
+		}
+		try {
+			String worksheetId = CommandHistoryWriter.getWorksheetId(command);
+			WorksheetJournal journal = journals.get(worksheetId);
+			int index = journal == null ? -1 : journal.commands.indexOf(command);
+			if (index == -1) {
+				return;
+			}
+			journal.remove(index);
+			String filePath = getHistoryFilePath(worksheetId);
+			if (filePath == null) {
+				return;
+			}
+			if (!filePath.equals(journal.filePath)) {
+				compact(journal, filePath);
+				return;
+			}
+			JSONObject record = new JSONObject();
+			record.put(JournalKeys.op.name(), JournalOp.remove.name());
+			record.put(JournalKeys.index.name(), index);
+			append(journal, record);
+		} catch (JSONException e) {
+			logger.error("Error occured while writing history!", e);
+		}
+	}
+
+	/**
+	 * Writes the history file of the worksheet in the JSON format and waits
+	 * until it is on disk.
+	 */
+	public void exportHistory(String worksheetId) {
+		synchronized (this) {
+			WorksheetJournal journal = journals.get(worksheetId);
+			String filePath = getHistoryFilePath(worksheetId);
+			if (!CommandHistoryWriter.isHistoryEnabled() || journal == null
+					|| filePath == null) {
+				return;
+			}
+			try {
+				compact(journal, filePath);
+			} catch (JSONException e) {
+				logger.error("Error occured while writing history!", e);
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Waits until the records and history files queued by all journals are
+	 * written, so that the history files can be deleted without a queued
+	 * write creating them again.
+	 */
+	public static void waitForPendingWrites() {
+		writer.flush();
+	}
+
+	private WorksheetJournal getJournal(String worksheetId) {
+		WorksheetJournal journal = journals.get(worksheetId);
+		if (journal == null) {
+			journal = new WorksheetJournal();
+			journals.put(worksheetId, journal);
+		}
+		return journal;
+	}
+
+	private String getHistoryFilePath(String worksheetId) {
+		Worksheet worksheet = workspace.getWorksheet(worksheetId);
+		if (worksheet == null) {
+			return null;
+		}
+		return HistoryJsonUtil.constructWorksheetHistoryJsonFilePath(
+				worksheet.getTitle(), workspace.getCommandPreferencesId());
+	}
+
+	private void append(WorksheetJournal journal, JSONObject record) throws JSONException {
+		journal.recordCount++;
+		if (journal.recordCount >= COMPACT_THRESHOLD) {
+			compact(journal, journal.filePath);
+		} else {
+			writer.append(journal.filePath, record.toString());
+		}
+	}
+
+	private void compact(WorksheetJournal journal, String filePath) throws JSONException {
+		if (journal.filePath != null && !journal.filePath.equals(filePath)) {
+			// the worksheet was renamed, leave the old history file complete
+			writer.fold(journal.filePath);
+		}
+		journal.filePath = filePath;
+		journal.recordCount = 0;
+		writer.write(filePath, new JSONArray(journal.commandJsons));
+	}
+
+	/**
+	 * Reads the commands of a history file, including the ones in a journal
+	 * that has not been compacted yet.
+	 */
+	public static JSONArray readHistory(File historyFile)
+			throws JSONException, FileNotFoundException {
+		File journalFile = new File(historyFile.getPath() + JOURNAL_FILE_SUFFIX);
+		JSONArray history;
+		if (historyFile.exists() || !journalFile.exists()) {
+			history = (JSONArray) JSONUtil.createJson(new FileReader(historyFile));
+		} else {
+			history = new JSONArray();
+		}
+		if (!journalFile.exists()) {
+			return history;
+		}
+
+		List<Object> commands = new ArrayList<Object>();
+		for (int i = 0; i < history.length(); i++) {
+			commands.add(history.get(i));
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(journalFile), Charset.forName("UTF-8")));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				JSONObject record;
+				try {
+					record = new JSONObject(line);
+				} catch (JSONException e) {
+					// the last record may be cut short by a crash
+					logger.warn("Ignoring incomplete record in " + journalFile.getName());
+					break;
+				}
+				if (JournalOp.valueOf(record.getString(JournalKeys.op.name())) == JournalOp.add) {
+					commands.add(record.getJSONObject(JournalKeys.command.name()));
+				} else {
+					commands.remove(record.getInt(JournalKeys.index.name()));
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Error occured while reading the history journal!", e);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				logger.error("Error occured while closing the history journal!", e);
+			}
+		}
+		return new JSONArray(commands);
+	}
+
+	private static class WorksheetJournal {
+		private final List<ICommand> commands = new ArrayList<ICommand>();
+		/**
+		 * The JSON of each command as it was when the command went on the
+		 * history, which is what the journal records hold.
+		 */
+		private final List<JSONObject> commandJsons = new ArrayList<JSONObject>();
+		/**
+		 * The history file the journal was last compacted into, null until the
+		 * first compaction writes the commands loaded with the history.
+		 */
+		private String filePath;
+		private int recordCount;
+
+		private void add(ICommand command, JSONObject commandJson) {
+			commands.add(command);
+			commandJsons.add(commandJson);
+		}
+
+		private void remove(int index) {
+			commands.remove(index);
+			commandJsons.remove(index);
+		}
+	}
+
+	/**
+	 * Writes the journal records and history files on a single daemon thread,
+	 * in the order in which they were queued. Each batch of queued records is
+	 * appended and synced with one write per journal file.
+	 */
+	private static class JournalWriter implements Runnable {
+
+		private final LinkedBlockingQueue<Object[]> queue = new LinkedBlockingQueue<Object[]>();
+
+		private enum TaskType {
+			append, write, fold, flush
+		}
+
+		JournalWriter() {
+			Thread thread = new Thread(this, "CommandHistoryJournal");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void append(String filePath, String record) {
+			queue.add(new Object[] {TaskType.append, filePath, record});
+		}
+
+		void write(String filePath, JSONArray history) {
+			queue.add(new Object[] {TaskType.write, filePath, history});
+		}
+
+		void fold(String filePath) {
+			queue.add(new Object[] {TaskType.fold, filePath, null});
+		}
+
+		void flush() {
+			CountDownLatch done = new CountDownLatch(1);
+			queue.add(new Object[] {TaskType.flush, null, done});
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void run() {
+			List<Object[]> batch = new ArrayList<Object[]>();
+			while (true) {
+				try {
+					batch.add(queue.take());
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.drainTo(batch);
+				Map<String, StringBuilder> pending = new HashMap<String, StringBuilder>();
+				for (Object[] task : batch) {
+					String filePath = (String) task[1];
+					switch ((TaskType) task[0]) {
+					case append:
+						StringBuilder lines = pending.get(filePath);
+						if (lines == null) {
+							lines = new StringBuilder();
+							pending.put(filePath, lines);
+						}
+						lines.append(task[2]).append('\n');
+						break;
+					case write:
+						pending.remove(filePath);
+						writeHistory(filePath, (JSONArray) task[2]);
+						break;
+					case fold:
+						appendRecords(pending);
+						try {
+							writeHistory(filePath, readHistory(new File(filePath)));
+						} catch (Exception e) {
+							logger.error("Error occured while compacting history!", e);
+						}
+						break;
+					case flush:
+						appendRecords(pending);
+						((CountDownLatch) task[2]).countDown();
+						break;
+					}
+				}
+				appendRecords(pending);
+				batch.clear();
+			}
+		}
+
+		private void appendRecords(Map<String, StringBuilder> pending) {
+			for (Map.Entry<String, StringBuilder> entry : pending.entrySet()) {
+				FileOutputStream out = null;
+				try {
+					out = new FileOutputStream(entry.getKey() + JOURNAL_FILE_SUFFIX, true);
+					out.write(entry.getValue().toString().getBytes("UTF-8"));
+					out.getChannel().force(false);
+				} catch (IOException e) {
+					logger.error("Error occured while writing the history journal!", e);
+				} finally {
+					if (out != null) {
+						try {
+							out.close();
+						} catch (IOException e) {
+							logger.error("Error occured while closing the history journal!", e);
+						}
+					}
+				}
+			}
+			pending.clear();
+		}
+
+		private void writeHistory(String filePath, JSONArray history) {
+			JSONUtil.writeJsonFile(history, filePath);
+			new File(filePath + JOURNAL_FILE_SUFFIX).delete();
+		}
+	}
+}
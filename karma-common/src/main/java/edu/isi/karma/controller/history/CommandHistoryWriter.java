@@ -35,10 +35,8 @@ public class CommandHistoryWriter {
 		}
 		HashMap<String, List<ICommand>> comMap = new HashMap<String, List<ICommand>>();
 		for(ICommand command : history) {
-			if(command.isSavedInHistory() && (command.hasTag(CommandTag.Modeling) 
-					|| command.hasTag(CommandTag.Transformation))) {
-				JSONArray json = new JSONArray(command.getInputParameterJson());
-				String worksheetId = HistoryJsonUtil.getStringValue(HistoryArguments.worksheetId.name(), json);
+			if(isSavedInWorksheetHistory(command)) {
+				String worksheetId = getWorksheetId(command);
 				String worksheetName = workspace.getWorksheet(worksheetId).getTitle(); 
 				if(comMap.get(worksheetName) == null)
 					comMap.put(worksheetName, new ArrayList<ICommand>());
@@ -47,43 +45,61 @@ public class CommandHistoryWriter {
 		}
 		
 		for(String wkName : comMap.keySet()) {
-			List<ICommand> comms = comMap.get(wkName);
-			JSONArray commArr = new JSONArray();
-			for(ICommand comm : comms) {
-				JSONObject commObj = new JSONObject();
-				commObj.put(HistoryArguments.commandName.name(), comm.getCommandName());
-				
-				// Populate the tags
-				JSONArray tagsArr = new JSONArray();
-				for (CommandTag tag : comm.getTags())
-					tagsArr.put(tag.name());
-				commObj.put(HistoryArguments.tags.name(), tagsArr);
-				
-				JSONArray inputArr = new JSONArray(comm.getInputParameterJson());
-				for (int i = 0; i < inputArr.length(); i++) {
-					JSONObject inpP = inputArr.getJSONObject(i);
-					
-					/*** Check the input parameter type and accordingly make changes ***/
-					if(HistoryJsonUtil.getParameterType(inpP) == ParameterType.hNodeId) {
-						String hNodeId = inpP.getString(ClientJsonKeys.value.name());
-						HNode node = workspace.getFactory().getHNode(hNodeId);
-						JSONArray hNodeRepresentation = node.getJSONArrayRepresentation(workspace.getFactory());
-						inpP.put(ClientJsonKeys.value.name(), hNodeRepresentation);
-					
-					} else if (HistoryJsonUtil.getParameterType(inpP) == ParameterType.worksheetId) {
-						inpP.put(ClientJsonKeys.value.name(), "W");
-					} else {
-						// do nothing
-					}
-				}
-				commObj.put(HistoryArguments.inputParameters.name(), inputArr);
-				commArr.put(commObj);
-			}
-			JSONUtil.writeJsonFile(commArr, HistoryJsonUtil.constructWorksheetHistoryJsonFilePath(wkName, 
+			JSONUtil.writeJsonFile(getHistoryJson(comMap.get(wkName)), 
+					HistoryJsonUtil.constructWorksheetHistoryJsonFilePath(wkName, 
 					workspace.getCommandPreferencesId()));
 		}
 	}
 	
+	public static boolean isSavedInWorksheetHistory(ICommand command) {
+		return command.isSavedInHistory() && (command.hasTag(CommandTag.Modeling) 
+				|| command.hasTag(CommandTag.Transformation));
+	}
+	
+	public static String getWorksheetId(ICommand command) throws JSONException {
+		JSONArray json = new JSONArray(command.getInputParameterJson());
+		return HistoryJsonUtil.getStringValue(HistoryArguments.worksheetId.name(), json);
+	}
+	
+	public JSONArray getHistoryJson(List<ICommand> comms) throws JSONException {
+		JSONArray commArr = new JSONArray();
+		for(ICommand comm : comms) {
+			commArr.put(getCommandJson(comm));
+		}
+		return commArr;
+	}
+	
+	public JSONObject getCommandJson(ICommand comm) throws JSONException {
+		JSONObject commObj = new JSONObject();
+		commObj.put(HistoryArguments.commandName.name(), comm.getCommandName());
+		
+		// Populate the tags
+		JSONArray tagsArr = new JSONArray();
+		for (CommandTag tag : comm.getTags())
+			tagsArr.put(tag.name());
+		commObj.put(HistoryArguments.tags.name(), tagsArr);
+		
+		JSONArray inputArr = new JSONArray(comm.getInputParameterJson());
+		for (int i = 0; i < inputArr.length(); i++) {
+			JSONObject inpP = inputArr.getJSONObject(i);
+			
+			/*** Check the input parameter type and accordingly make changes ***/
+			if(HistoryJsonUtil.getParameterType(inpP) == ParameterType.hNodeId) {
+				String hNodeId = inpP.getString(ClientJsonKeys.value.name());
+				HNode node = workspace.getFactory().getHNode(hNodeId);
+				JSONArray hNodeRepresentation = node.getJSONArrayRepresentation(workspace.getFactory());
+				inpP.put(ClientJsonKeys.value.name(), hNodeRepresentation);
+			
+			} else if (HistoryJsonUtil.getParameterType(inpP) == ParameterType.worksheetId) {
+				inpP.put(ClientJsonKeys.value.name(), "W");
+			} else {
+				// do nothing
+			}
+		}
+		commObj.put(HistoryArguments.inputParameters.name(), inputArr);
+		return commObj;
+	}
+	
 	private static boolean isHistoryEnabled = false;
 	public static boolean isHistoryEnabled()
 	{
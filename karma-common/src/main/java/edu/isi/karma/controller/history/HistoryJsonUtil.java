@@ -2,7 +2,6 @@ package edu.isi.karma.controller.history;
 
 import edu.isi.karma.controller.command.ICommand.CommandTag;
 import edu.isi.karma.controller.history.CommandHistoryWriter.HistoryArguments;
-import edu.isi.karma.util.JSONUtil;
 import edu.isi.karma.webserver.ServletContextParameterMap;
 import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
 import org.json.JSONArray;
@@ -11,7 +10,6 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.List;
 
 public class HistoryJsonUtil {
@@ -52,8 +50,9 @@ public class HistoryJsonUtil {
 	}
 
 	public static boolean historyExists(String worksheetName, String vworkspacePreferenceId) {
-		File histFile = new File(constructWorksheetHistoryJsonFilePath(worksheetName, vworkspacePreferenceId));
-		return histFile.exists();
+		String histFilePath = constructWorksheetHistoryJsonFilePath(worksheetName, vworkspacePreferenceId);
+		return new File(histFilePath).exists()
+				|| new File(histFilePath + CommandHistoryJournal.JOURNAL_FILE_SUFFIX).exists();
 	}
 	
 	public static String constructWorksheetHistoryJsonFilePath (String worksheetName, String vworkspacePreferenceId) {
@@ -108,6 +107,6 @@ public class HistoryJsonUtil {
 	
 	public static JSONArray readCommandsFromFile(File historyFile) 
 			throws JSONException, FileNotFoundException {
-		return (JSONArray) JSONUtil.createJson(new FileReader(historyFile));
+		return CommandHistoryJournal.readHistory(historyFile);
 	}
 }
@@ -26,8 +26,10 @@ package edu.isi.karma.controller.update;
 import edu.isi.karma.util.JSONUtil;
 import edu.isi.karma.view.VWorkspace;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -88,6 +90,26 @@ public class UpdateContainer {
 		}
 	}
 
+	/**
+	 * Writes the JSON to the writer while it is generated, without keeping
+	 * it in memory.
+	 * 
+	 * @param vWorkspace
+	 * @param writer
+	 * @throws IOException
+	 *             if the JSON could not be written to the writer, in which
+	 *             case part of it may have been written
+	 */
+	public void generateJson(VWorkspace vWorkspace, Writer writer) throws IOException {
+		PrintWriter pw = new PrintWriter(writer);
+		generateJson("", pw, vWorkspace);
+		pw.flush();
+		// PrintWriter does not throw the errors of the writer
+		if (pw.checkError()) {
+			throw new IOException("Error writing the JSON of the updates");
+		}
+	}
+
 	/**
 	 * @param vWorkspace
 	 * @return the JSON as a String.
@@ -0,0 +1,474 @@
+package edu.isi.karma.er.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.er.helper.TripleStoreUtil.RDF_Types;
+import edu.isi.karma.modeling.Uris;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+/**
+ * A writer that uploads the RDF written to it to a triple store while it is
+ * being generated. The text is cut into chunks of about RDF_PUBLISH_CHUNK_SIZE
+ * bytes (default 4MB) at line boundaries, so every chunk must end with a
+ * complete statement, as the N-Triples lines of the RDF generator do. Each
+ * chunk is sent as a POST with chunked transfer encoding, gzip compressed if
+ * RDF_PUBLISH_GZIP is true, and retried up to RDF_PUBLISH_RETRIES times
+ * (default 3). At most MAX_PENDING_CHUNKS chunks wait for their upload, so
+ * the generation slows down to the speed of the store.
+ *
+ * Blank nodes are replaced by skolem IRIs under SKOLEM_PREFIX that are unique
+ * to the writer, as the chunks are stored by separate requests and the same
+ * blank node label in two requests would be two different nodes.
+ *
+ * When the graph is replaced, the chunks are stored in a staging graph that
+ * is moved to the graph with a SPARQL update once every chunk is stored, so
+ * a failed upload leaves the graph unchanged. Otherwise the chunks are added
+ * to the graph directly and a failed upload leaves it incomplete.
+ *
+ * Everything written is also copied to the optional copy writer, e.g. the
+ * published RDF file; it has blank nodes. Call awaitCompletion after closing
+ * the writer, or abort if the RDF could not be generated.
+ */
+public class TripleStoreStreamWriter extends Writer {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(TripleStoreStreamWriter.class);
+
+	private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+	private static final int DEFAULT_RETRIES = 3;
+	private static final int UPLOAD_THREADS = 2;
+	private static final int MAX_PENDING_CHUNKS = 4;
+	private static final long RETRY_DELAY_MILLIS = 500;
+
+	public static final String SKOLEM_PREFIX = "http://isi.edu/integration/karma/.well-known/genid/";
+
+	private static HttpClient httpClient;
+
+	private final Writer copy;
+	private final String tripleStoreURL;
+	private final String context;
+	private final String stagingContext;
+	private final URI statementsURI;
+	private final String skolemPrefix;
+	private final ContentType contentType;
+	private final int chunkSize;
+	private final int retries;
+	private final boolean gzip;
+
+	private final StringBuilder buffer = new StringBuilder();
+	private final ExecutorService uploader;
+	private final Semaphore pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+	private final List<Future<Boolean>> uploads = new ArrayList<Future<Boolean>>();
+	private final AtomicInteger chunksSent = new AtomicInteger();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private volatile boolean failed = false;
+	private boolean closed = false;
+	private Boolean completed = null;
+	private String errorMessage = null;
+
+	/**
+	 * @param tripleStoreURL
+	 *            : the triple store URL
+	 * @param context
+	 *            : The graph context for the RDF
+	 * @param replaceFlag
+	 *            : Whether to replace the contents of the graph once the
+	 *            upload is complete
+	 * @param baseURL
+	 *            : the base URI to resolve relative URIs against
+	 * @param copy
+	 *            : a writer that gets a copy of the RDF, or null
+	 * @throws IOException
+	 *             if the store cannot be reached
+	 */
+	public TripleStoreStreamWriter(String tripleStoreURL, String context,
+			boolean replaceFlag, String baseURL, Writer copy)
+			throws IOException, URISyntaxException {
+		this.copy = copy;
+		this.tripleStoreURL = tripleStoreURL;
+		this.context = context == null ? "" : context.trim();
+		this.chunkSize = getIntParameter(ContextParameter.RDF_PUBLISH_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+		this.retries = getIntParameter(ContextParameter.RDF_PUBLISH_RETRIES, DEFAULT_RETRIES);
+		this.gzip = Boolean.valueOf(ServletContextParameterMap
+				.getParameterValue(ContextParameter.RDF_PUBLISH_GZIP));
+		this.contentType = ContentType.create(
+				TripleStoreUtil.getMimeType(RDF_Types.Turtle.name()), "UTF-8");
+
+		if (!TripleStoreUtil.checkConnection(tripleStoreURL)) {
+			throw new IOException("Failed connection test url : " + tripleStoreURL);
+		}
+		String uuid = UUID.randomUUID().toString();
+		this.skolemPrefix = SKOLEM_PREFIX + uuid + "/";
+		this.stagingContext = replaceFlag ? "urn:uuid:" + uuid : null;
+		this.statementsURI = TripleStoreUtil.getStatementsURI(tripleStoreURL,
+				replaceFlag ? stagingContext : context, baseURL);
+
+		this.uploader = Executors.newFixedThreadPool(UPLOAD_THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TripleStoreStreamWriter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private static synchronized HttpClient getHttpClient() {
+		if (httpClient == null) {
+			PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+			connectionManager.setMaxTotal(4 * UPLOAD_THREADS);
+			connectionManager.setDefaultMaxPerRoute(UPLOAD_THREADS);
+			httpClient = new DefaultHttpClient(connectionManager);
+		}
+		return httpClient;
+	}
+
+	private static int getIntParameter(ContextParameter param, int defaultValue) {
+		try {
+			return Math.max(1, Integer.parseInt(ServletContextParameterMap.getParameterValue(param)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Writer is closed");
+		}
+		if (copy != null) {
+			copy.write(cbuf, off, len);
+		}
+		buffer.append(cbuf, off, len);
+		if (buffer.length() >= chunkSize) {
+			int end = buffer.lastIndexOf("\n") + 1;
+			if (end > 0) {
+				String chunk = buffer.substring(0, end);
+				buffer.delete(0, end);
+				submit(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Flushes the copy; statements are only sent in complete chunks or when
+	 * the writer is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (copy != null) {
+			copy.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (buffer.toString().trim().length() > 0) {
+				submit(buffer.toString());
+			}
+			buffer.setLength(0);
+		} finally {
+			if (copy != null) {
+				copy.close();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all the chunks are uploaded and, if the graph is replaced,
+	 * moves the staging graph to the graph.
+	 * @return true if every chunk was stored; getErrorMessage tells what
+	 * happened to the graph otherwise
+	 */
+	public synchronized boolean awaitCompletion() {
+		if (completed != null) {
+			return completed;
+		}
+		try {
+			for (Future<Boolean> upload : uploads) {
+				upload.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed = true;
+		} catch (CancellationException e) {
+			failed = true;
+		} catch (ExecutionException e) {
+			logger.error("Error occured while uploading RDF!", e.getCause());
+			failed = true;
+		} finally {
+			uploader.shutdownNow();
+		}
+		logger.info("Uploaded " + chunksSent.get() + " chunks (" + bytesSent.get()
+				+ " bytes) to " + statementsURI + (failed ? ", some chunks failed" : ""));
+
+		if (stagingContext == null) {
+			if (failed) {
+				errorMessage = "The graph " + getGraphName() + " is incomplete: only "
+						+ chunksSent.get() + " chunks of RDF were stored.";
+			}
+		} else if (failed) {
+			dropStagingGraph();
+			errorMessage = "The graph " + getGraphName() + " was not changed.";
+		} else if (!replaceGraph()) {
+			failed = true;
+			dropStagingGraph();
+			errorMessage = "The RDF was uploaded, but it could not replace the graph "
+					+ getGraphName() + ". The graph was not changed.";
+		}
+		if (errorMessage != null) {
+			logger.error(errorMessage);
+		}
+		completed = !failed;
+		return completed;
+	}
+
+	/**
+	 * Stops the upload without sending the statements that are not sent yet
+	 * and closes the copy. Does nothing to the graph once awaitCompletion has
+	 * returned.
+	 */
+	public void abort() {
+		failed = true;
+		if (!closed) {
+			closed = true;
+			buffer.setLength(0);
+			if (copy != null) {
+				try {
+					copy.close();
+				} catch (IOException e) {
+					logger.warn("Error occured while closing the copy of the RDF : " + e.getMessage());
+				}
+			}
+		}
+		synchronized (this) {
+			if (completed == null) {
+				for (Future<Boolean> upload : uploads) {
+					upload.cancel(true);
+				}
+				awaitCompletion();
+			}
+		}
+	}
+
+	/**
+	 * @return what happened to the graph when the upload failed, or null
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public int getChunksSent() {
+		return chunksSent.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	private void submit(final String chunk) throws IOException {
+		if (failed) {
+			// a chunk could not be stored, the publish fails anyway
+			return;
+		}
+		try {
+			pendingChunks.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while uploading RDF");
+		}
+		uploads.add(uploader.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				try {
+					return upload(chunk);
+				} finally {
+					pendingChunks.release();
+				}
+			}
+		}));
+	}
+
+	private boolean upload(String chunk) throws IOException, InterruptedException {
+		byte[] bytes = skolemize(chunk, skolemPrefix).getBytes("UTF-8");
+		if (gzip) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+			GZIPOutputStream out = new GZIPOutputStream(compressed);
+			out.write(bytes);
+			out.close();
+			bytes = compressed.toByteArray();
+		}
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			if (attempt > 0) {
+				Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+				logger.info("Retrying chunk upload, attempt " + (attempt + 1));
+			}
+			if (send(new HttpPost(statementsURI), bytes)) {
+				int chunks = chunksSent.incrementAndGet();
+				long total = bytesSent.addAndGet(bytes.length);
+				logger.info("Uploaded chunk " + chunks + " (" + total + " bytes so far)");
+				return true;
+			}
+		}
+		logger.error("Could not upload a chunk of RDF to " + statementsURI);
+		failed = true;
+		return false;
+	}
+
+	/**
+	 * Replaces the blank nodes of the N-Triples with IRIs that start with the
+	 * prefix, leaving IRIs and literals as they are.
+	 */
+	static String skolemize(String ntriples, String prefix) {
+		if (ntriples.indexOf(Uris.BLANK_NODE_PREFIX) == -1) {
+			return ntriples;
+		}
+		StringBuilder out = new StringBuilder(ntriples.length() + 256);
+		int length = ntriples.length();
+		int i = 0;
+		while (i < length) {
+			char c = ntriples.charAt(i);
+			if (c == '<') {
+				int end = ntriples.indexOf('>', i);
+				end = end == -1 ? length : end + 1;
+				out.append(ntriples, i, end);
+				i = end;
+			} else if (c == '"') {
+				int end = i + 1;
+				while (end < length && ntriples.charAt(end) != '"') {
+					end += ntriples.charAt(end) == '\\' ? 2 : 1;
+				}
+				end = Math.min(end + 1, length);
+				out.append(ntriples, i, end);
+				i = end;
+			} else if (ntriples.startsWith(Uris.BLANK_NODE_PREFIX, i)
+					&& (i == 0 || Character.isWhitespace(ntriples.charAt(i - 1)))) {
+				int start = i + Uris.BLANK_NODE_PREFIX.length();
+				int end = start;
+				while (end < length && isLabelChar(ntriples.charAt(end))) {
+					end++;
+				}
+				// a label does not end with a dot, it is the end of the statement
+				while (end > start && ntriples.charAt(end - 1) == '.') {
+					end--;
+				}
+				out.append('<').append(prefix).append(ntriples, start, end).append('>');
+				i = end;
+			} else {
+				out.append(c);
+				i++;
+			}
+		}
+		return out.toString();
+	}
+
+	private static boolean isLabelChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+	}
+
+	private String getGraphName() {
+		return context.isEmpty() ? "default graph" : "<" + context + ">";
+	}
+
+	private boolean replaceGraph() {
+		try {
+			if (chunksSent.get() == 0) {
+				// nothing was staged, the graph is replaced by an empty one
+				return send(new HttpPut(TripleStoreUtil.getStatementsURI(tripleStoreURL, context, null)),
+						new byte[0]);
+			}
+			String target = context.isEmpty() ? "DEFAULT" : "GRAPH <" + context + ">";
+			List<NameValuePair> params = new ArrayList<NameValuePair>();
+			params.add(new BasicNameValuePair("update",
+					"MOVE GRAPH <" + stagingContext + "> TO " + target));
+			HttpPost request = new HttpPost(TripleStoreUtil.getStatementsURI(tripleStoreURL, null, null));
+			request.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+			return send(request);
+		} catch (Exception e) {
+			logger.error("Error occured while replacing the graph " + getGraphName(), e);
+			return false;
+		}
+	}
+
+	private void dropStagingGraph() {
+		if (chunksSent.get() == 0) {
+			return;
+		}
+		try {
+			if (!send(new HttpDelete(TripleStoreUtil.getStatementsURI(tripleStoreURL, stagingContext, null)))) {
+				logger.warn("Could not delete the staging graph <" + stagingContext + ">");
+			}
+		} catch (URISyntaxException e) {
+			logger.warn("Could not delete the staging graph <" + stagingContext + ">", e);
+		}
+	}
+
+	private boolean send(HttpEntityEnclosingRequestBase request, byte[] body) {
+		ByteArrayEntity entity = new ByteArrayEntity(body, contentType);
+		entity.setChunked(true);
+		if (gzip && body.length > 0) {
+			entity.setContentEncoding("gzip");
+		}
+		request.setEntity(entity);
+		return send(request);
+	}
+
+	private boolean send(HttpRequestBase request) {
+		try {
+			HttpResponse response = getHttpClient().execute(request);
+			EntityUtils.consume(response.getEntity());
+			int code = response.getStatusLine().getStatusCode();
+			if (code >= 200 && code < 300) {
+				return true;
+			}
+			logger.warn("Triple store returned status " + code + " for " + request.getURI());
+		} catch (IOException e) {
+			request.abort();
+			logger.warn("Error occured while sending RDF to " + request.getURI() + " : " + e.getMessage());
+		}
+		return false;
+	}
+}
@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -255,6 +256,71 @@ public class TripleStoreUtil {
 		return values;
 	}
 
+	/**
+	 * Returns the statements URI of the repository, with the context and
+	 * base URI parameters used when uploading RDF.
+	 * */
+	static URI getStatementsURI(String tripleStoreURL, String context,
+			String baseURL) throws URISyntaxException {
+		if (tripleStoreURL.charAt(tripleStoreURL.length() - 1) != '/') {
+			tripleStoreURL += "/";
+		}
+		tripleStoreURL += "statements";
+		URIBuilder builder = new URIBuilder(tripleStoreURL);
+
+		// preparing the context for the rdf
+		if (context == null || context.isEmpty()) {
+			logger.info("Empty context");
+			context = "null";
+		} else {
+			context = context.trim();
+//				if(context.indexOf('<') == 0){
+//					context = context.substring(1);
+//				}
+//				if(context.indexOf('>') == context.length()-1 ){
+//					context = context.substring(0, context.length()-1);
+//				}
+			context.replaceAll(">", "");
+			context.replaceAll("<", "");
+			
+//				if(context.indexOf('<') != 0){
+//					context = "<" + context;
+//				}
+//				if(context.indexOf('>') != context.length()-1 ){
+//					context += ">";
+//				}
+			builder.setParameter("context", "<" + context + ">");
+		}
+		
+		// preapring the base URL
+		if (baseURL != null && !baseURL.trim().isEmpty()) {
+			baseURL = baseURL.trim();
+//				if(baseURL.indexOf('<') != 0){
+//					baseURL = "<" + baseURL;
+//				}
+//				if(baseURL.indexOf('>') != baseURL.length()-1 ){
+//					baseURL += ">	";
+//				}
+			baseURL.replaceAll(">", "");
+			baseURL.replaceAll("<", "");
+//				if(baseURL.indexOf('<') == 0){
+//					baseURL = baseURL.substring(1);
+//				}
+//				if(baseURL.indexOf('>') == baseURL.length()-1 ){
+//					baseURL = baseURL.substring(0, baseURL.length()-1);
+//				}
+			
+			builder.setParameter("baseURI", "<" + baseURL + ">");
+		} else {
+			logger.info("Empty baseURL");
+		}
+		return builder.build();
+	}
+
+	static String getMimeType(String rdfType) {
+		return mime_types.get(rdfType);
+	}
+
 	/**
 	 * @param filePath
 	 *            : the url of the file from where the RDF is read
@@ -287,12 +353,8 @@ public class TripleStoreUtil {
 			return retVal;
 		}
 
-		if (tripleStoreURL.charAt(tripleStoreURL.length() - 1) != '/') {
-			tripleStoreURL += "/";
-		}
-		tripleStoreURL += "statements";
 		try {
-			URIBuilder builder = new URIBuilder(tripleStoreURL);
+			URI uri = getStatementsURI(tripleStoreURL, context, baseURL);
 
 			// initialize the http entity
 			HttpClient httpclient = new DefaultHttpClient();
@@ -304,62 +366,13 @@ public class TripleStoreUtil {
 			FileEntity entity = new FileEntity(file, ContentType.create(
 					mime_types.get(rdfType), "UTF-8"));
 
-			
-			// preparing the context for the rdf
-			if (context == null || context.isEmpty()) {
-				logger.info("Empty context");
-				context = "null";
-			} else {
-				context = context.trim();
-//				if(context.indexOf('<') == 0){
-//					context = context.substring(1);
-//				}
-//				if(context.indexOf('>') == context.length()-1 ){
-//					context = context.substring(0, context.length()-1);
-//				}
-				context.replaceAll(">", "");
-				context.replaceAll("<", "");
-				
-//				if(context.indexOf('<') != 0){
-//					context = "<" + context;
-//				}
-//				if(context.indexOf('>') != context.length()-1 ){
-//					context += ">";
-//				}
-				builder.setParameter("context", "<" + context + ">");
-			}
-			
-			// preapring the base URL
-			if (baseURL != null && !baseURL.trim().isEmpty()) {
-				baseURL = baseURL.trim();
-//				if(baseURL.indexOf('<') != 0){
-//					baseURL = "<" + baseURL;
-//				}
-//				if(baseURL.indexOf('>') != baseURL.length()-1 ){
-//					baseURL += ">	";
-//				}
-				baseURL.replaceAll(">", "");
-				baseURL.replaceAll("<", "");
-//				if(baseURL.indexOf('<') == 0){
-//					baseURL = baseURL.substring(1);
-//				}
-//				if(baseURL.indexOf('>') == baseURL.length()-1 ){
-//					baseURL = baseURL.substring(0, baseURL.length()-1);
-//				}
-				
-				builder.setParameter("baseURI", "<" + baseURL + ">");
-			} else {
-				logger.info("Empty baseURL");
-			}
-			
-			
 			// check if we need to specify the context
 			if (!replaceFlag) {
 				// we use HttpPost over HttpPut, for put will replace the entire
 				// repo with an empty graph
 				logger.info("Using POST to save rdf to triple store");
 //				uri = builder.build();
-				HttpPost httpPost = new HttpPost(builder.build());
+				HttpPost httpPost = new HttpPost(uri);
 				httpPost.setEntity(entity);
 
 				// executing the http request
@@ -368,7 +381,7 @@ public class TripleStoreUtil {
 
 				// we use HttpPut to replace the context
 				logger.info("Using PUT to save rdf to triple store");
-				HttpPut httpput = new HttpPut(builder.build());
+				HttpPut httpput = new HttpPut(uri);
 //				HttpPut httpput = new HttpPut(urlString.toString());
 				httpput.setEntity(entity);
 
@@ -376,7 +389,7 @@ public class TripleStoreUtil {
 				response = httpclient.execute(httpput);
 			}
 
-			logger.info("request url : " + builder.build().toString());
+			logger.info("request url : " + uri.toString());
 			logger.info("StatusCode: "
 					+ response.getStatusLine().getStatusCode());
 			int code = response.getStatusLine().getStatusCode();
@@ -117,7 +117,14 @@ public class KR2RMLWorksheetRDFGenerator {
 		this.addColumnContextInformation = addColumnContextInformation;
 		this.translator = new KR2RMLMappingColumnNameHNodeTranslator(factory, worksheet);
 
+	}
 
+	public KR2RMLWorksheetRDFGenerator(Worksheet worksheet, RepFactory factory,
+			OntologyManager ontMgr, KR2RMLRDFWriter outWriter, KR2RMLMapping kr2rmlMapping,
+			ErrorReport errorReport, boolean addColumnContextInformation) {
+		this(worksheet, factory, ontMgr, (String) null, addColumnContextInformation,
+				kr2rmlMapping, errorReport);
+		this.outWriter = outWriter;
 	}
 
 
@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Repository {
 	
@@ -50,6 +51,12 @@ public class Repository {
 	private static Logger logger = LoggerFactory.getLogger(Repository.class);
 
 	private Dataset dataset;
+	
+	/**
+	 * Incremented whenever a named model is added or cleared, so that the
+	 * loaders can tell when the sources they parsed are out of date.
+	 */
+	private final AtomicLong version = new AtomicLong();
 
 	private static Repository _InternalInstance = null;
 	public static Repository Instance()
@@ -89,6 +96,11 @@ public class Repository {
 		namedModel.setNsPrefixes(m.getNsPrefixMap());
 		namedModel.commit();
 		TDB.sync(this.dataset);
+		version.incrementAndGet();
+	}
+	
+	public long getVersion() {
+		return version.get();
 	}
 	
 	/**
@@ -130,6 +142,7 @@ public class Repository {
 		}
 		this.dataset.getNamedModel(name).removeAll();
 		this.dataset.getNamedModel(name).commit();
+		version.incrementAndGet();
 	}
 	
 	/**
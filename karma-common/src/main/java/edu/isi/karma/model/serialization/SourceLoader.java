@@ -24,10 +24,20 @@ package edu.isi.karma.model.serialization;
 import com.hp.hpl.jena.rdf.model.Model;
 import edu.isi.karma.rep.sources.Source;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class SourceLoader {
 
+	/**
+	 * The sources parsed from the repository, by uri. The cached objects are
+	 * shared by all callers, and the cache is emptied as soon as the
+	 * repository changes.
+	 */
+	private final Map<String, Source> sourceCache = new HashMap<String, Source>();
+	private long sourceCacheVersion = -1;
+
 	public abstract Source getSourceByUri(String uri);
 	public abstract void deleteSourceByUri(String uri);
 	public abstract List<Source> getSourcesAbstractInfo(Integer sourceLimit);
@@ -41,5 +51,32 @@ public abstract class SourceLoader {
 
 		return m;
 	}
+	
+	/**
+	 * returns the source with the given uri, parsing its named model only
+	 * the first time it is asked for after a change of the repository.
+	 * @param uri
+	 * @return null if the repository does not have the source
+	 */
+	protected synchronized Source getCachedSourceByUri(String uri) {
+		long version = Repository.Instance().getVersion();
+		if (version != sourceCacheVersion) {
+			sourceCache.clear();
+			sourceCacheVersion = version;
+		}
+		Source source = sourceCache.get(uri);
+		if (source != null)
+			return source;
+		
+		Model m = Repository.Instance().getNamedModel(uri);
+		if (m == null)
+			return null;
+
+		source = importSourceFromJenaModel(m);
+		// do not keep a source parsed while the repository was changing
+		if (source != null && Repository.Instance().getVersion() == version)
+			sourceCache.put(uri, source);
+		return source;
+	}
 
 }
@@ -55,13 +55,7 @@ public class WebServiceLoader extends SourceLoader
 	
     @Override
 	public WebService getSourceByUri(String uri) {
-		
-		Model m = Repository.Instance().getNamedModel(uri);
-		if (m == null)
-			return null;
-
-		WebService service = importSourceFromJenaModel(m);
-		return service;
+		return (WebService) getCachedSourceByUri(uri);
 	}
 	
     @Override
@@ -190,12 +184,7 @@ public class WebServiceLoader extends SourceLoader
 	public WebService getServiceByAddress(String address) {
 		
 		String uri = getServiceUriByServiceAddress(address);
-		Model m = Repository.Instance().getNamedModel(uri);
-		if (m == null)
-			return null;
-
-		WebService service = importSourceFromJenaModel(m);
-		return service;
+		return getSourceByUri(uri);
 	}
 	
 	public void deleteServiceByAddress(String address) {
@@ -278,9 +267,9 @@ public class WebServiceLoader extends SourceLoader
 			return null;
 		
 		for (String serviceId : serviceIdsAndMappings.keySet()) {
-			Model m = Repository.Instance().getNamedModel(serviceId);
-			if (m != null)
-				servicesAndMappings.put(importSourceFromJenaModel(m), serviceIdsAndMappings.get(serviceId));
+			WebService service = getSourceByUri(serviceId);
+			if (service != null)
+				servicesAndMappings.put(service, serviceIdsAndMappings.get(serviceId));
 		}
 		
 		return servicesAndMappings;
@@ -312,9 +301,9 @@ public class WebServiceLoader extends SourceLoader
 			return null;
 		
 		for (String serviceId : serviceIdsAndMappings.keySet()) {
-			Model m = Repository.Instance().getNamedModel(serviceId);
-			if (m != null)
-				servicesAndMappings.put(importSourceFromJenaModel(m), serviceIdsAndMappings.get(serviceId));
+			WebService service = getSourceByUri(serviceId);
+			if (service != null)
+				servicesAndMappings.put(service, serviceIdsAndMappings.get(serviceId));
 		}
 		
 		return servicesAndMappings;
@@ -22,6 +22,7 @@ package edu.isi.karma.modeling.alignment;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -40,10 +41,14 @@ import edu.isi.karma.modeling.Prefixes;
 import edu.isi.karma.modeling.Uris;
 import edu.isi.karma.modeling.alignment.learner.SemanticTypeMapping;
 import edu.isi.karma.modeling.ontology.OntologyManager;
+import edu.isi.karma.rep.alignment.ClassInstanceLink;
 import edu.isi.karma.rep.alignment.ColumnNode;
+import edu.isi.karma.rep.alignment.ColumnSubClassLink;
 import edu.isi.karma.rep.alignment.CompactLink;
 import edu.isi.karma.rep.alignment.CompactObjectPropertyLink;
 import edu.isi.karma.rep.alignment.CompactSubClassLink;
+import edu.isi.karma.rep.alignment.DataPropertyLink;
+import edu.isi.karma.rep.alignment.DataPropertyOfColumnLink;
 import edu.isi.karma.rep.alignment.DefaultLink;
 import edu.isi.karma.rep.alignment.DisplayModel;
 import edu.isi.karma.rep.alignment.InternalNode;
@@ -52,10 +57,13 @@ import edu.isi.karma.rep.alignment.LabeledLink;
 import edu.isi.karma.rep.alignment.LinkPriorityComparator;
 import edu.isi.karma.rep.alignment.LinkStatus;
 import edu.isi.karma.rep.alignment.LinkType;
+import edu.isi.karma.rep.alignment.LiteralNode;
 import edu.isi.karma.rep.alignment.Node;
 import edu.isi.karma.rep.alignment.NodeType;
 import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertySpecializationLink;
 import edu.isi.karma.rep.alignment.ObjectPropertyType;
+import edu.isi.karma.rep.alignment.SemanticType;
 import edu.isi.karma.rep.alignment.SubClassLink;
 import edu.isi.karma.util.EncodingDetector;
 
@@ -68,7 +76,9 @@ public class GraphBuilder {
 	
 	private NodeIdFactory nodeIdFactory;
 	
-	private HashSet<String> visitedSourceTargetPairs; 
+	// pairs of node indexes (see getPairKey) that are already linked or checked in updateLinks
+	private HashSet<Long> visitedSourceTargetPairs; 
+	private HashMap<String, Integer> nodeIndexes;
 
 	// HashMaps
 	
@@ -112,7 +122,8 @@ public class GraphBuilder {
 
 		this.graph = new DirectedWeightedMultigraph<Node, DefaultLink>(DefaultLink.class);
 		
-		this.visitedSourceTargetPairs = new HashSet<String>();
+		this.visitedSourceTargetPairs = new HashSet<Long>();
+		this.nodeIndexes = new HashMap<String, Integer>();
 			
 		this.modelIds = new HashSet<String>();
 		this.linkCountMap = new HashMap<String, Integer>();
@@ -135,7 +146,7 @@ public class GraphBuilder {
 			this.addNode(node);
 			// building NodeIdFactory
 			if (node.getLabel() != null) {
-				nodeIdFactory.getNodeId(node.getUri());
+				nodeIdFactory.reserveNodeId(node.getUri(), node.getId());
 			}						
 		}
 		
@@ -155,6 +166,53 @@ public class GraphBuilder {
 		logger.debug("graph has been loaded.");
 	}
 	
+	/**
+	 * creates a copy of @param graphBuilder that can be changed without changing the original one.
+	 * The copy has its own graph and hashmaps but shares the node and link objects, 
+	 * which are replaced with replaceWithCopy before they are changed. 
+	 * Unlike loading a graph, it does not index the nodes and links again.
+	 * @param ontologyManager
+	 * @param graphBuilder
+	 */
+	public GraphBuilder(OntologyManager ontologyManager, GraphBuilder graphBuilder) {
+		
+		this.ontologyManager = ontologyManager;
+		this.nodeIdFactory = new NodeIdFactory(graphBuilder.nodeIdFactory);
+		
+		this.graph = new DirectedWeightedMultigraph<Node, DefaultLink>(DefaultLink.class);
+		for (Node node : graphBuilder.graph.vertexSet())
+			this.graph.addVertex(node);
+		for (DefaultLink link : graphBuilder.graph.edgeSet())
+			this.graph.addEdge(graphBuilder.graph.getEdgeSource(link), graphBuilder.graph.getEdgeTarget(link), link);
+		
+		this.idToNodeMap = new HashMap<String, Node>(graphBuilder.idToNodeMap);
+		this.idToLinkMap = new HashMap<String, LabeledLink>(graphBuilder.idToLinkMap);
+		this.uriToNodesMap = copyOf(graphBuilder.uriToNodesMap);
+		this.uriToLinksMap = copyOf(graphBuilder.uriToLinksMap);
+		this.typeToNodesMap = copyOf(graphBuilder.typeToNodesMap);
+		this.typeToLinksMap = copyOf(graphBuilder.typeToLinksMap);
+		this.statusToLinksMap = copyOf(graphBuilder.statusToLinksMap);
+		this.uriClosure = new HashMap<String, Set<String>>();
+		for (Entry<String, Set<String>> entry : graphBuilder.uriClosure.entrySet())
+			this.uriClosure.put(entry.getKey(), entry.getValue() == null ? null : new HashSet<String>(entry.getValue()));
+		
+		this.visitedSourceTargetPairs = new HashSet<Long>(graphBuilder.visitedSourceTargetPairs);
+		this.nodeIndexes = new HashMap<String, Integer>(graphBuilder.nodeIndexes);
+		
+		this.modelIds = new HashSet<String>(graphBuilder.modelIds);
+		this.linkCountMap = new HashMap<String, Integer>(graphBuilder.linkCountMap);
+		this.nodeDataPropertyCount = new HashMap<String, Integer>(graphBuilder.nodeDataPropertyCount);
+		this.semanticTypeMatches = copyOf(graphBuilder.semanticTypeMatches);
+		this.numberOfModelLinks = graphBuilder.numberOfModelLinks;
+	}
+	
+	private static <K, V> HashMap<K, Set<V>> copyOf(HashMap<K, Set<V>> map) {
+		HashMap<K, Set<V>> copy = new HashMap<K, Set<V>>();
+		for (Entry<K, Set<V>> entry : map.entrySet())
+			copy.put(entry.getKey(), new HashSet<V>(entry.getValue()));
+		return copy;
+	}
+	
 	public NodeIdFactory getNodeIdFactory() {
 		return nodeIdFactory;
 	}
@@ -163,6 +221,14 @@ public class GraphBuilder {
 		return this.ontologyManager;
 	}
 	
+	/**
+	 * replaces the ontology manager, e.g. by null for a graph builder that is shared 
+	 * and copied by each reader with its own ontology manager.
+	 */
+	public void setOntologyManager(OntologyManager ontologyManager) {
+		this.ontologyManager = ontologyManager;
+	}
+	
 	public DirectedWeightedMultigraph<Node, DefaultLink> getGraph() {
 		return this.graph;
 	}
@@ -313,6 +379,9 @@ public class GraphBuilder {
 		
 		this.idToNodeMap.put(node.getId(), node);
 		
+		if (!this.nodeIndexes.containsKey(node.getId()))
+			this.nodeIndexes.put(node.getId(), this.nodeIndexes.size());
+		
 		Set<Node> nodesWithSameUri = uriToNodesMap.get(node.getUri());
 		if (nodesWithSameUri == null) {
 			nodesWithSameUri = new HashSet<Node>();
@@ -373,7 +442,7 @@ public class GraphBuilder {
 			
 		this.graph.addEdge(source, target, link);
 		
-		this.visitedSourceTargetPairs.add(source.getId() + target.getId());
+		this.visitedSourceTargetPairs.add(getPairKey(source, target));
 		
 		double w = 0.0;
 		if (link instanceof ObjectPropertyLink && ((ObjectPropertyLink)link).getObjectPropertyType() == ObjectPropertyType.Direct)
@@ -461,7 +530,7 @@ public class GraphBuilder {
 			this.numberOfModelLinks++;
 		}
 		
-		this.updateLinkCountMap(link);
+		this.updateLinkCountMap(source, target, link.getUri(), 1);
 		
 		logger.debug("exit>");		
 		return true;
@@ -510,12 +579,16 @@ public class GraphBuilder {
 		
 		logger.debug("removing the link " + link.getId() + "...");
 		
+		Node source = link.getSource();
+		Node target = link.getTarget();
+		
 		if (!this.graph.removeEdge(link))
 			return false;
 
 		// update hashmaps
 
 		if (link instanceof LabeledLink) {
+			LabeledLink labeledLink = (LabeledLink)link;
 			this.idToLinkMap.remove(link.getId());
 	
 			Set<LabeledLink> linksWithSameUri = uriToLinksMap.get(link.getUri());
@@ -529,6 +602,28 @@ public class GraphBuilder {
 			Set<LabeledLink> linksWithSameStatus = statusToLinksMap.get(((LabeledLink)link).getStatus());
 			if (linksWithSameStatus != null) 
 				linksWithSameStatus.remove(link);
+			
+			if (source instanceof InternalNode && target instanceof ColumnNode) {
+				
+				String key = source.getId() + link.getUri();
+				Integer count = this.nodeDataPropertyCount.get(key);
+				if (count != null) {
+					if (count.intValue() <= 1) this.nodeDataPropertyCount.remove(key);
+					else this.nodeDataPropertyCount.put(key, count.intValue() - 1);
+				}
+				
+				key = source.getUri() + link.getUri();
+				Set<SemanticTypeMapping> SemanticTypeMappings = this.semanticTypeMatches.get(key);
+				if (SemanticTypeMappings != null) {
+					SemanticTypeMappings.remove(new SemanticTypeMapping(null, null, (InternalNode)source, labeledLink, (ColumnNode)target));
+					if (SemanticTypeMappings.isEmpty()) this.semanticTypeMatches.remove(key);
+				}
+			}
+			
+			if (labeledLink.getModelIds() != null)
+				this.numberOfModelLinks--;
+			
+			this.updateLinkCountMap(source, target, link.getUri(), -1);
 		}
 		
 		return true;
@@ -585,6 +680,177 @@ public class GraphBuilder {
 		return true;
 	}
 
+	/**
+	 * replaces the link with a copy that has the same source, target and weight.
+	 * A copy of a graph builder shares the link objects with the graph builder it is copied from,
+	 * so it replaces a link before changing it.
+	 * @param link
+	 * @return the copy of the link, or null if the link is not in the graph
+	 */
+	public LabeledLink replaceWithCopy(LabeledLink link) {
+
+		if (link == null || this.idToLinkMap.get(link.getId()) != link) {
+			logger.error("The link is not in the graph.");
+			return null;
+		}
+
+		LabeledLink copy = (LabeledLink)copyLink(link);
+		if (copy == null)
+			return null;
+		
+		Node source = this.graph.getEdgeSource(link);
+		Node target = this.graph.getEdgeTarget(link);
+		double weight = this.graph.getEdgeWeight(link);
+		this.removeLink(link);
+		if (!this.addLink(source, target, copy))
+			return null;
+		this.changeLinkWeight(copy, weight);
+		return copy;
+	}
+
+	/**
+	 * replaces the node with a copy, and the links of the node with copies that connect the copy.
+	 * A copy of a graph builder shares the node and link objects with the graph builder it is copied from,
+	 * and the links keep their source and target, so it replaces a node and its links before changing the node.
+	 * @param node
+	 * @return the copy of the node, or null if the node is not in the graph
+	 */
+	public Node replaceWithCopy(Node node) {
+
+		if (node == null || this.idToNodeMap.get(node.getId()) != node) {
+			logger.error("The node is not in the graph.");
+			return null;
+		}
+
+		DefaultLink[] links = this.graph.edgesOf(node).toArray(new DefaultLink[0]);
+		Node[] sources = new Node[links.length];
+		Node[] targets = new Node[links.length];
+		double[] weights = new double[links.length];
+		for (int i = 0; i < links.length; i++) {
+			sources[i] = this.graph.getEdgeSource(links[i]);
+			targets[i] = this.graph.getEdgeTarget(links[i]);
+			weights[i] = this.graph.getEdgeWeight(links[i]);
+		}
+
+		Node copy = copyNode(node);
+		if (copy == null)
+			return null;
+		
+		// adding the node again does not change the closure of its uri
+		Set<String> closure = this.uriClosure.get(node.getUri());
+		this.removeNode(node);
+		if (!this.addNode(copy))
+			return null;
+		this.uriClosure.put(copy.getUri(), closure);
+
+		for (int i = 0; i < links.length; i++) {
+			DefaultLink linkCopy = copyLink(links[i]);
+			if (linkCopy != null && this.addLink(sources[i] == node ? copy : sources[i], targets[i] == node ? copy : targets[i], linkCopy))
+				this.changeLinkWeight(linkCopy, weights[i]);
+		}
+		return copy;
+	}
+
+	/**
+	 * returns a copy of the node that has its own label and model ids.
+	 */
+	private static Node copyNode(Node node) {
+		
+		Node copy;
+		if (node instanceof InternalNode) {
+			copy = new InternalNode(node.getId(), new Label(node.getLabel()));
+		} else if (node instanceof ColumnNode) {
+			ColumnNode columnNode = (ColumnNode)node;
+			List<SemanticType> crfSuggestedSemanticTypes = columnNode.getCrfSuggestedSemanticTypes() == null ? null :
+				new ArrayList<SemanticType>(columnNode.getCrfSuggestedSemanticTypes());
+			ColumnNode columnCopy = new ColumnNode(node.getId(), columnNode.getHNodeId(), columnNode.getColumnName(), 
+					columnNode.getRdfLiteralType(), crfSuggestedSemanticTypes);
+			columnCopy.setUserSelectedSemanticType(columnNode.getUserSelectedSemanticType());
+			copy = columnCopy;
+		} else if (node instanceof LiteralNode) {
+			copy = new LiteralNode(node.getId(), ((LiteralNode)node).getValue(), ((LiteralNode)node).getDatatype());
+		} else {
+			logger.error("cannot copy a node of the type: " + node.getType().toString());
+			return null;
+		}
+		
+		copy.setModelIds(node.getModelIds() == null ? null : new HashSet<String>(node.getModelIds()));
+		return copy;
+	}
+	
+	/**
+	 * returns a copy of the link that has its own label and model ids.
+	 */
+	private static DefaultLink copyLink(DefaultLink link) {
+		
+		String id = link.getId();
+		DefaultLink copy;
+		if (link instanceof DataPropertyLink) 
+			copy = new DataPropertyLink(id, new Label(((LabeledLink)link).getLabel()));
+		else if (link instanceof ObjectPropertyLink)
+			copy = new ObjectPropertyLink(id, new Label(((LabeledLink)link).getLabel()), ((ObjectPropertyLink)link).getObjectPropertyType());
+		else if (link instanceof SubClassLink)
+			copy = new SubClassLink(id);
+		else if (link instanceof ClassInstanceLink)
+			copy = new ClassInstanceLink(id);
+		else if (link instanceof ColumnSubClassLink)
+			copy = new ColumnSubClassLink(id);
+		else if (link instanceof DataPropertyOfColumnLink)
+			copy = new DataPropertyOfColumnLink(id, ((DataPropertyOfColumnLink)link).getSpecializedColumnHNodeId());
+		else if (link instanceof ObjectPropertySpecializationLink)
+			copy = new ObjectPropertySpecializationLink(id, ((ObjectPropertySpecializationLink)link).getSpecializedLinkId());
+		else if (link instanceof CompactObjectPropertyLink)
+			copy = new CompactObjectPropertyLink(id, ((CompactObjectPropertyLink)link).getObjectPropertyType());
+		else if (link instanceof CompactSubClassLink)
+			copy = new CompactSubClassLink(id);
+		else {
+			logger.error("cannot copy a link of the type: " + link.getType().toString());
+			return null;
+		}
+		
+		if (link instanceof LabeledLink) {
+			LabeledLink labeledLink = (LabeledLink)link;
+			((LabeledLink)copy).setStatus(labeledLink.getStatus());
+			((LabeledLink)copy).setKeyType(labeledLink.getKeyType());
+			((LabeledLink)copy).setModelIds(labeledLink.getModelIds() == null ? null : new HashSet<String>(labeledLink.getModelIds()));
+		}
+		return copy;
+	}
+	
+	public void removeModelId(String modelId) {
+		this.modelIds.remove(modelId);
+	}
+	
+	/**
+	 * adds a node for each uri in the closure of the current nodes that does not have any node in the graph anymore, 
+	 * e.g., after the nodes of a model are removed, and updates the links.
+	 */
+	public void addMissingClosureNodes() {
+		
+		logger.debug("<enter");
+		
+		Set<String> missingUris = new HashSet<String>();
+		for (Entry<String, Set<String>> entry : this.uriClosure.entrySet()) {
+			Set<Node> nodesOfSameUri = this.uriToNodesMap.get(entry.getKey());
+			if (entry.getValue() == null || nodesOfSameUri == null || nodesOfSameUri.isEmpty())
+				continue;
+			for (String c : entry.getValue()) {
+				Set<Node> nodesOfClosureUri = this.uriToNodesMap.get(c);
+				if (nodesOfClosureUri == null || nodesOfClosureUri.isEmpty())
+					missingUris.add(c);
+			}
+		}
+		
+		for (String uri : missingUris) {
+			Node n = new InternalNode(nodeIdFactory.getNodeId(uri), ontologyManager.getUriLabel(uri));
+			addNode(n);
+		}
+		
+		updateLinks();
+		
+		logger.debug("exit>");
+	}
+	
 	public void addClosureAndLinksOfNodes(Set<InternalNode> internalNodes, Set<Node> addedNodes) {
 		
 		logger.debug("<enter");
@@ -780,42 +1046,29 @@ public class GraphBuilder {
 		logger.debug("exit>");
 	}
 
-	private void updateLinkCountMap(DefaultLink link) {
+	private void updateLinkCountMap(Node source, Node target, String linkUri, int delta) {
 
-		String key, sourceUri, targetUri, linkUri;
-		Integer count;
-		Node source, target;
-		
-		source = link.getSource();
-		target = link.getTarget();
+		String sourceUri, targetUri;
 		
 		sourceUri = source.getUri();
 		targetUri = target.getUri();
-		linkUri = link.getUri();
 
 //		if (link instanceof DataPropertyLink) return;
 
 		if (target instanceof InternalNode) {
-			key = "domain:" + sourceUri + ",link:" + linkUri + ",range:" + targetUri;
-			count = this.linkCountMap.get(key);
-			if (count == null) this.linkCountMap.put(key, 1);
-			else this.linkCountMap.put(key, count.intValue() + 1);
-			
-			key = "range:" + targetUri + ",link:" + linkUri ;
-			count = this.linkCountMap.get(key);
-			if (count == null) this.linkCountMap.put(key, 1);
-			else this.linkCountMap.put(key, count.intValue() + 1);
+			updateLinkCount("domain:" + sourceUri + ",link:" + linkUri + ",range:" + targetUri, delta);
+			updateLinkCount("range:" + targetUri + ",link:" + linkUri, delta);
 		}
 		
-		key = "domain:" + sourceUri + ",link:" + linkUri;
-		count = this.linkCountMap.get(key);
-		if (count == null) this.linkCountMap.put(key, 1);
-		else this.linkCountMap.put(key, count.intValue() + 1);
-
-		key = "link:" + linkUri;
-		count = this.linkCountMap.get(key);
-		if (count == null) this.linkCountMap.put(key, 1);
-		else this.linkCountMap.put(key, count.intValue() + 1);
+		updateLinkCount("domain:" + sourceUri + ",link:" + linkUri, delta);
+		updateLinkCount("link:" + linkUri, delta);
+	}
+	
+	private void updateLinkCount(String key, int delta) {
+		Integer count = this.linkCountMap.get(key);
+		int newCount = (count == null ? 0 : count.intValue()) + delta;
+		if (newCount <= 0) this.linkCountMap.remove(key);
+		else this.linkCountMap.put(key, newCount);
 	}
 
 	private HashSet<String> getUriDirectConnections(String uri) {
@@ -962,6 +1215,101 @@ public class GraphBuilder {
 		logger.debug("exit>");
 	}
 	
+	/**
+	 * returns a key for the unordered pair of nodes, built from the indexes of the nodes in the graph
+	 */
+	private long getPairKey(Node n1, Node n2) {
+		long i1 = this.nodeIndexes.get(n1.getId());
+		long i2 = this.nodeIndexes.get(n2.getId());
+		return i1 < i2 ? (i1 << 32) | i2 : (i2 << 32) | i1;
+	}
+	
+	/**
+	 * returns the pairs of positions (i, j) with i < j of the nodes in @param nodes that the ontology can connect,
+	 * encoded as (i << 32) | j and sorted in ascending order.
+	 * Instead of checking all the pairs, it only looks at the classes adjacent to the uri of each node. 
+	 */
+	private long[] getConnectablePairs(List<Node> nodes) {
+		
+		int n = nodes.size();
+		
+		if (ModelingConfiguration.getPropertiesWithoutDomainRange() && 
+				this.ontologyManager.hasDomainlessAndRangelessProperty()) {
+			// all the nodes are connected to each other
+			long[] pairs = new long[n * (n - 1) / 2];
+			int k = 0;
+			for (int i = 0; i < n; i++)
+				for (int j = i + 1; j < n; j++)
+					pairs[k++] = ((long) i << 32) | j;
+			return pairs;
+		}
+
+		HashMap<String, Integer> positions = new HashMap<String, Integer>();
+		for (int i = 0; i < n; i++)
+			positions.put(nodes.get(i).getId(), i);
+
+		HashSet<Long> pairs = new HashSet<Long>();
+		HashMap<String, Set<Integer>> uriPositions = new HashMap<String, Set<Integer>>();
+		List<Integer> connectedToAll = new ArrayList<Integer>();
+		
+		for (int i = 0; i < n; i++) {
+			String uri = nodes.get(i).getUri();
+			
+			if (ModelingConfiguration.getPropertiesDirect()) 
+				addPairs(pairs, i, this.ontologyManager.getRangesOfDirectProperties(uri), positions, uriPositions);
+			
+			if (ModelingConfiguration.getPropertiesIndirect()) 
+				addPairs(pairs, i, this.ontologyManager.getRangesOfIndirectProperties(uri), positions, uriPositions);
+			
+			if (ModelingConfiguration.getPropertiesSubClass()) {
+				HashMap<String, Label> subClasses = this.ontologyManager.getSubClasses(uri, false);
+				if (subClasses != null)
+					addPairs(pairs, i, subClasses.keySet(), positions, uriPositions);
+			}
+			
+			if ((ModelingConfiguration.getPropertiesWithOnlyRange() && this.ontologyManager.isRangeOfDomainlessProperty(uri)) || 
+					(ModelingConfiguration.getPropertiesWithOnlyDomain() && this.ontologyManager.isDomainOfRangelessProperty(uri))) 
+				connectedToAll.add(i);
+		}
+		
+		for (int i : connectedToAll) {
+			for (int j = 0; j < n; j++) {
+				if (j == i) continue;
+				pairs.add(i < j ? ((long) i << 32) | j : ((long) j << 32) | i);
+			}
+		}
+		
+		long[] result = new long[pairs.size()];
+		int k = 0;
+		for (Long p : pairs)
+			result[k++] = p;
+		Arrays.sort(result);
+		return result;
+	}
+	
+	private void addPairs(HashSet<Long> pairs, int i, Set<String> uris, 
+			HashMap<String, Integer> positions, HashMap<String, Set<Integer>> uriPositions) {
+		
+		for (String uri : uris) {
+			Set<Integer> targets = uriPositions.get(uri);
+			if (targets == null) {
+				targets = new HashSet<Integer>();
+				Set<Node> nodesWithUri = this.uriToNodesMap.get(uri);
+				if (nodesWithUri != null) {
+					for (Node node : nodesWithUri) {
+						Integer j = positions.get(node.getId());
+						if (j != null) targets.add(j);
+					}
+				}
+				uriPositions.put(uri, targets);
+			}
+			for (int j : targets) {
+				if (j == i) continue;
+				pairs.add(i < j ? ((long) i << 32) | j : ((long) j << 32) | i);
+			}
+		}
+	}
+	
 	private void updateLinks() {
 		
 		logger.debug("<enter");
@@ -973,6 +1321,9 @@ public class GraphBuilder {
 		List<Node> nodes = new ArrayList<Node>(nodeSet);
 		logger.debug("number of internal nodes: " + nodes.size());
 		
+		long[] pairs = getConnectablePairs(nodes);
+		logger.debug("number of connectable pairs: " + pairs.length);
+		
 		Node source;
 		Node target;
 		String sourceUri;
@@ -980,97 +1331,90 @@ public class GraphBuilder {
 
 		String id = null;
 		
-		for (int i = 0; i < nodes.size(); i++) {
+		for (long pair : pairs) {
 			
-			Node n1 = nodes.get(i);
-			for (int j = i+1; j < nodes.size(); j++) {
+			Node n1 = nodes.get((int) (pair >>> 32));
+			Node n2 = nodes.get((int) pair);
 
-				Node n2 = nodes.get(j);
-
-				if (n1.equals(n2))
-					continue;
-
-				if (this.visitedSourceTargetPairs.contains(n1.getId() + n2.getId()))
-					continue;
-				if (this.visitedSourceTargetPairs.contains(n2.getId() + n1.getId()))
-					continue;
-				
-				source = n1;
-				target = n2;
+			long pairKey = getPairKey(n1, n2);
+			if (this.visitedSourceTargetPairs.contains(pairKey))
+				continue;
+			
+			source = n1;
+			target = n2;
 
-				sourceUri = source.getUri();
-				targetUri = target.getUri();
+			sourceUri = source.getUri();
+			targetUri = target.getUri();
 
-				id = LinkIdFactory.getLinkId(Uris.DEFAULT_LINK_URI, source.getId(), target.getId());
-				CompactLink link = null; 
+			id = LinkIdFactory.getLinkId(Uris.DEFAULT_LINK_URI, source.getId(), target.getId());
+			CompactLink link = null; 
 
-				boolean connected = false;
-				
-				// order of adding the links is based on the ascending sort of their weight value
-				
-				if (ModelingConfiguration.getPropertiesDirect()) {
-					if (this.ontologyManager.isConnectedByDirectProperty(sourceUri, targetUri) ||
-							this.ontologyManager.isConnectedByDirectProperty(targetUri, sourceUri)) {
-						logger.debug( sourceUri + " and " + targetUri + " are connected by a direct object property.");
-						link = new CompactObjectPropertyLink(id, ObjectPropertyType.Direct);
-						addLink(source, target, link);
-						connected = true;
-					}
+			boolean connected = false;
+			
+			// order of adding the links is based on the ascending sort of their weight value
+			
+			if (ModelingConfiguration.getPropertiesDirect()) {
+				if (this.ontologyManager.isConnectedByDirectProperty(sourceUri, targetUri) ||
+						this.ontologyManager.isConnectedByDirectProperty(targetUri, sourceUri)) {
+					logger.debug( sourceUri + " and " + targetUri + " are connected by a direct object property.");
+					link = new CompactObjectPropertyLink(id, ObjectPropertyType.Direct);
+					addLink(source, target, link);
+					connected = true;
 				}
-				
-				if (ModelingConfiguration.getPropertiesIndirect() && !connected) {
-					if (this.ontologyManager.isConnectedByIndirectProperty(sourceUri, targetUri) ||
-							this.ontologyManager.isConnectedByIndirectProperty(targetUri, sourceUri)) { 
-						logger.debug( sourceUri + " and " + targetUri + " are connected by an indirect object property.");
-						link = new CompactObjectPropertyLink(id, ObjectPropertyType.Indirect);
-						addLink(source, target, link);
-						connected = true;
-					}
+			}
+			
+			if (ModelingConfiguration.getPropertiesIndirect() && !connected) {
+				if (this.ontologyManager.isConnectedByIndirectProperty(sourceUri, targetUri) ||
+						this.ontologyManager.isConnectedByIndirectProperty(targetUri, sourceUri)) { 
+					logger.debug( sourceUri + " and " + targetUri + " are connected by an indirect object property.");
+					link = new CompactObjectPropertyLink(id, ObjectPropertyType.Indirect);
+					addLink(source, target, link);
+					connected = true;
 				}
-				
-				if (ModelingConfiguration.getPropertiesWithOnlyRange() && !connected) {
-					if (this.ontologyManager.isConnectedByDomainlessProperty(sourceUri, targetUri) ||
-							this.ontologyManager.isConnectedByDomainlessProperty(targetUri, sourceUri)) { 
-						logger.debug( sourceUri + " and " + targetUri + " are connected by an object property whose range is " + sourceUri + " or " + targetUri);
-						link = new CompactObjectPropertyLink(id, ObjectPropertyType.WithOnlyRange);
-						addLink(source, target, link);
-						connected = true;
-					}
+			}
+			
+			if (ModelingConfiguration.getPropertiesWithOnlyRange() && !connected) {
+				if (this.ontologyManager.isConnectedByDomainlessProperty(sourceUri, targetUri) ||
+						this.ontologyManager.isConnectedByDomainlessProperty(targetUri, sourceUri)) { 
+					logger.debug( sourceUri + " and " + targetUri + " are connected by an object property whose range is " + sourceUri + " or " + targetUri);
+					link = new CompactObjectPropertyLink(id, ObjectPropertyType.WithOnlyRange);
+					addLink(source, target, link);
+					connected = true;
 				}
-				
-				if (ModelingConfiguration.getPropertiesWithOnlyDomain() && !connected) {
-					if (this.ontologyManager.isConnectedByRangelessProperty(sourceUri, targetUri) ||
-							this.ontologyManager.isConnectedByRangelessProperty(targetUri, sourceUri)) { 
-						logger.debug( sourceUri + " and " + targetUri + " are connected by an object property whose domain is " + sourceUri + " or " + targetUri);
-						link = new CompactObjectPropertyLink(id, ObjectPropertyType.WithOnlyDomain);
-						addLink(source, target, link);	
-						connected = true;
-					}
+			}
+			
+			if (ModelingConfiguration.getPropertiesWithOnlyDomain() && !connected) {
+				if (this.ontologyManager.isConnectedByRangelessProperty(sourceUri, targetUri) ||
+						this.ontologyManager.isConnectedByRangelessProperty(targetUri, sourceUri)) { 
+					logger.debug( sourceUri + " and " + targetUri + " are connected by an object property whose domain is " + sourceUri + " or " + targetUri);
+					link = new CompactObjectPropertyLink(id, ObjectPropertyType.WithOnlyDomain);
+					addLink(source, target, link);	
+					connected = true;
 				}
-				
-				if (ModelingConfiguration.getPropertiesSubClass() && !connected) {
-					if (this.ontologyManager.isSubClass(sourceUri, targetUri, false) ||
-							this.ontologyManager.isSubClass(targetUri, sourceUri, false)) {
-						logger.debug( sourceUri + " and " + targetUri + " are connected by a subClassOf relation.");
-						link = new CompactSubClassLink(id);
-						addLink(source, target, link);
-						connected = true;
-					}
+			}
+			
+			if (ModelingConfiguration.getPropertiesSubClass() && !connected) {
+				if (this.ontologyManager.isSubClass(sourceUri, targetUri, false) ||
+						this.ontologyManager.isSubClass(targetUri, sourceUri, false)) {
+					logger.debug( sourceUri + " and " + targetUri + " are connected by a subClassOf relation.");
+					link = new CompactSubClassLink(id);
+					addLink(source, target, link);
+					connected = true;
 				}
-				
-				if (ModelingConfiguration.getPropertiesWithoutDomainRange() && !connected) {
-					if (this.ontologyManager.isConnectedByDomainlessAndRangelessProperty(sourceUri, targetUri)) {// ||
+			}
+			
+			if (ModelingConfiguration.getPropertiesWithoutDomainRange() && !connected) {
+				if (this.ontologyManager.isConnectedByDomainlessAndRangelessProperty(sourceUri, targetUri)) {// ||
 	//						this.ontologyManager.isConnectedByDomainlessAndRangelessProperty(targetUri, sourceUri)) { 
-						link = new CompactObjectPropertyLink(id, ObjectPropertyType.WithoutDomainAndRange);
-						addLink(source, target, link);
-						connected = true;
-					}
+					link = new CompactObjectPropertyLink(id, ObjectPropertyType.WithoutDomainAndRange);
+					addLink(source, target, link);
+					connected = true;
 				}
+			}
 
-				if (!connected) {
-					this.visitedSourceTargetPairs.add(n1.getId() + n2.getId());
-					logger.debug("did not put a link between (" + n1.getId() + ", " + n2.getId() + ")");
-				}
+			if (!connected) {
+				this.visitedSourceTargetPairs.add(pairKey);
+				logger.debug("did not put a link between (" + n1.getId() + ", " + n2.getId() + ")");
 			}
 		}
 
@@ -0,0 +1,476 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.modeling.alignment;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.rep.alignment.ClassInstanceLink;
+import edu.isi.karma.rep.alignment.ColumnNode;
+import edu.isi.karma.rep.alignment.ColumnSubClassLink;
+import edu.isi.karma.rep.alignment.CompactObjectPropertyLink;
+import edu.isi.karma.rep.alignment.CompactSubClassLink;
+import edu.isi.karma.rep.alignment.DataPropertyLink;
+import edu.isi.karma.rep.alignment.DataPropertyOfColumnLink;
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.LabeledLink;
+import edu.isi.karma.rep.alignment.LinkKeyInfo;
+import edu.isi.karma.rep.alignment.LinkStatus;
+import edu.isi.karma.rep.alignment.LinkType;
+import edu.isi.karma.rep.alignment.Node;
+import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertySpecializationLink;
+import edu.isi.karma.rep.alignment.ObjectPropertyType;
+import edu.isi.karma.rep.alignment.SemanticType;
+import edu.isi.karma.rep.alignment.SemanticType.Origin;
+import edu.isi.karma.rep.alignment.SubClassLink;
+
+/**
+ * Reads and writes a graph in a binary snapshot that loads much faster than the json
+ * format of GraphUtil, which is still used for interchange. The snapshot keeps the same
+ * information as the json: nodes and links only keep the uri of their labels.
+ *
+ * Layout (big-endian): MAGIC, VERSION, the string table, the model id sets, the semantic
+ * types, the node arrays, the column node data and the link arrays. Every string is stored
+ * once in the string table and referred to by its index, -1 meaning null. Links refer to
+ * their source and target by the index of the node in the node arrays.
+ * The snapshot is read into a buffer at once.
+ */
+public class GraphSnapshotUtil {
+
+	private static Logger logger = LoggerFactory.getLogger(GraphSnapshotUtil.class);
+
+	private static final int MAGIC = 0x4B47534E; // "KGSN"
+	private static final int VERSION = 1;
+
+	private static final byte INTERNAL_NODE = 0;
+	private static final byte COLUMN_NODE = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public static void exportSnapshot(DirectedWeightedMultigraph<Node, DefaultLink> graph, String filename) throws IOException {
+
+		logger.info("exporting the graph to a binary snapshot ...");
+
+		List<Node> nodes = new ArrayList<Node>(graph.vertexSet());
+		List<DefaultLink> links = new ArrayList<DefaultLink>(graph.edgeSet());
+
+		Interner<String> strings = new Interner<String>();
+		Interner<Set<String>> modelIdSets = new Interner<Set<String>>();
+		Interner<SemanticType> semanticTypes = new Interner<SemanticType>();
+		HashMap<Node, Integer> nodeIndexes = new HashMap<Node, Integer>();
+
+		int n = nodes.size();
+		byte[] nodeKinds = new byte[n];
+		int[] nodeIds = new int[n];
+		int[] nodeLabels = new int[n];
+		int[] nodeModelIds = new int[n];
+		List<ColumnNode> columnNodes = new ArrayList<ColumnNode>();
+
+		for (int i = 0; i < n; i++) {
+			Node node = nodes.get(i);
+			nodeIndexes.put(node, i);
+			nodeKinds[i] = node instanceof ColumnNode ? COLUMN_NODE : INTERNAL_NODE;
+			nodeIds[i] = strings.indexOf(node.getId());
+			nodeLabels[i] = strings.indexOf(getUri(node.getLabel()));
+			nodeModelIds[i] = internModelIds(modelIdSets, strings, node.getModelIds());
+			if (node instanceof ColumnNode) {
+				ColumnNode cn = (ColumnNode)node;
+				columnNodes.add(cn);
+				strings.indexOf(cn.getHNodeId());
+				strings.indexOf(cn.getColumnName());
+				strings.indexOf(getUri(cn.getRdfLiteralType()));
+				internSemanticType(semanticTypes, strings, cn.getUserSelectedSemanticType());
+				if (cn.getCrfSuggestedSemanticTypes() != null)
+					for (SemanticType st : cn.getCrfSuggestedSemanticTypes())
+						internSemanticType(semanticTypes, strings, st);
+			}
+		}
+
+		int m = links.size();
+		int[] linkTypes = new int[m];
+		int[] linkIds = new int[m];
+		int[] linkSources = new int[m];
+		int[] linkTargets = new int[m];
+		double[] linkWeights = new double[m];
+		int[] linkLabels = new int[m];
+		int[] linkObjectPropertyTypes = new int[m];
+		int[] linkHNodeIds = new int[m];
+		int[] linkSpecializedLinkIds = new int[m];
+		int[] linkStatuses = new int[m];
+		int[] linkKeyInfos = new int[m];
+		int[] linkModelIds = new int[m];
+
+		for (int i = 0; i < m; i++) {
+			DefaultLink link = links.get(i);
+			linkTypes[i] = strings.indexOf(link.getType().name());
+			linkIds[i] = strings.indexOf(link.getId());
+			linkSources[i] = nodeIndexes.get(graph.getEdgeSource(link));
+			linkTargets[i] = nodeIndexes.get(graph.getEdgeTarget(link));
+			linkWeights[i] = graph.getEdgeWeight(link);
+			linkLabels[i] = -1;
+			linkObjectPropertyTypes[i] = -1;
+			linkHNodeIds[i] = -1;
+			linkSpecializedLinkIds[i] = -1;
+			linkStatuses[i] = -1;
+			linkKeyInfos[i] = -1;
+			linkModelIds[i] = -1;
+			if (link instanceof CompactObjectPropertyLink) {
+				linkObjectPropertyTypes[i] = strings.indexOf(getName(((CompactObjectPropertyLink)link).getObjectPropertyType()));
+			} else if (link instanceof LabeledLink) {
+				LabeledLink l = (LabeledLink)link;
+				linkLabels[i] = strings.indexOf(getUri(l.getLabel()));
+				if (l instanceof DataPropertyOfColumnLink)
+					linkHNodeIds[i] = strings.indexOf(((DataPropertyOfColumnLink)l).getSpecializedColumnHNodeId());
+				if (l instanceof ObjectPropertyLink)
+					linkObjectPropertyTypes[i] = strings.indexOf(getName(((ObjectPropertyLink)l).getObjectPropertyType()));
+				if (l instanceof ObjectPropertySpecializationLink)
+					linkSpecializedLinkIds[i] = strings.indexOf(((ObjectPropertySpecializationLink)l).getSpecializedLinkId());
+				linkStatuses[i] = strings.indexOf(getName(l.getStatus()));
+				linkKeyInfos[i] = strings.indexOf(getName(l.getKeyType()));
+				linkModelIds[i] = internModelIds(modelIdSets, strings, l.getModelIds());
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(strings.size());
+			for (String s : strings.values()) {
+				byte[] bytes = s.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(modelIdSets.size());
+			for (Set<String> modelIds : modelIdSets.values()) {
+				out.writeInt(modelIds.size());
+				for (String s : modelIds)
+					out.writeInt(strings.indexOf(s));
+			}
+
+			out.writeInt(semanticTypes.size());
+			for (SemanticType st : semanticTypes.values()) {
+				out.writeInt(strings.indexOf(st.getHNodeId()));
+				out.writeInt(strings.indexOf(getUri(st.getDomain())));
+				out.writeInt(strings.indexOf(getUri(st.getType())));
+				out.writeInt(strings.indexOf(getName(st.getOrigin())));
+				out.writeBoolean(st.isPartOfKey());
+				out.writeDouble(st.getConfidenceScore() == null ? Double.NaN : st.getConfidenceScore().doubleValue());
+			}
+
+			out.writeInt(n);
+			out.write(nodeKinds);
+			writeInts(out, nodeIds);
+			writeInts(out, nodeLabels);
+			writeInts(out, nodeModelIds);
+
+			for (ColumnNode cn : columnNodes) {
+				out.writeInt(strings.indexOf(cn.getHNodeId()));
+				out.writeInt(strings.indexOf(cn.getColumnName()));
+				out.writeInt(strings.indexOf(getUri(cn.getRdfLiteralType())));
+				out.writeInt(semanticTypes.indexOf(cn.getUserSelectedSemanticType()));
+				List<SemanticType> crfSuggestedSemanticTypes = cn.getCrfSuggestedSemanticTypes();
+				if (crfSuggestedSemanticTypes == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(crfSuggestedSemanticTypes.size());
+					for (SemanticType st : crfSuggestedSemanticTypes)
+						out.writeInt(semanticTypes.indexOf(st));
+				}
+			}
+
+			out.writeInt(m);
+			writeInts(out, linkTypes);
+			writeInts(out, linkIds);
+			writeInts(out, linkSources);
+			writeInts(out, linkTargets);
+			for (double w : linkWeights)
+				out.writeDouble(w);
+			writeInts(out, linkLabels);
+			writeInts(out, linkObjectPropertyTypes);
+			writeInts(out, linkHNodeIds);
+			writeInts(out, linkSpecializedLinkIds);
+			writeInts(out, linkStatuses);
+			writeInts(out, linkKeyInfos);
+			writeInts(out, linkModelIds);
+		} finally {
+			out.close();
+		}
+
+		logger.info("export is done.");
+	}
+
+	/**
+	 * @return the graph in the snapshot, or null if the file is not a snapshot of the current version
+	 */
+	public static DirectedWeightedMultigraph<Node, DefaultLink> importSnapshot(String filename) throws IOException {
+
+		// the file is read at once instead of being mapped, since a mapped file stays open 
+		// until the buffer is garbage collected and cannot be replaced on Windows until then
+		ByteBuffer buffer;
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("the graph snapshot " + filename + " is too large.");
+			buffer = ByteBuffer.allocate((int)channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1);
+		} finally {
+			in.close();
+		}
+		buffer.flip();
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			logger.error(filename + " is not a graph snapshot.");
+			return null;
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			logger.info("the graph snapshot " + filename + " has version " + version + " instead of " + VERSION + ".");
+			return null;
+		}
+
+		String[] strings = new String[buffer.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, UTF8);
+		}
+
+		int[][] modelIdSets = new int[buffer.getInt()][];
+		for (int i = 0; i < modelIdSets.length; i++)
+			modelIdSets[i] = readInts(buffer, buffer.getInt());
+
+		SemanticType[] semanticTypes = new SemanticType[buffer.getInt()];
+		for (int i = 0; i < semanticTypes.length; i++) {
+			String hNodeId = getString(strings, buffer.getInt());
+			Label domain = getLabel(strings, buffer.getInt());
+			Label type = getLabel(strings, buffer.getInt());
+			String origin = getString(strings, buffer.getInt());
+			boolean isPartOfKey = buffer.get() != 0;
+			double confidenceScore = buffer.getDouble();
+			semanticTypes[i] = new SemanticType(hNodeId, type, domain,
+					origin == null ? null : Origin.valueOf(origin),
+					Double.isNaN(confidenceScore) ? null : new Double(confidenceScore),
+					isPartOfKey);
+		}
+
+		DirectedWeightedMultigraph<Node, DefaultLink> graph =
+				new DirectedWeightedMultigraph<Node, DefaultLink>(LabeledLink.class);
+
+		int n = buffer.getInt();
+		byte[] nodeKinds = new byte[n];
+		buffer.get(nodeKinds);
+		int[] nodeIds = readInts(buffer, n);
+		int[] nodeLabels = readInts(buffer, n);
+		int[] nodeModelIds = readInts(buffer, n);
+
+		Node[] nodes = new Node[n];
+		for (int i = 0; i < n; i++) {
+			if (nodeKinds[i] == COLUMN_NODE) {
+				String hNodeId = getString(strings, buffer.getInt());
+				String columnName = getString(strings, buffer.getInt());
+				Label rdfLiteralType = getLabel(strings, buffer.getInt());
+				ColumnNode cn = new ColumnNode(getString(strings, nodeIds[i]), hNodeId, columnName, rdfLiteralType);
+				int userSelectedSemanticType = buffer.getInt();
+				cn.setUserSelectedSemanticType(userSelectedSemanticType == -1 ? null : semanticTypes[userSelectedSemanticType]);
+				int crfCount = buffer.getInt();
+				if (crfCount != -1) {
+					List<SemanticType> crfSuggestedSemanticTypes = new ArrayList<SemanticType>(crfCount);
+					for (int j = 0; j < crfCount; j++) {
+						int st = buffer.getInt();
+						crfSuggestedSemanticTypes.add(st == -1 ? null : semanticTypes[st]);
+					}
+					cn.setCrfSuggestedSemanticTypes(crfSuggestedSemanticTypes);
+				}
+				nodes[i] = cn;
+			} else {
+				nodes[i] = new InternalNode(getString(strings, nodeIds[i]), getLabel(strings, nodeLabels[i]));
+			}
+			nodes[i].setModelIds(getModelIds(strings, modelIdSets, nodeModelIds[i]));
+			graph.addVertex(nodes[i]);
+		}
+
+		int m = buffer.getInt();
+		int[] linkTypes = readInts(buffer, m);
+		int[] linkIds = readInts(buffer, m);
+		int[] linkSources = readInts(buffer, m);
+		int[] linkTargets = readInts(buffer, m);
+		double[] linkWeights = new double[m];
+		buffer.asDoubleBuffer().get(linkWeights);
+		buffer.position(buffer.position() + 8 * m);
+		int[] linkLabels = readInts(buffer, m);
+		int[] linkObjectPropertyTypes = readInts(buffer, m);
+		int[] linkHNodeIds = readInts(buffer, m);
+		int[] linkSpecializedLinkIds = readInts(buffer, m);
+		int[] linkStatuses = readInts(buffer, m);
+		int[] linkKeyInfos = readInts(buffer, m);
+		int[] linkModelIds = readInts(buffer, m);
+
+		for (int i = 0; i < m; i++) {
+
+			LinkType type = LinkType.valueOf(strings[linkTypes[i]]);
+			String id = getString(strings, linkIds[i]);
+			Label label = getLabel(strings, linkLabels[i]);
+			String objectPropertyType = getString(strings, linkObjectPropertyTypes[i]);
+			String keyInfo = getString(strings, linkKeyInfos[i]);
+
+	    	DefaultLink l = null;
+	    	if (type == LinkType.ClassInstanceLink) {
+	    		l = new ClassInstanceLink(id, keyInfo == null ? null : LinkKeyInfo.valueOf(keyInfo));
+	    	} else if (type == LinkType.ColumnSubClassLink) {
+	    		l = new ColumnSubClassLink(id);
+	    	} else if (type == LinkType.DataPropertyLink) {
+	    		l = new DataPropertyLink(id, label, LinkKeyInfo.PartOfKey.name().equals(keyInfo));
+	    	} else if (type == LinkType.DataPropertyOfColumnLink) {
+	    		l = new DataPropertyOfColumnLink(id, getString(strings, linkHNodeIds[i]));
+	    	} else if (type == LinkType.ObjectPropertyLink) {
+	    		l = new ObjectPropertyLink(id, label, objectPropertyType == null ? null : ObjectPropertyType.valueOf(objectPropertyType));
+	    	} else if (type == LinkType.ObjectPropertySpecializationLink) {
+	    		l = new ObjectPropertySpecializationLink(id, getString(strings, linkSpecializedLinkIds[i]));
+	    	} else if (type == LinkType.SubClassLink) {
+	    		l = new SubClassLink(id);
+	    	} else if (type == LinkType.CompactObjectPropertyLink) {
+	    		l = new CompactObjectPropertyLink(id, objectPropertyType == null ? null : ObjectPropertyType.valueOf(objectPropertyType));
+	    	} else if (type == LinkType.CompactSubClassLink) {
+	    		l = new CompactSubClassLink(id);
+	    	} else {
+	    		logger.error("cannot instanciate a link from the type: " + type.toString());
+	    		continue;
+	    	}
+
+	    	if (l instanceof LabeledLink) {
+	    		String status = getString(strings, linkStatuses[i]);
+		    	((LabeledLink)l).setStatus(status == null ? null : LinkStatus.valueOf(status));
+		    	((LabeledLink)l).setModelIds(getModelIds(strings, modelIdSets, linkModelIds[i]));
+	    	}
+
+    		graph.addEdge(nodes[linkSources[i]], nodes[linkTargets[i]], l);
+    		graph.setEdgeWeight(l, linkWeights[i]);
+		}
+
+		return graph;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int v : values)
+			out.writeInt(v);
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4 * count);
+		return values;
+	}
+
+	private static String getUri(Label label) {
+		return label == null ? null : label.getUri();
+	}
+
+	private static String getName(Enum<?> e) {
+		return e == null ? null : e.name();
+	}
+
+	private static String getString(String[] strings, int index) {
+		return index == -1 ? null : strings[index];
+	}
+
+	private static Label getLabel(String[] strings, int index) {
+		return index == -1 ? null : new Label(strings[index]);
+	}
+
+	private static Set<String> getModelIds(String[] strings, int[][] modelIdSets, int index) {
+		if (index == -1)
+			return null;
+		Set<String> modelIds = new HashSet<String>();
+		for (int s : modelIdSets[index])
+			modelIds.add(strings[s]);
+		return modelIds;
+	}
+
+	private static int internModelIds(Interner<Set<String>> modelIdSets, Interner<String> strings, Set<String> modelIds) {
+		if (modelIds == null)
+			return -1;
+		for (String s : modelIds)
+			strings.indexOf(s);
+		return modelIdSets.indexOf(new HashSet<String>(modelIds));
+	}
+
+	private static void internSemanticType(Interner<SemanticType> semanticTypes, Interner<String> strings, SemanticType st) {
+		if (st == null)
+			return;
+		semanticTypes.indexOf(st);
+		strings.indexOf(st.getHNodeId());
+		strings.indexOf(getUri(st.getDomain()));
+		strings.indexOf(getUri(st.getType()));
+		strings.indexOf(getName(st.getOrigin()));
+	}
+
+	/**
+	 * gives each distinct value an index in the order in which the values are first seen
+	 */
+	private static class Interner<T> {
+
+		private Map<T, Integer> indexes = new LinkedHashMap<T, Integer>();
+
+		int indexOf(T value) {
+			if (value == null)
+				return -1;
+			Integer index = indexes.get(value);
+			if (index == null) {
+				index = indexes.size();
+				indexes.put(value, index);
+			}
+			return index;
+		}
+
+		int size() {
+			return indexes.size();
+		}
+
+		Set<T> values() {
+			return indexes.keySet();
+		}
+	}
+}
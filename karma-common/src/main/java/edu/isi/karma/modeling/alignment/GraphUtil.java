@@ -392,8 +392,8 @@ public class GraphUtil {
 			writeGraph(graph, writer);
 		} catch (Exception e) {
 			logger.error("error in writing the model in json!");
-	    	e.printStackTrace();
-	     } finally {
+			throw new IOException("error in writing the graph to " + filename, e);
+		} finally {
 			writer.close();
 		}
 		logger.info("export is done.");
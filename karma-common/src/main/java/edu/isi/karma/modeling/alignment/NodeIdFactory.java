@@ -25,8 +25,15 @@ import java.util.HashMap;
 
 public class NodeIdFactory {
 
-	private HashMap<String, Integer> nodeUris = new HashMap<String, Integer>();
+	private HashMap<String, Integer> nodeUris;
 	
+	public NodeIdFactory() {
+		this.nodeUris = new HashMap<String, Integer>();
+	}
+	
+	public NodeIdFactory(NodeIdFactory nodeIdFactory) {
+		this.nodeUris = new HashMap<String, Integer>(nodeIdFactory.nodeUris);
+	}
 
 	public String getNodeId(String uri) {
 		
@@ -48,6 +55,27 @@ public class NodeIdFactory {
 		return id;
 	}
 
+	/**
+	 * makes sure that the next ids of @param uri come after @param id, 
+	 * e.g., when loading a graph from which some nodes have been removed.
+	 */
+	public void reserveNodeId(String uri, String id) {
+		
+		int index = -1;
+		if (uri != null && id != null && id.startsWith(uri)) {
+			try {
+				index = Integer.parseInt(id.substring(uri.length()));
+			} catch (NumberFormatException e) {
+			}
+		}
+		
+		if (index == -1) {
+			getNodeId(uri);
+		} else if (index > lastIndexOf(uri)) {
+			nodeUris.put(uri, index);
+		}
+	}
+
 	public boolean duplicateUri(String uriString) {
 		return this.nodeUris.containsKey(uriString);
 	}
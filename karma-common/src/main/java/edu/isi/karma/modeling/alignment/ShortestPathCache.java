@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This code was developed by the Information Integration Group as part
+ * of the Karma project at the Information Sciences Institute of the
+ * University of Southern California.  For more information, publications,
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.modeling.alignment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.jgrapht.Graphs;
+import org.jgrapht.UndirectedGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.Node;
+
+/**
+ * Caches the shortest paths from the nodes of a graph, so that the Steiner trees of
+ * several sets of Steiner nodes that share nodes do not compute the same paths again.
+ *
+ * The paths from a node are computed once with Dijkstra's algorithm, which needs the
+ * link weights to be non-negative. The cache is only valid as long as the graph and
+ * its link weights do not change; a new cache should be created for each version of the graph.
+ * The least recently used nodes are removed when the cache has the paths from more than
+ * maxSources nodes. The cache is not thread-safe.
+ */
+public class ShortestPathCache {
+
+	private static Logger logger = LoggerFactory.getLogger(ShortestPathCache.class);
+
+	/**
+	 * the number of distances the cache keeps when the number of sources is not given
+	 */
+	private static final int DEFAULT_MAX_ENTRIES = 1000000;
+	private static final int MIN_SOURCES = 16;
+
+	private final UndirectedGraph<Node, DefaultLink> graph;
+	private final LinkedHashMap<Node, ShortestPaths> pathsBySource;
+
+	private int hits = 0;
+	private int misses = 0;
+
+	public ShortestPathCache(UndirectedGraph<Node, DefaultLink> graph) {
+		this(graph, Math.max(MIN_SOURCES, DEFAULT_MAX_ENTRIES / Math.max(1, graph.vertexSet().size())));
+	}
+
+	public ShortestPathCache(UndirectedGraph<Node, DefaultLink> graph, final int maxSources) {
+		this.graph = graph;
+		this.pathsBySource = new LinkedHashMap<Node, ShortestPaths>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Node, ShortestPaths> eldest) {
+				return size() > maxSources;
+			}
+		};
+	}
+
+	public UndirectedGraph<Node, DefaultLink> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the cost of the shortest path between @param source and @param target,
+	 * or Double.POSITIVE_INFINITY if there is no path between them.
+	 */
+	public double getCost(Node source, Node target) {
+		Double cost = getShortestPaths(source).costs.get(target);
+		return cost == null ? Double.POSITIVE_INFINITY : cost.doubleValue();
+	}
+
+	/**
+	 * @return the links of the shortest path from @param source to @param target,
+	 * or null if there is no path between them.
+	 */
+	public List<DefaultLink> getPathEdgeList(Node source, Node target) {
+		ShortestPaths paths = getShortestPaths(source);
+		if (!paths.costs.containsKey(target))
+			return null;
+
+		if (source.equals(target))
+			return Collections.emptyList();
+
+		LinkedList<DefaultLink> pathEdges = new LinkedList<DefaultLink>();
+		Node n = target;
+		while (!n.equals(source)) {
+			DefaultLink e = paths.previousLinks.get(n);
+			pathEdges.addFirst(e);
+			n = Graphs.getOppositeVertex(graph, e, n);
+		}
+		return pathEdges;
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	private ShortestPaths getShortestPaths(Node source) {
+		ShortestPaths paths = pathsBySource.get(source);
+		if (paths == null) {
+			misses ++;
+			paths = computeShortestPaths(source);
+			pathsBySource.put(source, paths);
+		} else {
+			hits ++;
+		}
+		return paths;
+	}
+
+	private ShortestPaths computeShortestPaths(Node source) {
+
+		ShortestPaths paths = new ShortestPaths();
+		if (!graph.containsVertex(source)) {
+			logger.error("the node " + source.getId() + " does not exist in the graph.");
+			return paths;
+		}
+
+		HashMap<Node, Double> distances = new HashMap<Node, Double>();
+		PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>();
+		distances.put(source, 0.0);
+		queue.add(new QueueEntry(source, 0.0));
+
+		while (!queue.isEmpty()) {
+			QueueEntry entry = queue.poll();
+			if (paths.costs.containsKey(entry.node))
+				continue;
+			paths.costs.put(entry.node, entry.cost);
+
+			for (DefaultLink e : graph.edgesOf(entry.node)) {
+				Node n = Graphs.getOppositeVertex(graph, e, entry.node);
+				if (paths.costs.containsKey(n))
+					continue;
+				double cost = entry.cost + graph.getEdgeWeight(e);
+				Double current = distances.get(n);
+				if (current == null || cost < current.doubleValue()) {
+					distances.put(n, cost);
+					paths.previousLinks.put(n, e);
+					queue.add(new QueueEntry(n, cost));
+				}
+			}
+		}
+		return paths;
+	}
+
+	private static class ShortestPaths {
+		private final HashMap<Node, Double> costs = new HashMap<Node, Double>();
+		private final HashMap<Node, DefaultLink> previousLinks = new HashMap<Node, DefaultLink>();
+	}
+
+	private static class QueueEntry implements Comparable<QueueEntry> {
+		private final Node node;
+		private final double cost;
+
+		QueueEntry(Node node, double cost) {
+			this.node = node;
+			this.cost = cost;
+		}
+
+		@Override
+		public int compareTo(QueueEntry o) {
+			return Double.compare(this.cost, o.cost);
+		}
+	}
+}
@@ -26,8 +26,6 @@ import java.util.List;
 import java.util.Set;
 
 import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.BellmanFordShortestPath;
-import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.alg.KruskalMinimumSpanningTree;
 import org.jgrapht.graph.Pseudograph;
 import org.jgrapht.graph.WeightedMultigraph;
@@ -50,9 +48,19 @@ public class SteinerTree {
 	UndirectedGraph<Node, DefaultLink> graph;
 	WeightedMultigraph<Node, DefaultLink> tree;
 	List<Node> steinerNodes;
+	ShortestPathCache shortestPaths;
 	
 	public SteinerTree(UndirectedGraph<Node, DefaultLink> graph, List<Node> steinerNodes) {
-		this.graph = graph;
+		this(new ShortestPathCache(graph, steinerNodes.size()), steinerNodes);
+	}
+	
+	/**
+	 * computes the tree using the shortest paths in @param shortestPaths, 
+	 * which can be shared by the trees of other Steiner nodes in the same graph.
+	 */
+	public SteinerTree(ShortestPathCache shortestPaths, List<Node> steinerNodes) {
+		this.graph = shortestPaths.getGraph();
+		this.shortestPaths = shortestPaths;
 		this.steinerNodes = steinerNodes;
 		
 		runAlgorithm();
@@ -73,10 +81,7 @@ public class SteinerTree {
 			g.addVertex(n);
 		}
 		
-		BellmanFordShortestPath<Node, DefaultLink> path;
-		
 		for (Node n1 : this.steinerNodes) {
-			path = new BellmanFordShortestPath<Node, DefaultLink>(this.graph, n1);
 			
 			for (Node n2 : this.steinerNodes) {
 				
@@ -88,7 +93,7 @@ public class SteinerTree {
 				
 				DefaultLink e = new DefaultLink();
 				g.addEdge(n1, n2, e);
-				g.setEdgeWeight(e, path.getCost(n2));
+				g.setEdgeWeight(e, this.shortestPaths.getCost(n1, n2));
 				
 			}
 
@@ -151,7 +156,6 @@ public class SteinerTree {
 			new WeightedMultigraph<Node, DefaultLink>(DefaultLink.class);
 		
 		Set<DefaultLink> edges = g2.edgeSet();
-		DijkstraShortestPath<Node, DefaultLink> path;
 		
 		Node source, target;
 		
@@ -159,8 +163,7 @@ public class SteinerTree {
 			source = edge.getSource();
 			target = edge.getTarget();
 			
-			path = new DijkstraShortestPath<Node, DefaultLink>(this.graph, source, target);
-			List<DefaultLink> pathEdges = path.getPathEdgeList();
+			List<DefaultLink> pathEdges = this.shortestPaths.getPathEdgeList(source, target);
 			
 			if (pathEdges == null)
 				continue;
@@ -27,7 +27,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 
@@ -37,6 +39,39 @@ public class CandidateSteinerSets {
 	private static Logger logger = LoggerFactory.getLogger(CandidateSteinerSets.class);
 	private List<SteinerNodes> steinerSets;
 	
+	/**
+	 * A Steiner set that is not built yet: the existing set and the mapping to add to it
+	 */
+	private static class Candidate {
+		private final SteinerNodes nodeSet;
+		private final SemanticTypeMapping mapping;
+		private final double score;
+		private final int index;
+		
+		Candidate(SteinerNodes nodeSet, SemanticTypeMapping mapping, double score, int index) {
+			this.nodeSet = nodeSet;
+			this.mapping = mapping;
+			this.score = score;
+			this.index = index;
+		}
+	}
+	
+	/**
+	 * Orders the candidates from the lowest score to the highest, and the ones with the 
+	 * same score from the last generated to the first
+	 */
+	private static final Comparator<Candidate> WORST_FIRST = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate c1, Candidate c2) {
+			if (c1.score < c2.score)
+				return -1;
+			else if (c1.score > c2.score)
+				return 1;
+			else 
+				return c1.index > c2.index ? -1 : (c1.index < c2.index ? 1 : 0);
+		}
+	};
+	
 	public CandidateSteinerSets(int maxNumberOfSteinerNodes) {
 		this.steinerSets = new ArrayList<SteinerNodes>();
 	}
@@ -51,7 +86,6 @@ public class CandidateSteinerSets {
 	
 	public void updateSteinerSets(Set<SemanticTypeMapping> mappings) {
 		
-		List<SteinerNodes> newSteinerNodes = new ArrayList<SteinerNodes>();
 		if (mappings == null || mappings.isEmpty()) 
 			return;
 		
@@ -62,26 +96,39 @@ public class CandidateSteinerSets {
 				this.steinerSets.add(sn);
 			}			
 		} else {
+			// keep the best candidates in a heap with the worst one on top. The candidates are 
+			// scored without copying their nodes and only the ones left in the heap are built.
+			int maxQueuedMappings = ModelingConfiguration.getMaxQueuedMappigs();
+			PriorityQueue<Candidate> beam = new PriorityQueue<Candidate>(11, WORST_FIRST);
+			int index = 0;
 			for (SteinerNodes nodeSet : this.steinerSets) {
 				for (SemanticTypeMapping stm : mappings) {
-					SteinerNodes sn = new SteinerNodes(nodeSet);
-					
 					if (nodeSet.getNodes().contains(stm.getSource()) &&
 							nodeSet.getNodes().contains(stm.getTarget()))
 						continue;
-					sn.addNodes(stm.getSourceColumn(), stm.getSource(), stm.getTarget(), stm.getConfidence());
-					newSteinerNodes.add(sn);
+					if (maxQueuedMappings <= 0)
+						continue;
+					double score = nodeSet.getScoreAfterAdding(stm.getSource(), stm.getTarget(), stm.getConfidence());
+					// candidates with the same score as the worst one come after it
+					if (beam.size() == maxQueuedMappings && score <= beam.peek().score)
+						continue;
+					beam.add(new Candidate(nodeSet, stm, score, index++));
+					if (beam.size() > maxQueuedMappings)
+						beam.poll();
 				}
 			}
 			
-			// sort Steiner nodes based on their score
-			Collections.sort(newSteinerNodes);
+			// sort Steiner nodes based on their score, ties in the order they were generated
+			List<Candidate> best = new ArrayList<Candidate>(beam);
+			Collections.sort(best, Collections.reverseOrder(WORST_FIRST));
 			
 			this.steinerSets.clear();
 			
-//			for (int i = 0; i < newSteinerNodes.size(); i++) // do not cut off
-			for (int i = 0; i < ModelingConfiguration.getMaxQueuedMappigs() && i < newSteinerNodes.size(); i++)
-				this.steinerSets.add(newSteinerNodes.get(i));
+			for (Candidate c : best) {
+				SteinerNodes sn = new SteinerNodes(c.nodeSet);
+				sn.addNodes(c.mapping.getSourceColumn(), c.mapping.getSource(), c.mapping.getTarget(), c.mapping.getConfidence());
+				this.steinerSets.add(sn);
+			}
 
 		}
 		
@@ -36,6 +36,7 @@ import java.util.TreeMap;
 import org.jgrapht.UndirectedGraph;
 import org.jgrapht.graph.AsUndirectedGraph;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.jgrapht.graph.WeightedMultigraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +51,7 @@ import edu.isi.karma.modeling.alignment.LinkIdFactory;
 import edu.isi.karma.modeling.alignment.ModelEvaluation;
 import edu.isi.karma.modeling.alignment.NodeIdFactory;
 import edu.isi.karma.modeling.alignment.SemanticModel;
+import edu.isi.karma.modeling.alignment.ShortestPathCache;
 import edu.isi.karma.modeling.alignment.SteinerTree;
 import edu.isi.karma.modeling.alignment.TreePostProcess;
 import edu.isi.karma.modeling.ontology.OntologyManager;
@@ -128,7 +130,7 @@ public class ModelLearner {
 		if (graphBuilder == null || graphBuilder.getGraph() == null) {
 			clonedGraphBuilder = new GraphBuilder(this.ontologyManager, this.nodeIdFactory, false);
 		} else {
-			clonedGraphBuilder = new GraphBuilder(this.ontologyManager, graphBuilder.getGraph());
+			clonedGraphBuilder = new GraphBuilder(this.ontologyManager, graphBuilder);
 		}
 		return clonedGraphBuilder;
 	}
@@ -163,27 +165,45 @@ public class ModelLearner {
 
 		
 		logger.info("computing steiner trees ...");
-		List<SortableSemanticModel> sortableSemanticModels = new ArrayList<SortableSemanticModel>();
+		// the weights do not change anymore, so the shortest paths are shared by all the steiner sets
+		UndirectedGraph<Node, DefaultLink> undirectedGraph = new AsUndirectedGraph<Node, DefaultLink>(this.graphBuilder.getGraph());
+		ShortestPathCache shortestPaths = new ShortestPathCache(undirectedGraph);
+		List<SteinerNodes> steinerNodeSets = new ArrayList<SteinerNodes>();
+		List<WeightedMultigraph<Node, DefaultLink>> steinerTrees = new ArrayList<WeightedMultigraph<Node, DefaultLink>>();
 		int count = 1;
 		for (SteinerNodes sn : candidateSteinerSets.getSteinerSets()) {
 			logger.debug("computing steiner tree for steiner nodes set " + count + " ...");
 			logger.debug(sn.getScoreDetailsString());
-			DirectedWeightedMultigraph<Node, LabeledLink> tree = computeSteinerTree(sn.getNodes());
+			WeightedMultigraph<Node, DefaultLink> steinerTree = computeSteinerTree(shortestPaths, sn.getNodes());
 			count ++;
-			if (tree != null) {
-				SemanticModel sm = new SemanticModel(new RandomGUID().toString(), 
-						tree,
-						columnNodes,
-						sn.getMappingToSourceColumns()
-						);
-				SortableSemanticModel sortableSemanticModel = 
-						new SortableSemanticModel(sm, sn);
-				sortableSemanticModels.add(sortableSemanticModel);
+			if (steinerTree != null) {
+				steinerNodeSets.add(sn);
+				steinerTrees.add(steinerTree);
 			}
 			if (count == ModelingConfiguration.getMaxCandidateModels())
 				break;
 		}
 		
+		logger.debug("shortest paths computed: " + shortestPaths.getMisses() + ", reused: " + shortestPaths.getHits());
+		
+		// the post process adds the links that replace the compact links to the graph, 
+		// so it runs after all the steiner trees are computed from the cached shortest paths
+		List<SortableSemanticModel> sortableSemanticModels = new ArrayList<SortableSemanticModel>();
+		for (int i = 0; i < steinerTrees.size(); i++) {
+			DirectedWeightedMultigraph<Node, LabeledLink> tree = 
+					new TreePostProcess(this.graphBuilder, steinerTrees.get(i), null, false).getTree();
+			logger.debug(GraphUtil.labeledGraphToString(tree));
+			SteinerNodes sn = steinerNodeSets.get(i);
+			SemanticModel sm = new SemanticModel(new RandomGUID().toString(), 
+					tree,
+					columnNodes,
+					sn.getMappingToSourceColumns()
+					);
+			SortableSemanticModel sortableSemanticModel = 
+					new SortableSemanticModel(sm, sn);
+			sortableSemanticModels.add(sortableSemanticModel);
+		}
+		
 		Collections.sort(sortableSemanticModels);
 		logger.info("results are ready ...");
 		return sortableSemanticModels;
@@ -207,7 +227,7 @@ public class ModelLearner {
 
 	}
 	
-	private DirectedWeightedMultigraph<Node, LabeledLink> computeSteinerTree(Set<Node> steinerNodes) {
+	private WeightedMultigraph<Node, DefaultLink> computeSteinerTree(ShortestPathCache shortestPaths, Set<Node> steinerNodes) {
 		
 		if (steinerNodes == null || steinerNodes.size() == 0) {
 			logger.error("There is no steiner node.");
@@ -218,14 +238,10 @@ public class ModelLearner {
 		List<Node> steinerNodeList = new ArrayList<Node>(steinerNodes); 
 		
 		long start = System.currentTimeMillis();
-		UndirectedGraph<Node, DefaultLink> undirectedGraph = new AsUndirectedGraph<Node, DefaultLink>(this.graphBuilder.getGraph());
 
 		logger.debug("computing steiner tree ...");
-		SteinerTree steinerTree = new SteinerTree(undirectedGraph, steinerNodeList);
-		DirectedWeightedMultigraph<Node, LabeledLink> tree = new TreePostProcess(this.graphBuilder, steinerTree.getDefaultSteinerTree(), null, false).getTree();
-				//(DirectedWeightedMultigraph<Node, LabeledLink>)GraphUtil.asDirectedGraph(steinerTree.getDefaultSteinerTree());
-		
-		logger.debug(GraphUtil.labeledGraphToString(tree));
+		SteinerTree steinerTree = new SteinerTree(shortestPaths, steinerNodeList);
+		WeightedMultigraph<Node, DefaultLink> tree = steinerTree.getDefaultSteinerTree();
 		
 		long steinerTreeElapsedTimeMillis = System.currentTimeMillis() - start;
 		logger.debug("total number of nodes in steiner tree: " + tree.vertexSet().size());
@@ -536,6 +552,9 @@ public class ModelLearner {
 
 		List<DefaultLink> oldLinks = new ArrayList<DefaultLink>();
 		
+		List<LabeledLink> patternLinks = new ArrayList<LabeledLink>();
+		List<Double> patternWeights = new ArrayList<Double>();
+		
 		List<Node> sources = new ArrayList<Node>();
 		List<Node> targets = new ArrayList<Node>();
 		List<LabeledLink> newLinks = new ArrayList<LabeledLink>();
@@ -554,8 +573,13 @@ public class ModelLearner {
 				if (link.getTarget() instanceof InternalNode && !linkUri.equalsIgnoreCase(Uris.RDFS_SUBCLASS_URI)) {
 					key = "domain:" + link.getSource().getLabel().getUri() + ",link:" + linkUri + ",range:" + link.getTarget().getLabel().getUri();
 					Integer count = this.graphBuilder.getLinkCountMap().get(key);
-					if (count != null)
-						this.graphBuilder.changeLinkWeight(link, ModelingParams.PATTERN_LINK_WEIGHT - ((double)count / (double)this.graphBuilder.getNumberOfModelLinks()) );
+					if (count != null) {
+						double weight = ModelingParams.PATTERN_LINK_WEIGHT - ((double)count / (double)this.graphBuilder.getNumberOfModelLinks());
+						if (weight != this.graphBuilder.getGraph().getEdgeWeight(link)) {
+							patternLinks.add((LabeledLink)link);
+							patternWeights.add(weight);
+						}
+					}
 				}
 				continue;
 			}
@@ -607,6 +631,15 @@ public class ModelLearner {
 			oldLinks.add(link);
 		}
 		
+		// the links are shared with the graph of the model learning graph and keep their weight, 
+		// so they are replaced with copies that get the new weight
+		LabeledLink patternLink;
+		for (int i = 0; i < patternLinks.size(); i++) {
+			patternLink = this.graphBuilder.replaceWithCopy(patternLinks.get(i));
+			if (patternLink != null)
+				this.graphBuilder.changeLinkWeight(patternLink, patternWeights.get(i));
+		}
+		
 		for (DefaultLink link : oldLinks)
 			this.graphBuilder.getGraph().removeEdge(link);
 		
@@ -814,7 +847,7 @@ public class ModelLearner {
 					logger.info("building the graph ...");
 					for (SemanticModel sm : trainingData)
 						modelLearningGraph.addModel(sm);
-					modelLearner.graphBuilder = modelLearningGraph.getGraphBuilder();
+					modelLearner.graphBuilder = new GraphBuilder(ontologyManager, modelLearningGraph.getGraphBuilder());
 					modelLearner.nodeIdFactory = modelLearner.graphBuilder.getNodeIdFactory();
 					// save graph to file
 					try {
@@ -23,7 +23,22 @@ package edu.isi.karma.modeling.alignment.learner;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jgrapht.graph.DirectedWeightedMultigraph;
 import org.slf4j.Logger;
@@ -31,12 +46,14 @@ import org.slf4j.LoggerFactory;
 
 import edu.isi.karma.modeling.ModelingParams;
 import edu.isi.karma.modeling.alignment.GraphBuilder;
+import edu.isi.karma.modeling.alignment.GraphSnapshotUtil;
 import edu.isi.karma.modeling.alignment.GraphUtil;
 import edu.isi.karma.modeling.alignment.GraphVizUtil;
 import edu.isi.karma.modeling.alignment.LinkIdFactory;
 import edu.isi.karma.modeling.alignment.NodeIdFactory;
 import edu.isi.karma.modeling.alignment.SemanticModel;
 import edu.isi.karma.modeling.ontology.OntologyManager;
+import edu.isi.karma.modeling.ontology.OntologyUpdateListener;
 import edu.isi.karma.rep.alignment.ClassInstanceLink;
 import edu.isi.karma.rep.alignment.ColumnNode;
 import edu.isi.karma.rep.alignment.ColumnSubClassLink;
@@ -56,135 +73,568 @@ import edu.isi.karma.util.RandomGUID;
 import edu.isi.karma.webserver.ServletContextParameterMap;
 import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
 
-public class ModelLearningGraph {
+/**
+ * The graph of the models in the json repository that the model learner uses. 
+ * There is one graph for each set of ontologies, shared by the ontology managers that 
+ * imported the same ontology files. The graph keeps weak references to these managers 
+ * and changes the graph with one of them. A manager that imports another ontology is 
+ * dropped when it notifies the graph, and a graph without managers is removed.
+ * 
+ * A graph builder is never changed after it is published by getGraphBuilder: updates copy 
+ * the current graph builder, change the copy and then publish it, so readers do not need 
+ * to lock the graph. The published graph builder has no ontology manager.
+ * 
+ * The graph is saved in a binary snapshot, which is loaded at startup, and in json for 
+ * interchange. When a model is added or replaced, only the model is written to the 
+ * changes directory; these changes are applied again after loading the graph, and the 
+ * graph is saved again once there are MAX_SAVED_CHANGES of them.
+ */
+public class ModelLearningGraph implements OntologyUpdateListener {
 
 	private static Logger logger = LoggerFactory.getLogger(ModelLearningGraph.class);
 	
-	private static ModelLearningGraph instance = null;
-	private OntologyManager ontologyManager;
-	private GraphBuilder graphBuilder;
-	private NodeIdFactory nodeIdFactory; 
-	private long lastUpdateTime;
+	private static final int MAX_SAVED_CHANGES = 50;
+	
+	private static final ConcurrentHashMap<String, ModelLearningGraph> instances = 
+			new ConcurrentHashMap<String, ModelLearningGraph>();
+	private static final ConcurrentHashMap<String, Object> instanceLocks = 
+			new ConcurrentHashMap<String, Object>();
 	
-	private static final String getGraphJsonName()
+	private final String key;
+	private final Set<OntologyManager> ontologyManagers = 
+			Collections.newSetFromMap(new WeakHashMap<OntologyManager, Boolean>());
+	private final String fileSuffix;
+	private volatile GraphBuilder graphBuilder;
+	private volatile long lastUpdateTime;
+	// the number of saved changes and the number of the last one, which differ 
+	// when a change could not be read or deleted
+	private int savedChanges = 0;
+	private int lastChangeNumber = 0;
+	private boolean graphvizOutdated = true;
+	
+	private String getGraphJsonName()
 	{
-		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph.json";
+		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph" + fileSuffix + ".json";
 	}
-	private static final String getGraphGraphvizName()
+	private String getGraphSnapshotName()
 	{
-		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph.dot";
+		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph" + fileSuffix + ".bin";
+	}
+	private String getGraphGraphvizName()
+	{
+		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph" + fileSuffix + ".dot";
+	}
+	private String getGraphChangesDirName()
+	{
+		return ServletContextParameterMap.getParameterValue(ContextParameter.ALIGNMENT_GRAPH_DIRECTORY) + "graph" + fileSuffix + ".changes" + File.separator;
 	}
 
-	public static synchronized ModelLearningGraph getInstance(OntologyManager ontologyManager) {
-		if (instance == null || !ontologyManager.equals(instance.ontologyManager)) {
-			try {
-				instance = new ModelLearningGraph(ontologyManager);
-			} catch (IOException e) {
-				logger.error("error in importing the main learning graph!", e);
-				return null;
+	/**
+	 * returns the graph of the ontologies imported into @param ontologyManager, 
+	 * and loads it if it is not loaded yet.
+	 */
+	public static ModelLearningGraph getInstance(OntologyManager ontologyManager) {
+		
+		String key = ontologyManager.getOntologySetKey();
+		ModelLearningGraph instance = instances.get(key);
+		if (instance != null) {
+			instance.addOntologyManager(ontologyManager);
+			return instance;
+		}
+		
+		removeUnusedInstances();
+		synchronized (getLock(key)) {
+			instance = instances.get(key);
+			if (instance == null) {
+				try {
+					instance = new ModelLearningGraph(ontologyManager, key);
+					instances.put(key, instance);
+				} catch (IOException e) {
+					logger.error("error in importing the main learning graph!", e);
+					return null;
+				}
+			} else {
+				instance.addOntologyManager(ontologyManager);
 			}
 		}
 		return instance;
 	}
 
 	public static ModelLearningGraph getEmptyInstance(OntologyManager ontologyManager) {
-		instance = new ModelLearningGraph(ontologyManager, true);
+		String key = ontologyManager.getOntologySetKey();
+		ModelLearningGraph instance = new ModelLearningGraph(ontologyManager, key, true);
+		instances.put(key, instance);
 		return instance;
 	}
+	
+	private static Object getLock(String key) {
+		instanceLocks.putIfAbsent(key, new Object());
+		return instanceLocks.get(key);
+	}
+	
+	/**
+	 * removes the graphs whose ontology managers have all been garbage collected.
+	 */
+	private static void removeUnusedInstances() {
+		for (ModelLearningGraph instance : instances.values()) {
+			if (instance.getOntologyManager() == null && instances.remove(instance.key, instance))
+				logger.info("the alignment graph " + instance.fileSuffix + " is not used anymore.");
+		}
+	}
 
-	private ModelLearningGraph(OntologyManager ontologyManager, boolean emptyInstance) {
-		this.ontologyManager = ontologyManager;
-		this.nodeIdFactory = new NodeIdFactory();
-		this.graphBuilder = new GraphBuilder(ontologyManager, this.nodeIdFactory, false);
-		this.lastUpdateTime = System.currentTimeMillis();
+	private ModelLearningGraph(OntologyManager ontologyManager, String key, boolean emptyInstance) {
+		this.key = key;
+		this.fileSuffix = getFileSuffix(key);
+		this.addOntologyManager(ontologyManager);
+		this.publish(new GraphBuilder(ontologyManager, new NodeIdFactory(), false));
 	}
 	
-	private ModelLearningGraph(OntologyManager ontologyManager) throws IOException {
+	private ModelLearningGraph(OntologyManager ontologyManager, String key) throws IOException {
 		
-		this.ontologyManager = ontologyManager;
+		this.key = key;
+		this.fileSuffix = getFileSuffix(key);
+		this.addOntologyManager(ontologyManager);
 		
-		File file = new File(getGraphJsonName());
-		if (!file.exists()) {
-			this.initializeFromJsonRepository();
-		} else {
+		DirectedWeightedMultigraph<Node, DefaultLink> graph = null;
+		boolean fromSnapshot = false;
+		
+		if (new File(getGraphSnapshotName()).exists()) {
+			logger.info("loading the alignment graph snapshot ...");
+			try {
+				graph = GraphSnapshotUtil.importSnapshot(getGraphSnapshotName());
+				fromSnapshot = (graph != null);
+			} catch (Exception e) {
+				logger.error("error in loading the alignment graph snapshot!", e);
+			}
+		}
+		
+		if (graph == null && new File(getGraphJsonName()).exists()) {
 			logger.info("loading the alignment graph ...");
-			DirectedWeightedMultigraph<Node, DefaultLink> graph =
-					GraphUtil.importJson(getGraphJsonName());
-			this.graphBuilder = new GraphBuilder(ontologyManager, graph);
-			this.nodeIdFactory = this.graphBuilder.getNodeIdFactory();
+			graph = GraphUtil.importJson(getGraphJsonName());
+		}
+		
+		if (graph == null) {
+			this.initializeFromJsonRepository(ontologyManager);
+		} else {
+			GraphBuilder graphBuilder = new GraphBuilder(ontologyManager, graph);
+			this.applySavedChanges(graphBuilder);
+			this.publish(graphBuilder);
+			// write the snapshot for the next startup
+			if (!fromSnapshot) this.saveGraph();
 			logger.info("loading is done!");
 		}
 		if (this.graphBuilder.getGraph() != null) {
 			logger.info("number of nodes: " + this.graphBuilder.getGraph().vertexSet().size());
 			logger.info("number of links: " + this.graphBuilder.getGraph().edgeSet().size());
 		}
-		this.lastUpdateTime = System.currentTimeMillis();
+	}
+	
+	private static String getFileSuffix(String key) {
+		return "-" + UUID.nameUUIDFromBytes(key.getBytes(Charset.forName("UTF-8"))).toString();
+	}
+	
+	private void addOntologyManager(OntologyManager ontologyManager) {
+		synchronized (this.ontologyManagers) {
+			if (!this.key.equals(ontologyManager.getOntologySetKey()) || !this.ontologyManagers.add(ontologyManager))
+				return;
+		}
+		ontologyManager.subscribeListener(this);
+	}
+	
+	/**
+	 * @return an ontology manager that has the ontologies of the graph, or null if there is none.
+	 */
+	private OntologyManager getOntologyManager() {
+		synchronized (this.ontologyManagers) {
+			for (OntologyManager ontologyManager : this.ontologyManagers) {
+				if (this.key.equals(ontologyManager.getOntologySetKey()))
+					return ontologyManager;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * drops the ontology managers that imported other ontologies, and removes the graph 
+	 * if no ontology manager has its ontologies anymore.
+	 */
+	@Override
+	public void ontologyModelUpdated() {
+		List<OntologyManager> changedManagers = new ArrayList<OntologyManager>();
+		boolean unused;
+		synchronized (this.ontologyManagers) {
+			Iterator<OntologyManager> it = this.ontologyManagers.iterator();
+			while (it.hasNext()) {
+				OntologyManager ontologyManager = it.next();
+				if (!this.key.equals(ontologyManager.getOntologySetKey())) {
+					changedManagers.add(ontologyManager);
+					it.remove();
+				}
+			}
+			unused = this.ontologyManagers.isEmpty();
+		}
+		for (OntologyManager ontologyManager : changedManagers)
+			ontologyManager.unsubscribeListener(this);
+		if (unused && instances.remove(this.key, this))
+			logger.info("the alignment graph " + this.fileSuffix + " is not used anymore.");
 	}
 
+	/**
+	 * returns the current version of the graph, which must not be changed and has no ontology manager. 
+	 * Use new GraphBuilder(ontologyManager, graphBuilder) to get a copy that can be changed.
+	 */
 	public GraphBuilder getGraphBuilder() {
 		return this.graphBuilder;
 	}
 	
 	public NodeIdFactory getNodeIdFactory() {
-		return this.nodeIdFactory;
+		return this.graphBuilder.getNodeIdFactory();
 	}
 	
 	public long getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
 	
-	public void initializeFromJsonRepository() {
+	private void publish(GraphBuilder graphBuilder) {
+		// readers copy the graph builder with their own ontology manager
+		graphBuilder.setOntologyManager(null);
+		this.graphBuilder = graphBuilder;
+		this.graphvizOutdated = true;
+		// set after the graph builder, so the graph builder is at least as new as the time a reader sees
+		this.lastUpdateTime = System.currentTimeMillis();
+	}
+	
+	public synchronized void initializeFromJsonRepository() {
+		OntologyManager ontologyManager = this.getOntologyManager();
+		if (ontologyManager == null) {
+			logger.error("no ontology manager has the ontologies of the alignment graph anymore.");
+			return;
+		}
+		this.initializeFromJsonRepository(ontologyManager);
+	}
+	
+	private void initializeFromJsonRepository(OntologyManager ontologyManager) {
 		logger.info("initializing the graph from models in the json repository ...");
 		
-		this.nodeIdFactory = new NodeIdFactory();
-		this.graphBuilder = new GraphBuilder(ontologyManager, this.nodeIdFactory, false);
+		GraphBuilder graphBuilder = new GraphBuilder(ontologyManager, new NodeIdFactory(), false);
 
 		File ff = new File(ServletContextParameterMap.getParameterValue(ContextParameter.JSON_MODELS_DIR));
 		File[] files = ff.listFiles();
 		
-		for (File f : files) {
+		// the models are read in parallel and added to the graph in the order of the files
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		List<Future<SemanticModel>> models = new ArrayList<Future<SemanticModel>>();
+		for (final File f : files) {
 			if (f.getName().endsWith(".json")) {
-				try {
-					SemanticModel model = SemanticModel.readJson(f.getAbsolutePath());
-					if (model != null) this.addModel(model);
-				} catch (Exception e) {
-				}
+				models.add(pool.submit(new Callable<SemanticModel>() {
+					@Override
+					public SemanticModel call() throws Exception {
+						return SemanticModel.readJson(f.getAbsolutePath());
+					}
+				}));
 			}
 		}
-		this.exportJson();
-		this.exportGraphviz();
-		this.lastUpdateTime = System.currentTimeMillis();
+		pool.shutdown();
+		
+		for (Future<SemanticModel> f : models) {
+			try {
+				SemanticModel model = f.get();
+				if (model != null) this.addModel(graphBuilder, model);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (Exception e) {
+			}
+		}
+		pool.shutdownNow();
+		this.publish(graphBuilder);
+		this.saveGraph();
 		logger.info("initialization is done!");
 	}
 	
-	public void exportJson() {
+	/**
+	 * writes the whole graph to the snapshot and to graph.json, and deletes the saved changes, 
+	 * which are included in them. The changes are kept if graph.json could not be written, 
+	 * or if an outdated snapshot is left that would be loaded at startup instead of graph.json.
+	 */
+	private void saveGraph() {
+		boolean snapshotExported = this.exportSnapshot();
+		if (this.exportJson() && (snapshotExported || !new File(getGraphSnapshotName()).exists()))
+			this.deleteSavedChanges();
+	}
+	
+	/**
+	 * writes the whole graph to a temporary file that then replaces the snapshot, 
+	 * so the snapshot is never partly written. If that fails, the outdated snapshot is deleted.
+	 * @return true if the snapshot is exported
+	 */
+	private boolean exportSnapshot() {
+		File snapshot = new File(getGraphSnapshotName());
+		File tempFile = new File(getGraphSnapshotName() + ".tmp");
 		try {
-			GraphUtil.exportJson(this.graphBuilder.getGraph(), getGraphJsonName());
+			GraphSnapshotUtil.exportSnapshot(this.graphBuilder.getGraph(), tempFile.getAbsolutePath());
+			if (replaceFile(tempFile, snapshot))
+				return true;
+			logger.error("cannot replace the alignment graph snapshot " + snapshot.getAbsolutePath());
 		} catch (Exception e) {
-			logger.error("error in exporting the alignment graph to json!");
+			logger.error("error in exporting the alignment graph snapshot!", e);
 		}
+		tempFile.delete();
+		if (snapshot.exists() && !snapshot.delete())
+			logger.error("cannot delete the outdated alignment graph snapshot " + snapshot.getAbsolutePath());
+		return false;
 	}
 	
-	public void exportGraphviz() {
+	/**
+	 * writes the whole graph to graph.json, through a temporary file like the snapshot.
+	 * @return true if the graph is exported
+	 */
+	public boolean exportJson() {
+		File json = new File(getGraphJsonName());
+		File tempFile = new File(getGraphJsonName() + ".tmp");
+		try {
+			GraphUtil.exportJson(this.graphBuilder.getGraph(), tempFile.getAbsolutePath());
+			if (replaceFile(tempFile, json))
+				return true;
+			logger.error("cannot replace the alignment graph json " + json.getAbsolutePath());
+		} catch (Exception e) {
+			logger.error("error in exporting the alignment graph to json!", e);
+		}
+		tempFile.delete();
+		return false;
+	}
+	
+	private static boolean replaceFile(File tempFile, File file) {
+		// renameTo does not replace an existing file on every platform
+		return tempFile.renameTo(file) || (file.delete() && tempFile.renameTo(file));
+	}
+	
+	/**
+	 * writes the graph to graph.dot if it has changed since the last export.
+	 */
+	public synchronized void exportGraphviz() {
+		if (!this.graphvizOutdated)
+			return;
 		try {
 			GraphVizUtil.exportJGraphToGraphviz(this.graphBuilder.getGraph(), "main graph", true, false, false, getGraphGraphvizName());
+			this.graphvizOutdated = false;
 		} catch (Exception e) {
 			logger.error("error in exporting the alignment graph to graphviz!");
 		}
 	}
 	
-	public void addModel(SemanticModel model) {
-		this.addModelGraph(model);
-		this.graphBuilder.addClosureAndLinksOfNodes(model.getInternalNodes(), null);
+	public synchronized void addModel(SemanticModel model) {
+		OntologyManager ontologyManager = this.getOntologyManager();
+		if (ontologyManager == null) {
+			logger.error("no ontology manager has the ontologies of the alignment graph anymore.");
+			return;
+		}
+		this.addModel(ontologyManager, model);
 	}
 	
+	private void addModel(OntologyManager ontologyManager, SemanticModel model) {
+		GraphBuilder graphBuilder = new GraphBuilder(ontologyManager, this.graphBuilder);
+		this.addModel(graphBuilder, model);
+		this.publish(graphBuilder);
+	}
+	
+	private void addModel(GraphBuilder graphBuilder, SemanticModel model) {
+		this.addModelGraph(graphBuilder, model);
+		graphBuilder.addClosureAndLinksOfNodes(model.getInternalNodes(), null);
+	}
+	
+	/**
+	 * adds the model to the graphs of all the ontology sets, since they share the json repository, 
+	 * and saves the change. Each graph is changed with an ontology manager that has its ontologies. 
+	 * A graph that has no such manager anymore is removed and only saves the change, which is 
+	 * applied when the graph is loaded again.
+	 */
 	public void addModelAndUpdateGraphJson(SemanticModel model) {
-		this.addModel(model);
-		this.exportJson();
-		this.exportGraphviz();
+		Set<ModelLearningGraph> graphs = new HashSet<ModelLearningGraph>(instances.values());
+		// a removed graph is still changed, unless it has been loaded again
+		if (!instances.containsKey(this.key))
+			graphs.add(this);
+		for (ModelLearningGraph graph : graphs)
+			graph.addModelAndSaveChange(model);
+	}
+	
+	private void addModelAndSaveChange(SemanticModel model) {
+		// the lock of the key keeps the graph from being loaded again while its files change
+		synchronized (getLock(this.key)) {
+			synchronized (this) {
+				OntologyManager ontologyManager = this.getOntologyManager();
+				if (ontologyManager != null) {
+					this.addModel(ontologyManager, model);
+					this.saveChange(model);
+				} else {
+					instances.remove(this.key, this);
+					if (!this.saveChangeFile(model))
+						this.deleteGraphFiles();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * removes the nodes and links of the model from the graph and updates the link counts.
+	 * the nodes and links that also belong to other models stay in the graph. 
+	 * if other nodes need a removed node in their closure, a new node with the same uri is added.
+	 * @param modelId
+	 */
+	public synchronized void removeModel(String modelId) {
+		
+		if (modelId == null || !this.graphBuilder.getModelIds().contains(modelId))
+			return;
+		
+		OntologyManager ontologyManager = this.getOntologyManager();
+		if (ontologyManager == null) {
+			logger.error("no ontology manager has the ontologies of the alignment graph anymore.");
+			return;
+		}
+		GraphBuilder graphBuilder = new GraphBuilder(ontologyManager, this.graphBuilder);
+		this.removeModel(graphBuilder, modelId);
+		this.publish(graphBuilder);
 	}
 	
-	private void addModelGraph(SemanticModel model) {
+	private void removeModel(GraphBuilder graphBuilder, String modelId) {
+		
+		logger.info("removing the model " + modelId + " from the graph ...");
+		
+		// the nodes and links are shared with the published graph builder, 
+		// so the graph builder replaces them with copies before their model ids change.
+		
+		LabeledLink[] links = graphBuilder.getIdToLinkMap().values().toArray(new LabeledLink[0]);
+		for (LabeledLink link : links) {
+			if (link.getModelIds() == null || !link.getModelIds().contains(modelId))
+				continue;
+			if (link.getModelIds().size() == 1) {
+				graphBuilder.removeLink(link);
+			} else {
+				LabeledLink copy = graphBuilder.replaceWithCopy(link);
+				if (copy != null) copy.getModelIds().remove(modelId);
+			}
+		}
+		
+		Node[] nodes = graphBuilder.getGraph().vertexSet().toArray(new Node[0]);
+		for (Node node : nodes) {
+			if (node.getModelIds() == null || !node.getModelIds().contains(modelId))
+				continue;
+			if (node.getModelIds().size() == 1) {
+				graphBuilder.removeNode(node);
+			} else {
+				Node copy = graphBuilder.replaceWithCopy(node);
+				if (copy != null) copy.getModelIds().remove(modelId);
+			}
+		}
+		
+		graphBuilder.removeModelId(modelId);
+		graphBuilder.addMissingClosureNodes();
+	}
+	
+	/**
+	 * saves the model as a change to graph.json, or writes the whole graph 
+	 * if there are already MAX_SAVED_CHANGES changes.
+	 */
+	private void saveChange(SemanticModel model) {
+		
+		if (this.savedChanges >= MAX_SAVED_CHANGES) {
+			this.saveGraph();
+			return;
+		}
+		
+		if (!this.saveChangeFile(model)) {
+			logger.error("exporting the whole alignment graph instead of the change.");
+			this.saveGraph();
+		}
+	}
+	
+	/**
+	 * writes the model to the graph.changes directory.
+	 * @return true if the change is saved
+	 */
+	private boolean saveChangeFile(SemanticModel model) {
+		
+		File dir = new File(getGraphChangesDirName());
+		if (!dir.exists() && !dir.mkdirs()) {
+			logger.error("cannot create the directory " + dir.getAbsolutePath());
+			return false;
+		}
+		
+		try {
+			model.writeJson(getGraphChangesDirName() + String.format("%06d", this.lastChangeNumber + 1) + ".model.json");
+			this.lastChangeNumber++;
+			this.savedChanges++;
+			return true;
+		} catch (Exception e) {
+			logger.error("error in saving the change of the alignment graph!", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * deletes the snapshot and graph.json, so the graph is initialized again from the json repository.
+	 */
+	private void deleteGraphFiles() {
+		for (String name : new String[] {getGraphSnapshotName(), getGraphJsonName()}) {
+			File f = new File(name);
+			if (f.exists() && !f.delete())
+				logger.error("cannot delete the outdated alignment graph file " + f.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * adds the models saved in the graph.changes directory, in the order in which they were saved.
+	 */
+	private void applySavedChanges(GraphBuilder graphBuilder) {
+		
+		File[] files = new File(getGraphChangesDirName()).listFiles();
+		if (files == null)
+			return;
+		
+		Arrays.sort(files);
+		for (File f : files) {
+			if (!f.getName().endsWith(".model.json"))
+				continue;
+			// counted even if it cannot be read, so the next change does not overwrite a later one
+			this.savedChanges++;
+			this.lastChangeNumber = Math.max(this.lastChangeNumber, getChangeNumber(f));
+			try {
+				SemanticModel model = SemanticModel.readJson(f.getAbsolutePath());
+				if (model != null) this.addModel(graphBuilder, model);
+			} catch (Exception e) {
+				logger.error("error in applying the change " + f.getName() + " to the alignment graph!");
+			}
+		}
+		if (this.savedChanges > 0)
+			logger.info(this.savedChanges + " saved changes are applied to the graph.");
+	}
+	
+	private void deleteSavedChanges() {
+		
+		this.savedChanges = 0;
+		this.lastChangeNumber = 0;
+		File[] files = new File(getGraphChangesDirName()).listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (!f.getName().endsWith(".model.json") || f.delete())
+					continue;
+				logger.error("cannot delete the saved change " + f.getAbsolutePath());
+				this.savedChanges++;
+				this.lastChangeNumber = Math.max(this.lastChangeNumber, getChangeNumber(f));
+			}
+		}
+	}
+	
+	private static int getChangeNumber(File f) {
+		String name = f.getName();
+		try {
+			return Integer.parseInt(name.substring(0, name.indexOf('.')));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	private void addModelGraph(GraphBuilder graphBuilder, SemanticModel model) {
 		
 		HashMap<Node, Node> visitedNodes;
 		Node source, target;
@@ -196,15 +646,13 @@ public class ModelLearningGraph {
 			return;
 		
 		String modelId = model.getId();
-		if (this.graphBuilder.getModelIds().contains(modelId)) {
-			// FIXME
-			// we need to somehow update the graph, but I don't know how to do that yet.
-			// so, we rebuild the whole graph from scratch.
-			logger.info("the graph already includes the model and needs to be updated, we re-initialize the graph from the repository!");
-			initializeFromJsonRepository();
-			return;
+		if (graphBuilder.getModelIds().contains(modelId)) {
+			logger.info("the graph already includes the model, we replace it with the new version.");
+			removeModel(graphBuilder, modelId);
 		}
 		
+		NodeIdFactory nodeIdFactory = graphBuilder.getNodeIdFactory();
+		
 		visitedNodes = new HashMap<Node, Node>();
 	
 		for (LabeledLink e : model.getGraph().edgeSet()) {
@@ -218,16 +666,16 @@ public class ModelLearningGraph {
 			if (n1 == null) {
 				
 				if (source instanceof InternalNode) {
-					String id = this.nodeIdFactory.getNodeId(source.getLabel().getUri());
+					String id = nodeIdFactory.getNodeId(source.getLabel().getUri());
 					InternalNode node = new InternalNode(id, new Label(source.getLabel()));
-					if (this.graphBuilder.addNode(node)) {
+					if (graphBuilder.addNode(node)) {
 						n1 = node;
 					} else continue;
 				}
 				else {
 					String id = new RandomGUID().toString();
 					ColumnNode node = new ColumnNode(id, id, ((ColumnNode)target).getColumnName(), null);
-					if (this.graphBuilder.addNode(node)) {
+					if (graphBuilder.addNode(node)) {
 						n1 = node;
 					} else continue;
 				}
@@ -240,14 +688,14 @@ public class ModelLearningGraph {
 				if (target instanceof InternalNode) {
 					String id = nodeIdFactory.getNodeId(target.getLabel().getUri());
 					InternalNode node = new InternalNode(id, new Label(target.getLabel()));
-					if (this.graphBuilder.addNode(node)) {
+					if (graphBuilder.addNode(node)) {
 						n2 = node;
 					} else continue;
 				}
 				else {
 					String id = new RandomGUID().toString();
 					ColumnNode node = new ColumnNode(id, id, ((ColumnNode)target).getColumnName(), null);
-					if (this.graphBuilder.addNode(node)) {
+					if (graphBuilder.addNode(node)) {
 						n2 = node;
 					} else continue;
 				}
@@ -279,8 +727,8 @@ public class ModelLearningGraph {
 			
 			link.getModelIds().add(modelId);
 			
-			if (this.graphBuilder.addLink(n1, n2, link)) {
-				this.graphBuilder.changeLinkWeight(link, ModelingParams.PATTERN_LINK_WEIGHT);
+			if (graphBuilder.addLink(n1, n2, link)) {
+				graphBuilder.changeLinkWeight(link, ModelingParams.PATTERN_LINK_WEIGHT);
 			}
 			
 			if (!n1.getModelIds().contains(modelId))
@@ -290,8 +738,6 @@ public class ModelLearningGraph {
 				n2.getModelIds().add(modelId);
 
 		}
-		
-		this.lastUpdateTime = System.currentTimeMillis();
 	}
 
 	public static void main(String[] args) {
@@ -315,7 +761,7 @@ public class ModelLearningGraph {
 			}
 			// update the cache at the end when all files are added to the model
 			mgr.updateCache();
-			ModelLearningGraph.getInstance(mgr);
+			ModelLearningGraph.getInstance(mgr).exportGraphviz();
 			
 		} else {
 			logger.info("No directory for preloading ontologies exists.");
@@ -24,25 +24,22 @@ package edu.isi.karma.modeling.alignment.learner;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Vector;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Iterables;
 
 import edu.isi.karma.modeling.ModelingConfiguration;
 import edu.isi.karma.rep.alignment.ColumnNode;
 import edu.isi.karma.rep.alignment.InternalNode;
 import edu.isi.karma.rep.alignment.Node;
-import edu.isi.karma.util.RandomGUID;
 
 public class SteinerNodes implements Comparable<SteinerNodes> {
 
@@ -124,10 +121,7 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 		
 		this.mappingToSourceColumns.put(n2, sourceColumn);
 				
-		if (confidence <= 0 || confidence > 1)
-			confidence = MIN_CONFIDENCE;
-		
-		this.confidenceList.add(confidence);
+		this.confidenceList.add(getValidConfidence(confidence));
 		
 		this.frequency += n1.getModelIds() == null ? 0 : n1.getModelIds().size();
 		this.frequency += n2.getModelIds() == null ? 0 : n2.getModelIds().size();
@@ -142,6 +136,31 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 		
 	}
 	
+	/**
+	 * Computes the score these nodes would have after addNodes(sourceColumn, n1, n2, confidence), 
+	 * without copying them. The nodes must not contain both n1 and n2.
+	 */
+	public double getScoreAfterAdding(InternalNode n1, ColumnNode n2, double confidence) {
+		
+		List<Node> addedNodes = new ArrayList<Node>(2);
+		if (!this.nodes.contains(n1)) addedNodes.add(n1);
+		if (!this.nodes.contains(n2)) addedNodes.add(n2);
+		int nodeCount = this.nodes.size() + addedNodes.size();
+		
+		double coherence = computeCoherenceValue(
+				computeCoherenceList(Iterables.concat(this.nodes, addedNodes)), nodeCount);
+		double confidenceValue = computeConfidenceValue(
+				Iterables.concat(this.confidenceList, Collections.singletonList(getValidConfidence(confidence))));
+		
+		return computeScore(confidenceValue, coherence, nodeCount, this.semanticTypeCount + 1);
+	}
+	
+	private static double getValidConfidence(double confidence) {
+		if (confidence <= 0 || confidence > 1)
+			return MIN_CONFIDENCE;
+		return confidence;
+	}
+	
 	public List<Double> getConfidenceVector() {
 		return Collections.unmodifiableList(this.confidenceList);
 	}
@@ -195,31 +214,41 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 //	}
 	
 	private void computeConfidenceValue() {
+		this.confidence = computeConfidenceValue(this.confidenceList);
+	}
+	
+	private static double computeConfidenceValue(Iterable<Double> confidenceList) {
 		
 		double sum = 0.0;
-		double mult = 1.0;
 		int count = 0;
-		for (Double d : this.confidenceList) {
+		for (Double d : confidenceList) {
 			if (d != null) {
 				count ++;
 				sum += d.doubleValue();
-				mult *= d == 0.0? 0.1 : d.doubleValue();
 			}
 		}
-		this.confidence = mult;
-		this.confidence = sum / (double)count;
+		return sum / (double)count;
 	}
 	
 	private void computeCoherenceList() {
 		
 		if (nodes == null || nodes.size() == 0)
 			return;
+		
+		this.coherenceList = computeCoherenceList(this.nodes);
+	}
+	
+	/**
+	 * Groups the nodes by the largest patterns they belong to. Each item counts the nodes 
+	 * whose largest patterns are the same (x) and the number of these patterns (y). 
+	 */
+	private static List<CoherenceItem> computeCoherenceList(Iterable<Node> nodes) {
 
 		Map<String, Integer> patternSize = new HashMap<String, Integer>();
-		Map<String, String> patternGuid = new HashMap<String, String>();
-		int guidSize = new RandomGUID().toString().length();
 		
 		for (Node n : nodes) {
+			if (n.getModelIds() == null)
+				continue;
 			for (String p : n.getModelIds()) {
 				
 				Integer size = patternSize.get(p);
@@ -227,67 +256,46 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 					patternSize.put(p, 1);
 				else
 					patternSize.put(p, ++size);
-				
-				if (!patternGuid.containsKey(p)) {
-					String guid = new RandomGUID().toString();
-					patternGuid.put(p, guid);
-				}
 			}
 		}
 		
-		// find the maximum pattern size
-		int maxPatternSize = 0;
-		for (Entry<String, Integer> entry : patternSize.entrySet()) {
-			if (entry.getValue().intValue() > maxPatternSize)
-				maxPatternSize = entry.getValue().intValue();
-		}
-		
-		List<String> listOfNodesLargestPatterns = new ArrayList<String>();
-		
+		// count the nodes that have the same largest patterns
+		Map<List<String>, Integer> largestPatternsCount = new LinkedHashMap<List<String>, Integer>();
 		for (Node n : nodes) {
-			List<String> patternIds = new ArrayList<String>(n.getModelIds());
-			Collections.sort(patternIds);
+			if (n.getModelIds() == null || n.getModelIds().isEmpty())
+				continue;
 			
-			String[] nodeMaxPatterns = new String[maxPatternSize];
-			Arrays.fill(nodeMaxPatterns, "");
+			int maxSize = 0;
+			for (String p : n.getModelIds()) 
+				maxSize = Math.max(maxSize, patternSize.get(p).intValue());
 			
-			for (String p : patternIds) {
-				int size = patternSize.get(p).intValue();
-				nodeMaxPatterns[size - 1] += patternGuid.get(p);
-			}
-			for (int i = maxPatternSize - 1; i >= 0; i--) {
-				if (nodeMaxPatterns[i] != null && nodeMaxPatterns[i].trim().length() > 0) {
-					listOfNodesLargestPatterns.add(nodeMaxPatterns[i]);
-					break;
-				}
+			List<String> largestPatterns = new ArrayList<String>();
+			for (String p : n.getModelIds()) {
+				if (patternSize.get(p).intValue() == maxSize)
+					largestPatterns.add(p);
 			}
-		}	
-		
-		Function<String, String> stringEqualiy = new Function<String, String>() {
-			  @Override public String apply(final String s) {
-			    return s;
-			  }
-			};
-				
-		Multimap<String, String> index =
-			Multimaps.index(listOfNodesLargestPatterns, stringEqualiy);
+			Collections.sort(largestPatterns);
+			
+			Integer count = largestPatternsCount.get(largestPatterns);
+			largestPatternsCount.put(largestPatterns, count == null ? 1 : count + 1);
+		}
 		
-		this.coherenceList.clear();
-		int x, y;
-		for (String s : index.keySet()) {
-			if (s.trim().length() == 0)
-				continue;
-			x = index.get(s).size();
-			y = x > 0 ? index.get(s).iterator().next().length() / guidSize : 0; 
-			CoherenceItem ci = new CoherenceItem(x, y);
-			this.coherenceList.add(ci);
+		List<CoherenceItem> coherenceList = new ArrayList<CoherenceItem>();
+		for (Entry<List<String>, Integer> entry : largestPatternsCount.entrySet()) {
+			CoherenceItem ci = new CoherenceItem(entry.getValue(), entry.getKey().size());
+			coherenceList.add(ci);
 		}
 		
-		Collections.sort(this.coherenceList);
+		Collections.sort(coherenceList);
+		return coherenceList;
 		
 	}
 	
 	private void computeCoherenceValue() {
+		this.coherence = computeCoherenceValue(this.coherenceList, this.getNodeCount());
+	}
+	
+	private static double computeCoherenceValue(List<CoherenceItem> coherenceList, int nodeCount) {
 		
 		BigDecimal value = BigDecimal.ZERO;
 		
@@ -296,9 +304,9 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 		BigDecimal b;
 		
 		double normalizedCoherence;
-		for (CoherenceItem ci : this.coherenceList) {
+		for (CoherenceItem ci : coherenceList) {
 			
-			normalizedCoherence = (double)ci.getX() / (double)(this.getNodeCount());
+			normalizedCoherence = (double)ci.getX() / (double)(nodeCount);
 			normalizedCoherence *= 100;
 			normalizedCoherence = (double) ((int)normalizedCoherence);
 			
@@ -309,17 +317,21 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 			value = value.add(b);
 		}
 		
-		this.coherence = value.doubleValue();
+		return value.doubleValue();
 	}
 	
 	private double getNormalizedSizeReduction() {
+		return getNormalizedSizeReduction(this.getNodeCount(), this.semanticTypeCount);
+	}
+	
+	private static double getNormalizedSizeReduction(int nodeCount, int semanticTypeCount) {
 		
-		int minSize = this.semanticTypeCount;
-		int maxSize = this.semanticTypeCount * 2;
+		int minSize = semanticTypeCount;
+		int maxSize = semanticTypeCount * 2;
 		
 		//feature scaling: (x - min) / (max - min)
 		// here: x: reduction in size --- min reduction: 0 --- max reduction: maxSize - minSize 
-		return (double)(maxSize - this.getNodeCount()) / 
+		return (double)(maxSize - nodeCount) / 
 				(double)(maxSize - minSize);
 	}
 	
@@ -328,28 +340,7 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 		return getConfidence();
 	}
 	
-	private double getHarmonicMean(double[] input) {
-		
-		double result = 0.0;
-		if (input == null)
-			return result;
-		
-		double min = 1E-6;
-		double sum = 0.0;
-		for (double d : input) {
-			if (d <= 0.0) d = min;
-			sum += 1.0 / d;
-		}
-		
-		if (sum == 0.0)
-			return result;
-		
-		result = (double) input.length / sum;
-		return result;
-		
-	}
-	
-	private double getArithmeticMean(double[] input) {
+	private static double getArithmeticMean(double[] input) {
 		
 		double result = 0.0;
 		if (input == null)
@@ -367,10 +358,13 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 	}
 	
 	private void computeScore() {
+		this.score = computeScore(this.getNormalizedConfidence(), this.getCoherence(), 
+				this.getNodeCount(), this.semanticTypeCount);
+	}
+	
+	private static double computeScore(double confidence, double coherence, int nodeCount, int semanticTypeCount) {
 		
-		double confidence = this.getNormalizedConfidence();
-		double sizeReduction = this.getNormalizedSizeReduction();
-		double coherence = this.getCoherence();
+		double sizeReduction = getNormalizedSizeReduction(nodeCount, semanticTypeCount);
 		//int frequency = this.getFrequency();
 		
 		double alpha = ModelingConfiguration.getScoringConfidenceCoefficient();
@@ -388,8 +382,7 @@ public class SteinerNodes implements Comparable<SteinerNodes> {
 //		this.score = sizeReduction;
 //		this.score = coherence;
 //		this.score = confidence;
-		this.score = getHarmonicMean(measures);
-		this.score = getArithmeticMean(measures);
+		return getArithmeticMean(measures);
 	}
 
 	@Override
@@ -109,6 +109,9 @@ public class OntologyCache {
 	// hashmap: domain+range -> object properties
 	private HashMap<String, HashSet<String>> domainRangeToDirectProperties;
 	private HashMap<String, HashSet<String>> domainRangeToIndirectProperties;
+	// hashmap: domain -> ranges of the object properties in domainRangeToDirectProperties/domainRangeToIndirectProperties
+	private HashMap<String, HashSet<String>> domainToDirectPropertyRanges;
+	private HashMap<String, HashSet<String>> domainToIndirectPropertyRanges;
 //	private HashMap<String, List<String>> domainRangeToDomainlessProperties;
 //	private HashMap<String, List<String>> domainRangeToRangelessProperties;
 
@@ -255,6 +258,8 @@ public class OntologyCache {
 		
 		this.domainRangeToDirectProperties = new HashMap<String, HashSet<String>>();
 		this.domainRangeToIndirectProperties = new HashMap<String, HashSet<String>>();
+		this.domainToDirectPropertyRanges = new HashMap<String, HashSet<String>>();
+		this.domainToIndirectPropertyRanges = new HashMap<String, HashSet<String>>();
 //		this.domainRangeToDomainlessProperties = new HashMap<String, List<String>>();
 //		this.domainRangeToRangelessProperties = new HashMap<String, List<String>>();
 		
@@ -429,6 +434,14 @@ public class OntologyCache {
 		return domainRangeToIndirectProperties;
 	}
 
+	public HashMap<String, HashSet<String>> getDomainToDirectPropertyRanges() {
+		return domainToDirectPropertyRanges;
+	}
+
+	public HashMap<String, HashSet<String>> getDomainToIndirectPropertyRanges() {
+		return domainToIndirectPropertyRanges;
+	}
+
 //	public HashMap<String, List<String>> getDomainRangeToDomainlessProperties() {
 //		return domainRangeToDomainlessProperties;
 //	}
@@ -1118,6 +1131,7 @@ public class OntologyCache {
 						domainRangeToDirectProperties.put(domain + range, temp);
 					}
 					temp.add(property.getURI());
+					addDomainRange(domainToDirectPropertyRanges, domain, range);
 				}
 			}
 
@@ -1130,6 +1144,7 @@ public class OntologyCache {
 						domainRangeToIndirectProperties.put(domain + range, temp);
 					}
 					temp.add(property.getURI());
+					addDomainRange(domainToIndirectPropertyRanges, domain, range);
 				}
 			}
 
@@ -1277,12 +1292,23 @@ public class OntologyCache {
 						if (superP.compareTo(p) != 0)
 							temp.add(superP);
 					}
+					if (!temp.isEmpty())
+						addDomainRange(domainToIndirectPropertyRanges, domain, range);
 				}
 			}
 		}
 
 	}
 	
+	private static void addDomainRange(HashMap<String, HashSet<String>> domainToRanges, String domain, String range) {
+		HashSet<String> ranges = domainToRanges.get(domain);
+		if (ranges == null) {
+			ranges = new HashSet<String>();
+			domainToRanges.put(domain, ranges);
+		}
+		ranges.add(range);
+	}
+	
 // 	Please don't remove this commented method. We had this before to implement SubProperty inference, but later we changed our interpretation of SubProperty.
 // 	It is better to keep that for a while.
 //	/**
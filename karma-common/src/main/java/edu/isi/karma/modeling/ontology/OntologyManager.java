@@ -21,12 +21,22 @@
 package edu.isi.karma.modeling.ontology;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,11 +55,84 @@ public class OntologyManager  {
 	private OntologyHandler ontHandler = null;
 	private OntologyCache ontCache = null;
 	private List<OntologyUpdateListener> ontUpdateListeners; 
+	// the digests of the imported files and the uris of the ontologies they import
+	private Set<String> importedOntologies;
+	private Set<String> importedOntologyUris;
+	private String ontologySetKey;
+	// incremented every time the cache is rebuilt, so that results computed
+	// from the labels of the ontology can tell whether they are stale
+	private volatile long cacheVersion = 0;
 	
 	public OntologyManager() {
 		ontHandler = new OntologyHandler();
 		ontCache = new OntologyCache(ontHandler);
-		ontUpdateListeners = new ArrayList<OntologyUpdateListener>();	
+		// listeners subscribe from other threads and may unsubscribe when they are notified
+		ontUpdateListeners = new CopyOnWriteArrayList<OntologyUpdateListener>();
+		importedOntologies = new TreeSet<String>();
+		importedOntologyUris = new TreeSet<String>();
+	}
+
+	/**
+	 * returns a key for the set of ontology files imported into the manager. 
+	 * Managers that imported files with the same contents and the same owl:imports 
+	 * have the same key, whatever the names of the files.
+	 * @return
+	 */
+	public synchronized String getOntologySetKey() {
+		if (ontologySetKey == null) {
+			String ontologies = importedOntologies.toString() + importedOntologyUris.toString();
+			ontologySetKey = toHex(getMessageDigest().digest(ontologies.getBytes(Charset.forName("UTF-8"))));
+		}
+		return ontologySetKey;
+	}
+	
+	private synchronized void addImportedOntology(File sourceFile) {
+		importedOntologies.add(getDigest(sourceFile));
+		importedOntologyUris.addAll(ontHandler.getOntModel().listImportedOntologyURIs());
+		ontologySetKey = null;
+	}
+	
+	private static String getDigest(File file) {
+		MessageDigest digest = getMessageDigest();
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) != -1)
+					digest.update(buffer, 0, n);
+			} finally {
+				in.close();
+			}
+			return toHex(digest.digest());
+		} catch (IOException e) {
+			logger.error("cannot compute the digest of " + file.getAbsolutePath(), e);
+			return file.getName() + ":" + file.length();
+		}
+	}
+	
+	private static MessageDigest getMessageDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every java platform supports SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * @return a counter that changes every time the classes, properties or
+	 *         labels of the cache are reloaded.
+	 */
+	public long getCacheVersion() {
+		return cacheVersion;
 	}
 
 	public boolean isEmpty() {
@@ -111,9 +194,12 @@ public class OntologyManager  {
 			return false;
 		}
 		
+		addImportedOntology(sourceFile);
+		
 		// update the cache
 		ontCache = new OntologyCache(ontHandler);
 		ontCache.init();
+		cacheVersion++;
 		
 		// notify listeners
 		this.notifyListeners();
@@ -144,6 +230,8 @@ public class OntologyManager  {
 			return false;
 		}
 		
+		addImportedOntology(sourceFile);
+		
 		// notify listeners
 		this.notifyListeners();
 
@@ -154,6 +242,7 @@ public class OntologyManager  {
 	public void updateCache() {
 		ontCache = new OntologyCache(ontHandler);
 		ontCache.init();
+		cacheVersion++;
 	}
 	
 	public HashMap<String, Label> getClasses() {
@@ -737,12 +826,24 @@ public class OntologyManager  {
 		
 		if (sourceUri == null || targetUri == null) return false;
 //		return this.ontCache.getConnectedByDomainlessProperties().contains(sourceUri + targetUri);
-		HashSet<String> directInProperties = this.ontCache.getDirectInObjectProperties().get(targetUri);
+		return isRangeOfDomainlessProperty(targetUri);
+	}
+
+	/**
+	 * returns true if @param classUri is the range of an object property without domain,
+	 * i.e., any class is connected to @param classUri by a domainless property.
+	 * @param classUri
+	 * @return
+	 */
+	public boolean isRangeOfDomainlessProperty(String classUri) {
+		
+		if (classUri == null) return false;
+		HashSet<String> directInProperties = this.ontCache.getDirectInObjectProperties().get(classUri);
 		if (directInProperties != null) {
 			if (!Sets.intersection(this.ontCache.getObjectPropertiesWithOnlyRange().keySet(), directInProperties).isEmpty())
 				return true;
 		}
-		HashSet<String> indirectInProperties = this.ontCache.getIndirectInObjectProperties().get(targetUri);
+		HashSet<String> indirectInProperties = this.ontCache.getIndirectInObjectProperties().get(classUri);
 		if (indirectInProperties != null) {
 			if (!Sets.intersection(this.ontCache.getObjectPropertiesWithOnlyRange().keySet(), indirectInProperties).isEmpty())
 				return true;
@@ -754,12 +855,24 @@ public class OntologyManager  {
 		
 		if (sourceUri == null || targetUri == null) return false;
 //		return this.ontCache.getConnectedByRangelessProperties().contains(sourceUri + targetUri);
-		HashSet<String> directOutProperties = this.ontCache.getDirectOutObjectProperties().get(sourceUri);
+		return isDomainOfRangelessProperty(sourceUri);
+	}
+
+	/**
+	 * returns true if @param classUri is the domain of an object property without range,
+	 * i.e., @param classUri is connected to any class by a rangeless property.
+	 * @param classUri
+	 * @return
+	 */
+	public boolean isDomainOfRangelessProperty(String classUri) {
+		
+		if (classUri == null) return false;
+		HashSet<String> directOutProperties = this.ontCache.getDirectOutObjectProperties().get(classUri);
 		if (directOutProperties != null) {
 			if (!Sets.intersection(this.ontCache.getObjectPropertiesWithOnlyDomain().keySet(), directOutProperties).isEmpty())
 				return true;
 		}
-		HashSet<String> indirectOutProperties = this.ontCache.getIndirectOutObjectProperties().get(sourceUri);
+		HashSet<String> indirectOutProperties = this.ontCache.getIndirectOutObjectProperties().get(classUri);
 		if (indirectOutProperties != null) {
 			if (!Sets.intersection(this.ontCache.getObjectPropertiesWithOnlyDomain().keySet(), indirectOutProperties).isEmpty())
 				return true;
@@ -770,6 +883,37 @@ public class OntologyManager  {
 	public boolean isConnectedByDomainlessAndRangelessProperty(String sourceUri, String targetUri) {
 		
 		if (sourceUri == null || targetUri == null) return false;
+		return hasDomainlessAndRangelessProperty();
+	}
+
+	/**
+	 * returns true if the ontology has an object property without domain and range, 
+	 * i.e., all the classes are connected to each other.
+	 * @return
+	 */
+	public boolean hasDomainlessAndRangelessProperty() {
 		return (this.ontCache.getObjectPropertiesWithoutDomainAndRange().size() > 0);
 	}
+
+	/**
+	 * returns URIs of all the classes that are range of a direct object property whose domain is @param domainUri
+	 * @param domainUri
+	 * @return
+	 */
+	public Set<String> getRangesOfDirectProperties(String domainUri) {
+		HashSet<String> ranges = this.ontCache.getDomainToDirectPropertyRanges().get(domainUri);
+		if (ranges == null) return Collections.emptySet();
+		return ranges;
+	}
+
+	/**
+	 * returns URIs of all the classes that are range of an indirect object property whose domain is @param domainUri
+	 * @param domainUri
+	 * @return
+	 */
+	public Set<String> getRangesOfIndirectProperties(String domainUri) {
+		HashSet<String> ranges = this.ontCache.getDomainToIndirectPropertyRanges().get(domainUri);
+		if (ranges == null) return Collections.emptySet();
+		return ranges;
+	}
 }
@@ -21,6 +21,8 @@
 package edu.isi.karma.modeling.semantictypes;
 
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FullCRFModel {
 	/**
@@ -29,6 +31,13 @@ public class FullCRFModel {
 	 */
 	HashMap<String, CRFColumnModel> columnModelMap = new HashMap<String, CRFColumnModel>();
 
+	/**
+	 * Keeps, for each column HNodeId, the version of the inputs (column values,
+	 * column name, assigned semantic type and CRF model) that the current
+	 * suggestions were computed from
+	 */
+	Map<String, String> columnVersionMap = new ConcurrentHashMap<String, String>();
+
 	public void addColumnModel(String nodeId, CRFColumnModel columnModel) {
 		columnModelMap.put(nodeId, columnModel);
 	}
@@ -42,4 +51,12 @@ public class FullCRFModel {
 	public CRFColumnModel getModelByHNodeId(String hNodeId) {
 		return columnModelMap.get(hNodeId);
 	}
+
+	public void setColumnVersion(String hNodeId, String version) {
+		columnVersionMap.put(hNodeId, version);
+	}
+
+	public boolean isUpToDate(String hNodeId, String version) {
+		return version.equals(columnVersionMap.get(hNodeId));
+	}
 }
@@ -23,6 +23,7 @@ package edu.isi.karma.modeling.semantictypes;
 import edu.isi.karma.modeling.ontology.OntologyManager;
 import edu.isi.karma.modeling.semantictypes.crfmodelhandler.CRFModelHandler;
 import edu.isi.karma.modeling.semantictypes.crfmodelhandler.CRFModelHandler.ColumnFeature;
+import edu.isi.karma.rep.HNode;
 import edu.isi.karma.rep.HNodePath;
 import edu.isi.karma.rep.Node;
 import edu.isi.karma.rep.Worksheet;
@@ -337,11 +338,55 @@ public class SemanticTypeUtil {
 		{
 			return;
 		}
-		List<HNodePath> paths = worksheet.getHeaders().getAllPaths();
-		for (HNodePath path : paths) {
+		for (HNodePath path : getColumnsWithStaleSuggestions(worksheet, crfModelHandler, ontMgr)) {
 			computeSemanticTypesSuggestion(worksheet, crfModelHandler, ontMgr, path);
 		}
 	}
+
+	/**
+	 * Returns the paths of the columns whose semantic type suggestions are
+	 * missing or were computed before the column values, the column name, the
+	 * assigned semantic type, the CRF model or the ontology changed.
+	 * Suggestions for the remaining columns would not change if they were
+	 * recomputed.
+	 * 
+	 * @param worksheet
+	 *            The target worksheet
+	 * @param crfModelHandler
+	 *            The CRF Model Handler used to compute the suggestions
+	 * @param ontMgr
+	 *            The Ontology Manager used to filter the suggestions
+	 * @return Paths to the columns that need new suggestions
+	 */
+	public static List<HNodePath> getColumnsWithStaleSuggestions(Worksheet worksheet,
+			CRFModelHandler crfModelHandler, OntologyManager ontMgr) {
+		List<HNodePath> stalePaths = new ArrayList<HNodePath>();
+		FullCRFModel crfModel = worksheet.getCrfModel();
+		for (HNodePath path : worksheet.getHeaders().getAllPaths()) {
+			String hNodeId = path.getLeaf().getId();
+			if (!crfModel.isUpToDate(hNodeId, getSuggestionVersion(worksheet, crfModelHandler, ontMgr, path)))
+				stalePaths.add(path);
+		}
+		return stalePaths;
+	}
+
+	static String getSuggestionVersion(Worksheet worksheet,
+			CRFModelHandler crfModelHandler, OntologyManager ontMgr, HNodePath path) {
+		HNode leaf = path.getLeaf();
+		StringBuilder version = new StringBuilder();
+		version.append(leaf.getValuesVersion()).append('|');
+		version.append(crfModelHandler.getModelVersion()).append('|');
+		version.append(ontMgr.getCacheVersion()).append('|');
+		SemanticType existingSemanticType = worksheet.getSemanticTypes().getSemanticTypeForHNodeId(leaf.getId());
+		if (existingSemanticType != null) {
+			version.append(existingSemanticType.getType().getUri()).append('|');
+			if (existingSemanticType.getDomain() != null)
+				version.append(existingSemanticType.getDomain().getUri());
+			version.append('|');
+		}
+		version.append(leaf.getColumnName());
+		return version.toString();
+	}
 	
 	public static void computeSemanticTypesSuggestion(Worksheet worksheet,
 			CRFModelHandler crfModelHandler, OntologyManager ontMgr, HNodePath path)
@@ -350,6 +395,10 @@ public class SemanticTypeUtil {
 		{
 			return;
 		}
+		// the version of the inputs is taken before computing the suggestions
+		// and only recorded once they are computed, so that a failed
+		// computation is retried and a change made meanwhile is not missed
+		String version = getSuggestionVersion(worksheet, crfModelHandler, ontMgr, path);
 		ArrayList<String> trainingExamples = getTrainingExamples(worksheet, path);
 
 		Map<ColumnFeature, Collection<String>> columnFeatures = new HashMap<ColumnFeature, Collection<String>>();
@@ -370,6 +419,7 @@ public class SemanticTypeUtil {
 			return;
 		}
 		if (labels.size() == 0) {
+			worksheet.getCrfModel().setColumnVersion(path.getLeaf().getId(), version);
 			return;
 		}
 		
@@ -420,11 +470,13 @@ public class SemanticTypeUtil {
 			scores.remove(idx);
 		}
 		if (labels.size() == 0) {
+			worksheet.getCrfModel().setColumnVersion(path.getLeaf().getId(), version);
 			return;
 		}
 
 		CRFColumnModel columnModel = new CRFColumnModel(labels, scores);
 		worksheet.getCrfModel().addColumnModel(path.getLeaf().getId(), columnModel);
+		worksheet.getCrfModel().setColumnVersion(path.getLeaf().getId(), version);
 	}
 	
 	private static boolean existsInSemanticTypesCollection(Label typeLabel, Label domainLabel, SemanticType existingSemanticType) {
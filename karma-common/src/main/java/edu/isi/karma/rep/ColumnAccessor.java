@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2012 University of Southern California
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * This code was developed by the Information Integration Group as part 
+ * of the Karma project at the Information Sciences Institute of the 
+ * University of Southern California.  For more information, publications, 
+ * and related projects, please see: http://www.isi.edu/integration
+ ******************************************************************************/
+package edu.isi.karma.rep;
+
+/**
+ * A column that is resolved once and then used to access the cells of many
+ * rows, instead of looking the column up by name for every row.
+ */
+public class ColumnAccessor {
+
+	private final HNode hNode;
+
+	private ColumnAccessor(HNode hNode) {
+		this.hNode = hNode;
+	}
+
+	/**
+	 * Resolves a column name the same way as
+	 * {@link Row#getNeighborByColumnName(String, RepFactory)}: in the given
+	 * table first, then in the tables that contain it.
+	 * 
+	 * @return the accessor, or null if there is no column with that name.
+	 */
+	public static ColumnAccessor resolve(HTable hTable, String columnName,
+			RepFactory factory) {
+		HNode hNode = hTable.getNeighborByColumnName(columnName, factory);
+		return hNode == null ? null : new ColumnAccessor(hNode);
+	}
+
+	/**
+	 * @return the accessor for the leaf column of the path.
+	 */
+	public static ColumnAccessor resolve(HNodePath path) {
+		return new ColumnAccessor(path.getLeaf());
+	}
+
+	public HNode getHNode() {
+		return hNode;
+	}
+
+	public String getHNodeId() {
+		return hNode.getId();
+	}
+
+	/**
+	 * @return the node of this column in the row or in one of its parent
+	 *         rows, null if there is none.
+	 */
+	public Node getNode(Row row) {
+		return row.getNeighbor(hNode.getId());
+	}
+
+	/**
+	 * @return the node of this column in the row of the given node or in one
+	 *         of its parent rows, null if there is none.
+	 */
+	public Node getNode(Node neighbor) {
+		return neighbor.getNeighbor(hNode.getId());
+	}
+
+	public String getValue(Row row) {
+		Node n = getNode(row);
+		return n == null ? null : n.getValue().asString();
+	}
+
+	public String getValue(Node neighbor) {
+		Node n = getNode(neighbor);
+		return n == null ? null : n.getValue().asString();
+	}
+}
@@ -31,6 +31,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author szekely
@@ -55,6 +56,20 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 	private boolean derivedFromAnotherColumn;
 	private String originalColumnHNodeId;
 
+	// Incremented every time a value in this column changes. Used to find the
+	// columns whose semantic type suggestions need to be recomputed.
+	private volatile long valuesVersion = 0;
+
+	// Shared with the other columns of my HTable and incremented every time
+	// one of them is renamed. The HTable uses it to know when its column name
+	// index is out of date.
+	private AtomicLong columnNamesVersion;
+
+	// Shared with the other columns of my HTable and incremented every time
+	// rows are added to one of its tables, which changes the values of all
+	// of them at once.
+	private AtomicLong rowsVersion;
+
 	HNode(String id, String hTableId, String columnName,
 			boolean automaticallyAdded) {
 		super(id);
@@ -69,6 +84,17 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 
 	public void setColumnName(String columnName) {
 		this.columnName = columnName;
+		if (columnNamesVersion != null) {
+			columnNamesVersion.incrementAndGet();
+		}
+	}
+
+	void setColumnNamesVersion(AtomicLong columnNamesVersion) {
+		this.columnNamesVersion = columnNamesVersion;
+	}
+
+	void setRowsVersion(AtomicLong rowsVersion) {
+		this.rowsVersion = rowsVersion;
 	}
 
 	/**
@@ -107,6 +133,19 @@ public class HNode extends RepEntity implements Comparable<HNode> {
 		this.originalColumnHNodeId = originalColumnHNodeId;
 	}
 
+	/**
+	 * @return a counter that changes every time a value in this column
+	 *         changes.
+	 */
+	public long getValuesVersion() {
+		// both counters only grow, so their sum changes whenever one does
+		return valuesVersion + (rowsVersion == null ? 0 : rowsVersion.get());
+	}
+
+	void markValuesChanged() {
+		valuesVersion++;
+	}
+
 	public void setNestedTable(HTable nestedTable) {
 		this.nestedTable = nestedTable;
 		// mariam
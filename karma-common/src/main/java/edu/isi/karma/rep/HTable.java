@@ -24,6 +24,8 @@ import edu.isi.karma.webserver.KarmaException;
 
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,6 +48,19 @@ public class HTable extends RepEntity {
 
 	private ArrayList<String> orderedNodeIds = new ArrayList<String>();
 
+	// Map of column name to the HNode with that name. Columns are added to it
+	// as they are added to the table; it is rebuilt on first use after a
+	// column is removed or one of my columns is renamed.
+	private transient volatile Map<String, HNode> columnNameIndex = null;
+	private transient volatile long columnNameIndexVersion;
+
+	// Incremented by my HNodes every time one of them is renamed.
+	private final AtomicLong columnNamesVersion = new AtomicLong();
+
+	// Shared with my HNodes and incremented every time rows are added to one
+	// of my tables, so adding a row costs the same for any number of columns.
+	private final AtomicLong rowsVersion = new AtomicLong();
+
 	// mariam
 	/**
 	 * the HNode that contains this table (useful for backwards traversing)
@@ -69,6 +84,13 @@ public class HTable extends RepEntity {
 		return nodes.values();
 	}
 
+	/**
+	 * Marks the values of all my columns as changed.
+	 */
+	void markRowsChanged() {
+		rowsVersion.incrementAndGet();
+	}
+
 	public Collection<String> getHNodeIds() {
 		return nodes.keySet();
 	}
@@ -82,12 +104,49 @@ public class HTable extends RepEntity {
 	}
 
 	public HNode getHNodeFromColumnName(String columnName) {
-		for (HNode n : nodes.values()) {
-			if (columnName.equals(n.getColumnName())) {
-				return n;
+		if (columnName == null) {
+			return null;
+		}
+		return getColumnNameIndex().get(columnName);
+	}
+
+	private Map<String, HNode> getColumnNameIndex() {
+		Map<String, HNode> index = columnNameIndex;
+		if (index != null
+				&& columnNameIndexVersion == columnNamesVersion.get()) {
+			return index;
+		}
+		synchronized (this) {
+			long version = columnNamesVersion.get();
+			index = new ConcurrentHashMap<String, HNode>();
+			for (HNode n : nodes.values()) {
+				if (n.getColumnName() != null
+						&& !index.containsKey(n.getColumnName())) {
+					index.put(n.getColumnName(), n);
+				}
 			}
+			columnNameIndexVersion = version;
+			columnNameIndex = index;
+			return index;
+		}
+	}
+
+	private void addToNodes(HNode hNode) {
+		nodes.put(hNode.getId(), hNode);
+		hNode.setColumnNamesVersion(columnNamesVersion);
+		hNode.setRowsVersion(rowsVersion);
+		addToColumnNameIndex(hNode);
+	}
+
+	// takes the lock of getColumnNameIndex, so that a column added while the
+	// index is rebuilt is not lost and two columns with the same name are
+	// not both added
+	private synchronized void addToColumnNameIndex(HNode hNode) {
+		Map<String, HNode> index = columnNameIndex;
+		if (index != null && hNode.getColumnName() != null
+				&& !index.containsKey(hNode.getColumnName())) {
+			index.put(hNode.getColumnName(), hNode);
 		}
-		return null;
 	}
 
 	// mariam
@@ -130,12 +189,8 @@ public class HTable extends RepEntity {
 	 *         worksheets that do not contain nested tables.
 	 */
 	public String getHNodeIdFromColumnName(String columnName) {
-		for (Map.Entry<String, HNode> n : nodes.entrySet()) {
-			if (columnName.equals(n.getValue().getColumnName())) {
-				return n.getKey();
-			}
-		}
-		return null;
+		HNode n = getHNodeFromColumnName(columnName);
+		return n == null ? null : n.getId();
 	}
 
 	/**
@@ -161,7 +216,7 @@ public class HTable extends RepEntity {
 	public HNode addHNode(String columnName, boolean automaticallyAdded,
 			Worksheet worksheet, RepFactory factory) {
 		HNode hn = factory.createHNode(id, columnName, automaticallyAdded);
-		nodes.put(hn.getId(), hn);
+		addToNodes(hn);
 		orderedNodeIds.add(hn.getId());
 		worksheet.addNodeToDataTable(hn, factory);
 		return hn;
@@ -201,7 +256,7 @@ public class HTable extends RepEntity {
 			}
 		} else {
 			HNode newNode = factory.createHNode(getId(), columnName, false);
-			nodes.put(newNode.getId(), newNode);
+			addToNodes(newNode);
 			int index = orderedNodeIds.indexOf(hNodeId);
 
 			if (index == orderedNodeIds.size() - 1)
@@ -219,7 +274,7 @@ public class HTable extends RepEntity {
 			String columnName, Worksheet worksheet, boolean b) throws KarmaException {
 
 		HNode hn = factory.createHNode(id, columnName, false);
-		nodes.put(hn.getId(), hn);
+		addToNodes(hn);
 		//if hNodeId==null add new node at the beginning
 		if(hNodeId==null){
 			orderedNodeIds.add(0,hn.getId());
@@ -248,6 +303,9 @@ public class HTable extends RepEntity {
 
 		nodes.remove(hNodeId);
 		orderedNodeIds.remove(hNodeId);
+		synchronized (this) {
+			columnNameIndex = null;
+		}
 		worksheet.removeNodeFromDataTable(hNodeId);
 	}
 
@@ -121,14 +121,25 @@ public class Node extends RepEntity implements Neighbor {
 		} else {
 			this.value = value;
 			this.status = status;
+			markValuesChanged(factory);
 		}
 	}
 
-	public void clearValue(NodeStatus status) {
+	public void clearValue(NodeStatus status, RepFactory factory) {
 		// pedro 2012-09-15: this was wrong because it was setting the value to
 		// null.
 		this.value = CellValue.getEmptyValue();
 		this.status = status;
+		markValuesChanged(factory);
+	}
+
+	private void markValuesChanged(RepFactory factory) {
+		if (factory != null) {
+			HNode hNode = factory.getHNode(hNodeId);
+			if (hNode != null) {
+				hNode.markValuesChanged();
+			}
+		}
 	}
 
 	public void setValue(String value, NodeStatus status, RepFactory factory) {
@@ -141,9 +152,11 @@ public class Node extends RepEntity implements Neighbor {
 
 	public void setNestedTable(Table nestedTable, RepFactory factory) {
 		this.nestedTable = nestedTable;
+		markValuesChanged(factory);
 		// mariam
 		if (nestedTable != null) {
 			nestedTable.setNestedTableInNode(this);
+			nestedTable.markValuesChanged(factory);
 			// pedro 2012-09-15
 			if (!value.isEmptyValue()) {
 				logger.info("Adding nested table to node in column '"
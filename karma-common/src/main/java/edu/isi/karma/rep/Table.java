@@ -31,6 +31,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author szekely
@@ -84,9 +85,20 @@ public class Table extends RepEntity {
 		rows.add(r);
 		// mariam
 		r.setBelongsToTable(this);
+		markValuesChanged(factory);
 		return r;
 	}
 
+	/**
+	 * Adding or removing rows changes the values of every column of the
+	 * table, so the version of the values of all of them is incremented.
+	 */
+	void markValuesChanged(RepFactory factory) {
+		HTable hTable = factory.getHTable(hTableId);
+		if (hTable != null)
+			hTable.markRowsChanged();
+	}
+
 	public int getNumRows() {
 		return rows.size();
 	}
@@ -219,6 +231,44 @@ public class Table extends RepEntity {
 		}
 	}
 
+	/**
+	 * Writes the values to the nodes of the column at the end of the path.
+	 * Each value is keyed by the id of the row that holds its node, so rows
+	 * without a value, including rows added or missing a node since the
+	 * values were computed, are left unchanged.
+	 * 
+	 * @param path
+	 *            Path to the target column
+	 * @param values
+	 *            The values, keyed by row id
+	 * @param status
+	 *            The status of the new values
+	 * @param factory
+	 */
+	public void setColumnValues(HNodePath path, Map<String, ? extends CellValue> values,
+			NodeStatus status, RepFactory factory) {
+		List<Node> nodes = new ArrayList<Node>(values.size());
+		collectNodes(path, nodes);
+		int count = 0;
+		for (Node n : nodes) {
+			CellValue value = values.get(n.getBelongsToRow().getId());
+			if (value == null) {
+				continue;
+			}
+			count++;
+			if (n.hasNestedTable()) {
+				logger.error("Node has a nested table. Cannot overwrite such node with new value. NodeID: "
+						+ n.getId());
+				continue;
+			}
+			n.setValue(value, status, factory);
+		}
+		if (count != values.size()) {
+			logger.warn((values.size() - count) + " values were provided for rows that are not in column "
+					+ path.toColumnNamePath() + ".");
+		}
+	}
+
 	/**
 	 * 2013-12-07: Pedro modified this code so that we don't create orphans but
 	 * rather add another row to the existing table.
@@ -23,13 +23,21 @@
  */
 package edu.isi.karma.rep;
 
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Keeps track of the rows of a table that are shown in the UI. They start
+ * with the first pagerSize rows and grow by pagerSize rows every time
+ * additional rows are loaded.
+ */
 public class TablePager {
 
 	private final Table table;
 
-	private int currentEndIndex;
+	// the end of the loaded rows (exclusive), can be beyond the end of the
+	// table
+	private int loadedEndIndex;
 	
 	private int pagerSize;
 
@@ -37,15 +45,22 @@ public class TablePager {
 		super();
 		this.table = table;
 		this.pagerSize = desiredSize;
-		currentEndIndex = (desiredSize < table.getNumRows()) ? desiredSize-1 : table.getNumRows();
+		this.loadedEndIndex = desiredSize;
+	}
+
+	private int getEndIndex() {
+		return Math.min(loadedEndIndex, table.getNumRows());
 	}
 
 	public int getCurrentEndIndex() {
-		return currentEndIndex;
+		return getEndIndex() - 1;
 	}
 
+	/**
+	 * @return the loaded rows.
+	 */
 	public List<Row> getRows() {
-		return table.getRows(0, currentEndIndex+1);
+		return table.getRows(0, getEndIndex());
 	}
 
 	public int getPagerSize() {
@@ -56,22 +71,30 @@ public class TablePager {
 		this.pagerSize = pagerSize;
 	}
 
+	/**
+	 * Loads pagerSize more rows.
+	 * 
+	 * @return only the rows that were loaded now.
+	 */
 	public List<Row> loadAdditionalRows() {
-		int previousEndIndex = currentEndIndex;
-		
-		currentEndIndex = Math.min(currentEndIndex + pagerSize, table.getNumRows()-1);
-		return table.getRows(previousEndIndex+1, pagerSize);
+		int previousEndIndex = getEndIndex();
+		loadedEndIndex = previousEndIndex + pagerSize;
+		if (previousEndIndex >= getEndIndex()) {
+			// getRows would return the last row again
+			return new ArrayList<Row>();
+		}
+		return table.getRows(previousEndIndex, getEndIndex() - previousEndIndex);
 	}
 	
 	public boolean isAtEndOfTable() {
-		return (currentEndIndex + 1) >= table.getNumRows(); 
+		return loadedEndIndex >= table.getNumRows(); 
 	}
 	
 	public int getAdditionalRowsLeftCount() {
 		if (isAtEndOfTable()) {
 			return 0;
 		} else {
-			return table.getNumRows() - (currentEndIndex + 1);
+			return table.getNumRows() - loadedEndIndex;
 		}
 	}
 }
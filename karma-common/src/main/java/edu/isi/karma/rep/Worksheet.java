@@ -27,6 +27,7 @@ import edu.isi.karma.rep.alignment.SemanticTypes;
 import edu.isi.karma.rep.metadata.MetadataContainer;
 
 import java.io.PrintWriter;
+import java.util.Map;
 
 /**
  * @author szekely
@@ -174,6 +175,20 @@ public class Worksheet extends RepEntity {
         dataTable.addNestedTableToDataTable(hNode, factory);
     }
 
+    /**
+     * Convenience method to write the values of a whole column at once. The
+     * values are keyed by the id of the row that holds the node of the column.
+     *
+     * @param path
+     * @param values
+     * @param status
+     * @param factory
+     */
+    public void setColumnValues(HNodePath path, Map<String, ? extends CellValue> values,
+            Node.NodeStatus status, RepFactory factory) {
+        dataTable.setColumnValues(path, values, status, factory);
+    }
+
     public boolean containService() {
         if (this.getMetadataContainer() == null) {
             return false;
@@ -153,12 +153,27 @@ public class Invocation {
 	}
 	
 	public void invokeAPI() {
+		setReceivedResponse(fetchResponse(request.getUrl(), encoding));
+	}
+	
+	/**
+	 * Uses a response that was already received for the request URL, e.g. by
+	 * InvocationExecutor, instead of invoking the service again.
+	 */
+	public void setReceivedResponse(Response response) {
+		this.response = new Response(response);
+		updateResponse();
+	}
+	
+	/**
+	 * Sends the request and reads the response, without converting it to a
+	 * table. If the invocation fails, the response holds the error as json.
+	 */
+	public static Response fetchResponse(URL url, String encoding) {
 		
 		int code = -1;
+		Response response = new Response();
 		try{
-			this.response = new Response();
-			
-			URL url = request.getUrl();
 			URLConnection connection = url.openConnection();
 			String type = connection.getContentType();
 			
@@ -194,29 +209,24 @@ public class Invocation {
 			
 //			System.out.println(outString);
 			
-			this.response.setType(type);
-			this.response.setCode(code);
-			this.response.setStream(outString.toString());
+			response.setType(type);
+			response.setCode(code);
+			response.setStream(outString.toString());
+			response.setComplete(true);
 			
 //			logger.debug(response.getStream());
 			logger.info("Service response is ready as string stream.");
 			
 		}catch(Exception e){
 
-			logger.error("Error in invoking the service with request " + this.request.getUrl().toString());
+			logger.error("Error in invoking the service with request " + url.toString(), e);
 			
-			this.response.setType("application/json");
-			this.response.setCode(code);
-			this.response.setStream("{\"code\":" + code + ",\"msg\":\"" + e.getMessage() +  "\"}");
-			
-			System.out.println(e.getMessage());
-			
-		} finally {
-
-			updateResponse();
+			response.setType("application/json");
+			response.setCode(code);
+			response.setStream("{\"code\":" + code + ",\"msg\":\"" + e.getMessage() +  "\"}");
 			
 		}
-		
+		return response;
 	}
 	
 	public void joinInputAndOutput() {
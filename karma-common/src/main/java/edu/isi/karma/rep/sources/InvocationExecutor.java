@@ -0,0 +1,226 @@
+package edu.isi.karma.rep.sources;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the requests of an InvocationManager concurrently. Each distinct URL
+ * is requested once, at most maxPerHost requests run at a time against one
+ * host and requests to a host are started at most requestsPerSecond times a
+ * second. Complete responses can be kept in a cache keyed by the request URL,
+ * so invoking a service again with the same values does not send the
+ * requests again.
+ *
+ * The shared instance is configured with the context parameters
+ * SERVICE_INVOCATION_THREADS (default 16), SERVICE_INVOCATIONS_PER_HOST
+ * (default 4), SERVICE_REQUESTS_PER_SECOND_PER_HOST (default 0, no limit) and
+ * SERVICE_RESPONSE_CACHE_SIZE (default 0, no cache).
+ */
+public class InvocationExecutor {
+
+	static Logger logger = LoggerFactory.getLogger(InvocationExecutor.class);
+
+	private static InvocationExecutor instance;
+
+	private final ExecutorService pool;
+	private final int maxPerHost;
+	private final long minIntervalNanos;
+	private final Map<String, HostLimiter> hostLimiters = new ConcurrentHashMap<String, HostLimiter>();
+	private final Map<String, Response> cache;
+
+	public InvocationExecutor(int threads, int maxPerHost,
+			double requestsPerSecond, final int cacheSize) {
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "InvocationExecutor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.maxPerHost = Math.max(1, maxPerHost);
+		this.minIntervalNanos = requestsPerSecond > 0 ? (long) (1000000000L / requestsPerSecond) : 0;
+		if (cacheSize > 0) {
+			this.cache = new LinkedHashMap<String, Response>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+					return size() > cacheSize;
+				}
+			};
+		} else {
+			this.cache = null;
+		}
+	}
+
+	public static synchronized InvocationExecutor getInstance() {
+		if (instance == null) {
+			instance = new InvocationExecutor(
+					getIntParameter(ContextParameter.SERVICE_INVOCATION_THREADS, 16),
+					getIntParameter(ContextParameter.SERVICE_INVOCATIONS_PER_HOST, 4),
+					getIntParameter(ContextParameter.SERVICE_REQUESTS_PER_SECOND_PER_HOST, 0),
+					getIntParameter(ContextParameter.SERVICE_RESPONSE_CACHE_SIZE, 0));
+		}
+		return instance;
+	}
+
+	private static int getIntParameter(ContextParameter param, int defaultValue) {
+		try {
+			return Integer.parseInt(ServletContextParameterMap.getParameterValue(param));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the responses to the requests, in the order of the urls. The
+	 * responses of equal urls are the same object.
+	 */
+	public List<Response> fetchResponses(List<URL> urls, final String encoding) {
+		Map<String, Future<Response>> requests = new LinkedHashMap<String, Future<Response>>();
+		List<Future<Response>> futures = new ArrayList<Future<Response>>(urls.size());
+		for (final URL url : urls) {
+			final String key = getKey(url, encoding);
+			Future<Response> future = requests.get(key);
+			if (future == null) {
+				future = pool.submit(new Callable<Response>() {
+					@Override
+					public Response call() throws Exception {
+						return fetchResponse(url, encoding, key);
+					}
+				});
+				requests.put(key, future);
+			}
+			futures.add(future);
+		}
+		logger.info("Invoking " + requests.size() + " distinct requests for "
+				+ urls.size() + " rows ...");
+
+		List<Response> responses = new ArrayList<Response>(futures.size());
+		try {
+			for (Future<Response> future : futures) {
+				responses.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(futures);
+			throw new IllegalStateException("Interrupted while invoking the service", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new IllegalStateException("Error while invoking the service", e.getCause());
+		}
+		return responses;
+	}
+
+	private void cancel(List<Future<Response>> futures) {
+		for (Future<Response> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private Response fetchResponse(URL url, String encoding, String key)
+			throws InterruptedException {
+		Response response = getCachedResponse(key);
+		if (response != null) {
+			return response;
+		}
+		HostLimiter limiter = getHostLimiter(url);
+		limiter.permits.acquire();
+		try {
+			limiter.awaitStart();
+			logger.info("Invoking the service " + url.toString() + " ...");
+			response = Invocation.fetchResponse(url, encoding);
+		} finally {
+			limiter.permits.release();
+		}
+		if (cache != null && response.isComplete()) {
+			synchronized (cache) {
+				cache.put(key, response);
+			}
+		}
+		return response;
+	}
+
+	private Response getCachedResponse(String key) {
+		if (cache == null) {
+			return null;
+		}
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	public void clearCache() {
+		if (cache != null) {
+			synchronized (cache) {
+				cache.clear();
+			}
+		}
+	}
+
+	private HostLimiter getHostLimiter(URL url) {
+		String host = url.getHost() + ":" + url.getPort();
+		HostLimiter limiter = hostLimiters.get(host);
+		if (limiter == null) {
+			synchronized (hostLimiters) {
+				limiter = hostLimiters.get(host);
+				if (limiter == null) {
+					limiter = new HostLimiter(maxPerHost, minIntervalNanos);
+					hostLimiters.put(host, limiter);
+				}
+			}
+		}
+		return limiter;
+	}
+
+	private static String getKey(URL url, String encoding) {
+		return encoding + " " + url.toString();
+	}
+
+	private static class HostLimiter {
+		private final Semaphore permits;
+		private final long minIntervalNanos;
+		private long nextStart = System.nanoTime();
+
+		HostLimiter(int maxConcurrent, long minIntervalNanos) {
+			this.permits = new Semaphore(maxConcurrent, true);
+			this.minIntervalNanos = minIntervalNanos;
+		}
+
+		/**
+		 * Waits until the next request to the host may start.
+		 */
+		void awaitStart() throws InterruptedException {
+			if (minIntervalNanos == 0) {
+				return;
+			}
+			long start;
+			synchronized (this) {
+				start = Math.max(nextStart, System.nanoTime());
+				nextStart = start + minIntervalNanos;
+			}
+			long wait = start - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+}
@@ -106,6 +106,7 @@ public class InvocationManager {
 	}
 	
 	private void invokeAndGetResponse() {
+		List<Response> responses = InvocationExecutor.getInstance().fetchResponses(requestURLs, encoding);
 		for (int i = 0; i < requestURLs.size(); i++) {
 			URL url = requestURLs.get(i);
 			String requestId = null;
@@ -113,8 +114,7 @@ public class InvocationManager {
 				requestId = idList.get(i);
 			Request request = new Request(url);
 			Invocation invocation = new Invocation(requestId, request, encoding);
-			logger.info("Invoking the service " + request.getUrl().toString() + " ...");
-			invocation.invokeAPI();
+			invocation.setReceivedResponse(responses.get(i));
 			invocations.add(invocation);
 		}
 		List<Table> invocationData = new ArrayList<Table>();
@@ -31,6 +31,20 @@ public class Response {
 	private String stream;
 	private Table table;
 	private List<Attribute> attributes;
+	private boolean complete;
+	
+	public Response() {
+	}
+	
+	/**
+	 * Copies the response as it was received, without its table.
+	 */
+	public Response(Response response) {
+		this.type = response.type;
+		this.code = response.code;
+		this.stream = response.stream;
+		this.complete = response.complete;
+	}
 	
 	public String getType() {
 		return type;
@@ -57,6 +71,16 @@ public class Response {
 	public void setCode(int code) {
 		this.code = code;
 	}
+	/**
+	 * @return true if the whole response of the service was read, false if
+	 * the stream holds the error of a failed invocation.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+	public void setComplete(boolean complete) {
+		this.complete = complete;
+	}
 	public List<Attribute> getAttributes() {
 		return this.attributes;
 	}
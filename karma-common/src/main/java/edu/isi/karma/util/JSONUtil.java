@@ -28,7 +28,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public class JSONUtil {
 
@@ -154,6 +156,24 @@ public class JSONUtil {
 		return createJson(x);
 	}
 
+	/**
+	 * Returns the keys in the order in which JSONObject.toString() writes an
+	 * object that they were put into in the given order. JSON that is
+	 * streamed in this order is the same as the JSONObject it replaces.
+	 */
+	public static List<String> getJSONObjectKeyOrder(String... keys) {
+		JSONObject object = new JSONObject();
+		for (String key : keys) {
+			object.put(key, 0);
+		}
+		List<String> order = new ArrayList<String>(keys.length);
+		Iterator<?> it = object.keys();
+		while (it.hasNext()) {
+			order.add((String) it.next());
+		}
+		return order;
+	}
+
 	public static String prettyPrintJson(String jsonString) {
 		try {
 			Object o = createJson(jsonString);
@@ -0,0 +1,188 @@
+package edu.isi.karma.controller.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.controller.command.Command;
+import edu.isi.karma.controller.command.CommandType;
+import edu.isi.karma.controller.command.ICommand.CommandTag;
+import edu.isi.karma.controller.history.HistoryJsonUtil.ClientJsonKeys;
+import edu.isi.karma.controller.history.HistoryJsonUtil.ParameterType;
+import edu.isi.karma.controller.update.UpdateContainer;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+import edu.isi.karma.util.JSONUtil;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class CommandHistoryJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Workspace workspace;
+	private Worksheet worksheet;
+	private HNode name;
+	private HNode age;
+	private CommandHistory history;
+	private int commandCount;
+
+	@Before
+	public void createWorksheet() throws Exception {
+		// the workspace writes its preferences file and the history goes to
+		// the same folder
+		String directory = folder.getRoot().getAbsolutePath() + "/";
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, directory);
+		ServletContextParameterMap.setParameterValue(ContextParameter.WORKSHEET_HISTORY_DIRECTORY, directory);
+		CommandHistoryWriter.setIsHistoryEnabled(true);
+		workspace = WorkspaceManager.getInstance().createWorkspace();
+		RepFactory factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("people", workspace, "UTF-8");
+		name = worksheet.getHeaders().addHNode("name", worksheet, factory);
+		age = worksheet.getHeaders().addHNode("age", worksheet, factory);
+		history = workspace.getCommandHistory();
+	}
+
+	@After
+	public void resetParameters() {
+		CommandHistoryWriter.setIsHistoryEnabled(false);
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, "");
+		ServletContextParameterMap.setParameterValue(ContextParameter.WORKSHEET_HISTORY_DIRECTORY, "");
+	}
+
+	@Test
+	public void replayedJournalMatchesHistoryWriterTest() throws Exception {
+		ColumnCommand first = doCommand(name);
+		doCommand(age);
+		ColumnCommand third = doCommand(name);
+		doCommand(age);
+		// undoes the last two commands, then redoes one of them
+		history.undoOrRedoCommandsUntil(workspace, third.getId());
+		history.undoOrRedoCommandsUntil(workspace, third.getId());
+		doCommand(name);
+		// a command that is not saved in the worksheet history
+		ColumnCommand unsaved = new ColumnCommand(age);
+		unsaved.getTags().clear();
+		history.doCommand(unsaved, workspace);
+		CommandHistoryJournal.waitForPendingWrites();
+
+		File historyFile = getHistoryFile();
+		assertTrue(new File(historyFile.getPath() + CommandHistoryJournal.JOURNAL_FILE_SUFFIX).exists());
+		JSONArray replayed = CommandHistoryJournal.readHistory(historyFile);
+		assertEquals(4, replayed.length());
+		assertEquals(first.getId(), getCommandId(replayed.getJSONObject(0)));
+
+		new CommandHistoryWriter(history._getHistory(), workspace).writeHistoryPerWorksheet();
+		JSONArray written = (JSONArray) JSONUtil.createJson(new FileReader(historyFile));
+		assertEquals(written.toString(), replayed.toString());
+	}
+
+	@Test
+	public void compactionKeepsCommandJsonTest() throws Exception {
+		doCommand(name);
+		doCommand(age);
+		name.setColumnName("fullName");
+		doCommand(name);
+		CommandHistoryJournal.waitForPendingWrites();
+
+		File historyFile = getHistoryFile();
+		JSONArray replayed = CommandHistoryJournal.readHistory(historyFile);
+		assertEquals("name", getColumnName(replayed.getJSONObject(0)));
+		assertEquals("fullName", getColumnName(replayed.getJSONObject(2)));
+
+		history.exportWorksheetHistory(workspace, worksheet.getId());
+		assertTrue(!new File(historyFile.getPath() + CommandHistoryJournal.JOURNAL_FILE_SUFFIX).exists());
+		JSONArray compacted = (JSONArray) JSONUtil.createJson(new FileReader(historyFile));
+		assertEquals(replayed.toString(), compacted.toString());
+	}
+
+	private ColumnCommand doCommand(HNode column) throws Exception {
+		ColumnCommand command = new ColumnCommand(column);
+		history.doCommand(command, workspace);
+		return command;
+	}
+
+	private File getHistoryFile() {
+		return new File(HistoryJsonUtil.constructWorksheetHistoryJsonFilePath(
+				worksheet.getTitle(), workspace.getCommandPreferencesId()));
+	}
+
+	private String getCommandId(JSONObject commandJson) {
+		return HistoryJsonUtil.getStringValue("id", commandJson.getJSONArray(
+				CommandHistoryWriter.HistoryArguments.inputParameters.name()));
+	}
+
+	private String getColumnName(JSONObject commandJson) {
+		return HistoryJsonUtil.getJSONArrayValue("hNodeId", commandJson.getJSONArray(
+				CommandHistoryWriter.HistoryArguments.inputParameters.name()))
+				.getJSONObject(0).getString("columnName");
+	}
+
+	/**
+	 * A command on a column that does nothing, saved in the worksheet history.
+	 */
+	private class ColumnCommand extends Command {
+
+		ColumnCommand(HNode column) {
+			super("C" + (++commandCount));
+			addTag(CommandTag.Transformation);
+			JSONArray input = new JSONArray();
+			input.put(getParameter("worksheetId", worksheet.getId(), ParameterType.worksheetId));
+			input.put(getParameter("hNodeId", column.getId(), ParameterType.hNodeId));
+			input.put(getParameter("id", getId(), ParameterType.other));
+			setInputParameterJson(input.toString());
+		}
+
+		private JSONObject getParameter(String name, String value, ParameterType type) {
+			JSONObject parameter = new JSONObject();
+			parameter.put(ClientJsonKeys.name.name(), name);
+			parameter.put(ClientJsonKeys.value.name(), value);
+			parameter.put(ClientJsonKeys.type.name(), type.name());
+			return parameter;
+		}
+
+		@Override
+		public String getCommandName() {
+			return "ColumnCommand";
+		}
+
+		@Override
+		public String getTitle() {
+			return "Column Command";
+		}
+
+		@Override
+		public String getDescription() {
+			return "";
+		}
+
+		@Override
+		public CommandType getCommandType() {
+			return CommandType.undoable;
+		}
+
+		@Override
+		public UpdateContainer doIt(Workspace workspace) {
+			return new UpdateContainer();
+		}
+
+		@Override
+		public UpdateContainer undoIt(Workspace workspace) {
+			return new UpdateContainer();
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package edu.isi.karma.er.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class TripleStoreStreamWriterTest {
+
+	private static final String GRAPH = "http://example.org/graph";
+
+	private HttpServer server;
+	private String repositoryURL;
+	private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+	private volatile String failOn = null;
+
+	@Before
+	public void startServer() throws IOException {
+		ServletContextParameterMap.setParameterValue(ContextParameter.RDF_PUBLISH_CHUNK_SIZE, "200");
+		ServletContextParameterMap.setParameterValue(ContextParameter.RDF_PUBLISH_RETRIES, "1");
+		ServletContextParameterMap.setParameterValue(ContextParameter.RDF_PUBLISH_GZIP, "true");
+
+		// a stub repository that records the statements requests
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/repo/size", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "0");
+			}
+		});
+		server.createContext("/repo/statements", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				InputStream in = exchange.getRequestBody();
+				if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+					in = new GZIPInputStream(in);
+				}
+				String query = exchange.getRequestURI().getRawQuery();
+				Request request = new Request(exchange.getRequestMethod(),
+						query == null ? "" : URLDecoder.decode(query, "UTF-8"), read(in));
+				requests.add(request);
+				if (failOn != null && request.body.contains(failOn)) {
+					respond(exchange, 500, "failed");
+				} else {
+					respond(exchange, 204, null);
+				}
+			}
+		});
+		server.start();
+		repositoryURL = "http://localhost:" + server.getAddress().getPort() + "/repo";
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		ServletContextParameterMap.setParameterValue(ContextParameter.RDF_PUBLISH_CHUNK_SIZE, "");
+		ServletContextParameterMap.setParameterValue(ContextParameter.RDF_PUBLISH_RETRIES, "");
+		ServletContextParameterMap.setParameterValue(ContextParameter.RDF_PUBLISH_GZIP, "");
+	}
+
+	@Test
+	public void blankNodesAcrossChunksTest() throws Exception {
+		StringWriter copy = new StringWriter();
+		TripleStoreStreamWriter writer = new TripleStoreStreamWriter(repositoryURL, GRAPH, false, null, copy);
+		String rdf = write(writer, 20);
+
+		assertTrue(writer.awaitCompletion());
+		assertNull(writer.getErrorMessage());
+		assertEquals(rdf, copy.toString());
+
+		List<Request> posts = getRequests("POST");
+		assertTrue(posts.size() > 1);
+		StringBuilder stored = new StringBuilder();
+		for (Request post : posts) {
+			assertEquals("context=<" + GRAPH + ">", post.query);
+			stored.append(post.body);
+		}
+		assertFalse(stored.toString().contains("> _:"));
+		assertFalse(stored.toString().contains("\n_:"));
+		assertTrue(stored.toString().contains("\"not _:a node\""));
+
+		// the blank node of the first and the last chunk is the same IRI
+		Matcher first = Pattern.compile("^<(" + Pattern.quote(TripleStoreStreamWriter.SKOLEM_PREFIX)
+				+ "[^>]*/)root>").matcher(posts.get(0).body);
+		assertTrue(first.find());
+		assertTrue(posts.get(posts.size() - 1).body.contains("<" + first.group(1) + "root> ."));
+	}
+
+	@Test
+	public void skolemizeTest() {
+		assertEquals("<p:b1> <http://x/_:y> \"a \\\" _:z\" .\n<p:b2> <q> <p:b3.x>.\n",
+				TripleStoreStreamWriter.skolemize(
+						"_:b1 <http://x/_:y> \"a \\\" _:z\" .\n_:b2 <q> _:b3.x.\n", "p:"));
+	}
+
+	@Test
+	public void replaceGraphTest() throws Exception {
+		TripleStoreStreamWriter writer = new TripleStoreStreamWriter(repositoryURL, GRAPH, true, null, null);
+		write(writer, 20);
+
+		assertTrue(writer.awaitCompletion());
+		List<Request> posts = getRequests("POST");
+		String staging = posts.get(0).query;
+		assertTrue(staging.startsWith("context=<urn:uuid:"));
+		for (Request post : posts.subList(0, posts.size() - 1)) {
+			assertEquals(staging, post.query);
+		}
+		String stagingGraph = staging.substring("context=".length());
+		assertEquals("update=MOVE GRAPH " + stagingGraph + " TO GRAPH <" + GRAPH + ">",
+				URLDecoder.decode(posts.get(posts.size() - 1).body, "UTF-8"));
+		assertTrue(getRequests("PUT").isEmpty());
+	}
+
+	@Test
+	public void failedReplaceTest() throws Exception {
+		failOn = "s15";
+		TripleStoreStreamWriter writer = new TripleStoreStreamWriter(repositoryURL, GRAPH, true, null, null);
+		write(writer, 20);
+
+		assertFalse(writer.awaitCompletion());
+		assertTrue(writer.getErrorMessage().contains("was not changed"));
+		for (Request post : getRequests("POST")) {
+			assertFalse(post.body.contains("update="));
+		}
+		List<Request> deletes = getRequests("DELETE");
+		assertEquals(1, deletes.size());
+		assertEquals(getRequests("POST").get(0).query, deletes.get(0).query);
+	}
+
+	@Test
+	public void failedAddTest() throws Exception {
+		failOn = "s15";
+		TripleStoreStreamWriter writer = new TripleStoreStreamWriter(repositoryURL, GRAPH, false, null, null);
+		write(writer, 20);
+
+		assertFalse(writer.awaitCompletion());
+		assertTrue(writer.getErrorMessage().contains("is incomplete"));
+		assertTrue(getRequests("DELETE").isEmpty());
+	}
+
+	@Test
+	public void abortTest() throws Exception {
+		StringWriter copy = new StringWriter() {
+			@Override
+			public void close() {
+				write("<closed>");
+			}
+		};
+		TripleStoreStreamWriter writer = new TripleStoreStreamWriter(repositoryURL, GRAPH, true, null, copy);
+		writer.write("_:root <http://example.org/p> \"never sent\" .\n");
+		writer.abort();
+
+		assertTrue(copy.toString().endsWith("<closed>"));
+		assertFalse(writer.awaitCompletion());
+		assertTrue(requests.isEmpty());
+	}
+
+	// writes statements line by line as the RDF generator does, with a blank
+	// node that is the object of every statement, so the statements of the
+	// first and the last chunk share it
+	private String write(TripleStoreStreamWriter writer, int n) throws IOException {
+		StringBuilder rdf = new StringBuilder();
+		rdf.append("_:root <http://example.org/label> \"not _:a node\" .\n");
+		for (int i = 0; i < n; i++) {
+			rdf.append("<http://example.org/s" + i + "> <http://example.org/p> _:root .\n");
+		}
+		for (String line : rdf.toString().split("(?<=\n)")) {
+			writer.write(line);
+		}
+		writer.close();
+		return rdf.toString();
+	}
+
+	private List<Request> getRequests(String method) {
+		List<Request> result = new ArrayList<Request>();
+		synchronized (requests) {
+			for (Request request : requests) {
+				if (request.method.equals(method)) {
+					result.add(request);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toString("UTF-8");
+	}
+
+	private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body == null ? new byte[0] : body.getBytes("UTF-8");
+		exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	private static class Request {
+		private final String method;
+		private final String query;
+		private final String body;
+
+		Request(String method, String query, String body) {
+			this.method = method;
+			this.query = query;
+			this.body = body;
+		}
+	}
+}
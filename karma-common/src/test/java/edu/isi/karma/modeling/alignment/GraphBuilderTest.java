@@ -0,0 +1,255 @@
+package edu.isi.karma.modeling.alignment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.modeling.ModelingConfiguration;
+import edu.isi.karma.modeling.ontology.OntologyManager;
+import edu.isi.karma.rep.alignment.ColumnNode;
+import edu.isi.karma.rep.alignment.DataPropertyLink;
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.LabeledLink;
+import edu.isi.karma.rep.alignment.Node;
+import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertyType;
+
+public class GraphBuilderTest {
+
+	private static final String NS = "http://example.org/test#";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private OntologyManager ontologyManager;
+	private GraphBuilder graphBuilder;
+	private Node person;
+	private Node organization;
+	private LabeledLink worksFor;
+	private LabeledLink name;
+
+	@Before
+	public void createGraph() throws Exception {
+		File ontology = folder.newFile("test.owl");
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(ontology), "UTF-8"));
+		out.println("<?xml version=\"1.0\"?>");
+		out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"");
+		out.println("    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"");
+		out.println("    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">");
+		out.println("  <owl:Ontology rdf:about=\"" + NS + "\"/>");
+		out.println("  <owl:Class rdf:about=\"" + NS + "Person\"/>");
+		out.println("  <owl:Class rdf:about=\"" + NS + "Organization\"/>");
+		out.println("  <owl:ObjectProperty rdf:about=\"" + NS + "worksFor\">");
+		out.println("    <rdfs:domain rdf:resource=\"" + NS + "Person\"/>");
+		out.println("    <rdfs:range rdf:resource=\"" + NS + "Organization\"/>");
+		out.println("  </owl:ObjectProperty>");
+		out.println("  <owl:DatatypeProperty rdf:about=\"" + NS + "name\">");
+		out.println("    <rdfs:domain rdf:resource=\"" + NS + "Person\"/>");
+		out.println("  </owl:DatatypeProperty>");
+		out.println("</rdf:RDF>");
+		out.close();
+		ontologyManager = new OntologyManager();
+		ontologyManager.doImportAndUpdateCache(ontology, "UTF-8");
+
+		NodeIdFactory nodeIdFactory = new NodeIdFactory();
+		graphBuilder = new GraphBuilder(ontologyManager, nodeIdFactory, false);
+		person = new InternalNode(nodeIdFactory.getNodeId(NS + "Person"), new Label(NS + "Person"));
+		person.getModelIds().addAll(Arrays.asList("m1", "m2"));
+		organization = new InternalNode(nodeIdFactory.getNodeId(NS + "Organization"), new Label(NS + "Organization"));
+		organization.getModelIds().addAll(Arrays.asList("m1", "m2"));
+		Node column = new ColumnNode("c1", "c1", "name", null);
+		column.getModelIds().add("m1");
+		graphBuilder.addNode(person);
+		graphBuilder.addNode(organization);
+		graphBuilder.addNode(column);
+
+		worksFor = new ObjectPropertyLink(LinkIdFactory.getLinkId(NS + "worksFor", person.getId(), organization.getId()),
+				new Label(NS + "worksFor"), ObjectPropertyType.Direct);
+		worksFor.getModelIds().addAll(Arrays.asList("m1", "m2"));
+		graphBuilder.addLink(person, organization, worksFor);
+		graphBuilder.changeLinkWeight(worksFor, 0.5);
+		name = new DataPropertyLink(LinkIdFactory.getLinkId(NS + "name", person.getId(), column.getId()),
+				new Label(NS + "name"), false);
+		name.getModelIds().add("m1");
+		graphBuilder.addLink(person, column, name);
+		graphBuilder.changeLinkWeight(name, 0.7);
+	}
+
+	@Test
+	public void replaceNodeWithCopyTest() {
+		Set<String> published = describe(graphBuilder.getGraph());
+		GraphBuilder copy = new GraphBuilder(ontologyManager, graphBuilder);
+
+		Node personCopy = copy.replaceWithCopy(person);
+		personCopy.getModelIds().remove("m2");
+
+		// the graph builder that is copied does not change
+		assertEquals(published, describe(graphBuilder.getGraph()));
+		assertTrue(person.getModelIds().contains("m2"));
+		assertSame(person, worksFor.getSource());
+		assertSame(person, name.getSource());
+
+		// the copy has the new node, which the copies of the links connect
+		assertNotSame(person, personCopy);
+		assertSame(personCopy, copy.getIdToNodeMap().get(person.getId()));
+		assertTrue(containsSame(copy.getUriToNodesMap().get(NS + "Person"), personCopy));
+		assertEquals(2, copy.getGraph().edgesOf(personCopy).size());
+		for (DefaultLink link : copy.getGraph().edgesOf(personCopy)) {
+			assertSame(personCopy, link.getSource());
+			assertSame(personCopy, copy.getGraph().getEdgeSource(link));
+			assertNotSame(graphBuilder.getIdToLinkMap().get(link.getId()), link);
+			assertSame(link, copy.getIdToLinkMap().get(link.getId()));
+		}
+		published.remove(describe(person));
+		published.add(describe(personCopy));
+		assertEquals(published, describe(copy.getGraph()));
+		assertEquals(graphBuilder.getLinkCountMap(), copy.getLinkCountMap());
+		assertEquals(graphBuilder.getNodeDataPropertyCount(), copy.getNodeDataPropertyCount());
+		assertEquals(graphBuilder.getNumberOfModelLinks(), copy.getNumberOfModelLinks());
+	}
+
+	@Test
+	public void replaceLinkWithCopyTest() {
+		Set<String> published = describe(graphBuilder.getGraph());
+		GraphBuilder copy = new GraphBuilder(ontologyManager, graphBuilder);
+
+		LabeledLink worksForCopy = copy.replaceWithCopy(worksFor);
+		worksForCopy.getModelIds().remove("m2");
+
+		assertEquals(published, describe(graphBuilder.getGraph()));
+		assertTrue(worksFor.getModelIds().contains("m2"));
+
+		assertNotSame(worksFor, worksForCopy);
+		assertSame(worksForCopy, copy.getIdToLinkMap().get(worksFor.getId()));
+		assertSame(person, worksForCopy.getSource());
+		assertSame(organization, worksForCopy.getTarget());
+		assertEquals(0.5, copy.getGraph().getEdgeWeight(worksForCopy), 0.0);
+		published.remove(describe(graphBuilder.getGraph(), worksFor));
+		published.add(describe(copy.getGraph(), worksForCopy));
+		assertEquals(published, describe(copy.getGraph()));
+		assertEquals(graphBuilder.getLinkCountMap(), copy.getLinkCountMap());
+	}
+
+	@Test
+	public void updateLinksConnectsAllConnectedPairsTest() throws Exception {
+		// a tree of classes and random object properties, some of which have subproperties
+		int numClasses = 100;
+		File ontology = folder.newFile("generated.owl");
+		writeOntology(ontology, numClasses, 200, new Random(42));
+		OntologyManager manager = new OntologyManager();
+		manager.doImportAndUpdateCache(ontology, "UTF-8");
+
+		NodeIdFactory nodeIdFactory = new NodeIdFactory();
+		GraphBuilder builder = new GraphBuilder(manager, nodeIdFactory, false);
+		List<Node> nodes = new ArrayList<Node>();
+		for (int i = 0; i < numClasses; i++) {
+			String uri = NS + "C" + i;
+			Node node = new InternalNode(nodeIdFactory.getNodeId(uri), new Label(uri));
+			builder.addNode(node);
+			nodes.add(node);
+		}
+		builder.addClosureAndLinksOfNodes(null, null);
+
+		// the node pairs that the ontology manager connects when all the pairs are checked
+		int connectedPairs = 0;
+		for (int i = 0; i < nodes.size(); i++)
+			for (int j = i + 1; j < nodes.size(); j++)
+				if (isConnected(manager, nodes.get(i).getUri(), nodes.get(j).getUri()))
+					connectedPairs++;
+		assertTrue(connectedPairs > 0);
+		assertEquals(connectedPairs, builder.getGraph().edgeSet().size());
+	}
+
+	private static boolean containsSame(Set<Node> nodes, Node node) {
+		for (Node n : nodes) {
+			if (n == node)
+				return true;
+		}
+		return false;
+	}
+
+	private static Set<String> describe(DirectedWeightedMultigraph<Node, DefaultLink> graph) {
+		Set<String> description = new HashSet<String>();
+		for (Node n : graph.vertexSet())
+			description.add(describe(n));
+		for (DefaultLink l : graph.edgeSet())
+			description.add(describe(graph, l));
+		return description;
+	}
+
+	private static String describe(Node n) {
+		return n.getType() + " " + n.getId() + " " + n.getUri() + " " + n.getModelIds();
+	}
+
+	private static String describe(DirectedWeightedMultigraph<Node, DefaultLink> graph, DefaultLink l) {
+		return l.getType() + " " + l.getId() + " " + l.getUri() + " " + graph.getEdgeWeight(l) + " "
+				+ graph.getEdgeSource(l).getId() + " " + graph.getEdgeTarget(l).getId()
+				+ (l instanceof LabeledLink ? " " + ((LabeledLink)l).getModelIds() : "");
+	}
+
+	private static boolean isConnected(OntologyManager ontologyManager, String s, String t) {
+		return (ModelingConfiguration.getPropertiesDirect() &&
+					(ontologyManager.isConnectedByDirectProperty(s, t) || ontologyManager.isConnectedByDirectProperty(t, s))) ||
+				(ModelingConfiguration.getPropertiesIndirect() &&
+					(ontologyManager.isConnectedByIndirectProperty(s, t) || ontologyManager.isConnectedByIndirectProperty(t, s))) ||
+				(ModelingConfiguration.getPropertiesWithOnlyRange() &&
+					(ontologyManager.isConnectedByDomainlessProperty(s, t) || ontologyManager.isConnectedByDomainlessProperty(t, s))) ||
+				(ModelingConfiguration.getPropertiesWithOnlyDomain() &&
+					(ontologyManager.isConnectedByRangelessProperty(s, t) || ontologyManager.isConnectedByRangelessProperty(t, s))) ||
+				(ModelingConfiguration.getPropertiesSubClass() &&
+					(ontologyManager.isSubClass(s, t, false) || ontologyManager.isSubClass(t, s, false))) ||
+				(ModelingConfiguration.getPropertiesWithoutDomainRange() &&
+					ontologyManager.isConnectedByDomainlessAndRangelessProperty(s, t));
+	}
+
+	/**
+	 * Writes the classes C0..Cn as a tree with four children per class, and
+	 * object properties between random classes, some of which have
+	 * subproperties.
+	 */
+	private static void writeOntology(File file, int numClasses, int numProperties,
+			Random random) throws Exception {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		out.println("<?xml version=\"1.0\"?>");
+		out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"");
+		out.println("    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"");
+		out.println("    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">");
+		out.println("  <owl:Ontology rdf:about=\"" + NS + "\"/>");
+		for (int i = 0; i < numClasses; i++) {
+			out.println("  <owl:Class rdf:about=\"" + NS + "C" + i + "\">");
+			if (i > 0)
+				out.println("    <rdfs:subClassOf rdf:resource=\"" + NS + "C" + ((i - 1) / 4) + "\"/>");
+			out.println("  </owl:Class>");
+		}
+		for (int p = 0; p < numProperties; p++) {
+			out.println("  <owl:ObjectProperty rdf:about=\"" + NS + "p" + p + "\">");
+			out.println("    <rdfs:domain rdf:resource=\"" + NS + "C" + random.nextInt(numClasses) + "\"/>");
+			out.println("    <rdfs:range rdf:resource=\"" + NS + "C" + random.nextInt(numClasses) + "\"/>");
+			if (p > 0 && p % 10 == 0)
+				out.println("    <rdfs:subPropertyOf rdf:resource=\"" + NS + "p" + random.nextInt(p) + "\"/>");
+			out.println("  </owl:ObjectProperty>");
+		}
+		out.println("</rdf:RDF>");
+		out.close();
+	}
+}
@@ -0,0 +1,140 @@
+package edu.isi.karma.modeling.alignment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.rep.alignment.ColumnNode;
+import edu.isi.karma.rep.alignment.CompactObjectPropertyLink;
+import edu.isi.karma.rep.alignment.DataPropertyLink;
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.LabeledLink;
+import edu.isi.karma.rep.alignment.Node;
+import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertyType;
+
+/**
+ * Exports a graph shaped like the model learning graph to a binary snapshot and to json,
+ * and compares the imported graphs with it.
+ */
+public class GraphSnapshotUtilTest {
+
+	private static final String NS = "http://example.org/test#";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void snapshotRoundTripTest() throws Exception {
+		DirectedWeightedMultigraph<Node, DefaultLink> graph = createGraph(20, 10, new Random(42));
+		File snapshot = new File(folder.getRoot(), "graph.bin");
+
+		GraphSnapshotUtil.exportSnapshot(graph, snapshot.getAbsolutePath());
+		DirectedWeightedMultigraph<Node, DefaultLink> fromSnapshot = GraphSnapshotUtil.importSnapshot(snapshot.getAbsolutePath());
+
+		assertEquals(describe(graph), describe(fromSnapshot));
+		// the snapshot is written to the given file only, the caller replaces the old one
+		assertEquals(1, folder.getRoot().listFiles().length);
+		// the file is not kept open after the import
+		assertTrue(snapshot.delete());
+	}
+
+	@Test
+	public void sameGraphAsJsonTest() throws Exception {
+		DirectedWeightedMultigraph<Node, DefaultLink> graph = createGraph(20, 10, new Random(7));
+		File json = new File(folder.getRoot(), "graph.json");
+		File snapshot = new File(folder.getRoot(), "graph.bin");
+
+		GraphUtil.exportJson(graph, json.getAbsolutePath());
+		GraphSnapshotUtil.exportSnapshot(graph, snapshot.getAbsolutePath());
+
+		assertEquals(describe(GraphUtil.importJson(json.getAbsolutePath())),
+				describe(GraphSnapshotUtil.importSnapshot(snapshot.getAbsolutePath())));
+	}
+
+	@Test
+	public void notASnapshotTest() throws Exception {
+		File json = new File(folder.getRoot(), "graph.json");
+		GraphUtil.exportJson(createGraph(1, 2, new Random(1)), json.getAbsolutePath());
+
+		assertNull(GraphSnapshotUtil.importSnapshot(json.getAbsolutePath()));
+	}
+
+	private static DirectedWeightedMultigraph<Node, DefaultLink> createGraph(int numModels,
+			int nodesPerModel, Random random) {
+		DirectedWeightedMultigraph<Node, DefaultLink> graph =
+				new DirectedWeightedMultigraph<Node, DefaultLink>(LabeledLink.class);
+		NodeIdFactory nodeIdFactory = new NodeIdFactory();
+		List<Node> internalNodes = new ArrayList<Node>();
+		for (int m = 0; m < numModels; m++) {
+			String modelId = "model" + m;
+			List<Node> modelNodes = new ArrayList<Node>();
+			for (int i = 0; i < nodesPerModel; i++) {
+				String uri = NS + "C" + random.nextInt(200);
+				Node node = new InternalNode(nodeIdFactory.getNodeId(uri), new Label(uri));
+				node.getModelIds().add(modelId);
+				graph.addVertex(node);
+				modelNodes.add(node);
+				if (i > 0) {
+					Node source = modelNodes.get(random.nextInt(i));
+					String linkUri = NS + "p" + random.nextInt(100);
+					LabeledLink link = new ObjectPropertyLink(
+							LinkIdFactory.getLinkId(linkUri, source.getId(), node.getId()),
+							new Label(linkUri), ObjectPropertyType.Direct);
+					link.getModelIds().add(modelId);
+					graph.addEdge(source, node, link);
+					graph.setEdgeWeight(link, 1.0);
+				}
+				String columnId = modelId + "_column" + i;
+				ColumnNode column = new ColumnNode(columnId, columnId, "column " + i, null);
+				column.getModelIds().add(modelId);
+				graph.addVertex(column);
+				String dataUri = NS + "d" + random.nextInt(100);
+				LabeledLink dataLink = new DataPropertyLink(
+						LinkIdFactory.getLinkId(dataUri, node.getId(), columnId),
+						new Label(dataUri), false);
+				dataLink.getModelIds().add(modelId);
+				graph.addEdge(node, column, dataLink);
+				graph.setEdgeWeight(dataLink, 1.0);
+			}
+			internalNodes.addAll(modelNodes);
+		}
+		for (int i = 0; i < internalNodes.size() * 5; i++) {
+			Node source = internalNodes.get(random.nextInt(internalNodes.size()));
+			Node target = internalNodes.get(random.nextInt(internalNodes.size()));
+			if (source == target)
+				continue;
+			CompactObjectPropertyLink link = new CompactObjectPropertyLink(
+					LinkIdFactory.getLinkId(Integer.toString(i), source.getId(), target.getId()),
+					ObjectPropertyType.Indirect);
+			graph.addEdge(source, target, link);
+			graph.setEdgeWeight(link, 100.0);
+		}
+		return graph;
+	}
+
+	private static Set<String> describe(DirectedWeightedMultigraph<Node, DefaultLink> graph) {
+		Set<String> description = new HashSet<String>();
+		for (Node n : graph.vertexSet())
+			description.add(n.getType() + " " + n.getId() + " " + n.getUri() + " " + n.getModelIds());
+		for (DefaultLink l : graph.edgeSet())
+			description.add(l.getType() + " " + l.getId() + " " + l.getUri() + " " + graph.getEdgeWeight(l) + " "
+					+ graph.getEdgeSource(l).getId() + " " + graph.getEdgeTarget(l).getId()
+					+ (l instanceof LabeledLink ? " " + ((LabeledLink)l).getModelIds() : ""));
+		return description;
+	}
+}
@@ -0,0 +1,136 @@
+package edu.isi.karma.modeling.alignment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.UndirectedGraph;
+import org.jgrapht.alg.BellmanFordShortestPath;
+import org.jgrapht.alg.DijkstraShortestPath;
+import org.jgrapht.graph.WeightedMultigraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.Node;
+
+/**
+ * Compares the shortest paths of the cache and the Steiner trees computed from them
+ * with the BellmanFord costs and Dijkstra paths the Steiner tree used before the cache.
+ */
+public class ShortestPathCacheTest {
+
+	private static final String NS = "http://example.org/paths#";
+
+	private final Random random = new Random(7);
+
+	private WeightedMultigraph<Node, DefaultLink> graph;
+	private List<Node> nodes;
+	private Node isolated;
+
+	@Before
+	public void createGraph() {
+		graph = new WeightedMultigraph<Node, DefaultLink>(DefaultLink.class);
+		nodes = new ArrayList<Node>();
+		for (int i = 0; i < 40; i++) {
+			Node n = new InternalNode("n" + i, new Label(NS + "Class" + (i % 10)));
+			graph.addVertex(n);
+			nodes.add(n);
+		}
+		// a chain keeps the nodes connected, the other links make shortcuts,
+		// and two nodes have several links between them
+		for (int i = 1; i < nodes.size(); i++)
+			addLink(nodes.get(i - 1), nodes.get(i));
+		for (int i = 0; i < 80; i++)
+			addLink(nodes.get(random.nextInt(nodes.size())), nodes.get(random.nextInt(nodes.size())));
+		addLink(nodes.get(3), nodes.get(4));
+		isolated = new InternalNode("isolated", new Label(NS + "Isolated"));
+		graph.addVertex(isolated);
+	}
+
+	@Test
+	public void sameCostsAndPathsTest() {
+		// a small cache removes the paths of most sources before they are used again
+		ShortestPathCache shortestPaths = new ShortestPathCache(graph, 4);
+		ShortestPathCache expected = new ReferenceShortestPaths(graph);
+
+		List<Node> sources = new ArrayList<Node>(nodes);
+		sources.add(isolated);
+		for (int round = 0; round < 2; round++) {
+			Collections.shuffle(sources, random);
+			for (Node source : sources) {
+				for (Node target : sources) {
+					if (source.equals(target))
+						continue;
+					assertEquals(expected.getCost(source, target), shortestPaths.getCost(source, target), 1e-9);
+					assertEquals(expected.getPathEdgeList(source, target), shortestPaths.getPathEdgeList(source, target));
+				}
+			}
+		}
+		assertTrue(shortestPaths.getHits() > 0);
+		assertEquals(Double.POSITIVE_INFINITY, shortestPaths.getCost(nodes.get(0), isolated), 0.0);
+		assertNull(shortestPaths.getPathEdgeList(isolated, nodes.get(0)));
+		assertTrue(shortestPaths.getPathEdgeList(nodes.get(0), nodes.get(0)).isEmpty());
+	}
+
+	@Test
+	public void sameSteinerTreesTest() {
+		// the trees of all the sets share one cache, like the hypotheses of a model learner
+		ShortestPathCache shortestPaths = new ShortestPathCache(graph, 8);
+		for (int i = 0; i < 30; i++) {
+			List<Node> steinerNodes = new ArrayList<Node>(nodes);
+			Collections.shuffle(steinerNodes, random);
+			steinerNodes = new ArrayList<Node>(steinerNodes.subList(0, 2 + random.nextInt(6)));
+
+			WeightedMultigraph<Node, DefaultLink> expected =
+					new SteinerTree(new ReferenceShortestPaths(graph), steinerNodes).getDefaultSteinerTree();
+			WeightedMultigraph<Node, DefaultLink> actual =
+					new SteinerTree(shortestPaths, steinerNodes).getDefaultSteinerTree();
+
+			assertEquals(expected.vertexSet(), actual.vertexSet());
+			assertEquals(expected.edgeSet(), actual.edgeSet());
+			assertEquals(actual.vertexSet().size() - 1, actual.edgeSet().size());
+			assertTrue(actual.vertexSet().containsAll(steinerNodes));
+		}
+		assertTrue(shortestPaths.getHits() > 0);
+	}
+
+	/**
+	 * Random weights, so that the shortest paths do not have the same cost
+	 */
+	private void addLink(Node source, Node target) {
+		if (source.equals(target))
+			return;
+		DefaultLink link = new DefaultLink(LinkIdFactory.getLinkId(NS + "link" + graph.edgeSet().size(),
+				source.getId(), target.getId()));
+		graph.addEdge(source, target, link);
+		graph.setEdgeWeight(link, 0.5 + 10 * random.nextDouble());
+	}
+
+	/**
+	 * The costs and paths the Steiner tree computed for each pair of nodes before the cache
+	 */
+	private static class ReferenceShortestPaths extends ShortestPathCache {
+
+		ReferenceShortestPaths(UndirectedGraph<Node, DefaultLink> graph) {
+			super(graph);
+		}
+
+		@Override
+		public double getCost(Node source, Node target) {
+			return new BellmanFordShortestPath<Node, DefaultLink>(getGraph(), source).getCost(target);
+		}
+
+		@Override
+		public List<DefaultLink> getPathEdgeList(Node source, Node target) {
+			return new DijkstraShortestPath<Node, DefaultLink>(getGraph(), source, target).getPathEdgeList();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package edu.isi.karma.modeling.alignment.learner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.isi.karma.modeling.ModelingConfiguration;
+import edu.isi.karma.rep.alignment.ColumnNode;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+
+public class CandidateSteinerSetsTest {
+
+	private static final double[] CONFIDENCES = {0.5, 0.7, 0.9};
+
+	private final Random random = new Random(42);
+
+	@Test
+	public void sameRankingAsSortAndTruncateTest() {
+		int maxQueuedMappings = ModelingConfiguration.getMaxQueuedMappigs();
+
+		CandidateSteinerSets candidates = new CandidateSteinerSets(0);
+		candidates.updateSteinerSets(getMappings("c1", 14, null));
+		boolean tieAtCutOff = false;
+		for (int column = 2; column <= 4; column++) {
+			List<SteinerNodes> previous = new ArrayList<SteinerNodes>(candidates.getSteinerSets());
+			// one mapping adds nodes that every set that has the first mapping
+			// already contains, these sets are skipped
+			Set<SemanticTypeMapping> mappings = getMappings("c" + column, 14,
+					candidates.getSteinerSets().get(0));
+
+			List<SteinerNodes> sorted = sortAll(previous, mappings);
+			assertTrue(sorted.size() > maxQueuedMappings);
+			if (sorted.get(maxQueuedMappings - 1).getScore() == sorted.get(maxQueuedMappings).getScore())
+				tieAtCutOff = true;
+			List<SteinerNodes> expected = sorted.subList(0, maxQueuedMappings);
+
+			candidates.updateSteinerSets(mappings);
+			List<SteinerNodes> actual = candidates.getSteinerSets();
+
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0.0);
+				assertEquals(expected.get(i).getNodes(), actual.get(i).getNodes());
+				assertEquals(expected.get(i).getMappingToSourceColumns(), actual.get(i).getMappingToSourceColumns());
+				assertEquals(expected.get(i).getConfidenceVector(), actual.get(i).getConfidenceVector());
+			}
+		}
+		// the fixture has to exercise the ties the heap breaks by generation order
+		assertTrue(tieAtCutOff);
+	}
+
+	/**
+	 * The ranking before the heap: all the new sets, stably sorted by score
+	 */
+	private List<SteinerNodes> sortAll(List<SteinerNodes> steinerSets, Set<SemanticTypeMapping> mappings) {
+		List<SteinerNodes> newSteinerNodes = new ArrayList<SteinerNodes>();
+		for (SteinerNodes nodeSet : steinerSets) {
+			for (SemanticTypeMapping stm : mappings) {
+				if (nodeSet.getNodes().contains(stm.getSource()) &&
+						nodeSet.getNodes().contains(stm.getTarget()))
+					continue;
+				SteinerNodes sn = new SteinerNodes(nodeSet);
+				sn.addNodes(stm.getSourceColumn(), stm.getSource(), stm.getTarget(), stm.getConfidence());
+				newSteinerNodes.add(sn);
+			}
+		}
+		Collections.sort(newSteinerNodes);
+		return newSteinerNodes;
+	}
+
+	/**
+	 * Mappings of the column to new class nodes with a few model ids and
+	 * confidences, so that many sets have the same score
+	 */
+	private Set<SemanticTypeMapping> getMappings(String columnName, int count, SteinerNodes existing) {
+		ColumnNode sourceColumn = new ColumnNode(columnName, "h" + columnName, columnName, null);
+		Set<SemanticTypeMapping> mappings = new LinkedHashSet<SemanticTypeMapping>();
+		for (int i = 0; i < count; i++) {
+			ColumnNode target = new ColumnNode(columnName + "_" + i, "h" + columnName, columnName, null);
+			InternalNode source = new InternalNode(columnName + "_class" + i,
+					new Label("http://example.org/Class" + i));
+			source.setModelIds(getModelIds());
+			mappings.add(new TestMapping(sourceColumn, source, target,
+					CONFIDENCES[random.nextInt(CONFIDENCES.length)]));
+		}
+		if (existing != null) {
+			InternalNode source = null;
+			ColumnNode target = null;
+			for (Object n : existing.getNodes()) {
+				if (n instanceof InternalNode)
+					source = (InternalNode) n;
+				else
+					target = (ColumnNode) n;
+			}
+			mappings.add(new TestMapping(sourceColumn, source, target, 0.9));
+		}
+		return mappings;
+	}
+
+	private Set<String> getModelIds() {
+		Set<String> modelIds = new HashSet<String>();
+		for (int i = 0; i < 4; i++) {
+			if (random.nextBoolean())
+				modelIds.add("model" + i);
+		}
+		return modelIds;
+	}
+
+	private static class TestMapping extends SemanticTypeMapping {
+
+		private final double confidence;
+
+		TestMapping(ColumnNode sourceColumn, InternalNode source, ColumnNode target, double confidence) {
+			super(sourceColumn, null, source, null, target);
+			this.confidence = confidence;
+		}
+
+		@Override
+		public double getConfidence() {
+			return confidence;
+		}
+	}
+}
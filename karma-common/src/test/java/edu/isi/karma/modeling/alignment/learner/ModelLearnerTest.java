@@ -0,0 +1,158 @@
+package edu.isi.karma.modeling.alignment.learner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrapht.graph.DirectedWeightedMultigraph;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.modeling.alignment.LinkIdFactory;
+import edu.isi.karma.modeling.alignment.SemanticModel;
+import edu.isi.karma.modeling.ontology.OntologyManager;
+import edu.isi.karma.rep.alignment.ColumnNode;
+import edu.isi.karma.rep.alignment.DataPropertyLink;
+import edu.isi.karma.rep.alignment.DefaultLink;
+import edu.isi.karma.rep.alignment.InternalNode;
+import edu.isi.karma.rep.alignment.Label;
+import edu.isi.karma.rep.alignment.LabeledLink;
+import edu.isi.karma.rep.alignment.Node;
+import edu.isi.karma.rep.alignment.ObjectPropertyLink;
+import edu.isi.karma.rep.alignment.ObjectPropertyType;
+import edu.isi.karma.rep.alignment.SemanticType;
+import edu.isi.karma.rep.alignment.SemanticType.Origin;
+
+public class ModelLearnerTest {
+
+	private static final String NS = "http://example.org/learner#";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private OntologyManager ontologyManager;
+	private ModelLearningGraph modelLearningGraph;
+
+	@Before
+	public void createModelLearningGraph() throws Exception {
+		File ontology = folder.newFile("learner.owl");
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(ontology), "UTF-8"));
+		out.println("<?xml version=\"1.0\"?>");
+		out.println("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"");
+		out.println("    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"");
+		out.println("    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">");
+		out.println("  <owl:Ontology rdf:about=\"" + NS + "\"/>");
+		out.println("  <owl:Class rdf:about=\"" + NS + "Person\"/>");
+		out.println("  <owl:Class rdf:about=\"" + NS + "Organization\"/>");
+		out.println("  <owl:Class rdf:about=\"" + NS + "Place\"/>");
+		writeObjectProperty(out, "worksFor", "Person", "Organization");
+		writeObjectProperty(out, "livesIn", "Person", "Place");
+		writeObjectProperty(out, "locatedIn", "Organization", "Place");
+		// the learner looks for a property in both directions of the default links
+		writeObjectProperty(out, "employs", "Organization", "Person");
+		writeObjectProperty(out, "residentOf", "Place", "Person");
+		writeObjectProperty(out, "hosts", "Place", "Organization");
+		writeDataProperty(out, "name", "Person");
+		writeDataProperty(out, "orgName", "Organization");
+		writeDataProperty(out, "city", "Place");
+		out.println("</rdf:RDF>");
+		out.close();
+		ontologyManager = new OntologyManager();
+		ontologyManager.doImportAndUpdateCache(ontology, "UTF-8");
+
+		modelLearningGraph = ModelLearningGraph.getEmptyInstance(ontologyManager);
+		for (int i = 1; i <= 2; i++)
+			modelLearningGraph.addModel(createModel("m" + i));
+	}
+
+	@Test
+	public void hypothesizeKeepsPublishedWeightsTest() {
+		DirectedWeightedMultigraph<Node, DefaultLink> published = modelLearningGraph.getGraphBuilder().getGraph();
+		Map<String, Double> weights = getWeights(published);
+
+		List<ColumnNode> columnNodes = new ArrayList<ColumnNode>();
+		columnNodes.add(createColumn("h1", "name", "Person"));
+		columnNodes.add(createColumn("h2", "orgName", "Organization"));
+		List<SortableSemanticModel> hypotheses = new ModelLearner(ontologyManager, columnNodes).hypothesize(true, 4);
+
+		assertNotNull(hypotheses);
+		assertFalse(hypotheses.isEmpty());
+		assertTrue(hasLink(hypotheses.get(0).getGraph(), NS + "worksFor"));
+		// the learner works on a copy, so the published graph keeps its weights
+		assertEquals(weights, getWeights(published));
+		assertEquals(weights, getWeights(modelLearningGraph.getGraphBuilder().getGraph()));
+	}
+
+	/**
+	 * A person who works for an organization, with the name of both
+	 */
+	private SemanticModel createModel(String id) {
+		DirectedWeightedMultigraph<Node, LabeledLink> graph =
+				new DirectedWeightedMultigraph<Node, LabeledLink>(LabeledLink.class);
+		Node person = new InternalNode(id + "_person", new Label(NS + "Person"));
+		Node organization = new InternalNode(id + "_organization", new Label(NS + "Organization"));
+		graph.addVertex(person);
+		graph.addVertex(organization);
+		graph.addEdge(person, organization, new ObjectPropertyLink(
+				LinkIdFactory.getLinkId(NS + "worksFor", person.getId(), organization.getId()),
+				new Label(NS + "worksFor"), ObjectPropertyType.Direct));
+		addColumn(graph, id + "_name", person, "name");
+		addColumn(graph, id + "_orgName", organization, "orgName");
+		return new SemanticModel(id, graph);
+	}
+
+	private void addColumn(DirectedWeightedMultigraph<Node, LabeledLink> graph, String id, Node domain, String property) {
+		Node column = new ColumnNode(id, id, property, null);
+		graph.addVertex(column);
+		graph.addEdge(domain, column, new DataPropertyLink(
+				LinkIdFactory.getLinkId(NS + property, domain.getId(), column.getId()),
+				new Label(NS + property), false));
+	}
+
+	private ColumnNode createColumn(String hNodeId, String property, String domain) {
+		ColumnNode column = new ColumnNode(hNodeId, hNodeId, property, null);
+		column.setUserSelectedSemanticType(new SemanticType(hNodeId, new Label(NS + property),
+				new Label(NS + domain), Origin.User, 1.0, false));
+		return column;
+	}
+
+	private Map<String, Double> getWeights(DirectedWeightedMultigraph<Node, DefaultLink> graph) {
+		Map<String, Double> weights = new HashMap<String, Double>();
+		for (DefaultLink link : graph.edgeSet())
+			weights.put(link.getId(), graph.getEdgeWeight(link));
+		return weights;
+	}
+
+	private boolean hasLink(DirectedWeightedMultigraph<Node, LabeledLink> graph, String uri) {
+		for (LabeledLink link : graph.edgeSet()) {
+			if (link.getLabel().getUri().equals(uri))
+				return true;
+		}
+		return false;
+	}
+
+	private void writeObjectProperty(PrintWriter out, String name, String domain, String range) {
+		out.println("  <owl:ObjectProperty rdf:about=\"" + NS + name + "\">");
+		out.println("    <rdfs:domain rdf:resource=\"" + NS + domain + "\"/>");
+		out.println("    <rdfs:range rdf:resource=\"" + NS + range + "\"/>");
+		out.println("  </owl:ObjectProperty>");
+	}
+
+	private void writeDataProperty(PrintWriter out, String name, String domain) {
+		out.println("  <owl:DatatypeProperty rdf:about=\"" + NS + name + "\">");
+		out.println("    <rdfs:domain rdf:resource=\"" + NS + domain + "\"/>");
+		out.println("  </owl:DatatypeProperty>");
+	}
+}
@@ -0,0 +1,126 @@
+package edu.isi.karma.modeling.semantictypes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.modeling.ontology.OntologyManager;
+import edu.isi.karma.modeling.semantictypes.crfmodelhandler.CRFModelHandler;
+import edu.isi.karma.rep.HNode;
+import edu.isi.karma.rep.HNodePath;
+import edu.isi.karma.rep.HTable;
+import edu.isi.karma.rep.RepFactory;
+import edu.isi.karma.rep.Row;
+import edu.isi.karma.rep.Worksheet;
+import edu.isi.karma.rep.Workspace;
+import edu.isi.karma.rep.WorkspaceManager;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class SemanticTypeUtilTest {
+
+	@Rule
+	public TemporaryFolder preferences = new TemporaryFolder();
+
+	private final CRFModelHandler crfModelHandler = new CRFModelHandler();
+	private final OntologyManager ontMgr = new OntologyManager();
+	private RepFactory factory;
+	private Worksheet worksheet;
+	private HNode name;
+	private HNode age;
+	private HNode address;
+	private HNode street;
+	private HNode city;
+	private Row row;
+
+	@Before
+	public void createWorksheet() {
+		// the workspace writes its preferences file
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY,
+				preferences.getRoot().getAbsolutePath() + "/");
+		Workspace workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("people", workspace, "UTF-8");
+		HTable headers = worksheet.getHeaders();
+		name = headers.addHNode("name", worksheet, factory);
+		age = headers.addHNode("age", worksheet, factory);
+		address = headers.addHNode("address", worksheet, factory);
+		HTable addressHeaders = address.addNestedTable("address", worksheet, factory);
+		street = addressHeaders.addHNode("street", worksheet, factory);
+		city = addressHeaders.addHNode("city", worksheet, factory);
+		for (int i = 0; i < 3; i++) {
+			row = worksheet.addRow(factory);
+			row.setValue(name.getId(), "name" + i, factory);
+			row.setValue(age.getId(), "" + i, factory);
+			Row nestedRow = row.addNestedRow(address.getId(), factory);
+			nestedRow.setValue(street.getId(), "street" + i, factory);
+			nestedRow.setValue(city.getId(), "city" + i, factory);
+		}
+		markAllUpToDate();
+	}
+
+	@After
+	public void resetPreferences() {
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, "");
+	}
+
+	@Test
+	public void changedValueTest() {
+		assertEquals(Collections.emptyList(), getStaleColumns());
+
+		row.setValue(age.getId(), "42", factory);
+		assertEquals(Arrays.asList(age), getStaleColumns());
+
+		markAllUpToDate();
+		row.getNode(name.getId()).clearValue(null, factory);
+		assertEquals(Arrays.asList(name), getStaleColumns());
+	}
+
+	@Test
+	public void renamedColumnTest() {
+		city.setColumnName("town");
+		assertEquals(Arrays.asList(city), getStaleColumns());
+	}
+
+	@Test
+	public void addedNestedRowTest() {
+		Row nestedRow = row.getNode(address.getId()).getNestedTable().addRow(factory);
+		assertEquals(Arrays.asList(street, city), getStaleColumns());
+
+		markAllUpToDate();
+		nestedRow.setValue(city.getId(), "city", factory);
+		assertEquals(Arrays.asList(city), getStaleColumns());
+	}
+
+	@Test
+	public void addedRowTest() {
+		// the new row gets an empty value in every column and a new nested
+		// table for the address
+		worksheet.addRow(factory);
+		assertEquals(Arrays.asList(name, age, street, city), getStaleColumns());
+	}
+
+	private void markAllUpToDate() {
+		for (HNodePath path : worksheet.getHeaders().getAllPaths()) {
+			worksheet.getCrfModel().setColumnVersion(path.getLeaf().getId(),
+					SemanticTypeUtil.getSuggestionVersion(worksheet, crfModelHandler, ontMgr, path));
+		}
+	}
+
+	private List<HNode> getStaleColumns() {
+		List<HNode> columns = new ArrayList<HNode>();
+		for (HNodePath path : SemanticTypeUtil.getColumnsWithStaleSuggestions(worksheet, crfModelHandler, ontMgr)) {
+			columns.add(path.getLeaf());
+		}
+		return columns;
+	}
+}
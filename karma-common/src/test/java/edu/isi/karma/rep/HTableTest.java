@@ -0,0 +1,88 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class HTableTest {
+
+	private static final int COLUMNS = 500;
+	private static final int ROWS = 20;
+
+	@Rule
+	public TemporaryFolder preferences = new TemporaryFolder();
+
+	private RepFactory factory;
+	private Worksheet worksheet;
+	private HTable headers;
+	private final List<HNode> columns = new ArrayList<HNode>();
+
+	@Before
+	public void createWideWorksheet() {
+		// the workspace writes its preferences file
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY,
+				preferences.getRoot().getAbsolutePath() + "/");
+		Workspace workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("wide", workspace, "UTF-8");
+		headers = worksheet.getHeaders();
+		for (int c = 0; c < COLUMNS; c++) {
+			columns.add(headers.addHNode("column_" + c, worksheet, factory));
+		}
+		for (int r = 0; r < ROWS; r++) {
+			Row row = worksheet.addRow(factory);
+			for (int c = 0; c < COLUMNS; c++) {
+				row.setValue(columns.get(c).getId(), r + "_" + c, factory);
+			}
+		}
+	}
+
+	@After
+	public void resetPreferences() {
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, "");
+	}
+
+	@Test
+	public void accessorReadsSameCellsAsColumnNamesTest() {
+		List<ColumnAccessor> accessors = new ArrayList<ColumnAccessor>();
+		for (int c = 0; c < COLUMNS; c++) {
+			accessors.add(ColumnAccessor.resolve(headers, "column_" + c, factory));
+		}
+		for (Row row : worksheet.getDataTable().getRows(0, ROWS)) {
+			for (int c = 0; c < COLUMNS; c++) {
+				Node byName = row.getNeighborByColumnName("column_" + c, factory);
+				assertSame(byName, accessors.get(c).getNode(row));
+				assertEquals(byName.getValue().asString(), accessors.get(c).getValue(row));
+			}
+		}
+		assertNull(ColumnAccessor.resolve(headers, "missing", factory));
+	}
+
+	@Test
+	public void renamedAndRemovedColumnsTest() {
+		assertSame(columns.get(7), headers.getHNodeFromColumnName("column_7"));
+
+		columns.get(7).setColumnName("renamed");
+		assertNull(headers.getHNodeFromColumnName("column_7"));
+		assertSame(columns.get(7), headers.getHNodeFromColumnName("renamed"));
+
+		headers.removeHNode(columns.get(7).getId(), worksheet);
+		assertNull(headers.getHNodeFromColumnName("renamed"));
+
+		HNode added = headers.addHNode("renamed", worksheet, factory);
+		assertSame(added, headers.getHNodeFromColumnName("renamed"));
+		assertEquals(added.getId(), headers.getHNodeIdFromColumnName("renamed"));
+	}
+}
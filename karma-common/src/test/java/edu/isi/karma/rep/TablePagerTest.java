@@ -0,0 +1,99 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class TablePagerTest {
+
+	@Rule
+	public TemporaryFolder preferences = new TemporaryFolder();
+
+	private RepFactory factory;
+	private Worksheet worksheet;
+
+	@Before
+	public void createWorksheet() {
+		// the workspace writes its preferences file
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY,
+				preferences.getRoot().getAbsolutePath() + "/");
+		Workspace workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("pager", workspace, "UTF-8");
+		worksheet.getHeaders().addHNode("value", worksheet, factory);
+	}
+
+	@After
+	public void resetPreferences() {
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, "");
+	}
+
+	@Test
+	public void loadAdditionalRowsTest() {
+		addRows(12);
+		TablePager pager = new TablePager(worksheet.getDataTable(), 5);
+		assertRows(0, 5, pager.getRows());
+		assertEquals(7, pager.getAdditionalRowsLeftCount());
+
+		assertRows(5, 5, pager.loadAdditionalRows());
+		assertRows(0, 10, pager.getRows());
+		assertEquals(2, pager.getAdditionalRowsLeftCount());
+
+		assertRows(10, 2, pager.loadAdditionalRows());
+		assertRows(0, 12, pager.getRows());
+		assertEquals(0, pager.getAdditionalRowsLeftCount());
+		assertTrue(pager.isAtEndOfTable());
+
+		// nothing is left, the last row is not sent again
+		assertRows(0, 0, pager.loadAdditionalRows());
+		assertRows(0, 12, pager.getRows());
+	}
+
+	@Test
+	public void tableSmallerThanPagerTest() {
+		addRows(3);
+		TablePager pager = new TablePager(worksheet.getDataTable(), 5);
+		assertRows(0, 3, pager.getRows());
+		assertEquals(2, pager.getCurrentEndIndex());
+		assertEquals(0, pager.getAdditionalRowsLeftCount());
+		assertRows(0, 0, pager.loadAdditionalRows());
+	}
+
+	@Test
+	public void rowsAddedAfterEndTest() {
+		addRows(5);
+		TablePager pager = new TablePager(worksheet.getDataTable(), 5);
+		assertEquals(0, pager.getAdditionalRowsLeftCount());
+
+		addRows(3);
+		assertEquals(3, pager.getAdditionalRowsLeftCount());
+		assertRows(5, 3, pager.loadAdditionalRows());
+		assertRows(0, 8, pager.getRows());
+	}
+
+	private void addRows(int count) {
+		HNode column = worksheet.getHeaders().getHNodeFromColumnName("value");
+		int start = worksheet.getDataTable().getNumRows();
+		for (int i = start; i < start + count; i++) {
+			worksheet.addRow(factory).setValue(column.getId(), "" + i, factory);
+		}
+	}
+
+	private void assertRows(int start, int count, List<Row> rows) {
+		HNode column = worksheet.getHeaders().getHNodeFromColumnName("value");
+		assertEquals(count, rows.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals("" + (start + i), rows.get(i).getNode(column.getId()).getValue().asString());
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package edu.isi.karma.rep;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.isi.karma.rep.Node.NodeStatus;
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+public class TableTest {
+
+	@Rule
+	public TemporaryFolder preferences = new TemporaryFolder();
+
+	private RepFactory factory;
+	private Worksheet worksheet;
+	private HNode source;
+	private HNode target;
+
+	@Before
+	public void createWorksheet() {
+		// the workspace writes its preferences file
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY,
+				preferences.getRoot().getAbsolutePath() + "/");
+		Workspace workspace = WorkspaceManager.getInstance().createWorkspace();
+		factory = workspace.getFactory();
+		worksheet = factory.createWorksheet("table", workspace, "UTF-8");
+		source = worksheet.getHeaders().addHNode("source", worksheet, factory);
+		target = worksheet.getHeaders().addHNode("target", worksheet, factory);
+	}
+
+	@After
+	public void resetPreferences() {
+		ServletContextParameterMap.setParameterValue(ContextParameter.USER_PREFERENCES_DIRECTORY, "");
+	}
+
+	@Test
+	public void setColumnValuesByRowTest() {
+		List<Row> rows = new ArrayList<Row>();
+		for (int i = 0; i < 4; i++) {
+			Row row = worksheet.addRow(factory);
+			row.setValue(source.getId(), "v" + i, factory);
+			rows.add(row);
+		}
+		Map<String, CellValue> values = new HashMap<String, CellValue>();
+		for (Row row : rows) {
+			values.put(row.getId(), new StringCellValue(row.getNode(source.getId())
+					.getValue().asString().toUpperCase()));
+		}
+		// no value for the second row, a value for a row that is not in the
+		// table, and a row that was added after the values were computed
+		values.remove(rows.get(1).getId());
+		values.put("missing", new StringCellValue("none"));
+		Row added = worksheet.addRow(factory);
+
+		worksheet.setColumnValues(target.getHNodePath(factory), values,
+				NodeStatus.original, factory);
+
+		assertEquals("V0", getTarget(rows.get(0)));
+		assertEquals("", getTarget(rows.get(1)));
+		assertEquals("V2", getTarget(rows.get(2)));
+		assertEquals("V3", getTarget(rows.get(3)));
+		assertEquals("", getTarget(added));
+	}
+
+	private String getTarget(Row row) {
+		return row.getNode(target.getId()).getValue().asString();
+	}
+}
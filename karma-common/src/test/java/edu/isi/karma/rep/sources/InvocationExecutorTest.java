@@ -0,0 +1,127 @@
+package edu.isi.karma.rep.sources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class InvocationExecutorTest {
+
+	private HttpServer server;
+	private ExecutorService serverPool;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		// a stub service that answers each request after a delay with the value of its query
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/stub", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				int now = running.incrementAndGet();
+				int max = maxRunning.get();
+				while (now > max && !maxRunning.compareAndSet(max, now)) {
+					max = maxRunning.get();
+				}
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					running.decrementAndGet();
+				}
+				byte[] body = getBody(exchange.getRequestURI().getQuery()).getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		serverPool = Executors.newFixedThreadPool(16);
+		server.setExecutor(serverPool);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		serverPool.shutdownNow();
+	}
+
+	@Test
+	public void responsesInRequestOrderTest() throws Exception {
+		List<URL> urls = getUrls(60, 20);
+		List<Response> responses = new InvocationExecutor(8, 4, 0, 0).fetchResponses(urls, "UTF-8");
+
+		assertEquals(urls.size(), responses.size());
+		for (int i = 0; i < urls.size(); i++) {
+			assertEquals(getBody(urls.get(i).getQuery()), responses.get(i).getStream().trim());
+		}
+	}
+
+	@Test
+	public void distinctUrlsRequestedOnceTest() throws Exception {
+		List<URL> urls = getUrls(60, 20);
+		List<Response> responses = new InvocationExecutor(8, 4, 0, 0).fetchResponses(urls, "UTF-8");
+
+		assertEquals(20, requests.get());
+		assertSame(responses.get(0), responses.get(20));
+	}
+
+	@Test
+	public void maxPerHostTest() throws Exception {
+		new InvocationExecutor(16, 3, 0, 0).fetchResponses(getUrls(40, 40), "UTF-8");
+
+		assertEquals(40, requests.get());
+		assertTrue("at most 3 concurrent requests, was " + maxRunning.get(), maxRunning.get() <= 3);
+	}
+
+	@Test
+	public void cacheTest() throws Exception {
+		InvocationExecutor executor = new InvocationExecutor(8, 4, 0, 100);
+		List<URL> urls = getUrls(20, 10);
+		executor.fetchResponses(urls, "UTF-8");
+		List<Response> responses = executor.fetchResponses(urls, "UTF-8");
+
+		assertEquals(10, requests.get());
+		assertEquals(getBody(urls.get(3).getQuery()), responses.get(3).getStream().trim());
+
+		executor.clearCache();
+		executor.fetchResponses(urls, "UTF-8");
+		assertEquals(20, requests.get());
+	}
+
+	private List<URL> getUrls(int numRequests, int distinctValues) throws IOException {
+		List<URL> urls = new ArrayList<URL>();
+		for (int i = 0; i < numRequests; i++) {
+			urls.add(new URL("http://localhost:" + server.getAddress().getPort()
+					+ "/stub?v=" + (i % distinctValues)));
+		}
+		return urls;
+	}
+
+	private static String getBody(String query) {
+		return "{\"value\":\"" + query + "\"}";
+	}
+}
@@ -147,6 +147,9 @@ public class CRFModelHandler {
 	HashMap<String, ArrayList<Example>> labelToExamplesMap;
 	GlobalDataFieldOnly globalData;
 	ArrayList<String> allowedCharacters;
+	// incremented every time the model is read, trained or pruned so that
+	// cached predictions can tell whether they are stale
+	volatile long modelVersion = 0;
 	static Logger logger = LoggerFactory.getLogger(CRFModelHandler.class.getSimpleName()) ;
 	static final int MAX_FFs_PER_LABEL = 50;
 	static final int MAX_EXAMPLES_PER_LABEL = 50;
@@ -171,6 +174,15 @@ public class CRFModelHandler {
 		return file;
 	}
 
+	/**
+	 * Returns a counter that changes every time the model is modified.
+	 * Predictions made with the same version of the model are identical.
+	 * @return The current version of the model
+	 */
+	public long getModelVersion() {
+		return modelVersion;
+	}
+
 
 	/**
 	 * Adds the passed list of examples to the model. 
@@ -189,6 +201,7 @@ public class CRFModelHandler {
 		ArrayList<Example> selectedExamples;
 		OptimizeFieldOnly optimizationObject;
 		boolean savingSuccessful ;
+		modelVersion++;
 		if (file == null) {
 			Prnt.prn("CRF Model is not ready, either because it was never read or an error happened while reading it previously. Please try reading the model file again.");
 			return false ;
@@ -427,6 +440,7 @@ public class CRFModelHandler {
 		HashSet<String> features;
 		double[] weights ;
 		CRFModelFieldOnly crfModel  ;
+		modelVersion++;
 		if (modelFile == null) {
 			Prnt.prn("Invalid argument value. Argument @file is null.") ;
 			file = null ;
@@ -573,6 +587,7 @@ public class CRFModelHandler {
 	public boolean removeAllLabels() {
 		BufferedWriter bw;
 		CRFModelFieldOnly crfModel;
+		modelVersion++;
 		if (file == null) {
 			Prnt.prn("CRF Model is not ready, either because it was never read or an error happened while reading it previously. Please try reading the model file again.");
 			return false ;
@@ -606,6 +621,7 @@ public class CRFModelHandler {
 		double[] newWeights ;
 		OptimizeFieldOnly optimizationObject;
 		boolean savingSuccessful;
+		modelVersion++;
 		if (file == null) {
 			Prnt.prn("CRF Model is not ready, either because it was never read or an error happened while reading it previously. Please try reading the model file again.");
 			return false ;
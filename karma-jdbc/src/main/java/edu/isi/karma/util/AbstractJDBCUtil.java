@@ -23,6 +23,7 @@ package edu.isi.karma.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -266,4 +267,108 @@ public abstract class AbstractJDBCUtil {
 		}
 	}
 
+	/**
+	 * Returns a parameterized insert statement for the given columns.
+	 * @param tableName
+	 * @param columnNames
+	 * @return
+	 */
+	public String getInsertStatement(String tableName, List<String> columnNames) {
+		StringBuilder colNames = new StringBuilder();
+		StringBuilder colValues = new StringBuilder();
+		for (String colName : columnNames) {
+			if (colNames.length() > 0) {
+				colNames.append(",");
+				colValues.append(",");
+			}
+			colNames.append(prepareName(colName));
+			colValues.append("?");
+		}
+		return "insert into " + prepareName(tableName) + "(" + colNames + ") values (" + colValues + ")";
+	}
+
+	/**
+	 * Inserts the rows with a statement from getInsertStatement and commits
+	 * them as one transaction, sending batchSize rows to the database at a
+	 * time. A value is bound as a string, a number (BigDecimal) or a numeric
+	 * null. If a batch fails, with a BatchUpdateException or any other
+	 * SQLException, the transaction is rolled back and the rows are inserted
+	 * one at a time, skipping duplicate entries (MySQL's "Duplicate entry"
+	 * errors and the unique violations of SQLState 23505). Each row is
+	 * inserted after a savepoint, so that a skipped row does not leave the
+	 * transaction aborted on databases such as PostgreSQL.
+	 * The connection must not be in auto-commit mode.
+	 * @param conn
+	 * @param insertQuery
+	 * @param rows
+	 * @param batchSize
+	 * @throws SQLException
+	 */
+	public void executeBatchInsert(Connection conn, String insertQuery,
+			List<Object[]> rows, int batchSize) throws SQLException {
+		if (conn == null || rows.isEmpty())
+			return;
+		
+		PreparedStatement ps = conn.prepareStatement(insertQuery);
+		try {
+			try {
+				int inBatch = 0;
+				for (Object[] row : rows) {
+					setParameters(ps, row);
+					ps.addBatch();
+					if (++inBatch == batchSize) {
+						ps.executeBatch();
+						inBatch = 0;
+					}
+				}
+				if (inBatch > 0)
+					ps.executeBatch();
+				conn.commit();
+				return;
+			} catch (SQLException e) {
+				// some drivers report a failed batch as a plain SQLException
+				logger.debug("Batch insert failed, inserting the rows one by one: " + e.getMessage());
+				ps.clearBatch();
+				conn.rollback();
+			}
+			
+			for (Object[] row : rows) {
+				setParameters(ps, row);
+				// PostgreSQL aborts the whole transaction on an error, rolling
+				// back to the savepoint undoes only the duplicate row
+				Savepoint savepoint = conn.setSavepoint();
+				try {
+					ps.executeUpdate();
+					conn.releaseSavepoint(savepoint);
+				} catch (SQLException e) {
+					if (!isDuplicateEntry(e)) {
+						logger.error("Error occured while executing update!", e);
+						throw e;
+					}
+					conn.rollback(savepoint);
+				}
+			}
+			conn.commit();
+		} finally {
+			ps.close();
+		}
+	}
+
+	private static boolean isDuplicateEntry(SQLException e) {
+		return (e.getMessage() != null && e.getMessage().startsWith("Duplicate entry"))
+				|| "23505".equals(e.getSQLState());
+	}
+
+	private void setParameters(PreparedStatement ps, Object[] row) throws SQLException {
+		for (int i = 0; i < row.length; i++) {
+			Object val = row[i];
+			if (val == null)
+				ps.setNull(i + 1, Types.NUMERIC);
+			else if (val instanceof BigDecimal)
+				ps.setBigDecimal(i + 1, (BigDecimal) val);
+			else
+				ps.setString(i + 1, val.toString());
+		}
+	}
+
 }
@@ -34,7 +34,7 @@ public class MySQLUtil extends AbstractJDBCUtil {
 	
 	//default port is 3306
 	static final String CONNECT_STRING_TEMPLATE = 
-		"jdbc:mysql://host:port/dbname?user=username&password=pwd";
+		"jdbc:mysql://host:port/dbname?user=username&password=pwd&rewriteBatchedStatements=true";
 		
 	@Override
 	public ArrayList<String> getListOfTables(Connection conn) 
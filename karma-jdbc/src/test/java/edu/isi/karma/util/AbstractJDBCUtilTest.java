@@ -0,0 +1,246 @@
+package edu.isi.karma.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AbstractJDBCUtilTest {
+
+	private static int databases = 0;
+
+	private final AbstractJDBCUtil dbUtil = new H2Util();
+	private Connection conn;
+	private String insertQuery;
+
+	@Before
+	public void createTable() throws Exception {
+		Class.forName("org.h2.Driver");
+		conn = DriverManager.getConnection("jdbc:h2:mem:publish" + (databases++));
+		Statement s = conn.createStatement();
+		s.executeUpdate("create table \"people\" (\"name\" varchar(10) primary key, \"age\" decimal)");
+		s.close();
+		conn.setAutoCommit(false);
+		insertQuery = dbUtil.getInsertStatement("people", Arrays.asList("name", "age"));
+	}
+
+	@After
+	public void closeConnection() throws SQLException {
+		conn.close();
+	}
+
+	@Test
+	public void batchInsertTest() throws SQLException {
+		List<Object[]> rows = getRows(25);
+		rows.add(new Object[] {"nobody", null});
+		dbUtil.executeBatchInsert(conn, insertQuery, rows, 10);
+
+		assertEquals(26, count());
+		assertEquals(new BigDecimal("7"), getAge("p7"));
+		assertNull(getAge("nobody"));
+	}
+
+	@Test
+	public void duplicateEntriesTest() throws SQLException {
+		dbUtil.executeBatchInsert(conn, insertQuery, getRows(5), 10);
+
+		// the batch fails on p3 and the rows are inserted one by one
+		List<Object[]> rows = getRows(12);
+		rows.add(new Object[] {"p11", new BigDecimal(99)});
+		dbUtil.executeBatchInsert(conn, insertQuery, rows, 4);
+
+		assertEquals(12, count());
+		assertEquals(new BigDecimal("11"), getAge("p11"));
+	}
+
+	@Test
+	public void duplicateEntriesInAbortingTransactionTest() throws SQLException {
+		dbUtil.executeBatchInsert(conn, insertQuery, getRows(5), 10);
+
+		// like PostgreSQL, the transaction is aborted by the failed batch and
+		// by every duplicate row until it is rolled back
+		boolean[] aborted = new boolean[1];
+		dbUtil.executeBatchInsert(abortingTransactions(conn, aborted), insertQuery, getRows(12), 4);
+
+		assertFalse(aborted[0]);
+		assertFalse(conn.getAutoCommit());
+		assertEquals(12, count());
+	}
+
+	@Test
+	public void plainSQLExceptionTest() throws SQLException {
+		// a driver that reports a failed batch without a BatchUpdateException
+		dbUtil.executeBatchInsert(failingBatches(conn), insertQuery, getRows(12), 5);
+
+		assertEquals(12, count());
+	}
+
+	@Test
+	public void failingRowTest() throws SQLException {
+		List<Object[]> rows = getRows(6);
+		rows.add(new Object[] {"a name that is too long", new BigDecimal(1)});
+		try {
+			dbUtil.executeBatchInsert(conn, insertQuery, rows, 4);
+			fail("the insert of a value that is too long has to fail");
+		} catch (SQLException e) {
+			conn.rollback();
+		}
+		assertEquals(0, count());
+	}
+
+	private List<Object[]> getRows(int n) {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int i = 0; i < n; i++) {
+			rows.add(new Object[] {"p" + i, new BigDecimal(i)});
+		}
+		return rows;
+	}
+
+	private int count() throws SQLException {
+		Statement s = conn.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("select count(*) from \"people\"");
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			s.close();
+		}
+	}
+
+	private BigDecimal getAge(String name) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement("select \"age\" from \"people\" where \"name\" = ?");
+		try {
+			ps.setString(1, name);
+			ResultSet rs = ps.executeQuery();
+			rs.next();
+			BigDecimal age = rs.getBigDecimal(1);
+			return age == null ? null : age.stripTrailingZeros();
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * A connection that, like PostgreSQL, rejects every statement and the
+	 * commit after a statement failed, until the transaction is rolled back
+	 * or rolled back to a savepoint.
+	 */
+	private static Connection abortingTransactions(final Connection conn, final boolean[] aborted) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("commit"))
+					checkNotAborted();
+				final Object result = forward(conn, method, args);
+				if (method.getName().equals("rollback"))
+					aborted[0] = false;
+				if (!method.getName().equals("prepareStatement"))
+					return result;
+				return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+						new Class<?>[] {PreparedStatement.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!method.getName().startsWith("execute"))
+							return forward(result, method, args);
+						checkNotAborted();
+						try {
+							return forward(result, method, args);
+						} catch (SQLException e) {
+							aborted[0] = true;
+							throw e;
+						}
+					}
+				});
+			}
+
+			private void checkNotAborted() throws SQLException {
+				if (aborted[0])
+					throw new SQLException("current transaction is aborted", "25P02");
+			}
+		});
+	}
+
+	private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static Connection failingBatches(final Connection conn) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				final Object result = forward(conn, method, args);
+				if (!method.getName().equals("prepareStatement"))
+					return result;
+				return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+						new Class<?>[] {PreparedStatement.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("executeBatch"))
+							throw new SQLException("batch failed");
+						return forward(result, method, args);
+					}
+				});
+			}
+		});
+	}
+
+	private static class H2Util extends AbstractJDBCUtil {
+
+		@Override
+		protected String getDriver() {
+			return "org.h2.Driver";
+		}
+
+		@Override
+		protected String getConnectStringTemplate() {
+			return "jdbc:h2:mem:dbname";
+		}
+
+		@Override
+		public String escapeTablename(String name) {
+			return "\"" + name + "\"";
+		}
+
+		@Override
+		public String prepareName(String name) {
+			return "\"" + name + "\"";
+		}
+
+		@Override
+		public ArrayList<ArrayList<String>> getDataForLimitedRows(DBType dbType,
+				String hostname, int portnumber, String username, String password,
+				String tableName, String dBorSIDName, int rowCount) {
+			return new ArrayList<ArrayList<String>>();
+		}
+
+		@Override
+		public ArrayList<String> getListOfTables(Connection conn) {
+			return new ArrayList<String>();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package edu.isi.karma.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.isi.karma.webserver.ServletContextParameterMap;
+import edu.isi.karma.webserver.ServletContextParameterMap.ContextParameter;
+
+/**
+ * The threads that transform the partitions of a column, shared by the Python
+ * transformations and the cleaning rules. There are
+ * PYTHON_TRANSFORMATION_THREADS threads, or one per processor if the parameter
+ * is not set.
+ */
+public class TransformationExecutor {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(TransformationExecutor.class);
+
+	private static ExecutorService executor = null;
+	private static int threads = 0;
+
+	private TransformationExecutor() {
+	}
+
+	public static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			threads = Runtime.getRuntime().availableProcessors();
+			String value = ServletContextParameterMap
+					.getParameterValue(ContextParameter.PYTHON_TRANSFORMATION_THREADS);
+			if (value != null && !value.trim().isEmpty()) {
+				try {
+					threads = Math.max(1, Integer.parseInt(value.trim()));
+				} catch (NumberFormatException e) {
+					logger.warn("Invalid number of transformation threads: "
+							+ value + ", using " + threads);
+				}
+			}
+			executor = Executors.newFixedThreadPool(threads,
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Transformation-"
+									+ count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return executor;
+	}
+
+	/**
+	 * @return the number of threads of the executor
+	 */
+	public static synchronized int getThreads() {
+		getExecutor();
+		return threads;
+	}
+}
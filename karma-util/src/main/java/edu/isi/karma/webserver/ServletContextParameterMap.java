@@ -52,6 +52,11 @@ public class ServletContextParameterMap {
 		R2RML_PUBLISH_DIR, R2RML_PUBLISH_RELATIVE_DIR,
 		RDF_PUBLISH_DIR, RDF_PUBLISH_RELATIVE_DIR,
 		CSV_PUBLISH_DIR, CSV_PUBLISH_RELATIVE_DIR, USER_PYTHON_SCRIPTS_DIRECTORY,
+		PYTHON_TRANSFORMATION_THREADS,
+		SERVICE_INVOCATION_THREADS, SERVICE_INVOCATIONS_PER_HOST,
+		SERVICE_REQUESTS_PER_SECOND_PER_HOST, SERVICE_RESPONSE_CACHE_SIZE,
+		DB_PUBLISH_BATCH_SIZE, DB_PUBLISH_COMMIT_SIZE,
+		RDF_PUBLISH_CHUNK_SIZE, RDF_PUBLISH_GZIP, RDF_PUBLISH_RETRIES,
 		JSON_PUBLISH_DIR, JSON_PUBLISH_RELATIVE_DIR,
 		REPORT_PUBLISH_DIR, REPORT_PUBLISH_RELATIVE_DIR
 	}
@@ -36,7 +36,12 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
 
 public class RequestController extends HttpServlet {
 
@@ -78,7 +83,7 @@ public class RequestController extends HttpServlet {
         }
 
         VWorkspace vWorkspace = VWorkspaceRegistry.getInstance().getVWorkspace(workspaceId);
-        String responseString = "";
+        UpdateContainer responseContainer = null;
 //		String id = request.getSession().getId();
         /**
          * **********************************
@@ -99,23 +104,23 @@ public class RequestController extends HttpServlet {
                                 .getCommandHistory().doCommand(currentCommand, ctrl.getWorkspace());
 
                         updateContainer.applyUpdates(vWorkspace);
-                        responseString = updateContainer.generateJson(vWorkspace);
+                        responseContainer = updateContainer;
                     } catch (CommandException e) {
                         logger.error("Error occured while executing command: " + currentCommand.getCommandName(), e);
                         UpdateContainer updateContainer = new UpdateContainer();
                 		updateContainer.add(new ErrorUpdate("Error occured while executing command: " + currentCommand.getCommandName() + ":" + e.getMessage()));
-                		responseString = updateContainer.generateJson(vWorkspace);
+                		responseContainer = updateContainer;
                     }
                 } else {
                 	try {
 	                    UpdateContainer updateContainer =
 	                            ((IPreviewable) currentCommand).handleUserActions(request);
 	                    updateContainer.applyUpdates(vWorkspace);
-	                    responseString = updateContainer.generateJson(vWorkspace);
+	                    responseContainer = updateContainer;
                 	} catch(Exception e) {
                 		UpdateContainer updateContainer = new UpdateContainer();
                 		updateContainer.add(new ErrorUpdate("Error:" + e.getMessage()));
-                		responseString = updateContainer.generateJson(vWorkspace);
+                		responseContainer = updateContainer;
                 	}
                 }
             }
@@ -125,13 +130,13 @@ public class RequestController extends HttpServlet {
             	try {
             		UpdateContainer updateContainer =ctrl.invokeCommand(command);
             		updateContainer.applyUpdates(vWorkspace);
-            		responseString = updateContainer.generateJson(vWorkspace);
+            		responseContainer = updateContainer;
             	} catch(Exception e) {
             		//e.printStackTrace();
 //            		System.out.println("falihfldsakfh");
             		UpdateContainer updateContainer = new UpdateContainer();
             		updateContainer.add(new ErrorUpdate("Error: " + e.getMessage()));
-            		responseString = updateContainer.generateJson(vWorkspace);
+            		responseContainer = updateContainer;
             	}
                  
             } else {
@@ -139,12 +144,66 @@ public class RequestController extends HttpServlet {
                 logger.error(msg);
                 UpdateContainer updateContainer = new UpdateContainer();
         		updateContainer.add(new ErrorUpdate(msg));
-        		responseString = updateContainer.generateJson(vWorkspace);
+        		responseContainer = updateContainer;
             }
         }
 
+        writeResponse(request, response, responseContainer, vWorkspace);
+    }
+
+    /**
+     * Streams the JSON of the updates to the response, gzipped if the client
+     * accepts it. An error while the JSON is generated is logged and, as long
+     * as nothing has been sent yet, replaced by an error update. Once part of
+     * the JSON has been sent the request fails, so that the connection is
+     * aborted instead of ending the body as if it were complete.
+     */
+    private void writeResponse(HttpServletRequest request, HttpServletResponse response,
+            UpdateContainer updateContainer, VWorkspace vWorkspace) throws IOException {
+        response.setCharacterEncoding("UTF-8");
+        // the body depends on Accept-Encoding, caches must not mix them up
+        response.setHeader("Vary", "Accept-Encoding");
+        if (updateContainer == null) {
+            response.flushBuffer();
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        GZIPOutputStream gzipOut = null;
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            response.setHeader("Content-Encoding", "gzip");
+            gzipOut = new GZIPOutputStream(out);
+            out = gzipOut;
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        try {
+            updateContainer.generateJson(vWorkspace, writer);
+        } catch (Exception e) {
+            logger.error("Error occured while generating the response", e);
+            if (response.isCommitted()) {
+                // part of the JSON is already sent, the client cannot parse it
+                throw new IOException("Error occured after part of the response was sent", e);
+            }
+            writeError(response, vWorkspace, "Error occured while generating the response: " + e.getMessage());
+            return;
+        }
+        writer.flush();
+        if (gzipOut != null) {
+            gzipOut.finish();
+        }
+        response.flushBuffer();
+    }
+
+    private void writeError(HttpServletResponse response, VWorkspace vWorkspace, String msg) throws IOException {
+        // drops the partial JSON and the gzip header
+        response.reset();
         response.setCharacterEncoding("UTF-8");
-        response.getWriter().write(responseString);
+        response.setHeader("Vary", "Accept-Encoding");
+        UpdateContainer updateContainer = new UpdateContainer();
+        updateContainer.add(new ErrorUpdate(msg));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
+        updateContainer.generateJson(vWorkspace, writer);
+        writer.flush();
         response.flushBuffer();
     }
-}
\ No newline at end of file
+}